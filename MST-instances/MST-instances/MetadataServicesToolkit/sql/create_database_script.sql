@@ -857,3 +857,17 @@ end
 //
 
 delimiter ;
+
+-- -------------------------------------------------------------
+-- Table structure for xml_dictionaries
+-- -------------------------------------------------------------
+
+drop table if exists xml_dictionaries;
+create table xml_dictionaries (
+  dictionary_id    int      not null    AUTO_INCREMENT,
+  format_id        int      not null,
+  dictionary       blob     not null,
+  created_at       datetime,
+  PRIMARY KEY (dictionary_id),
+  KEY idx_xml_dictionaries_format_id (format_id)
+) ENGINE=MyISAM DEFAULT CHARSET=utf8;
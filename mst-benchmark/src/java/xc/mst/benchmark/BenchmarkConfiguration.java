@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import xc.mst.benchmark.stub.StubFormatDAO;
+import xc.mst.benchmark.stub.StubMessageDAO;
+import xc.mst.benchmark.stub.StubRepositoryDAO;
+import xc.mst.benchmark.stub.StubSetService;
+import xc.mst.benchmark.stub.StubXcIdentifierForFrbrElementDAO;
+import xc.mst.bo.service.Service;
+import xc.mst.email.Emailer;
+import xc.mst.manager.record.DefaultRecordService;
+import xc.mst.manager.record.RecordService;
+import xc.mst.manager.repository.DefaultFormatService;
+import xc.mst.manager.repository.FormatService;
+import xc.mst.manager.repository.SetService;
+import xc.mst.services.GenericMetadataService;
+import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.Util;
+
+/**
+ * Stands in for the spring-backed MSTConfiguration, so that services can be run without a
+ * database or an application context.  Beans are looked up in a plain map, which is filled
+ * with in-memory stubs of the DAOs the per-record code paths touch.  Asking for any other bean
+ * is an error, so that a benchmark can't silently end up measuring a code path that would
+ * have gone to the database.
+ *
+ * The properties are the defaults from mst-common's default.properties.
+ */
+public class BenchmarkConfiguration extends MSTConfiguration {
+
+    public static final String INSTANCE_NAME = "MetadataServicesToolkit";
+
+    protected Map<String, Object> beans = new HashMap<String, Object>();
+
+    protected StubRepositoryDAO repositoryDAO = new StubRepositoryDAO();
+    protected StubMessageDAO messageDAO = new StubMessageDAO();
+
+    /**
+     * @return the MSTConfiguration singleton, which is created on the first call.
+     */
+    public static synchronized BenchmarkConfiguration getBenchmarkConfiguration() {
+        if (MSTConfiguration.getInstance() == null) {
+            new BenchmarkConfiguration();
+        }
+        if (!(MSTConfiguration.getInstance() instanceof BenchmarkConfiguration)) {
+            throw new RuntimeException("MSTConfiguration was already set up by something other than the benchmarks: "
+                    + MSTConfiguration.getInstance().getClass().getName());
+        }
+        return (BenchmarkConfiguration) MSTConfiguration.getInstance();
+    }
+
+    protected BenchmarkConfiguration() {
+        super();
+        try {
+            InputStream is = getClass().getClassLoader().getResourceAsStream("default.properties");
+            properties.load(is);
+            is.close();
+        } catch (Throwable t) {
+            throw new RuntimeException("unable to load mst-common's default.properties", t);
+        }
+        MSTConfiguration.instanceName = INSTANCE_NAME;
+
+        beans.put("Util", new Util());
+
+        DefaultRecordService recordService = new DefaultRecordService();
+        recordService.setConfig(this);
+        recordService.setRepositoryDAO(repositoryDAO);
+        beans.put("RecordService", recordService);
+
+        StubFormatDAO formatDAO = new StubFormatDAO();
+        beans.put("FormatDAO", formatDAO);
+
+        DefaultFormatService formatService = new DefaultFormatService();
+        formatService.setConfig(this);
+        formatService.setFormatDAO(formatDAO);
+        beans.put("FormatService", formatService);
+
+        beans.put("SetService", new StubSetService());
+        beans.put("XcIdentifierForFrbrElementDAO", new StubXcIdentifierForFrbrElementDAO());
+
+        // every service grabs a mailer when it's constructed.  It's never init()'d, so it has no
+        // smtp configuration and won't try to send anything.
+        Emailer mailer = new Emailer();
+        mailer.setConfig(this);
+        beans.put("Emailer", mailer);
+    }
+
+    @Override
+    public Object getBean(String name) {
+        Object bean = beans.get(name);
+        if (bean == null) {
+            throw new RuntimeException("the benchmarks have no stub for bean " + name);
+        }
+        return bean;
+    }
+
+    public void putBean(String name, Object bean) {
+        beans.put(name, bean);
+    }
+
+    public StubRepositoryDAO getRepositoryDAO() {
+        return repositoryDAO;
+    }
+
+    public StubMessageDAO getMessageDAO() {
+        return messageDAO;
+    }
+
+    /**
+     * Does what spring (and the service's install) would have done to a service, as far as the
+     * per-record code paths care.  The service is also registered as the MetadataService bean.
+     */
+    public void wire(GenericMetadataService metadataService, String serviceName) {
+        Service service = new Service();
+        service.setId(1);
+        service.setName(serviceName);
+        // as DefaultServicesService names it when the service is installed
+        service.setServicesLogFileName("logs" + FILE_SEPARATOR + "service" + FILE_SEPARATOR + serviceName + ".txt");
+
+        metadataService.setConfig(this);
+        metadataService.setService(service);
+        metadataService.setRepositoryDAO(repositoryDAO);
+        metadataService.setMessageDAO(messageDAO);
+        metadataService.setFormatDAO((StubFormatDAO) getBean("FormatDAO"));
+        metadataService.setFormatService((FormatService) getBean("FormatService"));
+        metadataService.setRecordService((RecordService) getBean("RecordService"));
+        metadataService.setSetService((SetService) getBean("SetService"));
+        putBean("MetadataService", metadataService);
+    }
+
+    /**
+     * Points getUrlPath() at the instance folder the service's own build lays out (it has the same
+     * MST-instances/MetadataServicesToolkit/services/... structure as an install), so that the
+     * service finds its custom.properties the same way it would when installed.
+     */
+    public void useServiceInstall(String serviceName) {
+        MSTConfiguration.rootDir = BenchmarkFixtures.getServiceDir(serviceName).getAbsolutePath() + "/build/";
+        init2();
+    }
+}
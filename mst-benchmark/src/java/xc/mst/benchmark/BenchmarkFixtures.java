@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Reads benchmark input out of the xml fixtures the custom services already keep for their
+ * tests (eg MARCNormalization/test/mock_harvest_input).  The location of the custom services
+ * folder is passed in as the mb.services.dir system property (see mst-benchmark/build.xml).
+ */
+public class BenchmarkFixtures {
+
+    private static final Logger LOG = Logger.getLogger(BenchmarkFixtures.class);
+
+    public static final String SERVICES_DIR_PROPERTY = "mb.services.dir";
+
+    public static final Namespace MARC_NAMESPACE = Namespace.getNamespace("marc", "http://www.loc.gov/MARC21/slim");
+    public static final Namespace XC_NAMESPACE = Namespace.getNamespace("xc", "http://www.extensiblecatalog.info/Elements");
+
+    public static File getServiceDir(String serviceName) {
+        String servicesDir = System.getProperty(SERVICES_DIR_PROPERTY);
+        if (servicesDir == null) {
+            throw new RuntimeException(SERVICES_DIR_PROPERTY + " is not set.  Run the benchmarks with: ant mb.bench");
+        }
+        File dir = new File(servicesDir, serviceName);
+        if (!dir.isDirectory()) {
+            throw new RuntimeException(dir.getAbsolutePath() + " does not exist");
+        }
+        return dir;
+    }
+
+    /**
+     * @return the marc:record elements under the service's test/<testDir> folder, serialized
+     *         as they would be stored in a repository.
+     */
+    public static List<String> getMarcRecords(String serviceName, String testDir) {
+        return getRecords(serviceName, testDir, "record", MARC_NAMESPACE);
+    }
+
+    /**
+     * @return the xc:frbr elements under the service's test/<testDir> folder, serialized
+     *         as they would be stored in a repository.
+     */
+    public static List<String> getXcRecords(String serviceName, String testDir) {
+        return getRecords(serviceName, testDir, "frbr", XC_NAMESPACE);
+    }
+
+    /**
+     * Files are read in path order, so every run sees the records in the same order.  Files that
+     * aren't well-formed (a few fixtures are deliberately broken) are skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> getRecords(String serviceName, String testDir, String name, Namespace namespace) {
+        File dir = new File(new File(getServiceDir(serviceName), "test"), testDir);
+        List<File> files = new ArrayList<File>();
+        listXmlFiles(dir, files);
+        Collections.sort(files);
+
+        SAXBuilder builder = new SAXBuilder();
+        XMLOutputter outputter = new XMLOutputter();
+        List<String> records = new ArrayList<String>();
+        for (File file : files) {
+            try {
+                Document doc = builder.build(file);
+                Iterator<Element> it = doc.getDescendants(new ElementFilter(name, namespace));
+                while (it.hasNext()) {
+                    records.add(outputter.outputString(it.next()));
+                }
+            } catch (Throwable t) {
+                LOG.warn("skipping " + file.getAbsolutePath() + ": " + t.getMessage());
+            }
+        }
+        if (records.size() == 0) {
+            throw new RuntimeException("no " + namespace.getPrefix() + ":" + name + " records found under " + dir.getAbsolutePath());
+        }
+        LOG.info(records.size() + " " + namespace.getPrefix() + ":" + name + " records read from " + files.size() + " files under " + dir.getAbsolutePath());
+        return records;
+    }
+
+    protected static void listXmlFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listXmlFiles(child, files);
+            } else if (child.getName().endsWith(".xml")) {
+                files.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xc.mst.bo.record.SaxMarcXmlRecord;
+
+/**
+ * Parsing marcxml into a SaxMarcXmlRecord, which Normalization, Transformation and Aggregation
+ * all do at least once for every record they process.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SaxMarcXmlRecordBenchmark {
+
+    protected List<String> records = null;
+    protected int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkConfiguration.getBenchmarkConfiguration();
+        records = BenchmarkFixtures.getMarcRecords("MARCNormalization", "mock_harvest_input");
+    }
+
+    @Benchmark
+    public SaxMarcXmlRecord parse() {
+        String xml = records.get(next);
+        next = (next + 1) % records.size();
+        return new SaxMarcXmlRecord(xml);
+    }
+}
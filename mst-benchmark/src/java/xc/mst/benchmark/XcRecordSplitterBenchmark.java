@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xc.mst.bo.record.Record;
+import xc.mst.bo.service.Service;
+import xc.mst.utils.XcRecordSplitter;
+
+/**
+ * Splitting the xc:frbr output of the MARCToXCTransformation service back into its works,
+ * expressions, manifestations, holdings and items.  The input is the transformation service's
+ * expected test output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class XcRecordSplitterBenchmark {
+
+    protected List<Record> records = null;
+    protected Service service = null;
+    protected int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // XcRecordSplitter looks up its DAOs when the class is loaded, so this has to come first
+        BenchmarkConfiguration.getBenchmarkConfiguration();
+
+        service = new Service();
+        service.setId(1);
+        service.setName("MARCToXCTransformation");
+
+        records = new ArrayList<Record>();
+        for (String xml : BenchmarkFixtures.getXcRecords("MARCToXCTransformation", "mock_harvest_expected_output")) {
+            Record r = new Record();
+            r.setMode(Record.STRING_MODE);
+            r.setId(records.size() + 1);
+            r.setOaiXml(xml);
+            records.add(r);
+        }
+    }
+
+    @Benchmark
+    public XcRecordSplitter split() {
+        Record r = records.get(next);
+        next = (next + 1) % records.size();
+        return new XcRecordSplitter(r, service);
+    }
+}
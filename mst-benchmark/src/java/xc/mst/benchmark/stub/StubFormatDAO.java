@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xc.mst.bo.provider.Format;
+import xc.mst.dao.provider.FormatDAO;
+
+/**
+ * The marc21 and xc formats, without a database.  Any other name gets a new format.
+ */
+public class StubFormatDAO extends FormatDAO {
+
+    protected Map<String, Format> formats = new LinkedHashMap<String, Format>();
+
+    public StubFormatDAO() {
+        add("marc21", "http://www.loc.gov/MARC21/slim", "http://www.loc.gov/standards/marcxml/schema/MARC21slim.xsd");
+        add("xc", "http://www.extensiblecatalog.info/Elements", "http://www.extensiblecatalog.info/Elements");
+    }
+
+    protected synchronized Format add(String name, String namespace, String schemaLocation) {
+        Format format = new Format();
+        format.setId(formats.size() + 1);
+        format.setName(name);
+        format.setNamespace(namespace);
+        format.setSchemaLocation(schemaLocation);
+        formats.put(name, format);
+        return format;
+    }
+
+    @Override
+    public synchronized List<Format> getAll() {
+        return new ArrayList<Format>(formats.values());
+    }
+
+    @Override
+    public synchronized Format getById(int formatId) {
+        for (Format format : formats.values()) {
+            if (format.getId() == formatId) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Format getByName(String name) {
+        Format format = formats.get(name);
+        if (format == null) {
+            format = add(name, null, null);
+        }
+        return format;
+    }
+
+    @Override
+    public List<Format> getFormatsForProvider(int providerId) {
+        return getAll();
+    }
+
+    @Override
+    public boolean insert(Format format) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean update(Format format) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean delete(Format format) {
+        throw new UnsupportedOperationException();
+    }
+}
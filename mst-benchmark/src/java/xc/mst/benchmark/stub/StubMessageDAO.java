@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import xc.mst.bo.record.RecordMessage;
+import xc.mst.dao.record.MessageDAO;
+
+/**
+ * Hands out record message ids from memory, and drops the messages instead of persisting them.
+ */
+public class StubMessageDAO extends MessageDAO {
+
+    protected AtomicLong nextStubId = new AtomicLong(1);
+
+    @Override
+    public long getNextId() {
+        return nextStubId.getAndIncrement();
+    }
+
+    @Override
+    public void persistMessages(List<RecordMessage> messages) {
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import xc.mst.repo.Repository;
+
+/**
+ * A Repository for services to write their output to.  The only calls the per-record code paths
+ * make are to record links between output records (eg holdings to manifestations), which are
+ * dropped.  Any other call is an error, since it would have gone to the database.
+ */
+public class StubRepository implements InvocationHandler {
+
+    protected String name = null;
+
+    public static Repository newInstance(String name) {
+        return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(),
+                new Class[] { Repository.class }, new StubRepository(name));
+    }
+
+    protected StubRepository(String name) {
+        this.name = name;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final String m = method.getName();
+        if (m.equals("addLink")) {
+            return null;
+        } else if (m.equals("getName")) {
+            return name;
+        } else if (m.equals("toString")) {
+            return "StubRepository[" + name + "]";
+        } else if (m.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (m.equals("equals")) {
+            return proxy == args[0];
+        }
+        throw new UnsupportedOperationException("the benchmarks have no stub for Repository." + m);
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import xc.mst.repo.RepositoryDAO;
+
+/**
+ * Hands out record ids from memory.  Nothing is ever persisted, so there are never any
+ * unpersisted records to flush.
+ */
+public class StubRepositoryDAO extends RepositoryDAO {
+
+    protected AtomicLong nextStubId = new AtomicLong(1);
+
+    @Override
+    public long getNextIdAndIncr() {
+        return nextStubId.getAndIncrement();
+    }
+
+    @Override
+    public boolean haveUnpersistedRecord(String name, Long id) {
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xc.mst.bo.provider.Set;
+import xc.mst.manager.repository.SetService;
+
+/**
+ * Sets, without a database.  A set is created the first time its setSpec is asked for, the way
+ * a service's record type sets (eg MARCXMLbibliographic) exist after its first record.
+ */
+public class StubSetService implements SetService {
+
+    protected Map<String, Set> sets = new LinkedHashMap<String, Set>();
+
+    public synchronized Set getSetById(int setId) {
+        for (Set set : sets.values()) {
+            if (set.getId() == setId) {
+                return set;
+            }
+        }
+        return null;
+    }
+
+    public synchronized Set getSetBySetSpec(String setSpec) {
+        Set set = sets.get(setSpec);
+        if (set == null) {
+            set = new Set();
+            set.setSetSpec(setSpec);
+            set.setDisplayName(setSpec);
+            set.setIsRecordSet(true);
+            set.setIsProviderSet(false);
+            insertSet(set);
+        }
+        return set;
+    }
+
+    public synchronized void deleteSet(Set set) {
+        sets.remove(set.getSetSpec());
+    }
+
+    public synchronized void insertSet(Set set) {
+        set.setId(sets.size() + 1);
+        sets.put(set.getSetSpec(), set);
+    }
+
+    public synchronized List<Set> getAllSets() {
+        return new ArrayList<Set>(sets.values());
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.benchmark.stub;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import xc.mst.dao.record.XcIdentifierForFrbrElementDAO;
+
+/**
+ * Hands out XC identifiers from memory (one sequence for all the FRBR elements).
+ */
+public class StubXcIdentifierForFrbrElementDAO extends XcIdentifierForFrbrElementDAO {
+
+    protected AtomicLong nextXcId = new AtomicLong(1);
+
+    @Override
+    public long getNextXcIdForFrbrElement(int elementId) {
+        return nextXcId.getAndIncrement();
+    }
+
+    @Override
+    public boolean writeNextXcId(int elementId) {
+        return true;
+    }
+
+    @Override
+    public void writeNextXcId(int elementId, long nextXcId) {
+    }
+}
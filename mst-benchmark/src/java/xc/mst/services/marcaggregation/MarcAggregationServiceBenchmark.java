@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xc.mst.benchmark.BenchmarkConfiguration;
+import xc.mst.benchmark.BenchmarkFixtures;
+import xc.mst.bo.record.Record;
+import xc.mst.bo.record.SaxMarcXmlRecord;
+import xc.mst.manager.BaseService;
+import xc.mst.services.marcaggregation.matcher.ISBNMatcher;
+import xc.mst.services.marcaggregation.matcher.ISSNMatcher;
+import xc.mst.services.marcaggregation.matcher.LccnMatcher;
+import xc.mst.services.marcaggregation.matcher.MatchSet;
+import xc.mst.services.marcaggregation.matcher.SystemControlNumberMatcher;
+import xc.mst.services.marcaggregation.matcher.x024aMatcher;
+import xc.mst.services.marcaggregation.matcher.x028abMatcher;
+import xc.mst.services.marcaggregation.matcher.x130aMatcher;
+import xc.mst.services.marcaggregation.matcher.x240aMatcher;
+import xc.mst.services.marcaggregation.matcher.x245ahMatcher;
+import xc.mst.services.marcaggregation.matcher.x260abcMatcher;
+import xc.mst.services.marcaggregation.matchrules.Step1aMatchRule;
+import xc.mst.services.marcaggregation.matchrules.Step2abMatchRule;
+import xc.mst.services.marcaggregation.matchrules.Step2abcMatchRule;
+import xc.mst.services.marcaggregation.matchrules.Step3aMatchRule;
+
+/**
+ * The matching stage of an initial MarcAggregation load, using the matchers and match rules
+ * configured in the service's custom.properties: each bib's matchpoints are added to the matchers,
+ * the match rules find the bibs it matches and the matches are union'd into a MatchSetForest, as
+ * findMatchSets does.
+ *
+ * Merging the matched records and writing the output goes through the repository, so it isn't
+ * covered here.  The matchers are emptied after each pass over the input, so every pass is
+ * matched like a fresh load.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MarcAggregationServiceBenchmark {
+
+    public static final String SERVICE_NAME = "MARCAggregation";
+
+    protected List<String> records = null;
+    protected BenchmarkConfiguration config = null;
+    protected MarcAggregationService service = null;
+    protected MatchSetForest matchSets = null;
+    protected int next = 0;
+
+    @Setup(Level.Trial)
+    public void setupRecords() {
+        records = BenchmarkFixtures.getMarcRecords(SERVICE_NAME, "mock_harvest_input");
+    }
+
+    // a new service each iteration, so that the messages it collects for the (never run) commit don't pile up
+    @Setup(Level.Iteration)
+    public void setupService() {
+        config = BenchmarkConfiguration.getBenchmarkConfiguration();
+        config.useServiceInstall(SERVICE_NAME);
+
+        service = new MarcAggregationService();
+        config.wire(service, SERVICE_NAME);
+        config.putBean("MarcAggregationService", service);
+        service.setMarcAggregationServiceDAO(new StubMarcAggregationServiceDAO());
+        service.firstTime = true;
+        next = 0;
+    }
+
+    protected void resetMatchers() {
+        putBean("SystemControlNumberMatcher", new SystemControlNumberMatcher());
+        putBean("LccnMatcher", new LccnMatcher());
+        putBean("ISBNMatcher", new ISBNMatcher());
+        putBean("ISSNMatcher", new ISSNMatcher());
+        putBean("x024aMatcher", new x024aMatcher());
+        putBean("x028abMatcher", new x028abMatcher());
+        putBean("x130aMatcher", new x130aMatcher());
+        putBean("x240aMatcher", new x240aMatcher());
+        putBean("x245ahMatcher", new x245ahMatcher());
+        putBean("x260abcMatcher", new x260abcMatcher());
+
+        putBean("Step1aMatchRule", new Step1aMatchRule());
+        putBean("Step2abMatchRule", new Step2abMatchRule());
+        putBean("Step2abcMatchRule", new Step2abcMatchRule());
+        putBean("Step3aMatchRule", new Step3aMatchRule());
+
+        service.setupMatchRules();
+        service.setupMatchers();
+        matchSets = new MatchSetForest();
+    }
+
+    protected void putBean(String name, BaseService bean) {
+        bean.setConfig(config);
+        config.putBean(name, bean);
+    }
+
+    @Benchmark
+    public HashSet<Long> match() {
+        if (next == 0) {
+            resetMatchers();
+        }
+        final long id = next + 1;
+        final String xml = records.get(next);
+        next = (next + 1) % records.size();
+
+        Record r = new Record();
+
+        r.setMode(Record.STRING_MODE);
+        r.setId(id);
+        r.setOaiXml(xml);
+
+        SaxMarcXmlRecord smr = new SaxMarcXmlRecord(xml);
+        smr.setRecordId(id);
+        service.addRecordToMatchers(r, smr);
+
+        MatchSet ms = service.getMatchSet(smr);
+        HashSet<Long> matchedRecordIds = service.populateMatchedRecordIds(ms);
+        matchedRecordIds.add(id);
+        matchSets.union(matchedRecordIds);
+        return matchedRecordIds;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation;
+
+import gnu.trove.TLongLongHashMap;
+import gnu.trove.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import xc.mst.services.marcaggregation.dao.MarcAggregationServiceDAO;
+import xc.mst.services.marcaggregation.matcher.SCNData;
+import xc.mst.services.marcaggregation.matcher.StringMatchpointIndex;
+
+/**
+ * Stands in for the matchpoints tables of an empty (initial load) MarcAggregation install:
+ * nothing has been persisted yet, so lookups find nothing and writes are dropped.  All of the
+ * matching then happens against what the matchers hold in memory.
+ */
+public class StubMarcAggregationServiceDAO extends MarcAggregationServiceDAO {
+
+    @Override
+    public List<Long> getMatchingRecords(String tableName, String record_id_field, String string_id_field, String itemToMatch) {
+        return new ArrayList<Long>();
+    }
+
+    @Override
+    public Map<String, List<Long>> getMatchingRecords(String tableName, String record_id_field, String string_id_field, Collection<String> itemsToMatch) {
+        Map<String, List<Long>> results = new HashMap<String, List<Long>>();
+        for (String item : itemsToMatch) {
+            results.put(item, new ArrayList<Long>());
+        }
+        return results;
+    }
+
+    @Override
+    public List<Long> getMatchingRecords(String tableName, String record_id_field, String numeric_id_field, Long itemToMatch) {
+        return new ArrayList<Long>();
+    }
+
+    @Override
+    public List<Long> getMatchingSCCNRecords(String tableName, String record_id_field, String _numeric_id_field, String _prefix_id_field, SCNData itemsToMatch) {
+        return new ArrayList<Long>();
+    }
+
+    @Override
+    public Map<Long, List<Long>> getMatchingNumericRecords(String tableName, String record_id_field, String numeric_id_field, Collection<Long> itemsToMatch) {
+        Map<Long, List<Long>> results = new HashMap<Long, List<Long>>();
+        for (Long item : itemsToMatch) {
+            results.put(item, new ArrayList<Long>());
+        }
+        return results;
+    }
+
+    @Override
+    public Map<Integer, String> getPrefixes() {
+        return new HashMap<Integer, String>();
+    }
+
+    @Override
+    public TLongLongHashMap getLccnRecordsCache() {
+        return new TLongLongHashMap();
+    }
+
+    @Override
+    public TLongLongHashMap getLccnRecordsCache(Long id) {
+        return new TLongLongHashMap();
+    }
+
+    @Override
+    public Map<Long, List<SCNData>> getSCCNRecordsCache() {
+        return new HashMap<Long, List<SCNData>>();
+    }
+
+    @Override
+    public Map<Long, List<SCNData>> getSCCNRecordsCache(Long id) {
+        return new HashMap<Long, List<SCNData>>();
+    }
+
+    @Override
+    public Map<Long, List<String>> get1StrMatchpointsRecordsCache(String tableName) {
+        return new HashMap<Long, List<String>>();
+    }
+
+    @Override
+    public Map<Long, List<String>> get1StrMatchpointsRecordsCache(Long id, String tableName) {
+        return new HashMap<Long, List<String>>();
+    }
+
+    @Override
+    public int getNumRecords(String tableName) {
+        return 0;
+    }
+
+    @Override
+    public int getNumUniqueStringIds(String tableName) {
+        return 0;
+    }
+
+    @Override
+    public int getNumUniqueNumericIds(String tableName) {
+        return 0;
+    }
+
+    @Override
+    public int getNumUniqueRecordIds(String tableName) {
+        return 0;
+    }
+
+    @Override
+    public void persistSCNMatchpointMaps(Map<Long, List<SCNData>> inputId2matcherMap, String tableName) {
+    }
+
+    @Override
+    public void persist2StrMatchpointMaps(Map<Long, List<String[]>> inputId2matcherMap, String tableName) {
+    }
+
+    @Override
+    public void persist1StrMatchpointMaps(Map<Long, List<String>> inputId2matcherMap, String tableName) {
+    }
+
+    @Override
+    public void persist1StrMatchpointMaps(StringMatchpointIndex index, String tableName) {
+    }
+
+    @Override
+    public void persistPrefixList(Map<Integer, String> prefixList, String tableName) {
+    }
+
+    @Override
+    public void persistLongMatchpointMaps(TLongLongHashMap inputId2numMap, String tableName, final boolean swap) {
+    }
+
+    @Override
+    public void persistScores(TLongObjectHashMap<RecordOfSourceData> scores) {
+    }
+
+    @Override
+    public void deleteMergeRow(String table, Long input_record_id) {
+    }
+
+    @Override
+    public void createIndicesIfNecessary() {
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.normalization;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xc.mst.benchmark.BenchmarkConfiguration;
+import xc.mst.benchmark.BenchmarkFixtures;
+import xc.mst.bo.record.OutputRecord;
+import xc.mst.bo.record.Record;
+
+/**
+ * NormalizationService.process for new records, with the steps enabled in the service's
+ * default service.xccfg.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NormalizationServiceBenchmark {
+
+    public static final String SERVICE_NAME = "MARCNormalization";
+
+    protected List<String> records = null;
+    protected NormalizationService service = null;
+    protected int next = 0;
+
+    @Setup(Level.Trial)
+    public void setupRecords() {
+        records = BenchmarkFixtures.getMarcRecords(SERVICE_NAME, "mock_harvest_input");
+    }
+
+    // a new service each iteration, so that the messages it collects for the (never run) commit don't pile up
+    @Setup(Level.Iteration)
+    public void setupService() {
+        BenchmarkConfiguration config = BenchmarkConfiguration.getBenchmarkConfiguration();
+        config.useServiceInstall(SERVICE_NAME);
+
+        service = new NormalizationService();
+        config.wire(service, SERVICE_NAME);
+        service.init();
+        // the shipped service.xccfg deliberately fails validation until an organization code is filled in
+        service.loadConfiguration(service.getUtil().slurp("service.xccfg", getClass().getClassLoader())
+                .replace("CHANGE_ME", "NRU"));
+        service.setup();
+    }
+
+    @Benchmark
+    public List<OutputRecord> process() {
+        // the service switches its input over to a jdom tree, so each op needs a fresh record
+        Record r = new Record();
+        r.setMode(Record.STRING_MODE);
+        r.setId(next + 1);
+        r.setOaiXml(records.get(next));
+        next = (next + 1) % records.size();
+        return service.process(r);
+    }
+}
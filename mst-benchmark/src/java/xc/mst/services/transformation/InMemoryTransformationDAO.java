@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.transformation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import xc.mst.bo.record.Marc001_003Holder;
+import xc.mst.services.transformation.dao.TransformationDAO;
+
+/**
+ * Keeps the bib/holding linkage the transformation service tracks in plain maps instead of
+ * the service's tables.
+ */
+public class InMemoryTransformationDAO extends TransformationDAO {
+
+    protected Map<Marc001_003Holder, List<Long>> bibsProcessed = new HashMap<Marc001_003Holder, List<Long>>();
+    protected Map<Marc001_003Holder, List<Long>> holdingsProcessed = new HashMap<Marc001_003Holder, List<Long>>();
+    protected Map<Marc001_003Holder, List<Long>> bibsYet2Arrive = new HashMap<Marc001_003Holder, List<Long>>();
+    // holding -> bibs it references
+    protected Map<Marc001_003Holder, List<String>> bibsForHoldings = new HashMap<Marc001_003Holder, List<String>>();
+
+    public void clear() {
+        bibsProcessed.clear();
+        holdingsProcessed.clear();
+        bibsYet2Arrive.clear();
+        bibsForHoldings.clear();
+    }
+
+    @Override
+    public void removeRecordId4BibProcessed(Long l) {
+        removeValue(bibsProcessed, l);
+    }
+
+    @Override
+    public List<Marc001_003Holder> getHoldingMarcId4RecordIdProcessed(long l) {
+        List<Marc001_003Holder> holdings = new ArrayList<Marc001_003Holder>();
+        for (Map.Entry<Marc001_003Holder, List<Long>> me : holdingsProcessed.entrySet()) {
+            if (me.getValue().contains(l)) {
+                holdings.add(me.getKey());
+            }
+        }
+        return holdings;
+    }
+
+    @Override
+    public List<String> getBibsForHoldings(Marc001_003Holder holding) {
+        List<String> bibs = bibsForHoldings.get(holding);
+        return bibs == null ? new ArrayList<String>() : new ArrayList<String>(bibs);
+    }
+
+    @Override
+    public List<String> getHoldingsForBib(Marc001_003Holder bib) {
+        List<String> holdings = new ArrayList<String>();
+        for (Map.Entry<Marc001_003Holder, List<String>> me : bibsForHoldings.entrySet()) {
+            if (me.getKey().get003().equals(bib.get003()) && me.getValue().contains(bib.get001())) {
+                holdings.add(me.getKey().get001());
+            }
+        }
+        return holdings;
+    }
+
+    @Override
+    public void addBibforHolding(String org_code, String holding_id, String bib_id) {
+        Marc001_003Holder holding = new Marc001_003Holder(holding_id, org_code);
+        List<String> bibs = bibsForHoldings.get(holding);
+        if (bibs == null) {
+            bibs = new ArrayList<String>();
+            bibsForHoldings.put(holding, bibs);
+        }
+        bibs.add(bib_id);
+    }
+
+    @Override
+    public void removeBibsForHoldings(String org_code, String holding_id) {
+        bibsForHoldings.remove(new Marc001_003Holder(holding_id, org_code));
+    }
+
+    @Override
+    public void removeBibForHolding(String org_code, String holding_id, String bib_id) {
+        List<String> bibs = bibsForHoldings.get(new Marc001_003Holder(holding_id, org_code));
+        if (bibs != null) {
+            bibs.remove(bib_id);
+        }
+    }
+
+    @Override
+    public List<Long> getRecordId4BibProcessed(Marc001_003Holder bib) {
+        return get(bibsProcessed, bib);
+    }
+
+    @Override
+    public void addRecordId4BibProcessed(Marc001_003Holder bib, long record_id) {
+        add(bibsProcessed, bib, record_id);
+    }
+
+    @Override
+    public void addRecordId4HoldingProcessed(Marc001_003Holder hold, long record_id) {
+        add(holdingsProcessed, hold, record_id);
+    }
+
+    @Override
+    public void removeRecordId4HoldingProcessed(long record_id) {
+        removeValue(holdingsProcessed, record_id);
+    }
+
+    @Override
+    public void addManifestationId4BibYet2Arrive(Marc001_003Holder bib, long record_id) {
+        add(bibsYet2Arrive, bib, record_id);
+    }
+
+    @Override
+    public List<Long> getManifestationId4BibYet2Arrive(Marc001_003Holder bib) {
+        return get(bibsYet2Arrive, bib);
+    }
+
+    @Override
+    public void removeManifestationId4BibYet2Arrive(Marc001_003Holder bib, long record_id) {
+        List<Long> ids = bibsYet2Arrive.get(bib);
+        if (ids != null) {
+            ids.remove(Long.valueOf(record_id));
+            if (ids.isEmpty()) {
+                bibsYet2Arrive.remove(bib);
+            }
+        }
+    }
+
+    // callers add to the list they get back, so hand out a copy like a query would
+    protected List<Long> get(Map<Marc001_003Holder, List<Long>> map, Marc001_003Holder key) {
+        List<Long> ids = map.get(key);
+        return ids == null ? new ArrayList<Long>() : new ArrayList<Long>(ids);
+    }
+
+    protected void add(Map<Marc001_003Holder, List<Long>> map, Marc001_003Holder key, long id) {
+        List<Long> ids = map.get(key);
+        if (ids == null) {
+            ids = new ArrayList<Long>(1);
+            map.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    protected void removeValue(Map<Marc001_003Holder, List<Long>> map, long id) {
+        Iterator<List<Long>> it = map.values().iterator();
+        while (it.hasNext()) {
+            List<Long> ids = it.next();
+            ids.remove(Long.valueOf(id));
+            if (ids.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.transformation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xc.mst.benchmark.BenchmarkConfiguration;
+import xc.mst.benchmark.BenchmarkFixtures;
+import xc.mst.benchmark.stub.StubRepository;
+import xc.mst.bo.record.OutputRecord;
+import xc.mst.bo.record.Record;
+import xc.mst.services.impl.service.transformation.XCRecordService;
+
+/**
+ * TransformationService.process for new bibs and holdings: marcxml in, xc frbr records out.
+ * The bib/holding linkage is kept in memory (see InMemoryTransformationDAO) and is cleared
+ * after each pass over the input, so that every pass sees the records as new.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransformationServiceBenchmark {
+
+    public static final String SERVICE_NAME = "MARCToXCTransformation";
+
+    protected List<String> records = null;
+    protected TransformationService service = null;
+    protected InMemoryTransformationDAO transformationDAO = null;
+    protected int next = 0;
+
+    @Setup(Level.Trial)
+    public void setupRecords() {
+        records = BenchmarkFixtures.getMarcRecords(SERVICE_NAME, "mock_harvest_input");
+    }
+
+    // a new service each iteration, so that the messages it collects for the (never run) commit don't pile up
+    @Setup(Level.Iteration)
+    public void setupService() {
+        BenchmarkConfiguration config = BenchmarkConfiguration.getBenchmarkConfiguration();
+        config.useServiceInstall(SERVICE_NAME);
+
+        service = new TransformationService();
+        config.wire(service, SERVICE_NAME);
+
+        XCRecordService xcRecordService = new XCRecordService();
+        xcRecordService.setConfig(config);
+        xcRecordService.setRepositoryDAO(config.getRepositoryDAO());
+        service.setXCRecordService(xcRecordService);
+
+        transformationDAO = new InMemoryTransformationDAO();
+        service.setTransformationDAO(transformationDAO);
+        service.setRepository(StubRepository.newInstance(SERVICE_NAME));
+        service.init();
+        next = 0;
+    }
+
+    @Benchmark
+    public List<OutputRecord> process() {
+        if (next == 0) {
+            transformationDAO.clear();
+        }
+        Record r = new Record();
+        r.setMode(Record.STRING_MODE);
+        r.setId(next + 1);
+        r.setOaiXml(records.get(next));
+        next = (next + 1) % records.size();
+        return service.process(r);
+    }
+}
@@ -283,6 +283,20 @@ public class RecordCounts {
         this.counts = new HashMap<String, Map<String, AtomicInteger>>();
     }
 
+    /**
+     * @return a copy of these counts, which doesn't change when they do
+     */
+    public RecordCounts copy() {
+        RecordCounts copy = new RecordCounts(harvestStartDate, incomingOutgoing);
+        for (Map.Entry<String, Map<String, AtomicInteger>> me : counts.entrySet()) {
+            Map<String, AtomicInteger> counts4type = copy.getCountsByType(me.getKey());
+            for (Map.Entry<String, AtomicInteger> me2 : me.getValue().entrySet()) {
+                counts4type.put(me2.getKey(), new AtomicInteger(me2.getValue().get()));
+            }
+        }
+        return copy;
+    }
+
     public String toString(String repoName) {
         StringBuilder sb = new StringBuilder();
 
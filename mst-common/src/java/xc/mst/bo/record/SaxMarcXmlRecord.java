@@ -14,6 +14,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import xc.mst.bo.record.marc.CompactMarcRecord;
 import xc.mst.bo.record.marc.Field;
 import xc.mst.bo.record.marc.MarcRecord;
 import xc.mst.bo.record.marc.Subfield;
@@ -47,6 +48,11 @@ public class SaxMarcXmlRecord implements ContentHandler {
     protected StringBuilder sb = new StringBuilder();
 
     protected MarcRecord marcRecord = new MarcRecord();
+
+    // if the record was parsed compact, its fields go to compactBuilder as they're parsed, and once
+    // the document ends they're all in compactRecord (marcRecord is then dropped)
+    protected CompactMarcRecord.Builder compactBuilder = null;
+    protected CompactMarcRecord compactRecord = null;
     
     // should we only process 9XX fields that come from this source (9XX$1 value)?
     // if null, we only process 9XX fields with a $5 matching the marc record's orgCode (003)
@@ -61,11 +67,34 @@ public class SaxMarcXmlRecord implements ContentHandler {
     }
 
     public String getLeader() {
+        if (compactRecord != null) {
+            return compactRecord.getLeader();
+        }
         return marcRecord.getLeader();
     }
 
     public SaxMarcXmlRecord(String marcXml, String sourceOfRecords) {
+        this(marcXml, sourceOfRecords, false);
+    }
+
+    /**
+     * @param compact
+     *            keep the record as a CompactMarcRecord, which is much smaller than the Field and
+     *            Subfield objects, but makes new ones each time getDataFields is called
+     */
+    public SaxMarcXmlRecord(String marcXml, String sourceOfRecords, boolean compact) {
+        this(sourceOfRecords, compact);
+        parse(marcXml);
+    }
+
+    protected SaxMarcXmlRecord(String sourceOfRecords, boolean compact) {
     	this.sourceOfRecords = sourceOfRecords;
+        if (compact) {
+            compactBuilder = new CompactMarcRecord.Builder();
+        }
+    }
+
+    protected void parse(String marcXml) {
         try {
             TimingLogger.start("sax");
             xmlReader.setContentHandler(this);
@@ -73,6 +102,10 @@ public class SaxMarcXmlRecord implements ContentHandler {
         } catch (Throwable t) {
             Util.getUtil().throwIt(t);
         } finally {
+            // a record that didn't parse to the end keeps the fields it got to, as a MarcRecord does
+            if (compactBuilder != null) {
+                buildCompactRecord();
+            }
             TimingLogger.stop("sax");
         }
     }
@@ -88,6 +121,27 @@ public class SaxMarcXmlRecord implements ContentHandler {
 
     public void endDocument() throws SAXException {
         LOG.debug(marcRecord.toString());
+        if (compactBuilder != null) {
+            buildCompactRecord();
+        }
+    }
+
+    protected void buildCompactRecord() {
+        // MarcRecord lists a control field from its start tag, so one that was cut off is kept without contents
+        if (currentField != null && currentSubfield == null && inTextValueField) {
+            compactBuilder.addControlField(currentField.getTag(), null);
+        }
+        compactRecord = compactBuilder.build(marcRecord.getLeader(), marcRecord.getOrgCode());
+        compactBuilder = null;
+        marcRecord = null;
+        sb = null;
+    }
+
+    /**
+     * @return the packed record, or null if it wasn't parsed compact
+     */
+    public CompactMarcRecord getCompactRecord() {
+        return compactRecord;
     }
 
     @SuppressWarnings("unchecked")
@@ -103,6 +157,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
             if (currentField.getTag() == 3) {
                 marcRecord.setOrgCode(currentField.getContents());
             }
+            if (compactBuilder != null) {
+                compactBuilder.addControlField(currentField.getTag(), currentField.getContents());
+            }
             currentField = null;
         } else if (DATA_FIELD.equals(localName)) {
             if (currentField.getTag() == 35 && marcRecord.getOrgCode() == null) {
@@ -135,7 +192,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
                     }
                 }
             }
-            if (!orgCodeFail) {
+            if (!orgCodeFail && compactBuilder != null) {
+                compactBuilder.addDataField(currentField);
+            } else if (!orgCodeFail) {
                 List dataFields = (List) marcRecord.getDataFields().get(currentField.getTag());
                 if (dataFields == null) {
                     dataFields = new ArrayList();
@@ -193,6 +252,10 @@ public class SaxMarcXmlRecord implements ContentHandler {
                 currentField = new Field();
                 String tag = atts.getValue("tag");
                 currentField.setTag(Integer.parseInt(tag));
+                inTextValueField = true;
+                if (compactBuilder != null) {
+                    return;
+                }
 
                 List controlFields = (List) marcRecord.getControlFields().get(currentField.getTag());
                 if (controlFields == null) {
@@ -202,7 +265,6 @@ public class SaxMarcXmlRecord implements ContentHandler {
                 controlFields.add(currentField);
 
                 marcRecord.getControlFields().put(currentField.getTag(), controlFields);
-                inTextValueField = true;
             } else if (DATA_FIELD.equals(localName)) {
                 currentField = new Field();
                 String tag = atts.getValue("tag");
@@ -239,6 +301,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
 
     @SuppressWarnings("unchecked")
     public String getControlField(int target) {
+        if (compactRecord != null) {
+            return compactRecord.getControlField(target);
+        }
         List l = (List) marcRecord.getControlFields().get(target);
         if (l != null && l.size() > 0) {
             return ((Field) l.get(0)).getContents();
@@ -277,6 +342,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
     
     @SuppressWarnings("unchecked")
     public List<Field> getDataFields(int targetField) {
+        if (compactRecord != null) {
+            return compactRecord.getFields(targetField);
+        }
         List<Field> fields = (List<Field>) marcRecord.getDataFields().get(targetField);
         if (fields != null)
             return fields;
@@ -286,6 +354,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
 
     @SuppressWarnings("unchecked")
     public List<Field> get945() {
+        if (compactRecord != null) {
+            return compactRecord.getFields(945);
+        }
         List<Field> fields = (List<Field>) marcRecord.getDataFields().get(945);
         if (fields != null)
             return fields;
@@ -295,6 +366,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
 
     @SuppressWarnings("unchecked")
     public List<String> getSubfield(int targetField, char targetSubfield) {
+        if (compactRecord != null) {
+            return compactRecord.getSubfield(targetField, targetSubfield);
+        }
         List<String> ret = new ArrayList<String>();
         List<Field> dataFields = (List) marcRecord.getDataFields().get(targetField);
         // boolean foundCorrectOrgCode = false;
@@ -345,6 +419,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
 
     @SuppressWarnings("unchecked")
     public List<String> get004s() {
+        if (compactRecord != null) {
+            return compactRecord.getControlFields(4);
+        }
         List<String> the004s = new ArrayList<String>();
         if (marcRecord.getControlFields() != null) {
             List<Field> fields = (List<Field>) marcRecord.getControlFields().get(4);
@@ -364,8 +441,8 @@ public class SaxMarcXmlRecord implements ContentHandler {
         List<String> the014s = new ArrayList<String>();
         //blacklist (ignore) if 014 codeToCheck (i.e. subfield $b) does not match field003 or field003 is null
 
-        if (marcRecord.getDataFields() != null) {
-            List<Field> fields = (List<Field>) marcRecord.getDataFields().get(14);
+        if (compactRecord != null || marcRecord.getDataFields() != null) {
+            List<Field> fields = compactRecord != null ? compactRecord.getFields(14) : (List<Field>) marcRecord.getDataFields().get(14);
             if (fields != null) {
                 // note, 014 is an (R) field (repeatable); subfield $a, $b with 014 are not (NR)
                 for (Field f : fields) {
@@ -411,6 +488,9 @@ public class SaxMarcXmlRecord implements ContentHandler {
     }
 
     public String getOrgCode() {
+        if (compactRecord != null) {
+            return compactRecord.getOrgCode();
+        }
         return marcRecord.getOrgCode();
     }
 }
\ No newline at end of file
@@ -0,0 +1,363 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.bo.record.marc;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable MarcRecord packed into a single byte[], for keeping many parsed records in memory.
+ * <pre>
+ *   int              the number of fields (n)
+ *   n * (short, int) each field's tag and offset, ordered by tag (fields with the same tag keep their order)
+ *   string           leader
+ *   string           org code
+ *   fields           a control field is 0 and its contents; a data field is 1, ind1 and ind2 (2 bytes each),
+ *                    the number of subfields, and each subfield's code (2 bytes) and contents
+ * </pre>
+ * Numbers without a stated size are varints, and a string is a varint of its UTF-8 length plus one
+ * (0 being null) followed by the bytes.
+ *
+ * Field and Subfield objects are only made when asked for with getFields.
+ *
+ * The accessors answer as SaxMarcXmlRecord does over a MarcRecord.  MarcRecord files a tag's
+ * control fields under the same list in both its maps, so once a tag has a control field, the data
+ * fields parsed before it are gone and the ones after it are listed with the control fields.  The
+ * Builder drops those earlier data fields, and getControlFields counts the later ones.
+ */
+public class CompactMarcRecord {
+
+    protected static final int TABLE_ENTRY_LENGTH = 6;
+    protected static final byte CONTROL_FIELD = 0;
+    protected static final byte DATA_FIELD = 1;
+
+    protected byte[] bytes;
+
+    protected CompactMarcRecord(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public String getLeader() {
+        return readString(new int[] { getHeaderOffset() });
+    }
+
+    public String getOrgCode() {
+        int[] pos = new int[] { getHeaderOffset() };
+        skipString(pos);
+        return readString(pos);
+    }
+
+    /**
+     * @return the contents of the first control field with this tag, or null if there isn't one
+     */
+    public String getControlField(int tag) {
+        for (int i = firstIndexOf(tag); i < getFieldCount() && getTag(i) == tag; i++) {
+            int[] pos = new int[] { getOffset(i) };
+            if (bytes[pos[0]++] == CONTROL_FIELD) {
+                return readString(pos);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the contents of the control fields with this tag, and a null for each data field
+     *         listed with them
+     */
+    public List<String> getControlFields(int tag) {
+        List<String> contents = new ArrayList<String>();
+        int i = firstIndexOf(tag);
+        // the Builder puts a control field first if the tag has one
+        if (i == getFieldCount() || getTag(i) != tag || bytes[getOffset(i)] != CONTROL_FIELD) {
+            return contents;
+        }
+        for (; i < getFieldCount() && getTag(i) == tag; i++) {
+            int[] pos = new int[] { getOffset(i) };
+            if (bytes[pos[0]++] == CONTROL_FIELD) {
+                contents.add(readString(pos));
+            } else {
+                contents.add(null);
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * @return new Field objects for the control and data fields with this tag
+     */
+    public List<Field> getFields(int tag) {
+        List<Field> fields = new ArrayList<Field>();
+        for (int i = firstIndexOf(tag); i < getFieldCount() && getTag(i) == tag; i++) {
+            int[] pos = new int[] { getOffset(i) };
+            Field field = new Field();
+            field.setTag(tag);
+            if (bytes[pos[0]++] == CONTROL_FIELD) {
+                field.setContents(readString(pos));
+            } else {
+                field.setInd1(readChar(pos));
+                field.setInd2(readChar(pos));
+                int subfieldCount = readVarInt(pos);
+                for (int j = 0; j < subfieldCount; j++) {
+                    Subfield subfield = new Subfield();
+                    subfield.setCode(readChar(pos));
+                    subfield.setContents(readString(pos));
+                    field.getSubfields().add(subfield);
+                }
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * @return the contents of each subfield with this code in the data fields with this tag
+     */
+    public List<String> getSubfield(int tag, char code) {
+        List<String> contents = new ArrayList<String>();
+        for (int i = firstIndexOf(tag); i < getFieldCount() && getTag(i) == tag; i++) {
+            int[] pos = new int[] { getOffset(i) };
+            if (bytes[pos[0]++] == CONTROL_FIELD) {
+                continue;
+            }
+            pos[0] += 4;
+            int subfieldCount = readVarInt(pos);
+            for (int j = 0; j < subfieldCount; j++) {
+                if (readChar(pos) == code) {
+                    contents.add(readString(pos));
+                } else {
+                    skipString(pos);
+                }
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * @return the size of the packed record in bytes
+     */
+    public int getLength() {
+        return bytes.length;
+    }
+
+    protected int getFieldCount() {
+        return readInt(0);
+    }
+
+    protected int getTag(int i) {
+        return (short) (((bytes[4 + i * TABLE_ENTRY_LENGTH] & 0xff) << 8) | (bytes[5 + i * TABLE_ENTRY_LENGTH] & 0xff));
+    }
+
+    protected int getOffset(int i) {
+        return readInt(6 + i * TABLE_ENTRY_LENGTH);
+    }
+
+    protected int getHeaderOffset() {
+        return 4 + getFieldCount() * TABLE_ENTRY_LENGTH;
+    }
+
+    // the index of the first field with this tag, or of the first with a greater tag if there isn't one
+    protected int firstIndexOf(int tag) {
+        int low = 0;
+        int high = getFieldCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTag(mid) < tag) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    protected int readInt(int off) {
+        return ((bytes[off] & 0xff) << 24) | ((bytes[off + 1] & 0xff) << 16) | ((bytes[off + 2] & 0xff) << 8) | (bytes[off + 3] & 0xff);
+    }
+
+    protected char readChar(int[] pos) {
+        char c = (char) (((bytes[pos[0]] & 0xff) << 8) | (bytes[pos[0] + 1] & 0xff));
+        pos[0] += 2;
+        return c;
+    }
+
+    protected int readVarInt(int[] pos) {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos[0]++];
+            v |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    protected String readString(int[] pos) {
+        int len = readVarInt(pos) - 1;
+        if (len == -1) {
+            return null;
+        }
+        try {
+            String s = new String(bytes, pos[0], len, "UTF-8");
+            pos[0] += len;
+            return s;
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    protected void skipString(int[] pos) {
+        int len = readVarInt(pos) - 1;
+        if (len > 0) {
+            pos[0] += len;
+        }
+    }
+
+    /**
+     * Collects the fields of a record as they're parsed.
+     */
+    public static class Builder {
+
+        // each field's tag and its bytes, in the order they were added
+        protected List<Object[]> fields = new ArrayList<Object[]>();
+        protected Buffer buffer = new Buffer();
+
+        public void addControlField(int tag, String contents) {
+            buffer.reset();
+            buffer.write(CONTROL_FIELD);
+            buffer.writeString(contents);
+            fields.add(new Object[] { tag, buffer.toByteArray() });
+        }
+
+        public void addDataField(Field field) {
+            buffer.reset();
+            buffer.write(DATA_FIELD);
+            buffer.writeChar(field.getInd1());
+            buffer.writeChar(field.getInd2());
+            List<Subfield> subfields = field.getSubfields();
+            buffer.writeVarInt(subfields.size());
+            for (Subfield subfield : subfields) {
+                buffer.writeChar(subfield.getCode());
+                buffer.writeString(subfield.getContents());
+            }
+            fields.add(new Object[] { field.getTag(), buffer.toByteArray() });
+        }
+
+        public CompactMarcRecord build(String leader, String orgCode) {
+            Collections.sort(fields, new Comparator<Object[]>() {
+                public int compare(Object[] f1, Object[] f2) {
+                    return ((Integer) f1[0]).compareTo((Integer) f2[0]);
+                }
+            });
+            // a tag's data fields before its first control field, which MarcRecord loses
+            List<Object[]> kept = new ArrayList<Object[]>(fields.size());
+            for (int i = 0; i < fields.size();) {
+                int tag = (Integer) fields.get(i)[0];
+                int end = i;
+                int firstControl = -1;
+                for (; end < fields.size() && (Integer) fields.get(end)[0] == tag; end++) {
+                    if (firstControl == -1 && ((byte[]) fields.get(end)[1])[0] == CONTROL_FIELD) {
+                        firstControl = end;
+                    }
+                }
+                kept.addAll(fields.subList(firstControl == -1 ? i : firstControl, end));
+                i = end;
+            }
+            fields = kept;
+            buffer.reset();
+            buffer.writeString(leader);
+            buffer.writeString(orgCode);
+            byte[] header = buffer.toByteArray();
+
+            int length = 4 + fields.size() * TABLE_ENTRY_LENGTH + header.length;
+            for (Object[] field : fields) {
+                length += ((byte[]) field[1]).length;
+            }
+            byte[] bytes = new byte[length];
+            writeInt(bytes, 0, fields.size());
+            int off = 4 + fields.size() * TABLE_ENTRY_LENGTH;
+            System.arraycopy(header, 0, bytes, off, header.length);
+            off += header.length;
+            for (int i = 0; i < fields.size(); i++) {
+                int tag = (Integer) fields.get(i)[0];
+                byte[] field = (byte[]) fields.get(i)[1];
+                bytes[4 + i * TABLE_ENTRY_LENGTH] = (byte) (tag >>> 8);
+                bytes[5 + i * TABLE_ENTRY_LENGTH] = (byte) tag;
+                writeInt(bytes, 6 + i * TABLE_ENTRY_LENGTH, off);
+                System.arraycopy(field, 0, bytes, off, field.length);
+                off += field.length;
+            }
+            return new CompactMarcRecord(bytes);
+        }
+
+        protected static void writeInt(byte[] b, int off, int v) {
+            b[off] = (byte) (v >>> 24);
+            b[off + 1] = (byte) (v >>> 16);
+            b[off + 2] = (byte) (v >>> 8);
+            b[off + 3] = (byte) v;
+        }
+    }
+
+    protected static class Buffer {
+        protected byte[] buf = new byte[256];
+        protected int count = 0;
+
+        public void reset() {
+            count = 0;
+        }
+
+        public void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        public void writeChar(char c) {
+            write(c >>> 8);
+            write(c);
+        }
+
+        public void writeVarInt(int v) {
+            while ((v & ~0x7f) != 0) {
+                write((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        public void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            try {
+                byte[] b = s.getBytes("UTF-8");
+                writeVarInt(b.length + 1);
+                ensureCapacity(b.length);
+                System.arraycopy(b, 0, buf, count, b.length);
+                count += b.length;
+            } catch (UnsupportedEncodingException uee) {
+                throw new RuntimeException(uee);
+            }
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        protected void ensureCapacity(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.cache;
+
+import gnu.trove.TLongLongHashMap;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Maps a harvest repository's (non-redundant) oai ids to record ids, in much less heap than a
+ * map of Strings.
+ *
+ * Ids that are plain numbers are kept in a TLongLongHashMap. Every other id is kept as its
+ * UTF-8 bytes, followed by its record id, in direct (off-heap) ByteBuffer arenas, and found
+ * through an open addressing table of each entry's hash and arena address. A String isn't kept
+ * for any id.
+ *
+ * The index uses at most maxBytes (roughly: the arenas, the table and the numeric map). Once an
+ * id doesn't fit, it stops taking new ids and {@link #isComplete()} is false. A miss then
+ * doesn't mean the id is new, and the caller has to ask the database (HarvestManager does).
+ *
+ * Not thread safe.
+ */
+public class OaiIdIndex {
+
+    private static final Logger LOG = Logger.getLogger(OaiIdIndex.class);
+
+    // an entry is the key's length (2 bytes), its bytes and the value (8 bytes); entries don't cross arenas
+    protected static final int ARENA_SIZE = 1 << 24;
+    protected static final int MAX_KEY_LENGTH = 0xffff;
+    protected static final float MAX_LOAD = 0.6f;
+    // a TLongLongHashMap slot: key, value and state, at its usual load of one half
+    protected static final int LONG_ENTRY_BYTES = 2 * 17;
+
+    protected long maxBytes = 0;
+    protected boolean complete = true;
+
+    protected TLongLongHashMap longKeyedMap = new TLongLongHashMap();
+
+    protected List<ByteBuffer> arenas = new ArrayList<ByteBuffer>();
+    protected int arenaPos = ARENA_SIZE;
+    // each slot's entry address plus one (0 for an empty slot), and the hash of its key
+    protected long[] slots = new long[16];
+    protected int[] hashes = new int[16];
+    protected int stringCount = 0;
+
+    public OaiIdIndex(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return false if there wasn't room for the id
+     */
+    public boolean put(String k, long value) {
+        long kl = parseId(k);
+        if (kl >= 0) {
+            if (!longKeyedMap.containsKey(kl) && !fits(LONG_ENTRY_BYTES)) {
+                setIncomplete();
+                return false;
+            }
+            longKeyedMap.put(kl, value);
+            return true;
+        }
+        byte[] key = getBytes(k);
+        int hash = hash(key);
+        int i = find(key, hash);
+        if (i >= 0) {
+            long addr = slots[i] - 1;
+            arenas.get((int) (addr / ARENA_SIZE)).putLong((int) (addr % ARENA_SIZE) + 2 + key.length, value);
+            return true;
+        }
+        int entryLength = 2 + key.length + 8;
+        if (key.length > MAX_KEY_LENGTH || !reserve(entryLength) || !ensureTableCapacity(stringCount + 1)) {
+            setIncomplete();
+            return false;
+        }
+        ByteBuffer arena = arenas.get(arenas.size() - 1);
+        long addr = (long) (arenas.size() - 1) * ARENA_SIZE + arenaPos;
+        arena.putShort(arenaPos, (short) key.length);
+        for (int j = 0; j < key.length; j++) {
+            arena.put(arenaPos + 2 + j, key[j]);
+        }
+        arena.putLong(arenaPos + 2 + key.length, value);
+        arenaPos += entryLength;
+
+        // the table may have grown
+        i = ~find(key, hash);
+        slots[i] = addr + 1;
+        hashes[i] = hash;
+        stringCount++;
+        return true;
+    }
+
+    /**
+     * @return the record id, or null if the id isn't in the index
+     */
+    public Long getLong(String k) {
+        long kl = parseId(k);
+        if (kl >= 0) {
+            if (longKeyedMap.containsKey(kl)) {
+                return longKeyedMap.get(kl);
+            }
+            return null;
+        }
+        byte[] key = getBytes(k);
+        int i = find(key, hash(key));
+        if (i < 0) {
+            return null;
+        }
+        long addr = slots[i] - 1;
+        return arenas.get((int) (addr / ARENA_SIZE)).getLong((int) (addr % ARENA_SIZE) + 2 + key.length);
+    }
+
+    /**
+     * Sizes the numeric map for this many ids, as far as maxBytes allows. The table of other ids
+     * grows as they're put, since most repositories have few or none of them.
+     */
+    public void ensureCapacity(int desiredCapacity) {
+        LOG.debug("desiredCapacity: " + desiredCapacity);
+        if (fits((long) desiredCapacity * LONG_ENTRY_BYTES)) {
+            longKeyedMap.ensureCapacity(desiredCapacity);
+        }
+    }
+
+    /**
+     * @return false if an id has been turned away for lack of room since the index was last cleared
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int size() {
+        return longKeyedMap.size() + stringCount;
+    }
+
+    /**
+     * @return roughly how much memory the index holds, on and off the heap
+     */
+    public long getMemoryUsage() {
+        return (long) arenas.size() * ARENA_SIZE + slots.length * 12L + (long) longKeyedMap.size() * LONG_ENTRY_BYTES;
+    }
+
+    /**
+     * Empties the index and lets its arenas go.
+     */
+    public void clear() {
+        longKeyedMap.clear();
+        arenas.clear();
+        arenaPos = ARENA_SIZE;
+        slots = new long[16];
+        hashes = new int[16];
+        stringCount = 0;
+        complete = true;
+    }
+
+    // the id as a number, if it's written as a plain one (no sign, no leading zero), or -1
+    protected static long parseId(String k) {
+        int len = k.length();
+        if (len == 0 || len > 18 || (len > 1 && k.charAt(0) == '0')) {
+            return -1;
+        }
+        long l = 0;
+        for (int i = 0; i < len; i++) {
+            char c = k.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            l = l * 10 + (c - '0');
+        }
+        return l;
+    }
+
+    protected static byte[] getBytes(String k) {
+        try {
+            return k.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    // FNV-1a
+    protected static int hash(byte[] key) {
+        int h = 0x811c9dc5;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // the key's slot, or (bitwise not) the empty slot where it would go
+    protected int find(byte[] key, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            if (hashes[i] == hash && keyEquals(slots[i] - 1, key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    protected boolean keyEquals(long addr, byte[] key) {
+        ByteBuffer arena = arenas.get((int) (addr / ARENA_SIZE));
+        int off = (int) (addr % ARENA_SIZE);
+        if ((arena.getShort(off) & 0xffff) != key.length) {
+            return false;
+        }
+        for (int j = 0; j < key.length; j++) {
+            if (arena.get(off + 2 + j) != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // makes room in the current arena (or a new one) for an entry
+    protected boolean reserve(int entryLength) {
+        if (arenaPos + entryLength <= ARENA_SIZE) {
+            return true;
+        }
+        if (!fits(ARENA_SIZE)) {
+            return false;
+        }
+        try {
+            arenas.add(allocateArena());
+        } catch (OutOfMemoryError oome) {
+            // -XX:MaxDirectMemorySize is smaller than maxBytes; the db can still answer
+            LOG.warn("couldn't allocate another oai id arena", oome);
+            return false;
+        }
+        arenaPos = 0;
+        return true;
+    }
+
+    protected ByteBuffer allocateArena() {
+        return ByteBuffer.allocateDirect(ARENA_SIZE);
+    }
+
+    protected boolean ensureTableCapacity(int count) {
+        int capacity = slots.length;
+        while (count > capacity * MAX_LOAD) {
+            capacity *= 2;
+        }
+        if (capacity == slots.length) {
+            return true;
+        }
+        if (!fits((capacity - slots.length) * 12L)) {
+            return false;
+        }
+        long[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new long[capacity];
+        hashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != 0) {
+                int i = oldHashes[j] & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = oldSlots[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+        return true;
+    }
+
+    protected boolean fits(long moreBytes) {
+        return getMemoryUsage() + moreBytes <= maxBytes;
+    }
+
+    protected void setIncomplete() {
+        if (complete) {
+            LOG.info("oai id index is full at " + size() + " ids (" + getMemoryUsage() + " bytes); " +
+                    "ids beyond these will be looked up in the db");
+            complete = false;
+        }
+    }
+}
@@ -229,6 +229,16 @@ public class Constants {
      */
     public static final String CONFIG_OAI_REPO_MAX_RECORDS_LENGTH = "OaiRepoMaxRecordsLength";
 
+    /**
+     * Parameter for looking up the maximum number of harvests in progress the OAI repository remembers between pages
+     */
+    public static final String CONFIG_OAI_REPO_MAX_SESSIONS = "OaiRepoMaxSessions";
+
+    /**
+     * Parameter for looking up how long in seconds the OAI repository remembers a harvest in progress after serving a page of it
+     */
+    public static final String CONFIG_OAI_REPO_SESSION_TIMEOUT = "OaiRepoSessionTimeoutSeconds";
+
     /**
      * Parameter for looking up the threading model used for indexing SOLR
      */
@@ -9,6 +9,10 @@
 
 package xc.mst.dao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,8 +22,13 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.hibernate.SessionFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 
 import xc.mst.dao.harvest.HarvestDAO;
@@ -52,6 +61,8 @@ import xc.mst.dao.user.ServerDAO;
 import xc.mst.dao.user.UserDAO;
 import xc.mst.dao.user.UserGroupUtilDAO;
 import xc.mst.manager.record.RecordService;
+import xc.mst.repo.RecordStatsDAO;
+import xc.mst.repo.XmlDictionaryDAO;
 import xc.mst.utils.MSTConfiguration;
 import xc.mst.utils.Util;
 
@@ -87,6 +98,29 @@ public class BaseDAO {
         this.jdbcTemplate.execute(sql);
     }
 
+    /**
+     * Runs an insert on a connection from the pool.
+     * 
+     * @return the auto-increment id of the inserted row, or -1 if no row was inserted. (SELECT
+     *         LAST_INSERT_ID() can't be used for this, since it may not run on the same connection.)
+     */
+    protected long insertForId(final String sql, final Object... params) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        int rows = this.jdbcTemplate.update(new PreparedStatementCreator() {
+            public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+                PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                for (int i = 0; i < params.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, params[i]);
+                }
+                return ps;
+            }
+        }, keyHolder);
+        if (rows == 0 || keyHolder.getKey() == null) {
+            return -1;
+        }
+        return keyHolder.getKey().longValue();
+    }
+
     public void setConfig(MSTConfiguration config) {
         this.config = config;
     }
@@ -338,4 +372,12 @@ public class BaseDAO {
         return (MessageDAO) config.getBean("MessageDAO");
     }
 
+    public RecordStatsDAO getRecordStatsDAO() {
+        return (RecordStatsDAO) config.getBean("RecordStatsDAO");
+    }
+
+    public XmlDictionaryDAO getXmlDictionaryDAO() {
+        return (XmlDictionaryDAO) config.getBean("XmlDictionaryDAO");
+    }
+
 }
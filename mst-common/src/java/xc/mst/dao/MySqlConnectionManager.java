@@ -16,6 +16,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
@@ -25,6 +26,7 @@ import org.jconfig.ConfigurationManager;
 
 import xc.mst.constants.Constants;
 import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.TimingLogger;
 
 /**
  * Base class for all database data access objects in the MST. Contains methods for
@@ -67,6 +69,27 @@ public class MySqlConnectionManager {
      */
     private Set<PreparedStatement> closedPreparedStatements = new HashSet<PreparedStatement>();
 
+    /**
+     * The timer for statements run on the one shared Connection. DAOs that take their
+     * connections from the DataSource pool don't show up here, so it measures how much
+     * work is still serialized through this class.
+     *
+     * The contention on this Connection hasn't been measured against a live MySQL, either
+     * before or after the format, set, provider and job DAOs moved to the pool; this timer
+     * and SHARED_CONNECTION_WAIT_TIMER are what such a measurement would read.
+     */
+    public static final String SHARED_CONNECTION_TIMER = "db.sharedConnection";
+
+    /**
+     * The timer for the wait to use the shared Connection, which is apart from
+     * SHARED_CONNECTION_TIMER. The Connection only runs one statement at a time anyway;
+     * sharedConnectionLock is taken first so that the time spent queued behind other
+     * threads can be told from the time spent running the statement.
+     */
+    public static final String SHARED_CONNECTION_WAIT_TIMER = "db.sharedConnection.wait";
+
+    private final ReentrantLock sharedConnectionLock = new ReentrantLock();
+
     /**
      * Constructor for MySqlConnectionManager
      */
@@ -256,16 +279,24 @@ public class MySqlConnectionManager {
         if (!registeredPreparedStatements.contains(query))
             log.warn("Running a query that was not registered: " + query);
 
+        lockSharedConnection();
         try {
-            return query.executeQuery();
-        } catch (SQLException e) {
-            log.error("", e);
-            // Possibly the connection timed out. Hence try a reconnect to DB.
-            // If reconnect fails then don't re executed query
-            resetConnection();
-
-            // Propagate the connection reset so that DAO's will re-execute
-            throw new DBConnectionResetException();
+            TimingLogger.start(SHARED_CONNECTION_TIMER);
+            try {
+                return query.executeQuery();
+            } catch (SQLException e) {
+                log.error("", e);
+                // Possibly the connection timed out. Hence try a reconnect to DB.
+                // If reconnect fails then don't re executed query
+                resetConnection();
+
+                // Propagate the connection reset so that DAO's will re-execute
+                throw new DBConnectionResetException();
+            } finally {
+                TimingLogger.stop(SHARED_CONNECTION_TIMER);
+            }
+        } finally {
+            sharedConnectionLock.unlock();
         }
     }
 
@@ -286,16 +317,24 @@ public class MySqlConnectionManager {
         if (!registeredPreparedStatements.contains(query))
             log.warn("Running a query that was not registered: " + query);
 
+        lockSharedConnection();
         try {
-            return query.executeUpdate();
-        } catch (SQLException e) {
-            // Possibly the connection timed out. Hence try a reconnect to DB.
-            // If reconnect fails then don't re executed query
-            resetConnection();
-
-            // Propagate the connection reset so that DAO's will re-execute
-            log.error("", e);
-            throw new DBConnectionResetException();
+            TimingLogger.start(SHARED_CONNECTION_TIMER);
+            try {
+                return query.executeUpdate();
+            } catch (SQLException e) {
+                // Possibly the connection timed out. Hence try a reconnect to DB.
+                // If reconnect fails then don't re executed query
+                resetConnection();
+
+                // Propagate the connection reset so that DAO's will re-execute
+                log.error("", e);
+                throw new DBConnectionResetException();
+            } finally {
+                TimingLogger.stop(SHARED_CONNECTION_TIMER);
+            }
+        } finally {
+            sharedConnectionLock.unlock();
         }
     }
 
@@ -316,18 +355,32 @@ public class MySqlConnectionManager {
         if (!registeredPreparedStatements.contains(query))
             log.warn("Running a query that was not registered: " + query);
 
+        lockSharedConnection();
         try {
-            return query.execute();
-        } catch (SQLException e) {
-            // Possibly the connection timed out. Hence try a reconnect to DB.
-            // If reconnect fails then don't re executed query
-            resetConnection();
-
-            // Propagate the connection reset so that DAO's will re-execute
-            throw new DBConnectionResetException();
+            TimingLogger.start(SHARED_CONNECTION_TIMER);
+            try {
+                return query.execute();
+            } catch (SQLException e) {
+                // Possibly the connection timed out. Hence try a reconnect to DB.
+                // If reconnect fails then don't re executed query
+                resetConnection();
+
+                // Propagate the connection reset so that DAO's will re-execute
+                throw new DBConnectionResetException();
+            } finally {
+                TimingLogger.stop(SHARED_CONNECTION_TIMER);
+            }
+        } finally {
+            sharedConnectionLock.unlock();
         }
     }
 
+    private void lockSharedConnection() {
+        TimingLogger.start(SHARED_CONNECTION_WAIT_TIMER);
+        sharedConnectionLock.lock();
+        TimingLogger.stop(SHARED_CONNECTION_WAIT_TIMER);
+    }
+
     /**
      * Attempts to reset the connection to the database
      * 
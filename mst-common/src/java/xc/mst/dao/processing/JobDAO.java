@@ -181,6 +181,15 @@ public abstract class JobDAO extends BaseDAO {
      */
     public abstract Job getNextJobToExecute() throws DatabaseConfigException;
 
+    /**
+     * Get all the jobs in the queue, in the order they should be executed
+     * 
+     * @return the queued jobs
+     * @throws DatabaseConfigException
+     *             if unable to contact database
+     */
+    public abstract List<Job> getJobsToExecute() throws DatabaseConfigException;
+
     /**
      * Validates the fields on the passed Job Object.
      * 
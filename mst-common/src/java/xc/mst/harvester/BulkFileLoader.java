@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.harvester;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import xc.mst.bo.provider.Provider;
+import xc.mst.bo.record.Record;
+import xc.mst.manager.record.RecordService;
+
+/**
+ * Parses the files of a file harvest (saved ListRecords responses) on a pool of threads, for
+ * loading a large repository from disk.
+ *
+ * Each file is read with a StreamingListRecordsParser, so no JDOM Document is built. At most
+ * maxFilesInFlight files are parsed ahead of the caller, and pages come out of
+ * {@link #takePage()} in the order of the files, so the caller (HarvestManager) still assigns
+ * record ids in the same order a one-file-at-a-time harvest would.
+ */
+public class BulkFileLoader {
+
+    private static final Logger LOG = Logger.getLogger(BulkFileLoader.class);
+
+    protected RecordService recordService = null;
+    protected Provider provider = null;
+    protected LinkedList<File> files = null;
+    protected int maxFilesInFlight = 0;
+
+    protected ExecutorService parsers = null;
+    protected LinkedList<Future<HarvestPipeline.Page>> pages = new LinkedList<Future<HarvestPipeline.Page>>();
+    protected final Object headerLock = new Object();
+
+    /**
+     * @param files
+     *            the files to load, in order
+     */
+    public BulkFileLoader(RecordService recordService, Provider provider, List<File> files, int threads, int maxFilesInFlight) {
+        this.recordService = recordService;
+        this.provider = provider;
+        this.files = new LinkedList<File>(files);
+        threads = Math.max(1, threads);
+        this.maxFilesInFlight = Math.max(threads, maxFilesInFlight);
+
+        final String name = provider == null ? "" : "-" + provider.getName();
+        parsers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            protected AtomicInteger threadNum = new AtomicInteger(0);
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bulk-load" + name + "-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Blocks until the next file has been parsed.
+     *
+     * @return the file's page (its request is the file's name), or null once every file has been taken
+     */
+    public HarvestPipeline.Page takePage() throws InterruptedException {
+        while (pages.size() < maxFilesInFlight && !files.isEmpty()) {
+            final File file = files.removeFirst();
+            pages.add(parsers.submit(new Callable<HarvestPipeline.Page>() {
+                public HarvestPipeline.Page call() {
+                    return parse(file);
+                }
+            }));
+        }
+        if (pages.isEmpty()) {
+            return null;
+        }
+        try {
+            return pages.removeFirst().get();
+        } catch (ExecutionException ee) {
+            // parse catches everything, so this doesn't happen
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    /**
+     * Stops parsing and discards the pages that haven't been taken. Safe to call more than once.
+     */
+    public void shutdown() {
+        parsers.shutdownNow();
+        pages.clear();
+        files.clear();
+    }
+
+    protected HarvestPipeline.Page parse(File file) {
+        final HarvestPipeline.Page page = new HarvestPipeline.Page();
+        page.request = file.getName();
+        page.records = new ArrayList<Record>();
+        long start = System.currentTimeMillis();
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+            StreamingListRecordsParser parser = new StreamingListRecordsParser(recordService, provider,
+                    new StreamingListRecordsParser.RecordHandler() {
+                        public void handleRecord(Record r) {
+                            page.records.add(r);
+                        }
+                    }) {
+                // a set seen for the first time is inserted by parseHeader, which mustn't happen twice
+                protected void parseHeader(Record r, String identifier, String datestamp, List<String> setSpecs, String status) {
+                    synchronized (headerLock) {
+                        super.parseHeader(r, identifier, datestamp, setSpecs, status);
+                    }
+                }
+            };
+            parser.read(is);
+            page.errorCode = parser.getErrorCode();
+            page.resumptionToken = parser.getResumptionToken();
+            page.completeListSize = parser.getCompleteListSize();
+        } catch (Throwable t) {
+            LOG.error("couldn't parse " + file.getAbsolutePath(), t);
+            page.error = t;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (Throwable t) {
+                    LOG.debug("", t);
+                }
+            }
+        }
+        page.parseMillis = System.currentTimeMillis() - start;
+        return page;
+    }
+}
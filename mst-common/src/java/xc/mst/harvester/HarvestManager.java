@@ -18,7 +18,9 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -43,7 +45,7 @@ import xc.mst.bo.provider.Provider;
 import xc.mst.bo.provider.Set;
 import xc.mst.bo.record.Record;
 import xc.mst.bo.record.RecordCounts;
-import xc.mst.cache.DynKeyLongMap;
+import xc.mst.cache.OaiIdIndex;
 import xc.mst.constants.Constants;
 import xc.mst.constants.Status;
 import xc.mst.dao.DataException;
@@ -74,7 +76,12 @@ public class HarvestManager extends WorkerThread {
     }
     // Map<MostSigToken, ListOfAllOaoIdsThatHaveToken<EntireOaiId, recordId>>
     protected boolean cacheSetup = false;
-    protected DynKeyLongMap oaiIdCache = new DynKeyLongMap();
+    protected OaiIdIndex oaiIdCache = newOaiIdIndex();
+    // This run's ids that oaiIdCache had no room for.  They can't be left to the db, which doesn't
+    // see them until they're written, so an id seen twice before then would get two records.
+    protected Map<String, Long> overflowOaiIds = new HashMap<String, Long>();
+    // repo name -> the oai id index its last harvest set up, least recently used first (see setupCache)
+    protected static Map<String, OaiIdIndex> keptOaiIdIndexes = new LinkedHashMap<String, OaiIdIndex>(16, 0.75f, true);
     protected TLongByteHashMap previousStatuses = new TLongByteHashMap();
     
     protected static int LARGE_HARVEST_THRESHOLD_DEFAULT = 10000;
@@ -94,6 +101,20 @@ public class HarvestManager extends WorkerThread {
 
     protected long recordsProcessedThisRun = 0l;
     protected long records2ProcessThisRun = 0l;
+    // whether repo.planIndices has been told this run's size yet
+    protected boolean indicesPlanned = false;
+
+    // when harvester.pipeline.enabled, the fetch and parse stages run ahead of doSomeWork
+    protected boolean pipelined = false;
+    protected int pipelineMaxPagesInFlight = 2;
+    protected HarvestPipeline harvestPipeline = null;
+
+    // when harvester.streamingParser.enabled, ListRecords responses are read with StAX instead of JDOM
+    protected boolean streaming = false;
+
+    // when harvester.bulkLoad.enabled, the files of a file harvest are parsed ahead of doSomeWork on a pool of threads
+    protected boolean bulkLoad = false;
+    protected BulkFileLoader bulkFileLoader = null;
 
     public String printDateTime(Date d) {
         String s = UTC_SECOND_FORMATTER.print(d.getTime());
@@ -133,6 +154,7 @@ public class HarvestManager extends WorkerThread {
 
         try {
             hssFirstTime = true;
+            indicesPlanned = false;
             this.resumptionToken = null;
             startTime = new Date().getTime();
             // BDA - I added this check for 0 becuase the initialization of HarvestSchedule.steps creates a new
@@ -158,6 +180,11 @@ public class HarvestManager extends WorkerThread {
             // no longer set up cache for all harvests; only do so for "large" ones
             //setupCache();
 
+            pipelined = config.getPropertyAsBoolean("harvester.pipeline.enabled", false);
+            pipelineMaxPagesInFlight = config.getPropertyAsInt("harvester.pipeline.maxPagesInFlight", 2);
+            streaming = config.getPropertyAsBoolean("harvester.streamingParser.enabled", false);
+            bulkLoad = config.getPropertyAsBoolean("harvester.bulkLoad.enabled", false);
+
             this.currentHarvest = getScheduleService().getHarvest(harvestSchedule);
             this.incomingRecordCounts = new RecordCounts(this.currentHarvest.getEndTime(), RecordCounts.INCOMING);
         } catch (DatabaseConfigException e) {
@@ -167,11 +194,29 @@ public class HarvestManager extends WorkerThread {
 
     private void setupCache() {
     	if (cacheSetup) return; // one-time event only
-        oaiIdCache.clear();
+        if (recordsProcessedThisRun > 0) {
+            // when streaming, the cache decision is made after the page's records have been added,
+            // and they need to be in the db before the cache is reloaded from it.
+            repo.commitIfNecessary(true, 0, this.incomingRecordCounts, null);
+        }
         previousStatuses.clear();
         TimingLogger.outputMemory();
-        getRepositoryDAO().populateHarvestCache(repo.getName(), oaiIdCache);
+        // the index the last harvest left is good as long as it holds every row of record_oai_ids
+        OaiIdIndex kept = takeOaiIdIndex(repo.getName());
+        long numOaiIds = getRepositoryDAO().getNumOaiIds(repo.getName());
+        if (kept != null && kept.isComplete() && kept.size() == numOaiIds) {
+            LOG.info("reusing the oai id cache of " + repo.getName() + " (" + numOaiIds + " ids)");
+            oaiIdCache = kept;
+        } else {
+            if (kept != null) {
+                kept.clear();
+            }
+            oaiIdCache.clear();
+            oaiIdCache.ensureCapacity((int) Math.max(numOaiIds, this.records2ProcessThisRun));
+            getRepositoryDAO().populateHarvestCache(repo.getName(), oaiIdCache);
+        }
         TimingLogger.reset();
+        // unlike the oai id index, the statuses are read from the whole repository every harvest
         getRepositoryDAO().populatePreviousStatuses(repo.getName(), previousStatuses, false);
         TimingLogger.reset();
         cacheSetup = true;
@@ -180,17 +225,40 @@ public class HarvestManager extends WorkerThread {
     private Long getRecordId(String oaiId) {
         String nonRedundantId = getUtil().getNonRedundantOaiId(oaiId);
 		Long recId = oaiIdCache.getLong(nonRedundantId);
-    	if (cacheSetup) {
+    	if (cacheSetup && oaiIdCache.isComplete()) {
     		return recId;
     	} else {
     		if (recId != null && recId != 0) return recId;
+    		recId = overflowOaiIds.get(nonRedundantId);
+    		if (recId != null) return recId;
     		return getRepositoryDAO().getRecordId(repo.getName(), oaiId);
     	}
     }
 
+    protected static OaiIdIndex newOaiIdIndex() {
+        return new OaiIdIndex(MSTConfiguration.getInstance().getPropertyAsInt("harvester.oaiIdCache.maxMegabytes", 1024) * 1024L * 1024L);
+    }
+
+    protected static synchronized OaiIdIndex takeOaiIdIndex(String repoName) {
+        return keptOaiIdIndexes.remove(repoName);
+    }
+
+    // keeps the index for the repository's next harvest, letting go of the least recently used beyond harvester.oaiIdCache.reposKept
+    protected static synchronized void keepOaiIdIndex(String repoName, OaiIdIndex index) {
+        keptOaiIdIndexes.put(repoName, index);
+        int reposKept = MSTConfiguration.getInstance().getPropertyAsInt("harvester.oaiIdCache.reposKept", 1);
+        Iterator<Map.Entry<String, OaiIdIndex>> it = keptOaiIdIndexes.entrySet().iterator();
+        while (keptOaiIdIndexes.size() > reposKept && it.hasNext()) {
+            it.next().getValue().clear();
+            it.remove();
+        }
+    }
+
     private void cacheRecordId(String oaiId, Long recordId) {
         String nonRedundantId = getUtil().getNonRedundantOaiId(oaiId);
-		oaiIdCache.put(nonRedundantId, recordId);
+		if (!oaiIdCache.put(nonRedundantId, recordId)) {
+		    overflowOaiIds.put(nonRedundantId, recordId);
+		}
     }
     
     private char getPreviousStatus(Long recordId) {
@@ -207,9 +275,64 @@ public class HarvestManager extends WorkerThread {
     	previousStatuses.put(recordId, status);    	
     }
     
+    protected void shutdownPipeline() {
+        if (harvestPipeline != null) {
+            harvestPipeline.shutdown();
+            harvestPipeline = null;
+        }
+        if (bulkFileLoader != null) {
+            bulkFileLoader.shutdown();
+            bulkFileLoader = null;
+        }
+    }
+
+    /**
+     * The next file of a bulk load, starting the BulkFileLoader on the files after the provider's
+     * lastOaiRequest if it isn't running yet.
+     *
+     * @return the file's page, or null if there are no files left
+     */
+    protected HarvestPipeline.Page takeBulkFilePage(Provider provider, File[] files) throws InterruptedException {
+        if (bulkFileLoader == null) {
+            List<File> files2harvest = new ArrayList<File>();
+            boolean found = provider.getLastOaiRequest() == null;
+            for (File file : files) {
+                if (!file.getName().endsWith(".xml")) {
+                    continue;
+                } else if (found) {
+                    files2harvest.add(file);
+                } else if (provider.getLastOaiRequest().equals(file.getName())) {
+                    found = true;
+                }
+            }
+            log.info("bulk loading " + files2harvest.size() + " files");
+            // most of a bulk load's records are new, so look their oai ids up in memory rather than in the db
+            setupCache();
+            bulkFileLoader = new BulkFileLoader(getRecordService(), currentHarvest.getProvider(), files2harvest,
+                    config.getPropertyAsInt("harvester.bulkLoad.threads", 4),
+                    config.getPropertyAsInt("harvester.bulkLoad.maxFilesInFlight", 8));
+        }
+        TimingLogger.start("bulkFileLoader.takePage");
+        HarvestPipeline.Page page = bulkFileLoader.takePage();
+        TimingLogger.stop("bulkFileLoader.takePage");
+        if (page == null) {
+            shutdownPipeline();
+        }
+        return page;
+    }
+
     @Override
     public void finishInner(boolean success) {
+        shutdownPipeline();
         super.finishInner(success);
+        if (cacheSetup && success) {
+            // it's up to date with this harvest's records, which have been committed by now
+            keepOaiIdIndex(repo.getName(), oaiIdCache);
+        } else {
+            // a failed harvest's index may hold ids whose records were never written
+            oaiIdCache.clear();
+        }
+        overflowOaiIds.clear();
         RecordCounts mostRecentIncomingRecordCounts =
                 getRecordCountsDAO().getMostRecentIncomingRecordCounts(repo.getName());
         // I'm subtracting 1s from startTime because they might actually be equal by the second
@@ -256,6 +379,33 @@ public class HarvestManager extends WorkerThread {
         getUtil().throwIt(t);
     }
 
+    /**
+     * Saves the provider, with the last request and harvest end time it has now, once the records
+     * harvested so far are written.  A harvest that picks up from the saved request then doesn't
+     * skip records that never got written.
+     */
+    protected void updateWhenWritten(final Provider provider) {
+        final String request = provider.getLastOaiRequest();
+        final Date endTime = provider.getLastHarvestEndTime();
+        repo.whenWritten(new Runnable() {
+            public void run() {
+                // the provider has moved on since; save it as it was
+                String currentRequest = provider.getLastOaiRequest();
+                Date currentEndTime = provider.getLastHarvestEndTime();
+                provider.setLastOaiRequest(request);
+                provider.setLastHarvestEndTime(endTime);
+                try {
+                    getProviderDAO().update(provider, false);
+                } catch (DataException de) {
+                    throw new RuntimeException(de);
+                } finally {
+                    provider.setLastOaiRequest(currentRequest);
+                    provider.setLastHarvestEndTime(currentEndTime);
+                }
+            }
+        });
+    }
+
     public void validate(HarvestScheduleStep scheduleStep) throws DataException {
         Provider provider = harvestSchedule.getProvider();
         // Try to validate the repository. An exception will be thrown and caught if validation fails.
@@ -345,6 +495,8 @@ public class HarvestManager extends WorkerThread {
                 provider = harvestSchedule.getProvider();
                 String request = null;
                 Document doc = null;
+                HarvestPipeline.Page page = null;
+                StreamingListRecordsParser streamedPage = null;
                 if (baseURL.startsWith("file:")) {
                     File pwd = new File(".");
                     log.debug("pwd: " + pwd.getAbsolutePath());
@@ -378,6 +530,10 @@ public class HarvestManager extends WorkerThread {
                         // maybe if running test 2x?
                         File[] files = folder.listFiles();
                         files = sortFiles(files);
+                        if (bulkLoad) {
+                            page = takeBulkFilePage(provider, files);
+                            files = new File[0];
+                        }
                         for (File file : files) {
                             log.debug("file.getName(): " + file.getName());
                             log.debug("provider.getLastOaiRequest(): " + provider.getLastOaiRequest());
@@ -393,13 +549,19 @@ public class HarvestManager extends WorkerThread {
                             }
                         }
                     }
-                    log.info("file2harvest: " + file2harvest);
-                    if (file2harvest == null) {
-                        return false;
+                    if (page != null) {
+                        log.info("file2harvest: " + page.getRequest());
+                        provider.setLastOaiRequest(page.getRequest());
+                        lastOaiRequest = page.getRequest();
+                    } else {
+                        log.info("file2harvest: " + file2harvest);
+                        if (file2harvest == null) {
+                            return false;
+                        }
+                        provider.setLastOaiRequest(file2harvest.getName());
+                        lastOaiRequest = file2harvest.getName();
+                        doc = new XmlHelper().getJDomDocument(getUtil().slurp(file2harvest));
                     }
-                    provider.setLastOaiRequest(file2harvest.getName());
-                    lastOaiRequest = file2harvest.getName();
-                    doc = new XmlHelper().getJDomDocument(getUtil().slurp(file2harvest));
                 } else if (baseURL.startsWith("http:")) {
                     String verb = "ListRecords";
                     request = baseURL;
@@ -448,7 +610,14 @@ public class HarvestManager extends WorkerThread {
                         getHarvestScheduleDAO().update(harvestSchedule, false);
                         currentHarvest.setRequest(request);
                         getHarvestDAO().update(currentHarvest);
-                    } else {
+
+                        if (pipelined) {
+                            shutdownPipeline();
+                            harvestPipeline = new HarvestPipeline(getHttpService(), getRecordService(),
+                                    currentHarvest.getProvider(), baseURL, pipelineMaxPagesInFlight, streaming);
+                            harvestPipeline.start(request);
+                        }
+                    } else if (!pipelined) {
                         try {
                             resumptionToken = URLEncoder.encode(resumptionToken, "utf-8");
                         } catch (UnsupportedEncodingException uee) {
@@ -457,32 +626,66 @@ public class HarvestManager extends WorkerThread {
                         request += "?verb=" + verb + "&resumptionToken=" + resumptionToken;
                     }
 
+                    if (pipelined) {
+                        // the request for this page was sent by the pipeline's fetch stage,
+                        // possibly while the previous page was still being persisted
+                        TimingLogger.start("harvestPipeline.takePage");
+                        page = harvestPipeline.takePage();
+                        TimingLogger.stop("harvestPipeline.takePage");
+                        request = page.getRequest();
+                    }
+
                     LogWriter.addInfo(schedule.getProvider().getLogFileName(), "The OAI request is " + request);
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("Sending the OAI request: " + request);
-                    }
+                    if (!pipelined) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Sending the OAI request: " + request);
+                        }
 
-                    // Perform the harvest
-                    TimingLogger.start("sendRequest");
-                    doc = getHttpService().sendRequest(request);
-                    /*
-                    log.debug("doc: ");
-                    if (log.isDebugEnabled())
-                        log.debug(new XmlHelper().getString(doc.getRootElement()));
-                    */
-                    TimingLogger.stop("sendRequest");
+                        // Perform the harvest
+                        TimingLogger.start("sendRequest");
+                        if (streaming) {
+                            // records are added as they're read off the wire
+                            streamedPage = getHttpService().sendRequest(request, new StreamingListRecordsParser(
+                                    getRecordService(), currentHarvest.getProvider(),
+                                    new StreamingListRecordsParser.RecordHandler() {
+                                        public void handleRecord(Record record) {
+                                            try {
+                                                addRecord(record);
+                                            } catch (Exception e) {
+                                                log.error("An error occurred in insertion ", e);
+                                            }
+                                            recordsProcessedThisRun++;
+                                        }
+                                    }));
+                        } else {
+                            doc = getHttpService().sendRequest(request);
+                        }
+                        /*
+                        log.debug("doc: ");
+                        if (log.isDebugEnabled())
+                            log.debug(new XmlHelper().getString(doc.getRootElement()));
+                        */
+                        TimingLogger.stop("sendRequest");
+                    }
 
                     provider.setLastOaiRequest(request);
                 }
                 
                 
                 TimingLogger.start("parseRecords");
-                resumptionToken = parseRecords(metadataPrefix, doc, baseURL);
+                if (page != null) {
+                    resumptionToken = persistRecords(page);
+                } else if (streamedPage != null) {
+                    resumptionToken = streamedPage.getErrorCode() == null ? streamedPage.getResumptionToken() : null;
+                    setRecords2ProcessThisRun(resumptionToken, streamedPage.getCompleteListSize());
+                } else {
+                    resumptionToken = parseRecords(metadataPrefix, doc, baseURL);
+                }
                 log.debug("resumptionToken: " + resumptionToken);
                 TimingLogger.stop("parseRecords");
 
-                getProviderDAO().update(provider, false);
+                updateWhenWritten(provider);
 
                 LogWriter.addInfo(scheduleStep.getSchedule().getProvider().getLogFileName(), "Finished harvesting " + baseURL);
                 // + ", " + recordsProcessed + " new records were returned by the OAI provider.");
@@ -498,10 +701,11 @@ public class HarvestManager extends WorkerThread {
             hssFirstTime = false;
             retVal = true;
             if (resumptionToken == null) {
+                shutdownPipeline();
                 try {
                     if (provider.getNumberOfRecordsToHarvest() == 0) {
                         provider.setLastHarvestEndTime(new Date());
-                        getProviderDAO().update(provider, false);
+                        updateWhenWritten(provider);
                     }
                 } catch (Throwable t) {
                     LOG.debug("", t);
@@ -524,6 +728,9 @@ public class HarvestManager extends WorkerThread {
         }
         if (harvestSchedule.getProvider().getNumberOfRecordsToHarvest() > 0 &&
                 harvestSchedule.getProvider().getNumberOfRecordsToHarvest() <= this.recordsProcessedThisRun) {
+            shutdownPipeline();
+            // the next step starts with a fresh request (and, when pipelined, a fresh pipeline)
+            resumptionToken = null;
             hssFirstTime = true;
             harvestScheduleStepIndex++;
             if (harvestScheduleStepIndex >= harvestScheduleSteps.size()) {
@@ -633,30 +840,11 @@ public class HarvestManager extends WorkerThread {
         }
         log.debug("resumption: " + resumption);
         if (!StringUtils.isEmpty(resumption)) {
-            try {
-                this.records2ProcessThisRun = Integer.parseInt(resumptionEl.getAttributeValue("completeListSize"));
-            } catch (Throwable t) {
-                this.records2ProcessThisRun = -1;
-            }
-            log.debug("The resumption string is " + resumption);
+            setRecords2ProcessThisRun(resumption, resumptionEl.getAttributeValue("completeListSize"));
         } else {
             resumption = null;
+            setRecords2ProcessThisRun(null, null);
         }
-      
-        // Is this a "large" update?
-        // If so, we will cache OAI IDs and previous statuses; otherwise, we hit the DB each time
-        if (resumption != null) {
-        	if (this.records2ProcessThisRun >= largeHarvestThreshold) {
-        		log.info("This is a large update; we will cache OAI IDs (" + this.records2ProcessThisRun + " >= " + largeHarvestThreshold + ").");
-                oaiIdCache.ensureCapacity((int) this.records2ProcessThisRun);
-                setupCache();
-        	} else {
-        		log.info("This is not a large update; we will not need to cache OAI IDs (" + this.records2ProcessThisRun + " < " + largeHarvestThreshold + ").");
-        	}
-        } else {
-    		log.info("This is not a large update; we will not need to cache OAI IDs (no resumptionToken; assuming it's a \"small\" update\").");        	
-        }
-        
 
         // Try to get the element containing the first record. It should be a child of the
         // verb element.
@@ -697,39 +885,10 @@ public class HarvestManager extends WorkerThread {
             recordEl = (Element) recordElObj;
 
             try {
-                HarvestScheduleStep scheduleStep = harvestScheduleSteps.get(harvestScheduleStepIndex);
                 TimingLogger.start("getRecordService().parse(recordEl)");
                 Record record = getRecordService().parse(recordEl, currentHarvest.getProvider());
                 TimingLogger.stop("getRecordService().parse(recordEl)");
-                record.setFormat(scheduleStep.getFormat());
-                record.setHarvest(currentHarvest);
-                record.setProvider(currentHarvest.getProvider());
-
-                String oaiId = record.getHarvestedOaiIdentifier();
-                Long recordId = getRecordId(oaiId);
-                char prevStatus = 0;
-                if (recordId == null || recordId == 0) {
-                    getRepositoryDAO().injectId(record);
-                } else {
-                    record.setId(recordId);
-                    prevStatus = getPreviousStatus(recordId);
-                    log.debug("found prevStatus: " + prevStatus);
-                    record.setPreviousStatus(prevStatus);
-                }
-                cachePreviousStatus(record.getId(), (byte) record.getStatus());
-                cacheRecordId(oaiId, record.getId());
-
-                repo.addRecord(record);
-                if (record.getSets() != null && record.getSets().size() > 1) {
-                    for (Set s : record.getSets()) {
-                        if (s.getSetSpec().contains(":")) {
-                            incomingRecordCounts.incr(s.getSetTypeShort(), record.getStatus(), prevStatus);
-                        }
-                    }
-                } else {
-                    incomingRecordCounts.incr(RecordCounts.OTHER, record.getStatus(), prevStatus);
-                }
-                incomingRecordCounts.incr(null, record.getStatus(), prevStatus);
+                addRecord(record);
             } catch (Exception e) {
                 log.error("An error occurred in insertion ", e);
             }
@@ -740,6 +899,102 @@ public class HarvestManager extends WorkerThread {
         return resumption;
     }
 
+    /**
+     * The persist stage of a pipelined harvest. The page has already been fetched and its records
+     * parsed by the HarvestPipeline; all that's left is the work that has to happen on this thread
+     * and in provider order: assigning record ids and adding the records to the repository.
+     *
+     * @return the resumptionToken of the page, or null if this was the last page
+     */
+    protected String persistRecords(HarvestPipeline.Page page) {
+        TimingLogger.add("harvestPipeline.fetch", page.getFetchMillis());
+        TimingLogger.add("harvestPipeline.parse", page.getParseMillis());
+
+        if (page.getError() != null) {
+            getUtil().throwIt(page.getError());
+        }
+        if (page.getErrorCode() != null) {
+            return null;
+        }
+        setRecords2ProcessThisRun(page.getResumptionToken(), page.getCompleteListSize());
+
+        TimingLogger.start("harvestPipeline.persist");
+        for (Record record : page.getRecords()) {
+            try {
+                addRecord(record);
+            } catch (Exception e) {
+                log.error("An error occurred in insertion ", e);
+            }
+            this.recordsProcessedThisRun++;
+        }
+        TimingLogger.stop("harvestPipeline.persist");
+
+        return page.getResumptionToken();
+    }
+
+    protected void setRecords2ProcessThisRun(String resumption, String completeListSize) {
+        if (resumption != null) {
+            try {
+                this.records2ProcessThisRun = Integer.parseInt(completeListSize);
+            } catch (Throwable t) {
+                this.records2ProcessThisRun = -1;
+            }
+            log.debug("The resumption string is " + resumption);
+        }
+
+        // the run's first list size decides whether its records are written without indexes
+        if (!indicesPlanned) {
+            repo.planIndices(resumption == null ? 0 : this.records2ProcessThisRun);
+            indicesPlanned = true;
+        }
+
+        // Is this a "large" update?
+        // If so, we will cache OAI IDs and previous statuses; otherwise, we hit the DB each time
+        if (resumption != null) {
+        	if (this.records2ProcessThisRun >= largeHarvestThreshold) {
+        		log.info("This is a large update; we will cache OAI IDs (" + this.records2ProcessThisRun + " >= " + largeHarvestThreshold + ").");
+                setupCache();
+        	} else {
+        		log.info("This is not a large update; we will not need to cache OAI IDs (" + this.records2ProcessThisRun + " < " + largeHarvestThreshold + ").");
+        	}
+        } else {
+    		log.info("This is not a large update; we will not need to cache OAI IDs (no resumptionToken; assuming it's a \"small\" update\").");        	
+        }
+    }
+
+    protected void addRecord(Record record) {
+        HarvestScheduleStep scheduleStep = harvestScheduleSteps.get(harvestScheduleStepIndex);
+        record.setFormat(scheduleStep.getFormat());
+        record.setHarvest(currentHarvest);
+        record.setProvider(currentHarvest.getProvider());
+
+        String oaiId = record.getHarvestedOaiIdentifier();
+        Long recordId = getRecordId(oaiId);
+        char prevStatus = 0;
+        if (recordId == null || recordId == 0) {
+            getRepositoryDAO().injectId(record);
+        } else {
+            record.setId(recordId);
+            prevStatus = getPreviousStatus(recordId);
+            log.debug("found prevStatus: " + prevStatus);
+            record.setPreviousStatus(prevStatus);
+        }
+        cachePreviousStatus(record.getId(), (byte) record.getStatus());
+        cacheRecordId(oaiId, record.getId());
+
+        repo.addRecord(record);
+        if (record.getSets() != null && record.getSets().size() > 1) {
+            for (Set s : record.getSets()) {
+                if (s.getSetSpec().contains(":")) {
+                    incomingRecordCounts.incr(s.getSetTypeShort(), record.getStatus(), prevStatus);
+                }
+            }
+        } else {
+            incomingRecordCounts.incr(RecordCounts.OTHER, record.getStatus(), prevStatus);
+        }
+        incomingRecordCounts.incr(null, record.getStatus(), prevStatus);
+    }
+
     /**
      * Builds and sends an email report about the harvest to the schedule's notify email address.
      *
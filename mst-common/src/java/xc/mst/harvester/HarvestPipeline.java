@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2009 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.harvester;
+
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.jdom.Document;
+import org.jdom.Element;
+
+import xc.mst.bo.provider.Provider;
+import xc.mst.bo.record.Record;
+import xc.mst.manager.record.RecordService;
+
+/**
+ * Runs the network and xml parsing portions of an OAI-PMH ListRecords harvest ahead of the
+ * thread that persists the records.
+ *
+ * The fetch stage sends the request for page N+1 as soon as it has read page N's resumptionToken.
+ * The parse stage turns each page's record elements into Record objects. Both stages hand their
+ * pages on through bounded queues, so neither stage can run more than maxPagesInFlight pages ahead
+ * of the stage after it. Each stage is a single thread, which means pages (and the records within
+ * them) come out of {@link #takePage()} in exactly the order the provider sent them. The caller
+ * (HarvestManager) is the persist stage, so record ids are still assigned deterministically.
+ *
+ * When streaming, the fetch stage parses each response with a StreamingListRecordsParser as it
+ * arrives, so no JDOM Document is built and the parse stage simply passes pages through.
+ */
+public class HarvestPipeline {
+
+    private static final Logger LOG = Logger.getLogger(HarvestPipeline.class);
+
+    protected HttpService httpService = null;
+    protected RecordService recordService = null;
+    protected Provider provider = null;
+    protected String baseURL = null;
+    protected boolean streaming = false;
+
+    protected BlockingQueue<Page> fetchedPages = null;
+    protected BlockingQueue<Page> parsedPages = null;
+
+    protected Thread fetchThread = null;
+    protected Thread parseThread = null;
+    protected volatile boolean shutdown = false;
+
+    /**
+     * A single ListRecords response as it moves through the pipeline.
+     */
+    public static class Page {
+        protected String request = null;
+        protected Document doc = null;
+        protected String errorCode = null;
+        protected String resumptionToken = null;
+        protected String completeListSize = null;
+        protected List<Record> records = null;
+        protected Throwable error = null;
+        protected long fetchMillis = 0;
+        protected long parseMillis = 0;
+
+        public String getRequest() {
+            return request;
+        }
+
+        /**
+         * @return the OAI error code in the response, or null if the response was not an OAI error
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getResumptionToken() {
+            return resumptionToken;
+        }
+
+        public String getCompleteListSize() {
+            return completeListSize;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        /**
+         * @return the exception thrown by the fetch or parse stage, or null if the page was harvested cleanly
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getFetchMillis() {
+            return fetchMillis;
+        }
+
+        public long getParseMillis() {
+            return parseMillis;
+        }
+
+        public boolean isLast() {
+            return error != null || errorCode != null || resumptionToken == null;
+        }
+    }
+
+    public HarvestPipeline(HttpService httpService, RecordService recordService, Provider provider,
+            String baseURL, int maxPagesInFlight, boolean streaming) {
+        this.httpService = httpService;
+        this.recordService = recordService;
+        this.provider = provider;
+        this.baseURL = baseURL;
+        this.streaming = streaming;
+        if (maxPagesInFlight < 1) {
+            maxPagesInFlight = 1;
+        }
+        this.fetchedPages = new ArrayBlockingQueue<Page>(maxPagesInFlight);
+        this.parsedPages = new ArrayBlockingQueue<Page>(maxPagesInFlight);
+    }
+
+    /**
+     * Starts the fetch and parse stages.
+     *
+     * @param firstRequest
+     *            the complete initial ListRecords request (verb, metadataPrefix, set, from, until)
+     */
+    public void start(final String firstRequest) {
+        String name = provider == null ? "" : "-" + provider.getName();
+        fetchThread = new Thread("harvest-fetch" + name) {
+            public void run() {
+                fetch(firstRequest);
+            }
+        };
+        parseThread = new Thread("harvest-parse" + name) {
+            public void run() {
+                parse();
+            }
+        };
+        fetchThread.setDaemon(true);
+        parseThread.setDaemon(true);
+        fetchThread.start();
+        parseThread.start();
+    }
+
+    /**
+     * Blocks until the next page in provider order has been fetched and parsed.
+     */
+    public Page takePage() throws InterruptedException {
+        return parsedPages.take();
+    }
+
+    /**
+     * Stops both stages and discards any pages that have not been taken yet. Safe to call more than once.
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (fetchThread != null) {
+            fetchThread.interrupt();
+        }
+        if (parseThread != null) {
+            parseThread.interrupt();
+        }
+        fetchedPages.clear();
+        parsedPages.clear();
+    }
+
+    protected void fetch(String request) {
+        try {
+            while (request != null && !shutdown) {
+                Page page = new Page();
+                page.request = request;
+                long start = System.currentTimeMillis();
+                try {
+                    if (streaming) {
+                        fetchStreaming(page);
+                    } else {
+                        page.doc = httpService.sendRequest(request);
+                        readResumptionToken(page);
+                    }
+                } catch (Throwable t) {
+                    page.error = t;
+                }
+                page.fetchMillis = System.currentTimeMillis() - start;
+                fetchedPages.put(page);
+
+                request = null;
+                if (!page.isLast()) {
+                    request = baseURL + "?verb=ListRecords&resumptionToken=" + URLEncoder.encode(page.resumptionToken, "UTF-8");
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOG.debug("fetch stage interrupted");
+        } catch (Throwable t) {
+            LOG.error("", t);
+        }
+    }
+
+    protected void parse() {
+        try {
+            while (!shutdown) {
+                Page page = fetchedPages.take();
+                if (page.error == null && page.errorCode == null && page.records == null) {
+                    long start = System.currentTimeMillis();
+                    try {
+                        parseRecords(page);
+                    } catch (Throwable t) {
+                        page.error = t;
+                    }
+                    page.parseMillis = System.currentTimeMillis() - start;
+                }
+                page.doc = null;
+                parsedPages.put(page);
+                if (page.isLast()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOG.debug("parse stage interrupted");
+        }
+    }
+
+    protected void fetchStreaming(final Page page) throws Exception {
+        page.records = new ArrayList<Record>();
+        StreamingListRecordsParser parser = new StreamingListRecordsParser(recordService, provider,
+                new StreamingListRecordsParser.RecordHandler() {
+                    public void handleRecord(Record r) {
+                        page.records.add(r);
+                    }
+                });
+        httpService.sendRequest(page.request, parser);
+        page.errorCode = parser.getErrorCode();
+        page.resumptionToken = parser.getResumptionToken();
+        page.completeListSize = parser.getCompleteListSize();
+    }
+
+    protected Element getListRecordsEl(Element root) {
+        Element listRecordsEl = root.getChild("ListRecords", root.getNamespace());
+        if (listRecordsEl == null) {
+            listRecordsEl = root;
+        }
+        return listRecordsEl;
+    }
+
+    protected void readResumptionToken(Page page) {
+        Element root = page.doc.getRootElement();
+
+        Element errorEl = root.getChild("error", root.getNamespace());
+        if (errorEl != null) {
+            page.errorCode = errorEl.getAttributeValue("code");
+            LOG.info("errorCode: " + page.errorCode + " " + errorEl.getText());
+            return;
+        }
+
+        Element resumptionEl = getListRecordsEl(root).getChild("resumptionToken", root.getNamespace());
+        if (resumptionEl != null && !StringUtils.isEmpty(resumptionEl.getText())) {
+            page.resumptionToken = resumptionEl.getText();
+            page.completeListSize = resumptionEl.getAttributeValue("completeListSize");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void parseRecords(Page page) {
+        Element root = page.doc.getRootElement();
+        List<Element> recordsEl = getListRecordsEl(root).getChildren("record", root.getNamespace());
+        page.records = new ArrayList<Record>(recordsEl.size());
+        for (Element recordEl : recordsEl) {
+            try {
+                page.records.add(recordService.parse(recordEl, provider));
+            } catch (Throwable t) {
+                LOG.error("An error occurred parsing a record ", t);
+            }
+        }
+    }
+}
@@ -33,6 +33,19 @@ public class HttpService extends BaseService {
 
     protected HttpClient client = null;
 
+    /**
+     * Consumes the body of a successful response.
+     */
+    public interface ResponseReader<T> {
+
+        public T read(InputStream istm) throws Exception;
+
+        /**
+         * @return false if a failed read has already had side effects, so the request must not be sent again
+         */
+        public boolean isRetryable();
+    }
+
     public void init() {
         client = new HttpClient(new SimpleHttpConnectionManager());
         LOG.debug("client: " + client);
@@ -46,6 +59,18 @@ public class HttpService extends BaseService {
     }
 
     public Document sendRequest(String request) throws HttpException {
+        return sendRequest(request, new ResponseReader<Document>() {
+            public Document read(InputStream istm) throws Exception {
+                return xmlHelper.getJDomDocument(istm);
+            }
+
+            public boolean isRetryable() {
+                return true;
+            }
+        });
+    }
+
+    public <T> T sendRequest(String request, ResponseReader<T> reader) throws HttpException {
         int numErrors2Tolerate = config.getPropertyAsInt("harvester.numErrorsToTolerate", 3);
         int numErrorsTolerated = 0;
 
@@ -53,7 +78,7 @@ public class HttpService extends BaseService {
             if (LOG.isDebugEnabled())
                 LOG.debug("Sending the OAI request: " + request);
 
-            Document doc = null;
+            T doc = null;
             InputStream istm = null;
 
             try {
@@ -72,7 +97,7 @@ public class HttpService extends BaseService {
                     istm = getOaiRequest.getResponseBodyAsStream();
                     long finishOaiRequest = System.currentTimeMillis();
                     LOG.info("Time taken to get a response from the server " + (finishOaiRequest - startOaiRequest));
-                    doc = xmlHelper.getJDomDocument(istm);
+                    doc = reader.read(istm);
                 } else {
                     LOG.error("statusCode: " + statusCode);
                     LOG.error("response: " + getOaiRequest.getResponseBodyAsString());
@@ -93,6 +118,9 @@ public class HttpService extends BaseService {
             } catch (Throwable t) {
                 LOG.debug("request: " + request);
                 LOG.error("", t);
+                if (!reader.isRetryable()) {
+                    throw new HttpException("failed reading the response for request: " + request + " " + t.getMessage());
+                }
             } finally {
                 if (istm != null) {
                     try {
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2009 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.harvester;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+import xc.mst.bo.provider.Provider;
+import xc.mst.bo.record.Record;
+import xc.mst.manager.record.RecordService;
+
+/**
+ * Reads an OAI-PMH ListRecords response with StAX rather than building a JDOM Document for it.
+ *
+ * Each record is handed to the RecordHandler as soon as its closing tag has been read, with its
+ * header fields set and its metadata copied straight out of the stream into the record's oaiXml
+ * (STRING_MODE). Only one record is ever held in memory by the parser, regardless of page size.
+ *
+ * Because the resumptionToken comes after the records in a ListRecords response, it (along with
+ * completeListSize) is only available once {@link #read(InputStream)} has returned.
+ *
+ * An instance reads exactly one response.
+ */
+public class StreamingListRecordsParser implements XMLStreamConstants, HttpService.ResponseReader<StreamingListRecordsParser> {
+
+    private static final Logger LOG = Logger.getLogger(StreamingListRecordsParser.class);
+
+    protected static XMLInputFactory inputFactory = null;
+    protected static XMLOutputFactory outputFactory = null;
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+        outputFactory = XMLOutputFactory.newInstance();
+        outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+    }
+
+    public interface RecordHandler {
+        public void handleRecord(Record r);
+    }
+
+    protected RecordService recordService = null;
+    protected Provider provider = null;
+    protected RecordHandler handler = null;
+
+    protected String errorCode = null;
+    protected String resumptionToken = null;
+    protected String completeListSize = null;
+    protected int recordCount = 0;
+
+    public StreamingListRecordsParser(RecordService recordService, Provider provider, RecordHandler handler) {
+        this.recordService = recordService;
+        this.provider = provider;
+        this.handler = handler;
+    }
+
+    /**
+     * @return the OAI error code in the response, or null if the response was not an OAI error
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getResumptionToken() {
+        return resumptionToken;
+    }
+
+    public String getCompleteListSize() {
+        return completeListSize;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Once a record has been handed off it may already be sitting in the repository's insert
+     * buffer, so the request can only be safely resent if nothing has been handed off yet.
+     */
+    public boolean isRetryable() {
+        return recordCount == 0;
+    }
+
+    public StreamingListRecordsParser read(InputStream istm) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(istm);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("record".equals(name)) {
+                    readRecord(reader);
+                } else if ("resumptionToken".equals(name)) {
+                    completeListSize = reader.getAttributeValue(null, "completeListSize");
+                    resumptionToken = reader.getElementText();
+                    if (StringUtils.isEmpty(resumptionToken)) {
+                        resumptionToken = null;
+                    }
+                } else if ("error".equals(name)) {
+                    errorCode = reader.getAttributeValue(null, "code");
+                    LOG.info("errorCode: " + errorCode + " " + reader.getElementText());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return this;
+    }
+
+    protected void readRecord(XMLStreamReader reader) throws XMLStreamException {
+        String identifier = null;
+        String datestamp = null;
+        String status = null;
+        List<String> setSpecs = new ArrayList<String>();
+        String oaiXml = null;
+
+        boolean inMetadata = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == END_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("record".equals(name)) {
+                    break;
+                } else if ("metadata".equals(name)) {
+                    inMetadata = false;
+                }
+            } else if (event == START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (inMetadata) {
+                    // only the first child of metadata is kept, same as the JDOM parse
+                    if (oaiXml == null) {
+                        oaiXml = copyElement(reader);
+                    } else {
+                        skipElement(reader);
+                    }
+                } else if ("header".equals(name)) {
+                    status = reader.getAttributeValue(null, "status");
+                } else if ("identifier".equals(name)) {
+                    identifier = reader.getElementText();
+                } else if ("datestamp".equals(name)) {
+                    datestamp = reader.getElementText();
+                } else if ("setSpec".equals(name)) {
+                    setSpecs.add(reader.getElementText());
+                } else if ("metadata".equals(name)) {
+                    inMetadata = true;
+                } else if ("about".equals(name)) {
+                    skipElement(reader);
+                }
+            }
+        }
+
+        Record r = new Record();
+        parseHeader(r, identifier, datestamp, setSpecs, status);
+        if (oaiXml != null) {
+            r.setMode(Record.STRING_MODE);
+            r.setOaiXml(oaiXml);
+        }
+        recordCount++;
+        handler.handleRecord(r);
+    }
+
+    protected void parseHeader(Record r, String identifier, String datestamp, List<String> setSpecs, String status) {
+        recordService.parseHeader(r, identifier, datestamp, setSpecs, status, provider);
+    }
+
+    /**
+     * Serializes the element the reader is positioned on (and everything beneath it), leaving the
+     * reader on its END_ELEMENT. Namespaces declared on ancestors are redeclared as needed.
+     */
+    protected String copyElement(XMLStreamReader reader) throws XMLStreamException {
+        StringWriter sw = new StringWriter();
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(sw);
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+                case START_ELEMENT:
+                    depth++;
+                    writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+                            nullToEmpty(reader.getNamespaceURI()));
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        String prefix = reader.getNamespacePrefix(i);
+                        if (StringUtils.isEmpty(prefix)) {
+                            writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+                        } else {
+                            writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+                        }
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String ns = reader.getAttributeNamespace(i);
+                        if (StringUtils.isEmpty(ns)) {
+                            writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        } else {
+                            writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)), ns,
+                                    reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        }
+                    }
+                    break;
+                case END_ELEMENT:
+                    depth--;
+                    writer.writeEndElement();
+                    break;
+                case CHARACTERS:
+                case SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+            }
+            if (depth > 0) {
+                reader.next();
+            }
+        } while (depth > 0);
+        writer.close();
+        return sw.toString();
+    }
+
+    protected void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    protected String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -151,6 +151,16 @@ public class DefaultJobService extends BaseService implements JobService {
         return jobDAO.getNextJobToExecute();
     }
 
+    /**
+     * Get all jobs in queue, in the order they're to be executed
+     * 
+     * @return Jobs to execute
+     * @throws DatabaseConfigException
+     */
+    public List<Job> getJobsToExecute() throws DatabaseConfigException {
+        return jobDAO.getJobsToExecute();
+    }
+
     /**
      * Write jobs in database queue to a file
      * 
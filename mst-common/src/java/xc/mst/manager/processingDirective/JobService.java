@@ -98,6 +98,14 @@ public interface JobService {
      */
     public Job getNextJobToExecute() throws DatabaseConfigException;
 
+    /**
+     * Get all jobs in queue, in the order they're to be executed
+     * 
+     * @return Jobs to execute
+     * @throws DatabaseConfigException
+     */
+    public List<Job> getJobsToExecute() throws DatabaseConfigException;
+
     /**
      * Write jobs to queue
      * 
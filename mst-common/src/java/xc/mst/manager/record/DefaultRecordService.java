@@ -1118,13 +1118,14 @@ public class DefaultRecordService extends RecordService {
         try {
             Element headerEl = recordEl.getChild("header", recordEl.getNamespace());
             Element identifierElement = headerEl.getChild("identifier", recordEl.getNamespace());
+            String identifier = null;
             if (identifierElement != null) {
-                r.setHarvestedOaiIdentifier(identifierElement.getText());
-                LOG.debug("identifierElement.getText(): " + identifierElement.getText());
+                identifier = identifierElement.getText();
             }
             Element datestampElement = headerEl.getChild("datestamp", recordEl.getNamespace());
-            if (datestampElement != null && !StringUtils.isEmpty(datestampElement.getText())) {
-                r.setOaiDatestamp(new Date(UTC_PARSER.parseDateTime(datestampElement.getText()).getMillis()));
+            String datestamp = null;
+            if (datestampElement != null) {
+                datestamp = datestampElement.getText();
             }
 
             /*
@@ -1142,14 +1143,44 @@ public class DefaultRecordService extends RecordService {
             }
             */
 
-            // TODO: BDA - This might not be right, but I don't think I really care
-            // since this is only currently used in the filesystem testing
-            // mechanism and we don't care about setSpecs there.
+            List<String> setSpecs = new ArrayList<String>();
             List setSpecList = headerEl.getChildren("setSpec", recordEl.getNamespace());
-            if (setSpecList != null && setSpecList.size() > 0) {
+            if (setSpecList != null) {
                 for (Object setSpecObj : setSpecList) {
-                    Element setSpecEl = (Element) setSpecObj;
+                    setSpecs.add(((Element) setSpecObj).getText());
+                }
+            }
+
+            parseHeader(r, identifier, datestamp, setSpecs, headerEl.getAttributeValue("status"), provider);
+
+            // Metadata element will not exist in case the record has status = deleted. So null check is required here.
+            if (recordEl.getChild("metadata", recordEl.getNamespace()) != null) {
+                Element xmlEl = (Element) recordEl.getChild("metadata", recordEl.getNamespace()).getChildren().get(0);
+                xmlEl.detach();
+                r.setOaiXmlEl(xmlEl);
+            }
+        } catch (Throwable t) {
+            getUtil().throwIt(t);
+        }
 
+        return r;
+    }
+
+    public void parseHeader(Record r, String identifier, String datestamp, List<String> setSpecs, String status, Provider provider) {
+        try {
+            if (identifier != null) {
+                r.setHarvestedOaiIdentifier(identifier);
+                LOG.debug("identifier: " + identifier);
+            }
+            if (!StringUtils.isEmpty(datestamp)) {
+                r.setOaiDatestamp(new Date(UTC_PARSER.parseDateTime(datestamp).getMillis()));
+            }
+
+            // TODO: BDA - This might not be right, but I don't think I really care
+            // since this is only currently used in the filesystem testing
+            // mechanism and we don't care about setSpecs there.
+            if (setSpecs != null && setSpecs.size() > 0) {
+                for (String setSpecText : setSpecs) {
                     String setSpec = null;
                     if (provider != null) {
                         setSpec = provider.getName().replace(' ', '-');
@@ -1157,7 +1188,7 @@ public class DefaultRecordService extends RecordService {
                     if (setSpec != null) {
                         setSpec += ":";
                     }
-                    setSpec += setSpecEl.getText();
+                    setSpec += setSpecText;
 
                     // Split the set into its components
                     String[] setSpecLevels = setSpec.split(":");
@@ -1212,7 +1243,6 @@ public class DefaultRecordService extends RecordService {
                 }
             }
 
-            String status = headerEl.getAttributeValue("status");
             if (!StringUtils.isEmpty(status)) {
                 if ("DELETED".equals(status.toUpperCase()) || "D".equals(status.toUpperCase())) {
                     r.setStatus(Record.DELETED);
@@ -1224,18 +1254,9 @@ public class DefaultRecordService extends RecordService {
                     r.setStatus(Record.REPLACED);
                 }
             }
-
-            // Metadata element will not exist in case the record has status = deleted. So null check is required here.
-            if (recordEl.getChild("metadata", recordEl.getNamespace()) != null) {
-                Element xmlEl = (Element) recordEl.getChild("metadata", recordEl.getNamespace()).getChildren().get(0);
-                xmlEl.detach();
-                r.setOaiXmlEl(xmlEl);
-            }
         } catch (Throwable t) {
             getUtil().throwIt(t);
         }
-
-        return r;
     }
 
     public Element createJDomElement(Record r) {
@@ -705,6 +705,25 @@ public abstract class RecordService extends BaseService {
 
     public abstract Record parse(Element recordEl, Provider provider);
 
+    /**
+     * Sets the fields of a harvested record which come from its OAI header. This is the portion of
+     * parse(Element, Provider) which doesn't need a JDOM tree, so streaming parsers can share it.
+     *
+     * @param r
+     *            The record being harvested
+     * @param identifier
+     *            The header's identifier
+     * @param datestamp
+     *            The header's datestamp
+     * @param setSpecs
+     *            The text of each of the header's setSpec elements
+     * @param status
+     *            The header's status attribute, or null if it had none
+     * @param provider
+     *            The provider the record is being harvested from
+     */
+    public abstract void parseHeader(Record r, String identifier, String datestamp, List<String> setSpecs, String status, Provider provider);
+
     public abstract Element createJDomElement(Record r);
 
     public abstract Element createJDomElement(Record r, String namespace);
@@ -106,23 +106,22 @@ public class DefaultProviderService extends BaseService implements ProviderServi
         // TODO pull out the two below to methods so I can use them elsewhere
         // Delete schedule for this repository
 
-        // Check if any harvest is running
-        if (getScheduler().getRunningJob() != null) {
+        // Check if any of the running jobs harvest or process this repository
+        for (WorkerThread runningJob : getScheduler().getRunningJobs()) {
             // Check if this repository is being harvested
-            if (getScheduler().getRunningJob().getType().equals(Constants.THREAD_REPOSITORY)) {
-                WorkerThread harvesterWorkerThread = (WorkerThread) getScheduler().getRunningJob();
-                if (harvesterWorkerThread.getJobName().equals(provider.getName())) {
-                    getScheduler().cancelRunningJob();
+            if (runningJob.getType().equals(Constants.THREAD_REPOSITORY)) {
+                if (runningJob.getJobName().equals(provider.getName())) {
+                    runningJob.cancel();
                 }
             }
 
             // Check if this repository is being processed by processing directive
-            if (getScheduler().getRunningJob().getType().equals(Constants.THREAD_SERVICE)) {
-                MetadataServiceManager msm = (MetadataServiceManager) getScheduler().getRunningJob();
+            if (runningJob.getType().equals(Constants.THREAD_SERVICE)) {
+                MetadataServiceManager msm = (MetadataServiceManager) runningJob;
                 Repository incomingRepo = msm.getIncomingRepository();
 
                 if (incomingRepo != null && incomingRepo.getName().equals(provider.getName())) {
-                    getScheduler().cancelRunningJob();
+                    runningJob.cancel();
                 }
             }
         }
@@ -9,9 +9,14 @@
 
 package xc.mst.oai;
 
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -66,6 +71,9 @@ public class Facade extends BaseManager {
     protected static final DateTimeFormatter UTC_PARSER = ISODateTimeFormat.dateTimeParser();
     protected static TransformerFactory transformerFactory = TransformerFactory.newInstance();
 
+    // how much of a streamed response is built up before it's written out
+    protected static final int RESPONSE_BUFFER_SIZE = 64 * 1024;
+
     protected Transformer transformer = null;
     protected XmlHelper xmlHelper = new XmlHelper();
 
@@ -78,6 +86,10 @@ public class Facade extends BaseManager {
     /** The service being harvested */
     private Service service = null;
 
+    public HarvestSessionCache getHarvestSessionCache() {
+        return (HarvestSessionCache) config.getBean("HarvestSessionCache");
+    }
+
     /**
      * Returns response date element
      * 
@@ -179,7 +191,70 @@ public class Facade extends BaseManager {
      *             Thrown when there is problem connecting to database
      */
     public String execute(OaiRequestBean oaiRequest) throws DatabaseConfigException {
+        setUp(oaiRequest);
+        return buildResponse(oaiRequest);
+    }
 
+    /**
+     * Executes the request, writing the response to out as UTF-8. ListRecords and ListIdentifiers
+     * responses are written a record at a time as they're built rather than built up as a String
+     * first (unless there's an xsl to apply to the records, which needs the whole response).
+     * 
+     * @param oaiRequest
+     *            OAI request
+     * @param out
+     *            where to write the response
+     * @throws DatabaseConfigException
+     *             Thrown when there is problem connecting to database
+     */
+    public void execute(OaiRequestBean oaiRequest, OutputStream out) throws DatabaseConfigException, IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), RESPONSE_BUFFER_SIZE);
+        setUp(oaiRequest);
+
+        String verb = oaiRequest.getVerb();
+        boolean listRecords = "ListRecords".equalsIgnoreCase(verb);
+        if (transformer != null || !(listRecords || "ListIdentifiers".equalsIgnoreCase(verb))) {
+            writer.write(buildResponse(oaiRequest));
+            writer.flush();
+            return;
+        }
+
+        try {
+            writer.write(Constants.OAI_RESPONSE_HEADER);
+            writer.write(getResponseDate());
+            writer.write("\n");
+            if (oaiRequest.getRequest() != null) {
+                writer.write(getRequestElement(oaiRequest.getRequest(), oaiRequest));
+                writer.write("\n");
+            }
+            if (listRecords) {
+                writeListRecords(oaiRequest, writer);
+            } else {
+                writeListIdentifiers(oaiRequest, writer);
+            }
+            writer.write("\n");
+            writer.write(Constants.OAI_RESPONSE_FOOTER);
+            writer.flush();
+        } catch (IOException e) {
+            // Most likely the harvester hung up part way through
+            log.warn("Unable to write the response to the " + verb + " request.", e);
+
+            LogWriter.addError(service.getHarvestOutLogFileName(), "The response to the " + verb + " request could not be written: " + e.getMessage());
+            errorCount++;
+        } catch (Exception e) {
+            log.error("An exception occurred while executing the request.", e);
+
+            LogWriter.addError(service.getHarvestOutLogFileName(), "An unexpected error occurred while executing the " + verb + " request.");
+            errorCount++;
+        } finally {
+            updateHarvestOutCounts(oaiRequest);
+        }
+    }
+
+    /**
+     * Loads the service being harvested and the xsl (if any) for the requested format
+     */
+    protected void setUp(OaiRequestBean oaiRequest) throws DatabaseConfigException {
         if (log.isDebugEnabled())
             log.debug("Executing request for verb " + oaiRequest.getVerb() + ".");
 
@@ -196,7 +271,9 @@ public class Facade extends BaseManager {
                 log.error("", t);
             }
         }
+    }
 
+    protected String buildResponse(OaiRequestBean oaiRequest) throws DatabaseConfigException {
         // If the verb was null, return a bad verb error
         // Otherwise execute the correct funtionality, and
         // return a bad verb error only when the verb is not
@@ -282,25 +359,29 @@ public class Facade extends BaseManager {
             return "";
         } finally // Update the error and warning count for the service
         {
-            // Load the provider again in case it was updated during the harvest
-            Service service = getServiceDAO().getById(this.service.getId());
-
-            // Increase the warning and error counts as appropriate, then update the provider
-            service.setHarvestOutWarnings(service.getHarvestOutWarnings() + warningCount);
-            service.setHarvestOutErrors(service.getHarvestOutErrors() + errorCount);
-
-            // Increase number of harvests if this is the initial request for harvest
-            if (oaiRequest.getVerb() != null && (oaiRequest.getVerb().equalsIgnoreCase("ListRecords")) &&
-                    (oaiRequest.getResumptionToken() == null || oaiRequest.getResumptionToken().trim().length() == 0) &&
-                    (oaiRequest.getMetadataPrefix() != null && oaiRequest.getMetadataPrefix().trim().length() != 0)) {
-                service.setNumberOfHarvests(service.getNumberOfHarvests() + 1);
-            }
+            updateHarvestOutCounts(oaiRequest);
+        }
+    }
 
-            try {
-                getServiceDAO().update(service);
-            } catch (DataException e) {
-                log.warn("Unable to update the provider's warning and error counts due to a Data Exception.", e);
-            }
+    protected void updateHarvestOutCounts(OaiRequestBean oaiRequest) throws DatabaseConfigException {
+        // Load the provider again in case it was updated during the harvest
+        Service service = getServiceDAO().getById(this.service.getId());
+
+        // Increase the warning and error counts as appropriate, then update the provider
+        service.setHarvestOutWarnings(service.getHarvestOutWarnings() + warningCount);
+        service.setHarvestOutErrors(service.getHarvestOutErrors() + errorCount);
+
+        // Increase number of harvests if this is the initial request for harvest
+        if (oaiRequest.getVerb() != null && (oaiRequest.getVerb().equalsIgnoreCase("ListRecords")) &&
+                (oaiRequest.getResumptionToken() == null || oaiRequest.getResumptionToken().trim().length() == 0) &&
+                (oaiRequest.getMetadataPrefix() != null && oaiRequest.getMetadataPrefix().trim().length() != 0)) {
+            service.setNumberOfHarvests(service.getNumberOfHarvests() + 1);
+        }
+
+        try {
+            getServiceDAO().update(service);
+        } catch (DataException e) {
+            log.warn("Unable to update the provider's warning and error counts due to a Data Exception.", e);
         }
     }
 
@@ -470,6 +551,22 @@ public class Facade extends BaseManager {
      * @throws DatabaseConfigException
      */
     public String doListIdentifiers(OaiRequestBean oaiRequest) throws DatabaseConfigException, IndexException {
+        StringWriter out = new StringWriter();
+        try {
+            writeListIdentifiers(oaiRequest, out);
+        } catch (IOException e) {
+            // a StringWriter doesn't throw them
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the response to the ListIdentifiers verb.
+     * 
+     * @throws DatabaseConfigException
+     */
+    protected void writeListIdentifiers(OaiRequestBean oaiRequest, Writer out) throws DatabaseConfigException, IndexException, IOException {
         if (log.isDebugEnabled())
             log.debug("Entering doListIdentifiers");
 
@@ -480,15 +577,15 @@ public class Facade extends BaseManager {
             LogWriter.addWarning(service.getHarvestOutLogFileName(), "The OAI ListIdentifiers request did not contain a metadataFormat.");
             warningCount++;
 
-            return ErrorBuilder.badArgumentError("Missing metadataPrefix parameter");
-
+            out.write(ErrorBuilder.badArgumentError("Missing metadataPrefix parameter"));
+            return;
         }
 
         // Get the XML for the identifiers
         // The last parameter is true to query for just the identifiers and not the full records
-        return handleRecordLists(oaiRequest.getFrom(), oaiRequest.getUntil(),
+        writeRecordList(oaiRequest.getFrom(), oaiRequest.getUntil(),
                 getPersistedMetadataPrefix(oaiRequest.getMetadataPrefix()),
-                oaiRequest.getSet(), oaiRequest.getResumptionToken(), false);
+                oaiRequest.getSet(), oaiRequest.getResumptionToken(), false, out);
 
     }
 
@@ -528,6 +625,22 @@ public class Facade extends BaseManager {
      * @throws DatabaseConfigException
      */
     public String doListRecords(OaiRequestBean oaiRequest) throws DatabaseConfigException, IndexException {
+        StringWriter out = new StringWriter();
+        try {
+            writeListRecords(oaiRequest, out);
+        } catch (IOException e) {
+            // a StringWriter doesn't throw them
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the response to the ListRecords verb.
+     * 
+     * @throws DatabaseConfigException
+     */
+    protected void writeListRecords(OaiRequestBean oaiRequest, Writer out) throws DatabaseConfigException, IndexException, IOException {
         if (log.isDebugEnabled())
             log.debug("Entering doListRecords");
 
@@ -538,14 +651,14 @@ public class Facade extends BaseManager {
             LogWriter.addWarning(service.getHarvestOutLogFileName(), "The OAI ListRecords request did not contain a metadataFormat.");
             warningCount++;
 
-            return ErrorBuilder.badArgumentError("Missing metadataPrefix parameter");
-
+            out.write(ErrorBuilder.badArgumentError("Missing metadataPrefix parameter"));
+            return;
         }
         // Get the XML for the full records
         // The last parameter is true to query for the full records and not just the identifiers
-        return handleRecordLists(oaiRequest.getFrom(), oaiRequest.getUntil(),
+        writeRecordList(oaiRequest.getFrom(), oaiRequest.getUntil(),
                 getPersistedMetadataPrefix(oaiRequest.getMetadataPrefix()),
-                oaiRequest.getSet(), oaiRequest.getResumptionToken(), true);
+                oaiRequest.getSet(), oaiRequest.getResumptionToken(), true, out);
 
     }
 
@@ -626,7 +739,7 @@ public class Facade extends BaseManager {
 	                }
 	                StringBuilder stringBuilder = new StringBuilder();
 	                stringBuilder.append("<record>")
-	                            .append(getHeader(record))
+	                            .append(getHeader(record, false))
 	                            .append("<metadata>")
 	                            .append(xmlHelper.getStringRaw(recordContentEl))
 	                            .append("</metadata>")
@@ -646,7 +759,7 @@ public class Facade extends BaseManager {
     }
 
     /**
-     * Returns the OAI XML for a list of records or identifiers.
+     * Writes the OAI XML for a list of records or identifiers.
      * 
      * @param from
      *            The earliest date for returned records or identifiers. If null or empty the earliest date out of all records will be used
@@ -660,17 +773,19 @@ public class Facade extends BaseManager {
      *            The resumption token's ID
      * @param getRecords
      *            true if we should return the full records, false if we should only return the headers
-     * @return The XML containing a list of headers or record and header combinations as well as a resumption token.
-     *         These should be included in the response's ListRecords or ListIdentifiers element.
+     * @param out
+     *            where to write the ListRecords or ListIdentifiers element (a list of headers or record and header
+     *            combinations as well as a resumption token), or the error if there is one
      * @throws DatabaseConfigException
      */
-    private String handleRecordLists(String from, String until, String metadataPrefix, String set, String resumptionToken, boolean getRecords)
-            throws DatabaseConfigException, IndexException {
+    private void writeRecordList(String from, String until, String metadataPrefix, String set, String resumptionToken, boolean getRecords,
+            Writer out) throws DatabaseConfigException, IndexException, IOException {
         if (log.isDebugEnabled())
-            log.debug("Entering handleRecordLists");
+            log.debug("Entering writeRecordList");
 
         if (from != null && until != null && from.length() != until.length()) {
-            return ErrorBuilder.badArgumentError("From and until have different levels of granularity.");
+            out.write(ErrorBuilder.badArgumentError("From and until have different levels of granularity."));
+            return;
         }
 
         // The from and until dates. They will be null if the passed Strings could not be parsed
@@ -679,7 +794,8 @@ public class Facade extends BaseManager {
             try {
                 fromDate = new Date(UTC_PARSER.parseDateTime(from).getMillis());
             } catch (IllegalArgumentException iae) {
-                return ErrorBuilder.badArgumentError("from: " + from);
+                out.write(ErrorBuilder.badArgumentError("from: " + from));
+                return;
             }
         } else {
             fromDate = new Date(0);
@@ -689,7 +805,8 @@ public class Facade extends BaseManager {
             try {
                 untilDate = new Date(UTC_PARSER.parseDateTime(until).getMillis());
             } catch (IllegalArgumentException iae) {
-                return ErrorBuilder.badArgumentError("until: " + until);
+                out.write(ErrorBuilder.badArgumentError("until: " + until));
+                return;
             }
         } else {
             untilDate = new Date();
@@ -698,6 +815,9 @@ public class Facade extends BaseManager {
         // Starting record id
         long startingId = 0;
 
+        // What's known of the harvest from earlier pages
+        HarvestSessionCache.Session session = null;
+
         // The Format and Set Objects associated with the OAI request
         Format format;
         Set setObject = null;
@@ -717,6 +837,7 @@ public class Facade extends BaseManager {
             metadataPrefix = rtSplit[3];
             startingId = Long.parseLong(rtSplit[4]);
 
+            session = getHarvestSessionCache().get(resumptionToken);
         }
 
         // Get the Set Object for the requested set
@@ -730,7 +851,8 @@ public class Facade extends BaseManager {
                 LogWriter.addWarning(service.getHarvestOutLogFileName(), "The requested set \"" + set + "\" could not be found.");
                 warningCount++;
 
-                return XMLUtil.xmlTag("error", Constants.ERROR_BAD_SET, new String[] { "code", "badArgument" });
+                out.write(XMLUtil.xmlTag("error", Constants.ERROR_BAD_SET, new String[] { "code", "badArgument" }));
+                return;
             }
         }
 
@@ -742,7 +864,8 @@ public class Facade extends BaseManager {
             LogWriter.addWarning(service.getHarvestOutLogFileName(), "The requested metadataPrefix \"" + metadataPrefix + "\" could not be found.");
             warningCount++;
 
-            return XMLUtil.xmlTag("error", Constants.ERROR_NO_RECORDS_MATCH, new String[] { "code", "noRecordsMatch" });
+            out.write(XMLUtil.xmlTag("error", Constants.ERROR_NO_RECORDS_MATCH, new String[] { "code", "noRecordsMatch" }));
+            return;
         }
 
         List<Record> records = new ArrayList<Record>();
@@ -750,24 +873,30 @@ public class Facade extends BaseManager {
         // Total number of records satisfying the criteria. This is not the number of records loaded.
         // long totalRecords = service.getMetadataService().getRepository().getRecordCount(fromDate, untilDate, format, setObject);
 
-        // BDA TODO: first do a count
-        long totalCount = service.getMetadataService().getRepository().getRecordCount(fromDate, untilDate, format, setObject);
-        // long totalCount = -1;
-        log.debug("totalCount: " + totalCount);
+        // The list is counted once, for its first page, and the count carried forward from there.
+        // cursor is the number of records returned before this page, or -1 if that isn't known
+        // (the harvest's session has gone).
+        long totalCount;
+        long cursor;
+        if (session != null) {
+            totalCount = session.getCompleteListSize();
+            cursor = session.getCursor();
+        } else {
+            totalCount = service.getMetadataService().getRepository().getRecordCount(fromDate, untilDate, format, setObject);
+            cursor = resumptionToken == null ? 0 : -1;
+        }
+        log.debug("totalCount: " + totalCount + " cursor: " + cursor);
 
         if (totalCount != 0) {
             records = service.getMetadataService().getRepository().getRecords(fromDate, untilDate, startingId, format, setObject);
         }
 
-        // The XML for the OAI result
-        StringBuffer xml = new StringBuffer();
-
         // If there were no records returned, set an error signifying that no records matched.
         // Otherwise, append data for each returned record to the result and insert a resumption token
         // to the database if needed
         if (records == null || records.size() == 0) {
             LogWriter.addInfo(service.getHarvestOutLogFileName(), "There were no records which matched the parameters provided in the " + (getRecords ? " ListRecords " : " ListIdentifiers") + " request.");
-            return xml.append(XMLUtil.xmlTag("error", Constants.ERROR_NO_RECORDS_MATCH, new String[] { "code", "noRecordsMatch" })).toString();
+            out.write(XMLUtil.xmlTag("error", Constants.ERROR_NO_RECORDS_MATCH, new String[] { "code", "noRecordsMatch" }));
         } else {
             // True if there are more results remaining than we can return at once
             boolean hasMore = records.size() == MSTConfiguration.getInstance().getPropertyAsInt(Constants.CONFIG_OAI_REPO_MAX_RECORDS, 5000);
@@ -780,42 +909,48 @@ public class Facade extends BaseManager {
             // The number of records returned
             int returnedRecordsCount = 0;
 
+            String listTag = getRecords ? "ListRecords" : "ListIdentifiers";
+            out.write("<" + listTag + ">");
+
             // Add whitespace to make the result more readable
-            xml.append("\n");
+            out.write("\n");
 
-            // Append XML for each record to the result
-            for (Record record : records) {
-                // If we're to get the records, append the record's OAI XML.
+            // Write the XML for each record
+            for (int i = 0; i < records.size(); i++) {
+                Record record = records.get(i);
+                // Nothing else needs the record once it's written, so let it go
+                records.set(i, null);
+
+                // If we're to get the records, write the record's OAI XML.
                 // Otherwise, we're just supposed to get the identifiers, so
-                // append the record's OAI header
+                // write the record's OAI header
                 if (getRecords) {
 
-                    // For deleted record, just append the header
+                    // For deleted record, just write the header
                     if (Record.DELETED == record.getStatus()) {
-                        String header = getHeader(record);
-                        header = header.replaceAll("<header>", "<header status=\"deleted\">");
-                        xml.append("<record>\n")
-                                .append(header)
-                                .append("\n</record>\n");
+                        out.write("<record>\n");
+                        out.write(getHeader(record, true));
+                        out.write("\n</record>\n");
                     } else if (Record.ACTIVE == record.getStatus()) {
-                        xml.append("<record>\n");
+                        out.write("<record>\n");
 
-                        xml.append(getHeader(record));
+                        out.write(getHeader(record, false));
                         if (getRecords && !record.getDeleted()) {
                             if (record.getOaiXml() == null) {
                                 log.error("record has no content!!!!");
                                 log.error("record.getStatus(): " + record.getStatus());
                                 log.error("record.getId(): " + record.getId());
                             } else {
-                                xml.append("\n<metadata>\n")
-                                        .append(record.getOaiXml().replaceAll("<\\?xml.*\\?>", ""))
-                                        .append("\n</metadata>\n");
+                                out.write("\n<metadata>\n");
+                                writeWithoutXmlDeclaration(record.getOaiXml(), out);
+                                out.write("\n</metadata>\n");
                             }
                         }
-                        xml.append("\n</record>\n");
+                        out.write("\n</record>\n");
                     }
                 } else {
-                    xml.append(getHeader(record).replaceAll("<\\?xml.*\\?>", "")).append("\n");
+                    out.write(getHeader(record, false));
+                    out.write("\n");
                 }
 
                 startingId = record.getId();
@@ -845,24 +980,49 @@ public class Facade extends BaseManager {
                 newResToken.setSetSpec(set);
                 newResToken.setMetadataFormat(metadataPrefix);
                 newResToken.setStartingId(startingId);
+                String newToken = newResToken.getToken();
+
+                getHarvestSessionCache().put(newToken,
+                        new HarvestSessionCache.Session(totalCount, cursor == -1 ? -1 : cursor + returnedRecordsCount));
 
+                List<String> attributes = new ArrayList<String>();
                 if (totalCount < -1) {
-                    xml.append("<!-- completeListSize is an estimate -->");
+                    out.write("<!-- completeListSize is an estimate -->");
                     totalCount = -1 * totalCount;
                 }
                 if (totalCount > 0) {
-                    xml.append(XMLUtil.xmlTag("resumptionToken", "" + newResToken.getToken(), new String[] { "completeListSize", "" + totalCount }));
-                } else {
-                    xml.append(XMLUtil.xmlTag("resumptionToken", "" + newResToken.getToken()
-                            ));
-                    // ,new String[] { "cursor", "" + offset, "completeListSize", ""+totalRecords } ));
-
+                    attributes.add("completeListSize");
+                    attributes.add("" + totalCount);
+                }
+                if (cursor >= 0) {
+                    attributes.add("cursor");
+                    attributes.add("" + cursor);
                 }
+                out.write(XMLUtil.xmlTag("resumptionToken", newToken, attributes.toArray(new String[attributes.size()])));
 
                 // LogWriter.addInfo(service.getHarvestOutLogFileName(), "Returning " + totalRecords + " records and the resumptionToken " + newResToken.getId() + " in response to the " + (getRecords ? " ListRecords " : " ListIdentifiers") + " request.");
+            } else if (resumptionToken != null) {
+                // The harvest is finished
+                getHarvestSessionCache().remove(resumptionToken);
+            }
+            out.write("</" + listTag + ">");
+        }
+    }
+
+    /*
+     * Writes a record's xml less the xml declaration it may start with.  The declaration is
+     * looked for only at the start (where it has to be), so the rest of the record needn't be
+     * scanned or copied.
+     */
+    private void writeWithoutXmlDeclaration(String xml, Writer out) throws IOException {
+        int start = 0;
+        if (xml.startsWith("<?xml")) {
+            int end = xml.indexOf("?>");
+            if (end != -1) {
+                start = end + 2;
             }
         }
-        return XMLUtil.xmlTag((getRecords ? "ListRecords" : "ListIdentifiers"), xml.toString());
+        out.write(xml, start, xml.length() - start);
     }
 
     /*
@@ -904,10 +1064,10 @@ public class Facade extends BaseManager {
     /*
      * Builds the OAI header
      */
-    private String getHeader(Record record) {
+    private String getHeader(Record record, boolean deleted) {
 
         StringBuilder header = new StringBuilder();
-        header.append("<header>\n");
+        header.append(deleted ? "<header status=\"deleted\">\n" : "<header>\n");
 
         // Inject service to get OAI identifier
         record.setService(service);
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.oai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import xc.mst.constants.Constants;
+import xc.mst.manager.BaseService;
+
+/**
+ * What the OAI repository remembers of a harvest in progress between its pages, keyed by the
+ * resumption token handed out with the last page.  The token itself still carries everything
+ * needed to serve the next page (the last record_id is in it), so a session that's been evicted
+ * or has expired only costs a count query; it isn't an error.
+ */
+public class HarvestSessionCache extends BaseService {
+
+    public static class Session {
+        // the number of records in the whole list
+        protected long completeListSize;
+        // the number of records handed out before the page this token asks for
+        protected long cursor;
+        protected long expiresAt;
+
+        public Session(long completeListSize, long cursor) {
+            this.completeListSize = completeListSize;
+            this.cursor = cursor;
+        }
+
+        public long getCompleteListSize() {
+            return completeListSize;
+        }
+
+        public long getCursor() {
+            return cursor;
+        }
+    }
+
+    protected int maxSessions = 1000;
+    protected long timeoutMillis = 3600 * 1000l;
+
+    // in access order, so the least recently used goes first once there are too many
+    protected Map<String, Session> sessions = null;
+
+    public void init() {
+        maxSessions = config.getPropertyAsInt(Constants.CONFIG_OAI_REPO_MAX_SESSIONS, 1000);
+        timeoutMillis = config.getPropertyAsInt(Constants.CONFIG_OAI_REPO_SESSION_TIMEOUT, 3600) * 1000l;
+        sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    /**
+     * @return the session the token was handed out with, or null if it's expired or been evicted
+     */
+    public synchronized Session get(String resumptionToken) {
+        Session session = sessions.get(resumptionToken);
+        if (session != null && session.expiresAt < System.currentTimeMillis()) {
+            sessions.remove(resumptionToken);
+            session = null;
+        }
+        return session;
+    }
+
+    public synchronized void put(String resumptionToken, Session session) {
+        session.expiresAt = System.currentTimeMillis() + timeoutMillis;
+        sessions.put(resumptionToken, session);
+    }
+
+    public synchronized void remove(String resumptionToken) {
+        sessions.remove(resumptionToken);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+}
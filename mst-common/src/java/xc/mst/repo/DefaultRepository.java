@@ -14,6 +14,7 @@ import gnu.trove.TLongHashSet;
 import gnu.trove.TLongLongHashMap;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -54,7 +55,14 @@ public class DefaultRepository extends BaseService implements Repository {
     // really parentIDsOfRecordsToActivate
     protected TLongHashSet recordsToActivate = new TLongHashSet();
     protected Map<String, AtomicInteger> recordCountsToActivateByType = new HashMap<String, AtomicInteger>();
-    protected Map<String, Long> completeListSizeMap = new LinkedHashMap<String, Long>(1000);
+    // each first page of an outgoing harvest has its own until, so this has to be bounded
+    protected Map<String, Long> completeListSizeMap = Collections.synchronizedMap(new LinkedHashMap<String, Long>(1000) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > 1000;
+        }
+    });
 
     protected String name = null;
 
@@ -170,16 +178,20 @@ public class DefaultRepository extends BaseService implements Repository {
         if (getRepositoryDAO().commitIfNecessary(name, force, processedRecordsCount)) {
             predSuccMap.clear();
             
-            List<long[]> uplinksAdded = getArrayListFromKeyedMap(fromToUplinksAdded);
-            getRepositoryDAO().persistLinkedRecordIds(name, uplinksAdded);            
-            uplinksAdded.clear();
+            // the links and counts are only saved once the records they're about are written
+            final List<long[]> uplinksAdded = getArrayListFromKeyedMap(fromToUplinksAdded);
             fromToUplinksAdded.clear(); toFromUplinksAdded.clear();
             
-            List<long[]> uplinksRemoved = getArrayListFromKeyedMap(fromToUplinksRemoved);
-            getRepositoryDAO().persistLinkedRecordIdsRemoved(name, uplinksRemoved);
-            uplinksRemoved.clear();
+            final List<long[]> uplinksRemoved = getArrayListFromKeyedMap(fromToUplinksRemoved);
             fromToUplinksRemoved.clear(); toFromUplinksRemoved.clear();
 
+            whenWritten(new Runnable() {
+                public void run() {
+                    getRepositoryDAO().persistLinkedRecordIds(name, uplinksAdded);
+                    getRepositoryDAO().persistLinkedRecordIdsRemoved(name, uplinksRemoved);
+                }
+            });
+
             activateRecords();
     	    activateLinkedRecords();
     	    
@@ -194,7 +206,13 @@ public class DefaultRepository extends BaseService implements Repository {
     	    }
     	    recordCountsToActivateByType.clear();
 
-            getRecordCountsDAO().persistRecordCounts(name, incomingRecordCounts, outgoingRecordCounts);
+            final RecordCounts incoming = incomingRecordCounts == null ? null : incomingRecordCounts.copy();
+            final RecordCounts outgoing = outgoingRecordCounts == null ? null : outgoingRecordCounts.copy();
+            whenWritten(new Runnable() {
+                public void run() {
+                    getRecordCountsDAO().persistRecordCounts(name, incoming, outgoing);
+                }
+            });
             if (incomingRecordCounts != null)
                 incomingRecordCounts.clear();
             if (outgoingRecordCounts != null)
@@ -205,6 +223,10 @@ public class DefaultRepository extends BaseService implements Repository {
         }
     }
 
+    public void whenWritten(Runnable callback) {
+        getRepositoryDAO().whenWritten(name, callback);
+    }
+
     private void activateRecords() {
 	    getRepositoryDAO().activateRecords(name, recordsToActivate);
 	    recordsToActivate.clear();
@@ -237,7 +259,7 @@ public class DefaultRepository extends BaseService implements Repository {
     }
     
     public Record getUnpersistedRecord(long id) {
-    	return getRepositoryDAO().getUnpersistedRecord(id);
+    	return getRepositoryDAO().getUnpersistedRecord(name, id);
     }
 
     public List<Record> getRecords(Date from, Date until, Long startingId, Format inputFormat, Set inputSet) {
@@ -282,6 +304,10 @@ public class DefaultRepository extends BaseService implements Repository {
         }
     }
 
+    public long getRecordCountEstimate(Date from, Date until, Format inputFormat, Set inputSet) {
+        return getRepositoryDAO().getRecordCountEstimate(name, from, until, inputFormat, inputSet);
+    }
+
     public List<Record> getRecordHeader(Date from, Date until, Long startingId, Format inputFormat, Set inputSet) {
         LOG.debug("from:" + from + " until:" + until + " startingId:" + startingId + " inputFormat:" + inputFormat + " inputSet:" + inputSet);
         List<Record> records = getRepositoryDAO().getRecordHeader(name, from, until, startingId, inputFormat, inputSet);
@@ -462,8 +488,14 @@ public class DefaultRepository extends BaseService implements Repository {
         recordsToActivate.add(recordId);
     }
 
+    public void planIndices(long records2Process) {
+        getRepositoryDAO().planIndices(name, records2Process);
+    }
+
     public void processComplete() {
+        getRepositoryDAO().waitForPendingCommits(name);
         getRepositoryDAO().createIndicesIfNecessary(name);
+        getRepositoryDAO().getRecordStatsDAO().verifyIfDue(name);
         getRepositoryDAO().updateOutgoingRecordCounts(name);
     }
 
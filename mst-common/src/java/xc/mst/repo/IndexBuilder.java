@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Creates the missing indexes of a repository's tables, one table per thread.
+ *
+ * All of a table's indexes are added by a single alter table, so MySQL rebuilds the table
+ * once rather than once per index, and each table is altered on its own connection from the
+ * pool, so the tables are rebuilt side by side. A MyISAM table can still be read while it's
+ * being altered. Tables are started in the order they were first added to, so RepositoryDAO
+ * adds the records table first: its idx_records_status is what ready4harvest waits for.
+ *
+ * Progress (each table as it starts and finishes) is logged at info.
+ */
+public class IndexBuilder {
+
+    private static final Logger LOG = Logger.getLogger(IndexBuilder.class);
+
+    protected JdbcTemplate jdbcTemplate = null;
+    protected String schema = null;
+    protected int threads = 1;
+
+    // table -> index name -> columns
+    protected Map<String, Map<String, String>> indexesByTable = new LinkedHashMap<String, Map<String, String>>();
+
+    /**
+     * @param schema
+     *            the repository's schema
+     * @param threads
+     *            how many tables are altered at once; each takes a connection for as long as it runs
+     */
+    public IndexBuilder(JdbcTemplate jdbcTemplate, String schema, int threads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param columns
+     *            eg "record_id" or "type, status"
+     */
+    public void add(String table, String indexName, String columns) {
+        Map<String, String> indexes = indexesByTable.get(table);
+        if (indexes == null) {
+            indexes = new LinkedHashMap<String, String>();
+            indexesByTable.put(table, indexes);
+        }
+        indexes.put(indexName, columns);
+    }
+
+    public boolean isEmpty() {
+        return indexesByTable.isEmpty();
+    }
+
+    /**
+     * Creates the indexes that have been added, and blocks until every table is done. A failure
+     * is logged (as a failed create index always was) rather than thrown.
+     */
+    public void build() {
+        if (indexesByTable.isEmpty()) {
+            return;
+        }
+        final int tableCount = indexesByTable.size();
+        final AtomicInteger tablesDone = new AtomicInteger(0);
+        final long start = System.currentTimeMillis();
+        LOG.info(schema + ": creating the indexes of " + tableCount + " tables on " + Math.min(threads, tableCount) + " threads");
+
+        ExecutorService builders = Executors.newFixedThreadPool(Math.min(threads, tableCount), new ThreadFactory() {
+            protected AtomicInteger threadNum = new AtomicInteger(0);
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "index-builder-" + schema + "-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (final Map.Entry<String, Map<String, String>> table : indexesByTable.entrySet()) {
+                futures.add(builders.submit(new Runnable() {
+                    public void run() {
+                        long tableStart = System.currentTimeMillis();
+                        LOG.info(schema + "." + table.getKey() + ": creating " + table.getValue().keySet());
+                        buildTable(table.getKey(), table.getValue());
+                        LOG.info(schema + "." + table.getKey() + ": indexes created in " +
+                                (System.currentTimeMillis() - tableStart) + "ms (" +
+                                tablesDone.incrementAndGet() + " of " + tableCount + " tables done)");
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException ee) {
+                    // buildTable catches everything, so this doesn't happen
+                    LOG.error("", ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOG.error(schema + ": interrupted while waiting for its indexes", ie);
+            Thread.currentThread().interrupt();
+        } finally {
+            builders.shutdown();
+        }
+        indexesByTable.clear();
+        LOG.info(schema + ": indexes created in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    protected void buildTable(String table, Map<String, String> indexes) {
+        StringBuilder sb = new StringBuilder("alter table " + schema + "." + table);
+        int i = 0;
+        for (Map.Entry<String, String> index : indexes.entrySet()) {
+            sb.append(i++ == 0 ? " " : ", ");
+            sb.append("add index " + index.getKey() + " (" + index.getValue() + ")");
+        }
+        try {
+            jdbcTemplate.execute(sb.toString());
+        } catch (Throwable t) {
+            // eg one of them exists already; try them one at a time, so the others still get made
+            LOG.error(sb.toString(), t);
+            if (indexes.size() > 1) {
+                for (Map.Entry<String, String> index : indexes.entrySet()) {
+                    try {
+                        jdbcTemplate.execute("create index " + index.getKey() + " on " + schema + "." + table +
+                                " (" + index.getValue() + ")");
+                    } catch (Throwable t2) {
+                        LOG.error("", t2);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import gnu.trove.TLongHashSet;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+
+import xc.mst.bo.record.Record;
+import xc.mst.dao.BaseDAO;
+import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.TimingLogger;
+
+/**
+ * A repository's record counts by type and status, kept in its record_stats table so that the
+ * totals RepositoryDAO reports don't need a scan of the records and record_updates tables.
+ *
+ * RepositoryDAO applies the change each batch makes: the rows the batch replaces are looked up
+ * by id before it's written, and their counts are moved to the batch's own types and statuses.
+ * A repository's table is filled by a full count the first time it's read, and the counts are
+ * checked against a full count (and corrected) by {@link #verifyIfDue(String)}, since anything
+ * that writes the records table behind RepositoryDAO's back isn't seen.
+ *
+ * With db.recordStats.enabled=false, getStats counts the tables every time instead.
+ */
+public class RecordStatsDAO extends BaseDAO {
+
+    private static final Logger LOG = Logger.getLogger(RecordStatsDAO.class);
+
+    public static final String RECORD_STATS_TABLE = "record_stats";
+    public static final String VERIFIED_AT_PROPERTY = "recordStats.verifiedAt";
+
+    // how many ids go in each query for the rows a batch replaces
+    protected static final int IDS_PER_QUERY = 1000;
+
+    // also in create_repo.sql; repeated here for repositories created before there was one
+    protected static final String CREATE_TABLE_SQL =
+            "create table if not exists %s ( " +
+                    "type            char(1)    not null default '', " +
+                    "status          char(1)    not null default '', " +
+                    "record_count    bigint     not null default 0, " +
+                    "update_count    bigint     not null default 0, " +
+                    "PRIMARY KEY (type, status) " +
+                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8";
+
+    /**
+     * The number of records with a type and status, and the number of record_updates rows
+     * written for them. A record's updates stay with the status it was written with, so only
+     * their total for a type is meaningful.
+     */
+    public static class Row {
+        // '' for records without one
+        public String type;
+        public String status;
+        public long records;
+        public long updates;
+
+        public Row(String type, String status) {
+            this.type = type;
+            this.status = status;
+        }
+    }
+
+    /**
+     * The change a batch makes to a repository's counts.
+     */
+    public static class Deltas {
+        protected Map<List<String>, Row> rows = new LinkedHashMap<List<String>, Row>();
+
+        public void add(String type, String status, long records, long updates) {
+            List<String> key = Arrays.asList(type, status);
+            Row row = rows.get(key);
+            if (row == null) {
+                row = new Row(type, status);
+                rows.put(key, row);
+            }
+            row.records += records;
+            row.updates += updates;
+        }
+
+        public boolean isEmpty() {
+            return rows.isEmpty();
+        }
+    }
+
+    // the schemas whose counts are known to be in record_stats, and when they were last verified
+    protected Map<String, Long> verifiedAt = new ConcurrentHashMap<String, Long>();
+
+    // repo name -> the lock held while its records and counts are changed together
+    protected Map<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    public boolean isEnabled() {
+        return MSTConfiguration.getInstance().getPropertyAsBoolean("db.recordStats.enabled", true);
+    }
+
+    /**
+     * The lock to hold from a batch's deltas until they're applied.  Each repository has its own,
+     * so writes to different repositories don't wait on each other.
+     */
+    public Object getLock(String name) {
+        Object lock = locks.get(name);
+        if (lock == null) {
+            synchronized (locks) {
+                lock = locks.get(name);
+                if (lock == null) {
+                    lock = new Object();
+                    locks.put(name, lock);
+                }
+            }
+        }
+        return lock;
+    }
+
+        protected String getTableName(String repoName, String tableName) {
+        return " " + getUtil().getDBSchema(repoName) + "." + tableName;
+    }
+
+    /**
+     * @param updates
+     *            whether the update counts are wanted; they're only counted, when
+     *            db.recordStats.enabled is false, if they are
+     * @return the repository's counts, ordered by type and status
+     */
+    public List<Row> getStats(String name, boolean updates) {
+        if (!isEnabled()) {
+            return countStats(name, updates);
+        }
+        ensureBuilt(name);
+        return getStatsTable(name);
+    }
+
+    /**
+     * Counts the records and record_updates tables.
+     *
+     * @param updates
+     *            false to leave the (slower) count of record_updates out
+     */
+    protected List<Row> countStats(String name, boolean updates) {
+        Deltas counts = new Deltas();
+        List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(
+                "select coalesce(type, '') type, coalesce(status, '') status, count(*) c from " +
+                        getTableName(name, RepositoryDAO.RECORDS_TABLE) + " group by type, status order by type, status");
+        for (Map<String, Object> row : rows) {
+            counts.add((String) row.get("type"), (String) row.get("status"), getUtil().getLongPrim(row.get("c")), 0);
+        }
+        if (updates) {
+            rows = this.jdbcTemplate.queryForList(
+                    "select coalesce(r.type, '') type, coalesce(r.status, '') status, count(*) c " +
+                            " from " +
+                            getTableName(name, RepositoryDAO.RECORD_UPDATES_TABLE) + " as u, " +
+                            getTableName(name, RepositoryDAO.RECORDS_TABLE) + " as r " +
+                            " where u.record_id = r.record_id " +
+                            " group by r.type, r.status");
+            for (Map<String, Object> row : rows) {
+                counts.add((String) row.get("type"), (String) row.get("status"), 0, getUtil().getLongPrim(row.get("c")));
+            }
+        }
+        List<Row> stats = new ArrayList<Row>(counts.rows.values());
+        Collections.sort(stats, new Comparator<Row>() {
+            public int compare(Row r1, Row r2) {
+                int c = r1.type.compareTo(r2.type);
+                return c != 0 ? c : r1.status.compareTo(r2.status);
+            }
+        });
+        return stats;
+    }
+
+    protected void ensureBuilt(String name) {
+        String schema = getUtil().getDBSchema(name);
+        if (!verifiedAt.containsKey(schema)) {
+            Long at = getVerifiedAt(name);
+            if (at == null) {
+                verify(name);
+            } else {
+                verifiedAt.put(schema, at);
+            }
+        }
+    }
+
+    protected boolean isBuilt(String name) {
+        if (!isEnabled()) {
+            return false;
+        }
+        String schema = getUtil().getDBSchema(name);
+        if (!verifiedAt.containsKey(schema)) {
+            Long at = getVerifiedAt(name);
+            if (at == null) {
+                return false;
+            }
+            verifiedAt.put(schema, at);
+        }
+        return true;
+    }
+
+    protected Long getVerifiedAt(String name) {
+        try {
+            String at = this.jdbcTemplate.queryForObject(
+                    "select value from " + getTableName(name, RepositoryDAO.PROPERTIES) + " where prop_key = ?",
+                    String.class, VERIFIED_AT_PROPERTY);
+            return at == null ? null : Long.valueOf(at);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    protected void setVerifiedAt(String name) {
+        long now = System.currentTimeMillis();
+        this.jdbcTemplate.update("insert into " + getTableName(name, RepositoryDAO.PROPERTIES) +
+                " values (?, ?) on duplicate key update value=?",
+                VERIFIED_AT_PROPERTY, "" + now, "" + now);
+        verifiedAt.put(getUtil().getDBSchema(name), now);
+    }
+
+    /**
+     * Starts keeping the counts of a repository that's just been created (and so is empty).
+     */
+    public void initialize(String name) {
+        if (isEnabled()) {
+            this.jdbcTemplate.execute(String.format(CREATE_TABLE_SQL, getTableName(name, RECORD_STATS_TABLE)));
+            setVerifiedAt(name);
+        }
+    }
+
+    /**
+     * Replaces the repository's counts with a full count of its tables, logging any that had
+     * drifted.
+     *
+     * RepositoryDAO holds the repository's {@link #getLock(String)} from a batch's getDeltas until
+     * its apply, so the count never sees a batch that's written but not yet applied (or the reverse).
+     *
+     * @return the number of counts that were wrong
+     */
+    public int verify(String name) {
+        synchronized (getLock(name)) {
+            return verifyLocked(name);
+        }
+    }
+
+    protected int verifyLocked(String name) {
+        TimingLogger.start("RecordStatsDAO.verify");
+        this.jdbcTemplate.execute(String.format(CREATE_TABLE_SQL, getTableName(name, RECORD_STATS_TABLE)));
+        String schema = getUtil().getDBSchema(name);
+        boolean built = getVerifiedAt(name) != null;
+
+        List<Row> actual = countStats(name, true);
+        int wrong = 0;
+        if (built) {
+            // updates are only compared by type, since a record's may be counted under an earlier status
+            Deltas diff = new Deltas();
+            Deltas updatesDiff = new Deltas();
+            for (Row row : actual) {
+                diff.add(row.type, row.status, row.records, 0);
+                updatesDiff.add(row.type, "", 0, row.updates);
+            }
+            for (Row row : getStatsTable(name)) {
+                diff.add(row.type, row.status, -row.records, 0);
+                updatesDiff.add(row.type, "", 0, -row.updates);
+            }
+            for (Row row : diff.rows.values()) {
+                if (row.records != 0) {
+                    wrong++;
+                    LOG.warn(schema + " record_stats " + row.type + "-" + row.status + " was off by " +
+                            row.records + " records; corrected");
+                }
+            }
+            for (Row row : updatesDiff.rows.values()) {
+                if (row.updates != 0) {
+                    wrong++;
+                    LOG.warn(schema + " record_stats " + row.type + " was off by " + row.updates + " updates; corrected");
+                }
+            }
+        }
+        this.jdbcTemplate.update("delete from " + getTableName(name, RECORD_STATS_TABLE));
+        Deltas counts = new Deltas();
+        for (Row row : actual) {
+            counts.add(row.type, row.status, row.records, row.updates);
+        }
+        apply(name, counts);
+
+        setVerifiedAt(name);
+        TimingLogger.stop("RecordStatsDAO.verify");
+        LOG.info((built ? "verified " : "built ") + schema + " record_stats" + (built ? ", " + wrong + " counts were wrong" : ""));
+        return wrong;
+    }
+
+    protected List<Row> getStatsTable(String name) {
+        List<Row> stats = new ArrayList<Row>();
+        List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(
+                "select type, status, record_count, update_count from " + getTableName(name, RECORD_STATS_TABLE) +
+                        " order by type, status");
+        for (Map<String, Object> row : rows) {
+            Row r = new Row((String) row.get("type"), (String) row.get("status"));
+            r.records = getUtil().getLongPrim(row.get("record_count"));
+            r.updates = getUtil().getLongPrim(row.get("update_count"));
+            stats.add(r);
+        }
+        return stats;
+    }
+
+    /**
+     * Verifies the repository's counts if they haven't been for db.recordStats.verifyIntervalHours
+     * (never, if that's 0). Called when a harvest or service finishes with the repository.
+     */
+    public void verifyIfDue(String name) {
+        int hours = MSTConfiguration.getInstance().getPropertyAsInt("db.recordStats.verifyIntervalHours", 24);
+        if (!isEnabled() || hours <= 0) {
+            return;
+        }
+        Long at = getVerifiedAt(name);
+        if (at == null || System.currentTimeMillis() - at >= hours * 60L * 60L * 1000L) {
+            verify(name);
+        }
+    }
+
+    /**
+     * Looks up the rows a batch is about to replace. Call before the batch is written, and pass
+     * the result to {@link #apply(String, Deltas)} afterwards.
+     *
+     * @return the batch's change to the counts, or null if the repository's counts aren't kept
+     */
+    public Deltas getDeltas(String name, List<Record> records) {
+        if (!isBuilt(name) || records.isEmpty()) {
+            return null;
+        }
+        TimingLogger.start("RecordStatsDAO.getDeltas");
+        Deltas deltas = new Deltas();
+        // a record that's in the batch twice ends up as the last one
+        Map<Long, Record> byId = new LinkedHashMap<Long, Record>();
+        for (Record r : records) {
+            byId.put(r.getId(), r);
+            deltas.add(getType(r), String.valueOf(r.getStatus()), 0, 1);
+        }
+        for (Record r : byId.values()) {
+            deltas.add(getType(r), String.valueOf(r.getStatus()), 1, 0);
+        }
+        subtractExisting(name, new ArrayList<Long>(byId.keySet()), deltas);
+        TimingLogger.stop("RecordStatsDAO.getDeltas");
+        return deltas;
+    }
+
+    /**
+     * The change made by setting the records' status to active (and, if updated, writing a
+     * record_updates row for each).
+     */
+    public Deltas getActivateDeltas(String name, TLongHashSet recordIds, boolean updated) {
+        if (!isBuilt(name) || recordIds.size() == 0) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<Long>(recordIds.size());
+        for (long id : recordIds.toArray()) {
+            ids.add(id);
+        }
+        Deltas existing = new Deltas();
+        subtractExisting(name, ids, existing);
+        return activate(existing, updated);
+    }
+
+    /**
+     * The change made by activating the records linked to these ones.
+     */
+    public Deltas getActivateLinkedDeltas(String name, String linkedRecordsWhere, Object[] args) {
+        if (!isBuilt(name)) {
+            return null;
+        }
+        Deltas existing = new Deltas();
+        List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(
+                "select coalesce(type, '') type, coalesce(status, '') status, count(*) c from " +
+                        getTableName(name, RepositoryDAO.RECORDS_TABLE) + " where " + linkedRecordsWhere +
+                        " group by type, status", args);
+        for (Map<String, Object> row : rows) {
+            existing.add((String) row.get("type"), (String) row.get("status"), -getUtil().getLongPrim(row.get("c")), 0);
+        }
+        return activate(existing, false);
+    }
+
+    // existing holds the records' current counts, negated
+    protected Deltas activate(Deltas existing, boolean updated) {
+        Deltas deltas = new Deltas();
+        for (Row row : existing.rows.values()) {
+            deltas.add(row.type, row.status, row.records, 0);
+            deltas.add(row.type, String.valueOf(Record.ACTIVE), -row.records, updated ? -row.records : 0);
+        }
+        return deltas;
+    }
+
+    protected void subtractExisting(String name, List<Long> ids, Deltas deltas) {
+        for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + IDS_PER_QUERY));
+            StringBuilder sb = new StringBuilder("select coalesce(type, '') type, coalesce(status, '') status, count(*) c from " +
+                    getTableName(name, RepositoryDAO.RECORDS_TABLE) + " where record_id in (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sb.append(i == 0 ? "?" : ",?");
+            }
+            sb.append(") group by type, status");
+            List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(sb.toString(), chunk.toArray());
+            for (Map<String, Object> row : rows) {
+                deltas.add((String) row.get("type"), (String) row.get("status"), -getUtil().getLongPrim(row.get("c")), 0);
+            }
+        }
+    }
+
+    /**
+     * Adds a batch's change to the repository's counts.
+     *
+     * @param deltas
+     *            from getDeltas; nothing is done if it's null
+     */
+    public void apply(String name, Deltas deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        final List<Row> rows = new ArrayList<Row>();
+        for (Row row : deltas.rows.values()) {
+            if (row.records != 0 || row.updates != 0) {
+                rows.add(row);
+            }
+        }
+        this.jdbcTemplate.batchUpdate(
+                "insert into " + getTableName(name, RECORD_STATS_TABLE) +
+                        " (type, status, record_count, update_count) values (?,?,?,?) " +
+                        "on duplicate key update " +
+                        "record_count=record_count+values(record_count), " +
+                        "update_count=update_count+values(update_count)",
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int j) throws SQLException {
+                        Row row = rows.get(j);
+                        ps.setString(1, row.type);
+                        ps.setString(2, row.status);
+                        ps.setLong(3, row.records);
+                        ps.setLong(4, row.updates);
+                    }
+
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+    }
+
+    /**
+     * Zeroes the counts of a repository whose data has all been deleted.
+     */
+    public void clear(String name) {
+        if (isBuilt(name)) {
+            this.jdbcTemplate.update("delete from " + getTableName(name, RECORD_STATS_TABLE));
+        }
+    }
+
+    // the type as RepositoryDAO writes it: its first character
+    protected String getType(Record r) {
+        if (r.getType() != null && r.getType().length() > 0) {
+            return r.getType().substring(0, 1);
+        }
+        return "";
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectIntIterator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the xml stored in a repository's records_xml table.
+ *
+ * An encoded payload is a 10 byte header followed by a deflate stream of the xml's UTF-8 bytes:
+ * <pre>
+ *   byte 0      0 (xml text never starts with a NUL, so plain and encoded payloads can share a column)
+ *   byte 1      VERSION
+ *   bytes 2-5   the id of the dictionary the stream was deflated with (0 for none)
+ *   bytes 6-9   the length of the xml in UTF-8 bytes
+ * </pre>
+ * The dictionaries are per format (see XmlDictionaryDAO) and hold the markup that most of that
+ * format's records share, so even a short record compresses well at the fastest deflate level.
+ */
+public class RecordXmlCodec {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 10;
+
+    // deflate only looks back 32K, so anything more in a dictionary is never referenced
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    // markup longer than this is too specific to a record to be worth a place in a dictionary
+    protected static final int MAX_TOKEN_LENGTH = 256;
+
+    protected static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    protected static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    public static boolean isEncoded(byte[] payload) {
+        return payload != null && payload.length >= HEADER_LENGTH && payload[0] == 0;
+    }
+
+    public static int getDictionaryId(byte[] payload) {
+        return readInt(payload, 2);
+    }
+
+    /**
+     * @param dictionaryId
+     *            the id to record in the header, 0 if dictionary is null
+     */
+    public static byte[] encode(String xml, int dictionaryId, byte[] dictionary) {
+        byte[] bytes = toBytes(xml);
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        byte[] out = new byte[HEADER_LENGTH + bytes.length / 2 + 64];
+        out[0] = 0;
+        out[1] = VERSION;
+        writeInt(out, 2, dictionary == null ? 0 : dictionaryId);
+        writeInt(out, 6, bytes.length);
+        int len = HEADER_LENGTH;
+        while (!deflater.finished()) {
+            if (len == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            len += deflater.deflate(out, len, out.length - len);
+        }
+        return Arrays.copyOf(out, len);
+    }
+
+    /**
+     * @param payload
+     *            either an encoded payload or plain UTF-8 xml
+     * @param dictionary
+     *            the dictionary named in the payload's header, or null if it doesn't name one
+     */
+    public static String decode(byte[] payload, byte[] dictionary) {
+        if (payload == null) {
+            return null;
+        }
+        if (!isEncoded(payload)) {
+            return toString(payload, payload.length);
+        }
+        if (payload[1] != VERSION) {
+            throw new RuntimeException("unknown records_xml encoding version: " + payload[1]);
+        }
+        byte[] out = new byte[readInt(payload, 6)];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+        try {
+            int len = 0;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(out, len, out.length - len);
+                len += n;
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new RuntimeException("records_xml payload needs dictionary " + getDictionaryId(payload));
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput() || len == out.length) {
+                        break;
+                    }
+                }
+            }
+            if (!inflater.finished() || len != out.length) {
+                throw new RuntimeException("truncated records_xml payload");
+            }
+            return toString(out, len);
+        } catch (DataFormatException dfe) {
+            throw new RuntimeException(dfe);
+        }
+    }
+
+    /**
+     * Builds a dictionary from sample records of one format: the markup (tags along with their
+     * attributes) that saves the most bytes across the samples, with the most valuable last so
+     * it's the closest back-reference.
+     */
+    public static byte[] train(List<String> samples, int maxSize) {
+        TObjectIntHashMap<String> counts = new TObjectIntHashMap<String>();
+        for (String xml : samples) {
+            int start = xml.indexOf('<');
+            while (start != -1) {
+                int end = xml.indexOf('>', start);
+                if (end == -1) {
+                    break;
+                }
+                if (end - start < MAX_TOKEN_LENGTH) {
+                    counts.adjustOrPutValue(xml.substring(start, end + 1), 1, 1);
+                }
+                start = xml.indexOf('<', end);
+            }
+        }
+
+        final TObjectIntHashMap<String> scores = new TObjectIntHashMap<String>();
+        List<String> tokens = new ArrayList<String>();
+        for (TObjectIntIterator<String> it = counts.iterator(); it.hasNext();) {
+            it.advance();
+            if (it.value() > 1) {
+                tokens.add(it.key());
+                scores.put(it.key(), it.value() * it.key().length());
+            }
+        }
+        Collections.sort(tokens, new Comparator<String>() {
+            public int compare(String t1, String t2) {
+                int s1 = scores.get(t1);
+                int s2 = scores.get(t2);
+                return s1 > s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+
+        List<byte[]> chosen = new ArrayList<byte[]>();
+        int size = 0;
+        for (String token : tokens) {
+            byte[] b = toBytes(token);
+            if (size + b.length > maxSize) {
+                continue;
+            }
+            chosen.add(b);
+            size += b.length;
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.write(chosen.get(i), 0, chosen.get(i).length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    protected static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    protected static String toString(byte[] b, int len) {
+        try {
+            return new String(b, 0, len, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    protected static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    protected static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import xc.mst.manager.BaseService;
+
+/**
+ * Publishes xc.mst:type=RecordXmlCompression (with metrics.jmx.enabled) so that a repository
+ * created before db.recordsXml.compress was turned on can be converted in place, eg with the
+ * compress-xml target in jmx-build.xml.
+ */
+public class RecordXmlCompressionService extends BaseService implements RecordXmlCompressionServiceMBean {
+
+    private static final Logger LOG = Logger.getLogger(RecordXmlCompressionService.class);
+
+    public static final String OBJECT_NAME = "xc.mst:type=RecordXmlCompression";
+
+    public void init() {
+        if (!config.getPropertyAsBoolean("metrics.jmx.enabled", true)) {
+            return;
+        }
+        try {
+            register(new ObjectName(OBJECT_NAME), this);
+        } catch (Throwable t) {
+            LOG.error("unable to register " + OBJECT_NAME, t);
+        }
+    }
+
+    // replaces anything left registered under the name, eg by a webapp that's since been reloaded
+    protected void register(ObjectName on, Object mbean) throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        if (mbs.isRegistered(on)) {
+            mbs.unregisterMBean(on);
+        }
+        mbs.registerMBean(mbean, on);
+    }
+
+    public boolean isCompressed(String repoName) {
+        return getRepositoryDAO().isXmlCompressed(repoName);
+    }
+
+    public String compress(String repoName) {
+        if (!getRepositoryDAO().exists(repoName)) {
+            return "no such repository: " + repoName;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            int compressed = getRepositoryDAO().compressXml(repoName);
+            return "compressed " + compressed + " records in " + repoName + " in " +
+                    (System.currentTimeMillis() - start) + "ms";
+        } catch (Throwable t) {
+            LOG.error("unable to compress " + repoName, t);
+            return "unable to compress " + repoName + ": " + t.getMessage();
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+/**
+ * What JMX shows of records_xml compression (xc.mst:type=RecordXmlCompression).
+ */
+public interface RecordXmlCompressionServiceMBean {
+
+    /**
+     * @return whether the repository's records_xml is stored compressed
+     */
+    public boolean isCompressed(String repoName);
+
+    /**
+     * Converts the repository's records_xml to compressed payloads.
+     *
+     * @return a summary of what was done
+     */
+    public String compress(String repoName);
+
+}
@@ -44,9 +44,18 @@ public interface Repository {
 
     public void addRecords(List<Record> records);
 
+    /**
+     * @return whether the records added so far were committed.  They may not be written yet (see
+     *         db.asyncCommit.enabled), so progress that has to wait for them goes through whenWritten.
+     */
     public boolean commitIfNecessary(boolean force, long processedRecordsCount,
             RecordCounts incomingRecordCounts, RecordCounts outgoingRecordCounts);
 
+    /**
+     * Runs callback once every record added so far has been written.
+     */
+    public void whenWritten(Runnable callback);
+
     public List<Record> getRecords(Date from, Date until, Long startingId, Format inputFormat, Set inputSet);
 
     /**
@@ -66,6 +75,14 @@ public interface Repository {
      */
     public long getRecordCount(Date from, Date until, Format inputFormat, Set inputSet);
 
+    /**
+     * Get number of records that satisfy the given criteria, or an estimate of it if there are too many to count
+     * quickly (see harvestProvider.estimateCompleteListSizeThreshold)
+     * 
+     * @return the count, or minus the estimate
+     */
+    public long getRecordCountEstimate(Date from, Date until, Format inputFormat, Set inputSet);
+
     /**
      * Get record header information
      *
@@ -115,6 +132,13 @@ public interface Repository {
     
     public List<Long> getLinkedToRecordIds(Long fromRecordId);
 
+    /**
+     * Called once at the start of a run, before anything is added, with how many records the run
+     * expects to write (0 or less if it doesn't know), so the repository can decide whether to
+     * write them without its indexes.  processComplete rebuilds any it drops.
+     */
+    public void planIndices(long records2Process);
+
     public void processComplete();
 
     public boolean ready4harvest();
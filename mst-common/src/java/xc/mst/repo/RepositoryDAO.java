@@ -23,6 +23,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -30,17 +31,27 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.jdom.Element;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
@@ -57,7 +68,7 @@ import xc.mst.bo.record.RecordCounts;
 import xc.mst.bo.record.RecordIfc;
 import xc.mst.bo.record.RecordMessage;
 import xc.mst.bo.service.Service;
-import xc.mst.cache.DynKeyLongMap;
+import xc.mst.cache.OaiIdIndex;
 import xc.mst.constants.Constants;
 import xc.mst.dao.BaseDAO;
 import xc.mst.dao.record.MessageDAO;
@@ -105,16 +116,59 @@ public class RepositoryDAO extends BaseDAO {
                     "rm.detail ";
 
     protected boolean inBatch = false;
-    protected List<Record> recordsToAdd = null;
-    protected Map<Long, Record> recordsToAddInx = null;
+
+    /**
+     * The records added to a repository that haven't been written yet, and its committer thread.
+     * Each repository has its own, so jobs writing to different repositories don't share a batch
+     * (or wait on each other's commits).
+     */
+    protected static class WriteBuffer {
+        protected List<Record> recordsToAdd = new ArrayList<Record>();
+        protected Map<Long, Record> recordsToAddInx = new HashMap<Long, Record>();
+
+        // When db.asyncCommit.enabled, batches are written by the committer thread (in the order they
+        // were handed off) while the caller goes on filling a fresh recordsToAdd.
+        protected ExecutorService committer = null;
+        protected Semaphore batchesInFlight = null;
+        protected int maxBatchesInFlight = 1;
+        protected ConcurrentLinkedQueue<Map<Long, Record>> recordsInFlightInx = new ConcurrentLinkedQueue<Map<Long, Record>>();
+        protected volatile Throwable commitFailure = null;
+
+        // How many batches have been handed to the committer thread, and how many of those it has
+        // written.  Only the committer thread changes batchesWritten.
+        protected long batchesSubmitted = 0;
+        protected volatile long batchesWritten = 0;
+
+        // see whenWritten: the callbacks waiting on recordsToAdd, then the ones waiting on a
+        // batch that's been handed off
+        protected List<Runnable> onWritten = new ArrayList<Runnable>();
+        protected LinkedList<WrittenCallback> onBatchWritten = new LinkedList<WrittenCallback>();
+
+        // see planIndices: whether the indexes are to be dropped before the next batch is written
+        protected volatile boolean dropIndices = false;
+    }
+
+    protected static class WrittenCallback {
+        protected long batch;
+        protected Runnable callback;
+
+        public WrittenCallback(long batch, Runnable callback) {
+            this.batch = batch;
+            this.callback = callback;
+        }
+    }
+
+    // repo name -> its write buffer
+    protected Map<String, WriteBuffer> writeBuffers = new ConcurrentHashMap<String, WriteBuffer>();
+
+    // repo name -> whether its records_xml holds RecordXmlCodec payloads (ie its xml column is a blob)
+    protected Map<String, Boolean> xmlCompressed = new ConcurrentHashMap<String, Boolean>();
+    protected static final int XML_DICTIONARY_SAMPLES = 1000;
 
 
     public void init() {
         LOG.debug("RepositoryDAO.init()");
 
-        recordsToAdd = new ArrayList<Record>();
-	recordsToAddInx = new HashMap<Long, Record>();
-
         try {
             if (!tableExists(REPOS_TABLE)) {
                 for (String file : new String[] { "xc/mst/repo/sql/create_repo_platform.sql",
@@ -131,23 +185,46 @@ public class RepositoryDAO extends BaseDAO {
         }
     }
 
+    protected WriteBuffer getWriteBuffer(String name) {
+        WriteBuffer buffer = writeBuffers.get(name);
+        if (buffer == null) {
+            synchronized (writeBuffers) {
+                buffer = writeBuffers.get(name);
+                if (buffer == null) {
+                    buffer = new WriteBuffer();
+                    writeBuffers.put(name, buffer);
+                }
+            }
+        }
+        return buffer;
+    }
+
     // probably a bad idea exposing some of this implementation stuff but am going for it.
-    public boolean haveUnpersistedRecord(Long id) {
-    	return recordsToAddInx == null ? false : recordsToAddInx.containsKey(id);
+    public boolean haveUnpersistedRecord(String name, Long id) {
+        return getUnpersistedRecord(name, id) != null;
     }
 
-    public Record getUnpersistedRecord(long id) {
-    	if (haveUnpersistedRecord(id)) {
-    		return recordsToAddInx.get(id);
+    public Record getUnpersistedRecord(String name, long id) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        if (buffer.recordsToAddInx.containsKey(id)) {
+            return buffer.recordsToAddInx.get(id);
+        }
+        // records handed to the committer thread that haven't been written yet
+        for (Map<Long, Record> inx : buffer.recordsInFlightInx) {
+            Record r = inx.get(id);
+            if (r != null) {
+                return r;
+            }
         }
         return null;
     }
 
-    public boolean deleteUnpersistedRecord(Long id) {
-        Record recordToDelete = getUnpersistedRecord(id);
+    public boolean deleteUnpersistedRecord(String name, Long id) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        Record recordToDelete = buffer.recordsToAddInx.get(id);
         if (recordToDelete != null) {
-            recordsToAdd.remove(recordToDelete);
-            recordsToAddInx.remove(id);
+            buffer.recordsToAdd.remove(recordToDelete);
+            buffer.recordsToAddInx.remove(id);
             return true;
         }
         return false;
@@ -192,12 +269,21 @@ public class RepositoryDAO extends BaseDAO {
     }
 
     public int getNumRecords(String name) {
-        return this.jdbcTemplate.queryForInt("select count(*) from " + getTableName(name, RECORDS_TABLE));
+        long records = 0;
+        for (RecordStatsDAO.Row row : getRecordStatsDAO().getStats(name, false)) {
+            records += row.records;
+        }
+        return (int) records;
     }
 
     public int getNumActiveRecords(String name) {
-        return this.jdbcTemplate.queryForInt("select count(*) from " +
-                getTableName(name, RECORDS_TABLE) + " where status = '" + Record.ACTIVE + "'");
+        long records = 0;
+        for (RecordStatsDAO.Row row : getRecordStatsDAO().getStats(name, false)) {
+            if (String.valueOf(Record.ACTIVE).equals(row.status)) {
+                records += row.records;
+            }
+        }
+        return (int) records;
     }
 
 
@@ -237,7 +323,7 @@ public class RepositoryDAO extends BaseDAO {
     }
 
     public int getSize(String name) {
-        return this.jdbcTemplate.queryForInt("select count(*) from " + getTableName(name, RECORDS_TABLE));
+        return getNumRecords(name);
     }
 
     public long resetIdSequence(long id) {
@@ -262,7 +348,7 @@ public class RepositoryDAO extends BaseDAO {
         	if (nextId == -1) {
         		resetNextId();
         	}
-            int idsAtOnce = 1000;
+            int idsAtOnce = Math.max(1, MSTConfiguration.getInstance().getPropertyAsInt("db.idsAtOnce", 1000));
             nextId = this.getNextOaiId.executeObject(Integer.class, idsAtOnce);
             nextIdInDB = nextId + idsAtOnce;
         }
@@ -295,14 +381,16 @@ public class RepositoryDAO extends BaseDAO {
     }
 
     public void addRecord(String name, Record r) {
-        recordsToAdd.add(r);
-        recordsToAddInx.put(r.getId(), r);
+        WriteBuffer buffer = getWriteBuffer(name);
+        buffer.recordsToAdd.add(r);
+        buffer.recordsToAddInx.put(r.getId(), r);
     }
 
     public void addRecords(String name, List<Record> records, boolean force) {
+        WriteBuffer buffer = getWriteBuffer(name);
     	for (Record r : records) {
-            recordsToAdd.add(r);
-            recordsToAddInx.put(r.getId(), r);
+            buffer.recordsToAdd.add(r);
+            buffer.recordsToAddInx.put(r.getId(), r);
     	}
     }
 
@@ -327,11 +415,11 @@ public class RepositoryDAO extends BaseDAO {
         return percentageUsed;
     }
 
-    protected boolean isNecessaryToCommit(boolean force, int batchSize, double memoryPercentageUsed) {
+    protected boolean isNecessaryToCommit(boolean force, int batchSize, int recordsToAdd, double memoryPercentageUsed) {
         if (force) {
             return true;
         }
-        if (batchSize <= recordsToAdd.size()) {
+        if (batchSize <= recordsToAdd) {
             return true;
         }
 //            double memoryUsageThreshold = MSTConfiguration.getInstance().getPropertyAsDouble("memoryUsageThreshold", .99);
@@ -341,495 +429,704 @@ public class RepositoryDAO extends BaseDAO {
         return false;
     }
 
+    /**
+     * @return whether the records added so far were committed: written, or (with
+     *         db.asyncCommit.enabled, unless forced) handed to the committer thread, which may
+     *         not have written them yet.  See whenWritten.
+     */
     protected boolean commitIfNecessary(String name, boolean force, long processedRecordsCount) {
         // LOG.debug("commitIfNecessary:Inbatch : " + inBatch);
+        checkCommitFailure(name);
+        WriteBuffer buffer = getWriteBuffer(name);
+        runWrittenCallbacks(buffer);
         int batchSize = MSTConfiguration.getInstance().getPropertyAsInt("db.insertsAtOnce", 10000);
         double memoryPercentageUsed = getMemUsage();
-        if (recordsToAdd != null) {
-            // LOG.error("beluga highest id: "+recordsToAdd.get(recordsToAdd.size()-1).getId());
-        }
-        if (isNecessaryToCommit(force, batchSize, memoryPercentageUsed)) {
+        if (isNecessaryToCommit(force, batchSize, buffer.recordsToAdd.size(), memoryPercentageUsed)) {
             // LOG.error("beluga commit!!!");
             TimingLogger.start("commit to db");
-            final long startTime = System.currentTimeMillis();
+            List<Runnable> onWritten = buffer.onWritten;
+            buffer.onWritten = new ArrayList<Runnable>();
+            if (!force && MSTConfiguration.getInstance().getPropertyAsBoolean("db.asyncCommit.enabled", false)) {
+                commitAsync(name, buffer.recordsToAdd, buffer.recordsToAddInx, processedRecordsCount);
+                buffer.recordsToAdd = new ArrayList<Record>();
+                buffer.recordsToAddInx = new HashMap<Long, Record>();
+                for (Runnable callback : onWritten) {
+                    buffer.onBatchWritten.add(new WrittenCallback(buffer.batchesSubmitted, callback));
+                }
+            } else {
+                // a forced commit is a barrier: everything handed off earlier is written first
+                waitForPendingCommits(name);
+                persistRecords(name, buffer.recordsToAdd, processedRecordsCount);
+                buffer.recordsToAdd = new ArrayList<Record>();
+                buffer.recordsToAddInx = new HashMap<Long, Record>();
+                for (Runnable callback : onWritten) {
+                    callback.run();
+                }
+            }
+
+            TimingLogger.stop("commit to db");
+            if (force) {
+                inBatch = false;
+            }
+            return true;
+        } else {
+            return force;
+        }
+    }
+
+    /**
+     * Runs callback, on this thread, once every record added to the repository so far has been
+     * written: right away if they already have been, otherwise from the commitIfNecessary or
+     * waitForPendingCommits that finds them written.  Callbacks run in the order they were given.
+     * Progress that mustn't be saved ahead of the records it covers (a harvest's last request, a
+     * service's highest processed id, record counts) is saved this way, since with
+     * db.asyncCommit.enabled a commit only hands its batch to the committer thread.
+     */
+    public void whenWritten(String name, Runnable callback) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        if (!buffer.recordsToAdd.isEmpty()) {
+            buffer.onWritten.add(callback);
+        } else if (buffer.batchesWritten < buffer.batchesSubmitted) {
+            buffer.onBatchWritten.add(new WrittenCallback(buffer.batchesSubmitted, callback));
+        } else {
+            callback.run();
+        }
+    }
+
+    // runs the callbacks whose batches the committer thread has written
+    protected void runWrittenCallbacks(WriteBuffer buffer) {
+        while (!buffer.onBatchWritten.isEmpty() && buffer.onBatchWritten.getFirst().batch <= buffer.batchesWritten) {
+            buffer.onBatchWritten.removeFirst().callback.run();
+        }
+    }
+
+    /**
+     * Hands a full batch to the committer thread.  Blocks while db.asyncCommit.maxBatchesInFlight
+     * batches are already waiting to be written, so the caller can't get arbitrarily far ahead.
+     *
+     * The committer writes copies of the records, so the originals (which getUnpersistedRecord
+     * still returns until they're written) can go on being changed by the caller.
+     */
+    protected void commitAsync(final String name, final List<Record> records, final Map<Long, Record> recordsInx,
+            final long processedRecordsCount) {
+        final List<Record> frozen = new ArrayList<Record>(records.size());
+        for (Record r : records) {
+            frozen.add(freeze(r));
+        }
+        final WriteBuffer buffer = getWriteBuffer(name);
+        buffer.recordsInFlightInx.add(recordsInx);
+        submitCommit(name, new Runnable() {
+            public void run() {
+                try {
+                    persistRecords(name, frozen, processedRecordsCount);
+                } finally {
+                    buffer.recordsInFlightInx.remove(recordsInx);
+                }
+            }
+        });
+    }
+
+    /**
+     * A copy of everything persistRecords reads from a record.  The xml is deep copied, since
+     * writeRecords switches its record to STRING_MODE.
+     */
+    protected Record freeze(Record r) {
+        Record dupe = new Record();
+        dupe.setId(r.getId());
+        dupe.setOaiDatestamp(r.getOaiDatestamp() == null ? null : new Date(r.getOaiDatestamp().getTime()));
+        dupe.setUpdatedAt(r.getUpdatedAt() == null ? null : new Date(r.getUpdatedAt().getTime()));
+        dupe.setType(r.getType());
+        dupe.setStatus(r.getStatus());
+        dupe.setPreviousStatus(r.getPreviousStatus());
+        dupe.setFormat(r.getFormat());
+        dupe.setHarvestedOaiIdentifier(r.getHarvestedOaiIdentifier());
+        if (r.getSets() != null) {
+            dupe.setSets(new ArrayList<Set>(r.getSets()));
+        } else {
+            dupe.setSets(null);
+        }
+        if (r.getPredecessors() != null) {
+            dupe.getPredecessors().addAll(r.getPredecessors());
+        }
+        if (Record.JDOM_MODE.equals(r.getMode())) {
+            if (r.getOaiXmlEl() != null) {
+                dupe.setOaiXmlEl((Element) r.getOaiXmlEl().clone());
+            }
+        } else {
+            dupe.setMode(Record.STRING_MODE);
+            dupe.setOaiXml(r.getOaiXml());
+        }
+        return dupe;
+    }
+
+    protected void submitCommit(final String name, final Runnable work) {
+        final WriteBuffer buffer = getWriteBuffer(name);
+        synchronized (buffer) {
+            if (buffer.committer == null) {
+                buffer.maxBatchesInFlight = Math.max(1,
+                        MSTConfiguration.getInstance().getPropertyAsInt("db.asyncCommit.maxBatchesInFlight", 1));
+                buffer.batchesInFlight = new Semaphore(buffer.maxBatchesInFlight);
+                buffer.committer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "repository-committer-" + name);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+        }
+        buffer.batchesInFlight.acquireUninterruptibly();
+        buffer.batchesSubmitted++;
+        buffer.committer.execute(new Runnable() {
+            public void run() {
+                try {
+                    // once a batch has failed, don't write the ones after it
+                    if (buffer.commitFailure == null) {
+                        work.run();
+                        buffer.batchesWritten++;
+                    }
+                } catch (Throwable t) {
+                    LOG.error("asynchronous commit to " + name + " failed", t);
+                    buffer.commitFailure = t;
+                } finally {
+                    buffer.batchesInFlight.release();
+                }
+            }
+        });
+    }
+
+    protected boolean hasPendingCommits(String name) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        return buffer.batchesInFlight != null && buffer.batchesInFlight.availablePermits() < buffer.maxBatchesInFlight;
+    }
+
+    /**
+     * Blocks until every batch handed to the repository's committer thread has been written, then
+     * rethrows the failure of any of them, or runs the callbacks that were waiting on them.
+     */
+    public void waitForPendingCommits(String name) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        if (buffer.batchesInFlight != null) {
+            buffer.batchesInFlight.acquireUninterruptibly(buffer.maxBatchesInFlight);
+            buffer.batchesInFlight.release(buffer.maxBatchesInFlight);
+        }
+        checkCommitFailure(name);
+        runWrittenCallbacks(buffer);
+    }
+
+    // surfaces a failed asynchronous commit on the thread that owns this repository
+    protected void checkCommitFailure(String name) {
+        WriteBuffer buffer = getWriteBuffer(name);
+        Throwable t = buffer.commitFailure;
+        if (t != null) {
+            buffer.commitFailure = null;
+            buffer.recordsInFlightInx.clear();
+            // what they'd save covers records that weren't written
+            buffer.onWritten.clear();
+            buffer.onBatchWritten.clear();
+            getUtil().throwIt(t);
+        }
+    }
+
+    /**
+     * Writes records (and their xml, sets, predecessors, oai ids and update dates) to the repository's tables,
+     * and adds the change they make to its record_stats.
+     */
+    protected void persistRecords(String name, final List<Record> recordsToAdd, long processedRecordsCount) {
+        // RecordStatsDAO.verify holds the same lock, so it can't count between the lookup and the apply
+        synchronized (getRecordStatsDAO().getLock(name)) {
+            RecordStatsDAO.Deltas statsDeltas = getRecordStatsDAO().getDeltas(name, recordsToAdd);
+            writeRecords(name, recordsToAdd, processedRecordsCount);
+            getRecordStatsDAO().apply(name, statsDeltas);
+        }
+    }
+
+    protected void writeRecords(String name, final List<Record> recordsToAdd, long processedRecordsCount) {
+        final long startTime = System.currentTimeMillis();
+        WriteBuffer buffer = getWriteBuffer(name);
+        if (buffer.dropIndices) {
+            // decided by planIndices at the start of the run; the batches are then loaded without them
+            buffer.dropIndices = false;
             if (ready4harvest(name)) {
-                String sql =
-                        "insert into " + getTableName(name, RECORDS_TABLE) +
-                                " (record_id, oai_datestamp, type, status, prev_status, format_id ) " +
-                                "values (?,?,?,?,?,?) " +
-                                "on duplicate key update " +
-                                "type=?, " +
-                                "status=?, " +
-                                "prev_status=?, " +
-                                "format_id=?, " +
-                                "oai_datestamp=? " +
-                                ";";
-                TimingLogger.start("RECORDS_TABLE.insert");
-                int[] updateCounts = jdbcTemplate.batchUpdate(
-                        sql,
-                        new BatchPreparedStatementSetter() {
-                            public void setValues(PreparedStatement ps, int j) throws SQLException {
-                                int i = 1;
-                                Record r = recordsToAdd.get(j);
-                                ps.setLong(i++, r.getId());
-                                if (r.getOaiDatestamp() == null) {
-                                    ps.setTimestamp(i++, new Timestamp(startTime));
+                dropIndices(name);
+            }
+        }
+        if (ready4harvest(name)) {
+            String sql =
+                    "insert into " + getTableName(name, RECORDS_TABLE) +
+                            " (record_id, oai_datestamp, type, status, prev_status, format_id ) " +
+                            "values (?,?,?,?,?,?) " +
+                            "on duplicate key update " +
+                            "type=?, " +
+                            "status=?, " +
+                            "prev_status=?, " +
+                            "format_id=?, " +
+                            "oai_datestamp=? " +
+                            ";";
+            TimingLogger.start("RECORDS_TABLE.insert");
+            int[] updateCounts = jdbcTemplate.batchUpdate(
+                    sql,
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int j) throws SQLException {
+                            int i = 1;
+                            Record r = recordsToAdd.get(j);
+                            ps.setLong(i++, r.getId());
+                            if (r.getOaiDatestamp() == null) {
+                                ps.setTimestamp(i++, new Timestamp(startTime));
+                            } else {
+                                ps.setTimestamp(i++, new Timestamp(r.getOaiDatestamp().getTime()));
+                            }
+                            for (int k = 0; k < 2; k++) {
+                                if (r.getType() != null && r.getType().length() > 0) {
+                                    ps.setString(i++, "" + r.getType().charAt(0));
                                 } else {
-                                    ps.setTimestamp(i++, new Timestamp(r.getOaiDatestamp().getTime()));
-                                }
-                                for (int k = 0; k < 2; k++) {
-                                    if (r.getType() != null && r.getType().length() > 0) {
-                                        ps.setString(i++, "" + r.getType().charAt(0));
-                                    } else {
-                                        ps.setString(i++, null);
-                                    }
-                                    ps.setString(i++, String.valueOf(r.getStatus()));
-                                    ps.setString(i++, String.valueOf(r.getPreviousStatus()));
-                                    if (r.getFormat() != null) {
-                                        ps.setInt(i++, r.getFormat().getId());
-                                    } else {
-                                        ps.setObject(i++, null);
-                                    }
+                                    ps.setString(i++, null);
                                 }
-                                if (r.getOaiDatestamp() == null) {
-                                    ps.setTimestamp(i++, new Timestamp(startTime));
+                                ps.setString(i++, String.valueOf(r.getStatus()));
+                                ps.setString(i++, String.valueOf(r.getPreviousStatus()));
+                                if (r.getFormat() != null) {
+                                    ps.setInt(i++, r.getFormat().getId());
                                 } else {
-                                    ps.setTimestamp(i++, new Timestamp(r.getOaiDatestamp().getTime()));
+                                    ps.setObject(i++, null);
                                 }
                             }
-
-                            public int getBatchSize() {
-                                return recordsToAdd.size();
+                            if (r.getOaiDatestamp() == null) {
+                                ps.setTimestamp(i++, new Timestamp(startTime));
+                            } else {
+                                ps.setTimestamp(i++, new Timestamp(r.getOaiDatestamp().getTime()));
                             }
-                        });
-                TimingLogger.stop("RECORDS_TABLE.insert");
-                final long endTime = System.currentTimeMillis();
+                        }
 
-                final List<Record> recordXmls2Add = new ArrayList<Record>();
-                for (Record r : recordsToAdd) {
-                    r.setMode(Record.STRING_MODE);
-                    if (!Record.UNCHANGED.equals(r.getOaiXml())) {
-                    	// If it's changed and the XML (payload) is null,
-                    	// this means it's a DELETE.
-                    	// Let's *NOT* update the records_xml table, because
-                    	// I want to keep the payload information intact.
-                    	if (r.getOaiXml() != null) {
-                    		recordXmls2Add.add(r);
-                    	}
-                    }
+                        public int getBatchSize() {
+                            return recordsToAdd.size();
+                        }
+                    });
+            TimingLogger.stop("RECORDS_TABLE.insert");
+            final long endTime = System.currentTimeMillis();
+
+            final List<Record> recordXmls2Add = new ArrayList<Record>();
+            for (Record r : recordsToAdd) {
+                r.setMode(Record.STRING_MODE);
+                if (!Record.UNCHANGED.equals(r.getOaiXml())) {
+                	// If it's changed and the XML (payload) is null,
+                	// this means it's a DELETE.
+                	// Let's *NOT* update the records_xml table, because
+                	// I want to keep the payload information intact.
+                	if (r.getOaiXml() != null) {
+                		recordXmls2Add.add(r);
+                	}
                 }
+            }
 
-                TimingLogger.start("RECORDS_XML_TABLE.insert");
-                sql =
-                        "insert into " + getTableName(name, RECORDS_XML_TABLE) +
-                                " (record_id, xml) " +
-                                "values (?,?) " +
-                                "on duplicate key update " +
-                                "xml=? " +
-                                ";";
-                updateCounts = jdbcTemplate.batchUpdate(
-                        sql,
-                        new BatchPreparedStatementSetter() {
-                            public void setValues(PreparedStatement ps, int j) throws SQLException {
-                                int i = 1;
-                                Record r = recordXmls2Add.get(j);
-                                r.setMode(Record.STRING_MODE);
-        //LOG.info("in commitIfNecessary(): importing record ID = " + r.getId());
-        String xmlFixed = null;
-        if (r.getOaiXml() != null) {
-           xmlFixed = fixUnicode(r.getOaiXml());
-        }
-                                ps.setLong(i++, r.getId());
-                                //ps.setString(i++, r.getOaiXml());
-                                //ps.setString(i++, r.getOaiXml());
-        ps.setString(i++, xmlFixed);
-        ps.setString(i++, xmlFixed);
-                                //if (r.getOaiXml() != null) {
-                                if (xmlFixed != null) {
-                                    //TimingLogger.add("RECORDS_XML_LENGTH", r.getOaiXml().length());
-         TimingLogger.add("RECORDS_XML_LENGTH", xmlFixed.length());
-                                } else {
-                                    TimingLogger.add("RECORDS_XML_LENGTH", 0);
-                                }
+            final boolean compressXml = isXmlCompressed(name);
+            if (compressXml) {
+                trainXmlDictionaries(recordXmls2Add);
+            }
+            TimingLogger.start("RECORDS_XML_TABLE.insert");
+            sql =
+                    "insert into " + getTableName(name, RECORDS_XML_TABLE) +
+                            " (record_id, xml) " +
+                            "values (?,?) " +
+                            "on duplicate key update " +
+                            "xml=? " +
+                            ";";
+            updateCounts = jdbcTemplate.batchUpdate(
+                    sql,
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int j) throws SQLException {
+                            int i = 1;
+                            Record r = recordXmls2Add.get(j);
+                            r.setMode(Record.STRING_MODE);
+                            //LOG.info("in commitIfNecessary(): importing record ID = " + r.getId());
+                            String xmlFixed = null;
+                            if (r.getOaiXml() != null) {
+                                xmlFixed = fixUnicode(r.getOaiXml());
                             }
-
-                            public int getBatchSize() {
-                                return recordXmls2Add.size();
+                            ps.setLong(i++, r.getId());
+                            if (compressXml) {
+                                byte[] payload = encodeXml(r, xmlFixed);
+                                ps.setBytes(i++, payload);
+                                ps.setBytes(i++, payload);
+                            } else {
+                                ps.setString(i++, xmlFixed);
+                                ps.setString(i++, xmlFixed);
                             }
-                        });
-                TimingLogger.stop("RECORDS_XML_TABLE.insert");
-                /*
-                TimingLogger.start("RECORDS_XML_TABLE.fs_insert");
-                try {
-                    OutputStream os = new BufferedOutputStream(new FileOutputStream(
-                            MSTConfiguration.getUrlPath()+"/records/"+recordsToAdd.get(0).getId()+".xml"));
-                    for (Record r : recordsToAdd) {
-                        r.setMode(Record.STRING_MODE);
-                        os.write(r.getOaiXml().getBytes("UTF-8"));
-                    }
-                    os.close();
-                } catch (Throwable t) {
-                    LOG.error("", t);
+                            if (xmlFixed != null) {
+                                TimingLogger.add("RECORDS_XML_LENGTH", xmlFixed.length());
+                            } else {
+                                TimingLogger.add("RECORDS_XML_LENGTH", 0);
+                            }
+                        }
+
+                        public int getBatchSize() {
+                            return recordXmls2Add.size();
+                        }
+                    });
+            TimingLogger.stop("RECORDS_XML_TABLE.insert");
+            /*
+            TimingLogger.start("RECORDS_XML_TABLE.fs_insert");
+            try {
+                OutputStream os = new BufferedOutputStream(new FileOutputStream(
+                        MSTConfiguration.getUrlPath()+"/records/"+recordsToAdd.get(0).getId()+".xml"));
+                for (Record r : recordsToAdd) {
+                    r.setMode(Record.STRING_MODE);
+                    os.write(r.getOaiXml().getBytes("UTF-8"));
                 }
-                TimingLogger.stop("RECORDS_XML_TABLE.fs_insert");
-                */
-                TimingLogger.start("RECORDS_SETS_TABLE.insert");
-                sql =
-                        "insert ignore into " + getTableName(name, RECORDS_SETS_TABLE) +
-                                " (record_id, set_id) " +
-                                "values (?,?) " +
-                                ";";
-                updateCounts = jdbcTemplate.batchUpdate(
-                        sql,
-                        new BatchPreparedStatementSetter() {
-                            int recordSetInserts = 0;
+                os.close();
+            } catch (Throwable t) {
+                LOG.error("", t);
+            }
+            TimingLogger.stop("RECORDS_XML_TABLE.fs_insert");
+            */
+            TimingLogger.start("RECORDS_SETS_TABLE.insert");
+            sql =
+                    "insert ignore into " + getTableName(name, RECORDS_SETS_TABLE) +
+                            " (record_id, set_id) " +
+                            "values (?,?) " +
+                            ";";
+            updateCounts = jdbcTemplate.batchUpdate(
+                    sql,
+                    new BatchPreparedStatementSetter() {
+                        int recordSetInserts = 0;
 
-                            public void setValues(PreparedStatement ps, int j) throws SQLException {
-                                int k = 0;
-                                Record r = recordsToAdd.get(j);
-                                if (r.getSets() != null && r.getSets().size() > 0) {
-                                    int totalSets = r.getSets().size();
-                                    for (Set s : r.getSets()) {
-                                        int i = 1;
-                                        recordSetInserts++;
-                                        ps.setLong(i++, r.getId());
-                                        ps.setLong(i++, s.getId());
-                                        if (++k < totalSets) {
-                                            ps.addBatch();
-                                        }
+                        public void setValues(PreparedStatement ps, int j) throws SQLException {
+                            int k = 0;
+                            Record r = recordsToAdd.get(j);
+                            if (r.getSets() != null && r.getSets().size() > 0) {
+                                int totalSets = r.getSets().size();
+                                for (Set s : r.getSets()) {
+                                    int i = 1;
+                                    recordSetInserts++;
+                                    ps.setLong(i++, r.getId());
+                                    ps.setLong(i++, s.getId());
+                                    if (++k < totalSets) {
+                                        ps.addBatch();
                                     }
-                                } else {
-                                    ps.setObject(++k, null);
-                                    ps.setObject(++k, null);
                                 }
+                            } else {
+                                ps.setObject(++k, null);
+                                ps.setObject(++k, null);
                             }
+                        }
 
-                            public int getBatchSize() {
-                                return recordsToAdd.size();
-                            }
-                        });
-                TimingLogger.stop("RECORDS_SETS_TABLE.insert");
+                        public int getBatchSize() {
+                            return recordsToAdd.size();
+                        }
+                    });
+            TimingLogger.stop("RECORDS_SETS_TABLE.insert");
 
-                TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert");
-                // TODO: Delete previous predecessors that are no longer there.
-                sql =
-                        "insert ignore into " + getTableName(name, RECORD_PREDECESSORS_TABLE) +
-                                " (record_id, pred_record_id) " +
-                                "values (?,?) " +
-                                ";";
+            TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert");
+            // TODO: Delete previous predecessors that are no longer there.
+            sql =
+                    "insert ignore into " + getTableName(name, RECORD_PREDECESSORS_TABLE) +
+                            " (record_id, pred_record_id) " +
+                            "values (?,?) " +
+                            ";";
 
-                List<long[]> recordPreds = new ArrayList<long[]>();
-                for (Record r : recordsToAdd) {
-                    if (r.getPredecessors() != null) {
-                        for (RecordIfc p : r.getPredecessors()) {
-                            long[] recPredRow = new long[2];
-                            recPredRow[0] = r.getId();
-                            recPredRow[1] = p.getId();
-                            recordPreds.add(recPredRow);
-                        }
+            List<long[]> recordPreds = new ArrayList<long[]>();
+            for (Record r : recordsToAdd) {
+                if (r.getPredecessors() != null) {
+                    for (RecordIfc p : r.getPredecessors()) {
+                        long[] recPredRow = new long[2];
+                        recPredRow[0] = r.getId();
+                        recPredRow[1] = p.getId();
+                        recordPreds.add(recPredRow);
                     }
                 }
-                updateCounts = jdbcTemplate.batchUpdate(
-                        sql,
-                        new RecPredBatchPreparedStatementSetter(recordPreds));
-                TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert");
+            }
+            updateCounts = jdbcTemplate.batchUpdate(
+                    sql,
+                    new RecPredBatchPreparedStatementSetter(recordPreds));
+            TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert");
 
-                TimingLogger.start("RECORD_OAI_IDS.insert");
-                sql =
-                        "insert ignore into " + getTableName(name, RECORD_OAI_IDS) +
-                                " (record_id, oai_id) " +
-                                "values (?,?) " +
-                                ";";
-                updateCounts = this.jdbcTemplate.execute(sql, new PreparedStatementCallback<int[]>() {
-                    public int[] doInPreparedStatement(PreparedStatement ps)
-                            throws SQLException, DataAccessException {
-                        for (Record r : recordsToAdd) {
-                            if (r.getHarvestedOaiIdentifier() != null) {
-                                ps.setLong(1, r.getId());
-                                ps.setString(2, r.getHarvestedOaiIdentifier());
-                                ps.addBatch();
-                            }
+            TimingLogger.start("RECORD_OAI_IDS.insert");
+            sql =
+                    "insert ignore into " + getTableName(name, RECORD_OAI_IDS) +
+                            " (record_id, oai_id) " +
+                            "values (?,?) " +
+                            ";";
+            updateCounts = this.jdbcTemplate.execute(sql, new PreparedStatementCallback<int[]>() {
+                public int[] doInPreparedStatement(PreparedStatement ps)
+                        throws SQLException, DataAccessException {
+                    for (Record r : recordsToAdd) {
+                        if (r.getHarvestedOaiIdentifier() != null) {
+                            ps.setLong(1, r.getId());
+                            ps.setString(2, r.getHarvestedOaiIdentifier());
+                            ps.addBatch();
                         }
-                        return ps.executeBatch();
                     }
-                });
-                TimingLogger.stop("RECORD_OAI_IDS.insert");
+                    return ps.executeBatch();
+                }
+            });
+            TimingLogger.stop("RECORD_OAI_IDS.insert");
 
-                // I slightly future dating the timestamp of the records so that a record will always
-                // have been available from it's update_date forward. If we don't do this, then it's
-                // possible for harvests to miss records.
-                final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
-                TimingLogger.start("RECORD_UPDATES_TABLE.insert");
-                sql =
-                        "insert into " + getTableName(name, RECORD_UPDATES_TABLE) +
-                                " (record_id, date_updated) " +
-                                "values (?,?) " +
-                                ";";
-                updateCounts = jdbcTemplate.batchUpdate(
-                        sql,
-                        new BatchPreparedStatementSetter() {
-                            public void setValues(PreparedStatement ps, int j) throws SQLException {
-                                int i = 1;
-                                Record r = recordsToAdd.get(j);
-                                ps.setLong(i++, r.getId());
-                                if (r.getUpdatedAt() == null) {
-                                    ps.setTimestamp(i++, new Timestamp(updateTime));
-                                } else {
-                                    ps.setTimestamp(i++, new Timestamp(r.getUpdatedAt().getTime()));
-                                }
+            // I slightly future dating the timestamp of the records so that a record will always
+            // have been available from it's update_date forward. If we don't do this, then it's
+            // possible for harvests to miss records.
+            final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
+            TimingLogger.start("RECORD_UPDATES_TABLE.insert");
+            sql =
+                    "insert into " + getTableName(name, RECORD_UPDATES_TABLE) +
+                            " (record_id, date_updated) " +
+                            "values (?,?) " +
+                            ";";
+            updateCounts = jdbcTemplate.batchUpdate(
+                    sql,
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int j) throws SQLException {
+                            int i = 1;
+                            Record r = recordsToAdd.get(j);
+                            ps.setLong(i++, r.getId());
+                            if (r.getUpdatedAt() == null) {
+                                ps.setTimestamp(i++, new Timestamp(updateTime));
+                            } else {
+                                ps.setTimestamp(i++, new Timestamp(r.getUpdatedAt().getTime()));
                             }
+                        }
 
-                            public int getBatchSize() {
-                                return recordsToAdd.size();
-                            }
-                        });
-                TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
-                LOG.debug(RECORD_UPDATES_TABLE + " committed: " + new Date());
-                LOG.debug("updateTime: " + new Date(updateTime));
-
-                LOG.debug("processedRecordsCount: " + processedRecordsCount);
-                /****
-                 * Why is this in here? I could maybe understand if you dropped indices *before* the updates (then later re-created them)...
-                ****/
-                LOG.debug("db.numInserts2dropIndexes: " + MSTConfiguration.getInstance().getPropertyAsInt("db.numInserts2dropIndexes", 0));
-                if (processedRecordsCount > MSTConfiguration.getInstance().getPropertyAsInt("db.numInserts2dropIndexes", 0)) {
-                    dropIndices(name);
+                        public int getBatchSize() {
+                            return recordsToAdd.size();
+                        }
+                    });
+            TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
+            LOG.debug(RECORD_UPDATES_TABLE + " committed: " + new Date());
+            LOG.debug("updateTime: " + new Date(updateTime));
+
+            LOG.debug("processedRecordsCount: " + processedRecordsCount);
+        } else {
+            try {
+                LOG.debug("recordsToAdd.size(): " + recordsToAdd.size());
+                String dbLoadFileStr = (MSTConfiguration.getUrlPath() + "/db_load.in").replace('\\', '/');
+                LOG.debug("dbLoadFileStr: " + dbLoadFileStr);
+                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                byte[] startTimeBytes = sdf.format(new Date(startTime)).getBytes();
+                byte[] tabBytes = "\t".getBytes();
+                byte[] newLineBytes = "\n".getBytes();
+                byte[] nullBytes = "\u0000\n".getBytes();
+                byte[] bellBytes = "\u0000\t".getBytes();
+
+                File dbLoadFile = new File(dbLoadFileStr);
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
                 }
-            } else {
-                try {
-                    LOG.debug("recordsToAdd.size(): " + recordsToAdd.size());
-                    String dbLoadFileStr = (MSTConfiguration.getUrlPath() + "/db_load.in").replace('\\', '/');
-                    LOG.debug("dbLoadFileStr: " + dbLoadFileStr);
-                    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                    byte[] startTimeBytes = sdf.format(new Date(startTime)).getBytes();
-                    byte[] tabBytes = "\t".getBytes();
-                    byte[] newLineBytes = "\n".getBytes();
-                    byte[] nullBytes = "\u0000\n".getBytes();
-                    byte[] bellBytes = "\u0000\t".getBytes();
-
-                    File dbLoadFile = new File(dbLoadFileStr);
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
+                OutputStream os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                int i = 0;
+                TimingLogger.start("RECORDS_TABLE.insert");
+                TimingLogger.start("RECORDS_TABLE.insert.create_infile");
+                for (Record r : recordsToAdd) {
+                    if (i++ > 0) {
+                        os.write(newLineBytes);
                     }
-                    OutputStream os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    int i = 0;
-                    TimingLogger.start("RECORDS_TABLE.insert");
-                    TimingLogger.start("RECORDS_TABLE.insert.create_infile");
-                    for (Record r : recordsToAdd) {
-                        if (i++ > 0) {
-                            os.write(newLineBytes);
-                        }
-                        os.write(String.valueOf(r.getId()).getBytes());
-                        os.write(tabBytes);
-                        if (r.getOaiDatestamp() == null) {
-                            os.write(startTimeBytes);
-                        } else {
-                            os.write(sdf.format(r.getOaiDatestamp()).getBytes());
-                        }
-                        os.write(tabBytes);
-                        if (r.getType() != null && r.getType().length() > 0) {
-                            os.write(r.getType().substring(0, 1).getBytes());
-                        } else {
-                            os.write("\\N".getBytes());
-                        }
-                        os.write(tabBytes);
-                        os.write(String.valueOf(r.getStatus()).getBytes());
-                        os.write(tabBytes);
-                        os.write(String.valueOf(r.getPreviousStatus()).getBytes());
-                        os.write(tabBytes);
-                        if (r.getFormat() != null)
-                            os.write(String.valueOf(r.getFormat().getId()).getBytes());
+                    os.write(String.valueOf(r.getId()).getBytes());
+                    os.write(tabBytes);
+                    if (r.getOaiDatestamp() == null) {
+                        os.write(startTimeBytes);
+                    } else {
+                        os.write(sdf.format(r.getOaiDatestamp()).getBytes());
                     }
-                    os.close();
-                    TimingLogger.stop("RECORDS_TABLE.insert.create_infile");
-                    TimingLogger.start("RECORDS_TABLE.insert.load_infile");
-                    this.jdbcTemplate.execute(
-                            "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
-                                    getTableName(name, RECORDS_TABLE) +
-                                    " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
-                            );
-                    TimingLogger.stop("RECORDS_TABLE.insert.load_infile");
-                    TimingLogger.stop("RECORDS_TABLE.insert");
-                    final long endTime = System.currentTimeMillis();
-
-                    final List<Record> recordXmls2Add = new ArrayList<Record>();
-                    for (Record r : recordsToAdd) {
-                        r.setMode(Record.STRING_MODE);
-                        if (!Record.UNCHANGED.equals(r.getOaiXml())) {
-                            recordXmls2Add.add(r);
-                        }
+                    os.write(tabBytes);
+                    if (r.getType() != null && r.getType().length() > 0) {
+                        os.write(r.getType().substring(0, 1).getBytes());
+                    } else {
+                        os.write("\\N".getBytes());
                     }
+                    os.write(tabBytes);
+                    os.write(String.valueOf(r.getStatus()).getBytes());
+                    os.write(tabBytes);
+                    os.write(String.valueOf(r.getPreviousStatus()).getBytes());
+                    os.write(tabBytes);
+                    if (r.getFormat() != null)
+                        os.write(String.valueOf(r.getFormat().getId()).getBytes());
+                }
+                os.close();
+                TimingLogger.stop("RECORDS_TABLE.insert.create_infile");
+                TimingLogger.start("RECORDS_TABLE.insert.load_infile");
+                this.jdbcTemplate.execute(
+                        "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
+                                getTableName(name, RECORDS_TABLE) +
+                                " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
+                        );
+                TimingLogger.stop("RECORDS_TABLE.insert.load_infile");
+                TimingLogger.stop("RECORDS_TABLE.insert");
+                final long endTime = System.currentTimeMillis();
 
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
-                    }
-                    os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    i = 0;
-                    TimingLogger.start("RECORDS_XML_TABLE.insert");
-                    TimingLogger.start("RECORDS_XML_TABLE.insert.create_infile");
-                    for (Record r : recordsToAdd) {
-                        if (i++ > 0) {
-                            os.write(nullBytes);
-                        }
-                        os.write(String.valueOf(r.getId()).getBytes());
-                        os.write(bellBytes);
-                        r.setMode(Record.STRING_MODE);
-                        if (r.getOaiXml() != null)
-                            os.write(String.valueOf(r.getOaiXml()).getBytes("UTF-8"));
+                final List<Record> recordXmls2Add = new ArrayList<Record>();
+                for (Record r : recordsToAdd) {
+                    r.setMode(Record.STRING_MODE);
+                    if (!Record.UNCHANGED.equals(r.getOaiXml())) {
+                        recordXmls2Add.add(r);
                     }
-                    os.close();
-                    TimingLogger.stop("RECORDS_XML_TABLE.insert.create_infile");
-                    TimingLogger.start("RECORDS_XML_TABLE.insert.load_infile");
-                    this.jdbcTemplate.execute(
-                            "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
-                                    getTableName(name, RECORDS_XML_TABLE) +
-                                    " character set utf8 fields terminated by '\\0\\t' escaped by '' lines terminated by '\\0\\n'"
-                            );
-                    TimingLogger.stop("RECORDS_XML_TABLE.insert.load_infile");
-                    TimingLogger.stop("RECORDS_XML_TABLE.insert");
+                }
 
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
+                }
+                os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                i = 0;
+                // compressed payloads could contain the field and line terminators, so they're written in hex
+                boolean compressXml = isXmlCompressed(name);
+                if (compressXml) {
+                    trainXmlDictionaries(recordsToAdd);
+                }
+                TimingLogger.start("RECORDS_XML_TABLE.insert");
+                TimingLogger.start("RECORDS_XML_TABLE.insert.create_infile");
+                for (Record r : recordsToAdd) {
+                    if (i++ > 0) {
+                        os.write(nullBytes);
                     }
-                    os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    i = 0;
-                    TimingLogger.start("RECORDS_SETS_TABLE.insert");
-                    TimingLogger.start("RECORDS_SETS_TABLE.insert.create_infile");
-                    for (Record r : recordsToAdd) {
-                        if (r.getSets() != null) {
-                            for (Set s : r.getSets()) {
-                                if (i++ > 0) {
-                                    os.write(newLineBytes);
-                                }
-                                os.write(String.valueOf(r.getId()).getBytes());
-                                os.write(tabBytes);
-                                os.write(String.valueOf(s.getId()).getBytes());
-                            }
+                    os.write(String.valueOf(r.getId()).getBytes());
+                    os.write(bellBytes);
+                    r.setMode(Record.STRING_MODE);
+                    if (r.getOaiXml() != null) {
+                        if (compressXml) {
+                            os.write(Hex.encodeHexString(encodeXml(r, r.getOaiXml())).getBytes());
+                        } else {
+                            os.write(String.valueOf(r.getOaiXml()).getBytes("UTF-8"));
                         }
                     }
-                    os.close();
-                    TimingLogger.stop("RECORDS_SETS_TABLE.insert.create_infile");
-                    TimingLogger.start("RECORDS_SETS_TABLE.insert.load_infile");
-                    this.jdbcTemplate.execute(
-                            "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
-                                    getTableName(name, RECORDS_SETS_TABLE) +
-                                    " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
-                            );
-                    TimingLogger.stop("RECORDS_SETS_TABLE.insert.load_infile");
-                    TimingLogger.stop("RECORDS_SETS_TABLE.insert");
+                }
+                os.close();
+                TimingLogger.stop("RECORDS_XML_TABLE.insert.create_infile");
+                TimingLogger.start("RECORDS_XML_TABLE.insert.load_infile");
+                this.jdbcTemplate.execute(
+                        "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
+                                getTableName(name, RECORDS_XML_TABLE) +
+                                " character set utf8 fields terminated by '\\0\\t' escaped by '' lines terminated by '\\0\\n'" +
+                                (compressXml ? " (record_id, @xml) set xml = unhex(@xml)" : "")
+                        );
+                TimingLogger.stop("RECORDS_XML_TABLE.insert.load_infile");
+                TimingLogger.stop("RECORDS_XML_TABLE.insert");
 
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
-                    }
-                    os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    i = 0;
-                    TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert");
-                    TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert.create_infile");
-                    for (Record r : recordsToAdd) {
-                        if (r.getPredecessors() != null) {
-                            for (RecordIfc p : r.getPredecessors()) {
-                                if (i++ > 0) {
-                                    os.write(newLineBytes);
-                                }
-                                os.write(String.valueOf(r.getId()).getBytes());
-                                os.write(tabBytes);
-                                os.write(String.valueOf(p.getId()).getBytes());
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
+                }
+                os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                i = 0;
+                TimingLogger.start("RECORDS_SETS_TABLE.insert");
+                TimingLogger.start("RECORDS_SETS_TABLE.insert.create_infile");
+                for (Record r : recordsToAdd) {
+                    if (r.getSets() != null) {
+                        for (Set s : r.getSets()) {
+                            if (i++ > 0) {
+                                os.write(newLineBytes);
                             }
+                            os.write(String.valueOf(r.getId()).getBytes());
+                            os.write(tabBytes);
+                            os.write(String.valueOf(s.getId()).getBytes());
                         }
                     }
-                    os.close();
-                    TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert.create_infile");
-                    TimingLogger.start("RECORDS_SETS_TABLE.insert.load_infile");
-                    this.jdbcTemplate.execute(
-                            "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
-                                    getTableName(name, RECORD_PREDECESSORS_TABLE) +
-                                    " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
-                            );
-                    TimingLogger.stop("RECORDS_SETS_TABLE.insert.load_infile");
-                    TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert");
+                }
+                os.close();
+                TimingLogger.stop("RECORDS_SETS_TABLE.insert.create_infile");
+                TimingLogger.start("RECORDS_SETS_TABLE.insert.load_infile");
+                this.jdbcTemplate.execute(
+                        "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
+                                getTableName(name, RECORDS_SETS_TABLE) +
+                                " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
+                        );
+                TimingLogger.stop("RECORDS_SETS_TABLE.insert.load_infile");
+                TimingLogger.stop("RECORDS_SETS_TABLE.insert");
 
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
-                    }
-                    boolean atLeastOne = false;
-                    os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    i = 0;
-                    TimingLogger.start("RECORD_OAI_IDS.insert");
-                    TimingLogger.start("RECORD_OAI_IDS.insert.create_infile");
-                    for (Record r : recordsToAdd) {
-                        if (r.getHarvestedOaiIdentifier() != null) {
-                            atLeastOne = true;
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
+                }
+                os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                i = 0;
+                TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert");
+                TimingLogger.start("RECORD_PREDECESSORS_TABLE.insert.create_infile");
+                for (Record r : recordsToAdd) {
+                    if (r.getPredecessors() != null) {
+                        for (RecordIfc p : r.getPredecessors()) {
                             if (i++ > 0) {
                                 os.write(newLineBytes);
                             }
                             os.write(String.valueOf(r.getId()).getBytes());
                             os.write(tabBytes);
-                            os.write(String.valueOf(r.getHarvestedOaiIdentifier()).getBytes("UTF-8"));
+                            os.write(String.valueOf(p.getId()).getBytes());
                         }
                     }
-                    os.close();
-                    TimingLogger.stop("RECORD_OAI_IDS.insert.create_infile");
-                    TimingLogger.start("RECORDS_OAI_IDS.insert.load_infile");
-                    if (atLeastOne) {
-                        this.jdbcTemplate.execute(
-                                "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
-                                        getTableName(name, RECORD_OAI_IDS) +
-                                        " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
-                                );
-                    }
-                    TimingLogger.stop("RECORDS_OAI_IDS.insert.load_infile");
-                    TimingLogger.stop("RECORD_OAI_IDS.insert");
+                }
+                os.close();
+                TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert.create_infile");
+                TimingLogger.start("RECORDS_SETS_TABLE.insert.load_infile");
+                this.jdbcTemplate.execute(
+                        "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
+                                getTableName(name, RECORD_PREDECESSORS_TABLE) +
+                                " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
+                        );
+                TimingLogger.stop("RECORDS_SETS_TABLE.insert.load_infile");
+                TimingLogger.stop("RECORD_PREDECESSORS_TABLE.insert");
 
-                    if (dbLoadFile.exists()) {
-                        dbLoadFile.delete();
-                    }
-                    os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
-                    i = 0;
-                    TimingLogger.start("RECORD_UPDATES_TABLE.insert");
-                    TimingLogger.start("RECORD_UPDATES_TABLE.insert.create_infile");
-                    // I'm slightly future dating the timestamp of the records so that a record will always
-                    // have been available from it's update_date forward. If we don't do this, then it's
-                    // possible for harvests to miss records.
-                    final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
-                    byte[] updateTimeBytes = sdf.format(updateTime).getBytes();
-                    for (Record r : recordsToAdd) {
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
+                }
+                boolean atLeastOne = false;
+                os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                i = 0;
+                TimingLogger.start("RECORD_OAI_IDS.insert");
+                TimingLogger.start("RECORD_OAI_IDS.insert.create_infile");
+                for (Record r : recordsToAdd) {
+                    if (r.getHarvestedOaiIdentifier() != null) {
+                        atLeastOne = true;
                         if (i++ > 0) {
                             os.write(newLineBytes);
                         }
                         os.write(String.valueOf(r.getId()).getBytes());
                         os.write(tabBytes);
-                        if (r.getUpdatedAt() == null) {
-                            os.write(updateTimeBytes);
-                        } else {
-                            os.write(sdf.format(r.getUpdatedAt()).getBytes());
-                        }
+                        os.write(String.valueOf(r.getHarvestedOaiIdentifier()).getBytes("UTF-8"));
                     }
-                    os.close();
-                    TimingLogger.stop("RECORD_UPDATES_TABLE.insert.create_infile");
-                    TimingLogger.start("RECORDS_UPDATES_TABLE.insert.load_infile");
+                }
+                os.close();
+                TimingLogger.stop("RECORD_OAI_IDS.insert.create_infile");
+                TimingLogger.start("RECORDS_OAI_IDS.insert.load_infile");
+                if (atLeastOne) {
                     this.jdbcTemplate.execute(
-                            "load data infile '" + dbLoadFileStr + "' into table " +
-                                    getTableName(name, RECORD_UPDATES_TABLE) +
+                            "load data infile '" + dbLoadFileStr + "' REPLACE into table " +
+                                    getTableName(name, RECORD_OAI_IDS) +
                                     " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
                             );
-                    TimingLogger.stop("RECORDS_UPDATES_TABLE.insert.load_infile");
-                    TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
-
-                } catch (Throwable t) {
-                    getUtil().throwIt(t);
                 }
-            }
+                TimingLogger.stop("RECORDS_OAI_IDS.insert.load_infile");
+                TimingLogger.stop("RECORD_OAI_IDS.insert");
 
-            recordsToAdd = new ArrayList<Record>();
-            recordsToAddInx = new HashMap<Long, Record>();
+                if (dbLoadFile.exists()) {
+                    dbLoadFile.delete();
+                }
+                os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+                i = 0;
+                TimingLogger.start("RECORD_UPDATES_TABLE.insert");
+                TimingLogger.start("RECORD_UPDATES_TABLE.insert.create_infile");
+                // I'm slightly future dating the timestamp of the records so that a record will always
+                // have been available from it's update_date forward. If we don't do this, then it's
+                // possible for harvests to miss records.
+                final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
+                byte[] updateTimeBytes = sdf.format(updateTime).getBytes();
+                for (Record r : recordsToAdd) {
+                    if (i++ > 0) {
+                        os.write(newLineBytes);
+                    }
+                    os.write(String.valueOf(r.getId()).getBytes());
+                    os.write(tabBytes);
+                    if (r.getUpdatedAt() == null) {
+                        os.write(updateTimeBytes);
+                    } else {
+                        os.write(sdf.format(r.getUpdatedAt()).getBytes());
+                    }
+                }
+                os.close();
+                TimingLogger.stop("RECORD_UPDATES_TABLE.insert.create_infile");
+                TimingLogger.start("RECORDS_UPDATES_TABLE.insert.load_infile");
+                this.jdbcTemplate.execute(
+                        "load data infile '" + dbLoadFileStr + "' into table " +
+                                getTableName(name, RECORD_UPDATES_TABLE) +
+                                " character set utf8 fields terminated by '\\t' lines terminated by '\\n'"
+                        );
+                TimingLogger.stop("RECORDS_UPDATES_TABLE.insert.load_infile");
+                TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
 
-            TimingLogger.stop("commit to db");
-            if (force) {
-                inBatch = false;
+            } catch (Throwable t) {
+                getUtil().throwIt(t);
             }
-            return true;
-        } else {
-            return force;
         }
     }
 
@@ -855,7 +1152,11 @@ public class RepositoryDAO extends BaseDAO {
         return rowList;
     }
 
-	public void populateHarvestCache(String name, DynKeyLongMap harvestCache) {
+    public long getNumOaiIds(String name) {
+        return this.jdbcTemplate.queryForLong("select count(*) from " + getTableName(name, RECORD_OAI_IDS));
+    }
+
+	public void populateHarvestCache(String name, OaiIdIndex harvestCache) {
         TimingLogger.start("populateHarvestCache");
         int page = 0;
         List<Map<String, Object>> rowList = getHarvestCache(name, page);
@@ -974,11 +1275,11 @@ public class RepositoryDAO extends BaseDAO {
     // first check that the table exists
     public boolean hasOnlyRecordsOfStatus(String name, char status) {
         try {
-            List<Map<String, Object>> rows =
-                    this.jdbcTemplate.queryForList("select count(*), status from " + getTableName(name, RECORDS_TABLE) + " group by status");
-
-            for (Map<String, Object> row : rows) {
-                char stat = ((String) row.get("status")).charAt(0);
+            for (RecordStatsDAO.Row row : getRecordStatsDAO().getStats(name, false)) {
+                if (row.records == 0) {
+                    continue;
+                }
+                char stat = row.status.charAt(0);
                 if (stat != status) {
                     LOG.debug("**** looking to see if have record type: " + status + "FALSE now looking at: " + stat);
                     return false;
@@ -1023,6 +1324,10 @@ public class RepositoryDAO extends BaseDAO {
 
     public void createTables(Repository repo) {
         runSql(repo, "xc/mst/repo/sql/create_repo.sql");
+        getRecordStatsDAO().initialize(repo.getName());
+        if (MSTConfiguration.getInstance().getPropertyAsBoolean("db.recordsXml.compress", false)) {
+            compressXmlColumn(repo.getName());
+        }
         if (repo.getProvider() != null) {
 			runSql(repo, "xc/mst/repo/sql/create_harvest_repo.sql");
         } else if (repo.getService() != null) {
@@ -1041,10 +1346,179 @@ public class RepositoryDAO extends BaseDAO {
             if (StringUtils.isEmpty(StringUtils.trim(sql))) {
                 continue;
             }
-            sql = sql + ";";
-            LOG.info(sql);
-            this.jdbcTemplate.execute(sql);
+            sql = sql + ";";
+            LOG.info(sql);
+            this.jdbcTemplate.execute(sql);
+        }
+    }
+
+    public boolean isXmlCompressed(String name) {
+        Boolean compressed = xmlCompressed.get(name);
+        if (compressed == null) {
+            compressed = false;
+            List<Map<String, Object>> rows =
+                    this.jdbcTemplate.queryForList("show columns from " + getTableName(name, RECORDS_XML_TABLE) + " like 'xml'");
+            if (rows != null && rows.size() > 0) {
+                compressed = String.valueOf(rows.get(0).get("Type")).toLowerCase().endsWith("blob");
+            }
+            xmlCompressed.put(name, compressed);
+        }
+        return compressed;
+    }
+
+    // From here on, what's written to the repo's records_xml is compressed.  What's already there
+    // is left as it is (as UTF-8 bytes), which decodeXml still reads.
+    protected void compressXmlColumn(String name) {
+        this.jdbcTemplate.execute("alter table " + getTableName(name, RECORDS_XML_TABLE) + " modify xml longblob");
+        xmlCompressed.put(name, true);
+    }
+
+    /**
+     * Converts a repository's records_xml to compressed payloads, a page of records at a time.
+     * It can run while the repository is in use: a record is only overwritten if its xml is still
+     * what was read, so one rewritten in the meantime keeps its new xml (and is picked up by the
+     * next run, if it was written uncompressed). It can also be run again if interrupted.
+     *
+     * @return the number of records compressed
+     */
+    public int compressXml(String name) {
+        if (!isXmlCompressed(name)) {
+            LOG.info("changing " + getTableName(name, RECORDS_XML_TABLE) + ".xml to a blob");
+            compressXmlColumn(name);
+        }
+        int pageSize = MSTConfiguration.getInstance().getPropertyAsInt("db.insertsAtOnce", 5000);
+        long lastId = -1;
+        int compressed = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        while (true) {
+            TimingLogger.start("RECORDS_XML_TABLE.compress");
+            List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(
+                    "select x.record_id, r.format_id, x.xml " +
+                            "from " + getTableName(name, RECORDS_XML_TABLE) + " x " +
+                            "left join " + getTableName(name, RECORDS_TABLE) + " r on r.record_id = x.record_id " +
+                            "where x.record_id > ? " +
+                            "order by x.record_id " +
+                            "limit " + pageSize,
+                    lastId);
+            if (rows.size() == 0) {
+                TimingLogger.stop("RECORDS_XML_TABLE.compress");
+                break;
+            }
+            final List<Record> page = new ArrayList<Record>();
+            final List<byte[]> originals = new ArrayList<byte[]>();
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("record_id")).longValue();
+                byte[] payload = (byte[]) row.get("xml");
+                if (payload == null || RecordXmlCodec.isEncoded(payload)) {
+                    continue;
+                }
+                Record r = new Record();
+                r.setId(lastId);
+                if (row.get("format_id") != null) {
+                    Format f = new Format();
+                    f.setId(((Number) row.get("format_id")).intValue());
+                    r.setFormat(f);
+                }
+                r.setMode(Record.STRING_MODE);
+                r.setOaiXml(RecordXmlCodec.decode(payload, null));
+                page.add(r);
+                originals.add(payload);
+            }
+            trainXmlDictionaries(page);
+            final List<byte[]> payloads = new ArrayList<byte[]>(page.size());
+            for (Record r : page) {
+                payloads.add(encodeXml(r, r.getOaiXml()));
+            }
+            // "and xml=?" leaves alone any record that's been written since it was read
+            int[] updateCounts = this.jdbcTemplate.batchUpdate(
+                    "update " + getTableName(name, RECORDS_XML_TABLE) + " set xml=? where record_id=? and xml=?",
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int j) throws SQLException {
+                            ps.setBytes(1, payloads.get(j));
+                            ps.setLong(2, page.get(j).getId());
+                            ps.setBytes(3, originals.get(j));
+                        }
+
+                        public int getBatchSize() {
+                            return page.size();
+                        }
+                    });
+            for (int j = 0; j < updateCounts.length; j++) {
+                if (updateCounts[j] == 0) {
+                    LOG.debug("record_id " + page.get(j).getId() + " was rewritten while it was being compressed; left as is");
+                    continue;
+                }
+                compressed++;
+                bytesBefore += originals.get(j).length;
+                bytesAfter += payloads.get(j).length;
+            }
+            TimingLogger.stop("RECORDS_XML_TABLE.compress");
+            LOG.info("compressed " + compressed + " records in " + name + " (through record_id " + lastId + "): " +
+                    bytesBefore + " bytes -> " + bytesAfter);
+        }
+        // MyISAM doesn't give back the space the old rows took until the table is rebuilt
+        this.jdbcTemplate.queryForList("optimize table " + getTableName(name, RECORDS_XML_TABLE));
+        return compressed;
+    }
+
+    /**
+     * Trains a dictionary for each format in the batch that hasn't got one yet.  Until a format
+     * has a dictionary (ie it's had db.recordsXml.dictionary.minSamples records in a batch) its
+     * records are compressed without one.
+     */
+    protected void trainXmlDictionaries(List<Record> records) {
+        Map<Integer, List<String>> samples = new HashMap<Integer, List<String>>();
+        for (Record r : records) {
+            if (r.getFormat() == null || r.getOaiXml() == null || Record.UNCHANGED.equals(r.getOaiXml())) {
+                continue;
+            }
+            int formatId = r.getFormat().getId();
+            List<String> formatSamples = samples.get(formatId);
+            if (formatSamples == null) {
+                if (getXmlDictionaryDAO().getDictionaryId(formatId) != 0) {
+                    continue;
+                }
+                formatSamples = new ArrayList<String>();
+                samples.put(formatId, formatSamples);
+            }
+            if (formatSamples.size() < XML_DICTIONARY_SAMPLES) {
+                formatSamples.add(r.getOaiXml());
+            }
+        }
+        int minSamples = MSTConfiguration.getInstance().getPropertyAsInt("db.recordsXml.dictionary.minSamples", 100);
+        for (Map.Entry<Integer, List<String>> me : samples.entrySet()) {
+            getXmlDictionaryDAO().getOrTrainDictionaryId(me.getKey(), me.getValue(), minSamples);
+        }
+    }
+
+    protected byte[] encodeXml(Record r, String xml) {
+        if (xml == null) {
+            return null;
+        }
+        int dictionaryId = 0;
+        if (r.getFormat() != null) {
+            dictionaryId = getXmlDictionaryDAO().getDictionaryId(r.getFormat().getId());
+        }
+        byte[] payload = RecordXmlCodec.encode(xml, dictionaryId,
+                dictionaryId == 0 ? null : getXmlDictionaryDAO().getDictionary(dictionaryId));
+        TimingLogger.add("RECORDS_XML_COMPRESSED_LENGTH", payload.length);
+        return payload;
+    }
+
+    protected String decodeXml(byte[] payload) {
+        if (!RecordXmlCodec.isEncoded(payload)) {
+            return RecordXmlCodec.decode(payload, null);
+        }
+        int dictionaryId = RecordXmlCodec.getDictionaryId(payload);
+        byte[] dictionary = null;
+        if (dictionaryId != 0) {
+            dictionary = getXmlDictionaryDAO().getDictionary(dictionaryId);
+            if (dictionary == null) {
+                throw new RuntimeException("records_xml dictionary " + dictionaryId + " not found");
+            }
         }
+        return RecordXmlCodec.decode(payload, dictionary);
     }
 
     public Record getRecord(String name, long id) {
@@ -1368,6 +1842,76 @@ public class RepositoryDAO extends BaseDAO {
         return true;
     }
 
+    // the query getRecordCount and getRecordCountEstimate count the range with; adds its parameters to params
+    protected String getRecordCountSql(String name, Date from, Date until,
+            Format inputFormat, Set inputSet, List<Object> params) {
+        if (until == null) {
+            until = new Date();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(
+                " select straight_join count(distinct u.record_id) " +
+                        " from " + getTableName(name, RECORD_UPDATES_TABLE) + " u  force index (idx_record_updates_date_updated), " +
+                        getTableName(name, RECORDS_TABLE) + " r IGNORE index (idx_records_format_id)");
+
+        if (inputSet != null) {
+            sb.append(", " + getTableName(name, RECORDS_SETS_TABLE) + " rs ignore index (idx_record_sets_set_id) ");
+        }
+
+        if (Util.dateIsNull(from)) {
+        	sb.append(
+                    " where r.status = '" + Record.ACTIVE + "'" +
+                            " and r.record_id = u.record_id " +
+                            " and (u.date_updated <= ? or ? is null) "
+                        );
+            params.add(until);
+            params.add(until);
+        } else {
+        	sb.append(
+                " where r.status in ('" + Record.ACTIVE + "','" + Record.DELETED + "')" +
+                        " and r.record_id = u.record_id " +
+                        " and (u.date_updated >= ? or ? is null) " +
+                        " and (u.date_updated <= ? or ? is null) "
+                    );
+            params.add(from);
+            params.add(from);
+            params.add(until);
+            params.add(until);
+        }
+        if (inputFormat != null) {
+            sb.append(
+                    " and r.format_id = ? ");
+            params.add(inputFormat.getId());
+        }
+        if (inputSet != null) {
+            sb.append(
+                    " and r.record_id = rs.record_id " +
+                            " and rs.set_id = ? ");
+            params.add(inputSet.getId());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Like getRecordCount, except that a range of more than harvestProvider.estimateCompleteListSizeThreshold
+     * records isn't counted; MySQL's estimate of it (from explain) is returned instead, as a negative number.
+     */
+    public long getRecordCountEstimate(String name, Date from, Date until,
+            Format inputFormat, Set inputSet) {
+        List<Object> params = new ArrayList<Object>();
+        String sql = getRecordCountSql(name, from, until, inputFormat, inputSet, params);
+        Object obj[] = params.toArray();
+
+        List<Map<String, Object>> records = this.jdbcTemplate.queryForList("explain " + sql, obj);
+        BigInteger rows2examine = (BigInteger) records.get(0).get("rows");
+        LOG.debug("rows: " + rows2examine);
+        if (rows2examine != null && rows2examine.longValue() > getEstimateCompleteListSizeThreshold()) {
+            return -rows2examine.longValue();
+        }
+        return this.jdbcTemplate.queryForLong(sql, obj);
+    }
+
     // You used to have a tally param (and startingId). The purpose was to send it along in each resumptionToken.
     // This way, if you found the actual num usual step #3, you could add the already harvested
     // total to this. I don't think it's necessary anymore because by the time the harvester will
@@ -1497,50 +2041,7 @@ public class RepositoryDAO extends BaseDAO {
 
         {
             List<Object> params = new ArrayList<Object>();
-            if (until == null) {
-                until = new Date();
-            }
-            StringBuilder sb = new StringBuilder();
-            sb.append(
-                    " select straight_join count(distinct u.record_id) " +
-                            " from " + getTableName(name, RECORD_UPDATES_TABLE) + " u  force index (idx_record_updates_date_updated), " +
-                            getTableName(name, RECORDS_TABLE) + " r IGNORE index (idx_records_format_id)");
-
-            if (inputSet != null) {
-                sb.append(", " + getTableName(name, RECORDS_SETS_TABLE) + " rs ignore index (idx_record_sets_set_id) ");
-            }
-
-            if (Util.dateIsNull(from)) {
-            	sb.append(
-                        " where r.status = '" + Record.ACTIVE + "'" +
-                                " and r.record_id = u.record_id " +
-                                " and (u.date_updated <= ? or ? is null) "
-                            );
-                params.add(until);
-                params.add(until);
-            } else {
-            	sb.append(
-                    " where r.status in ('" + Record.ACTIVE + "','" + Record.DELETED + "')" +
-                            " and r.record_id = u.record_id " +
-                            " and (u.date_updated >= ? or ? is null) " +
-                            " and (u.date_updated <= ? or ? is null) "
-                        );
-                params.add(from);
-                params.add(from);
-                params.add(until);
-                params.add(until);
-            }
-            if (inputFormat != null) {
-                sb.append(
-                        " and r.format_id = ? ");
-                params.add(inputFormat.getId());
-            }
-            if (inputSet != null) {
-                sb.append(
-                        " and r.record_id = rs.record_id " +
-                                " and rs.set_id = ? ");
-                params.add(inputSet.getId());
-            }
+            String sql = getRecordCountSql(name, from, until, inputFormat, inputSet, params);
 
             Object obj[] = params.toArray();
 
@@ -1549,14 +2050,14 @@ public class RepositoryDAO extends BaseDAO {
             List<Map<String, Object>> records = null;
             BigInteger rows2examine = null;
 
-            records = this.jdbcTemplate.queryForList("explain " + sb.toString(), obj);
+            records = this.jdbcTemplate.queryForList("explain " + sql, obj);
             rows2examine = (BigInteger) records.get(0).get("rows");
             LOG.debug("rows: " + rows2examine);
             LOG.debug("force: " + force);
             /******* COMPLEXITY
             if (rows2examine.intValue() < completeListSizeThreshold || force) {
                 countMethod2use = 3; COMPLEXITY *******/
-                recordCount = this.jdbcTemplate.queryForLong(sb.toString(), obj);
+                recordCount = this.jdbcTemplate.queryForLong(sql, obj);
                 lastCompleteListSizeMethod = 3;
                 return recordCount;
             /******* COMPLEXITY } COMPLEXITY ******/
@@ -1943,49 +2444,67 @@ public class RepositoryDAO extends BaseDAO {
         return recIds;
     }
     
-    public void activateRecords(String name, final TLongHashSet recordIds) {
+    public void activateRecords(final String name, final TLongHashSet recordIds) {
+        if (recordIds.size() > 0 && hasPendingCommits(name)) {
+            // the records may still be waiting on the committer thread, so this has to queue up behind them
+            final TLongHashSet ids = (TLongHashSet) recordIds.clone();
+            submitCommit(name, new Runnable() {
+                public void run() {
+                    activateRecordsNow(name, ids);
+                }
+            });
+        } else {
+            activateRecordsNow(name, recordIds);
+        }
+    }
+
+    protected void activateRecordsNow(String name, final TLongHashSet recordIds) {
         if (recordIds.size() > 0) {
-            long startTime = System.currentTimeMillis();
-            TimingLogger.start("activateRecords");
-            String sql = "update " + getTableName(name, RepositoryDAO.RECORDS_TABLE) +
-                    " set status='" + Record.ACTIVE + "', prev_status=status "+ // in future may need flex. to pass in prev_status;true today though
-                    " where record_id = ?";
-            final TLongIterator it = recordIds.iterator();
-            int[] updateCount = jdbcTemplate.batchUpdate(
-                    sql,
-                    new BatchPreparedStatementSetter() {
-                        public void setValues(PreparedStatement ps, int j) throws SQLException {
-                            ps.setLong(1, it.next());
-                        }
+            synchronized (getRecordStatsDAO().getLock(name)) {
+                RecordStatsDAO.Deltas statsDeltas = getRecordStatsDAO().getActivateDeltas(name, recordIds, true);
+                long startTime = System.currentTimeMillis();
+                TimingLogger.start("activateRecords");
+                String sql = "update " + getTableName(name, RepositoryDAO.RECORDS_TABLE) +
+                        " set status='" + Record.ACTIVE + "', prev_status=status "+ // in future may need flex. to pass in prev_status;true today though
+                        " where record_id = ?";
+                final TLongIterator it = recordIds.iterator();
+                int[] updateCount = jdbcTemplate.batchUpdate(
+                        sql,
+                        new BatchPreparedStatementSetter() {
+                            public void setValues(PreparedStatement ps, int j) throws SQLException {
+                                ps.setLong(1, it.next());
+                            }
 
-                        public int getBatchSize() {
-                            return recordIds.size();
-                        }
-                    });
-            TimingLogger.stop("activateRecords");
-            long endTime = System.currentTimeMillis();
-            final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
-            final TLongIterator it2 = recordIds.iterator();
-            TimingLogger.start("RECORD_UPDATES_TABLE.insert");
-            sql =
-                    "insert into " + getTableName(name, RECORD_UPDATES_TABLE) +
-                            " (record_id, date_updated) " +
-                            "values (?,?) " +
-                            ";";
-            jdbcTemplate.batchUpdate(
-                    sql,
-                    new BatchPreparedStatementSetter() {
-                        public void setValues(PreparedStatement ps, int j) throws SQLException {
-                            int i = 1;
-                            ps.setLong(i++, it2.next());
-                            ps.setTimestamp(i++, new Timestamp(updateTime));
-                        }
+                            public int getBatchSize() {
+                                return recordIds.size();
+                            }
+                        });
+                TimingLogger.stop("activateRecords");
+                long endTime = System.currentTimeMillis();
+                final long updateTime = System.currentTimeMillis() + (endTime - startTime) + 3000;
+                final TLongIterator it2 = recordIds.iterator();
+                TimingLogger.start("RECORD_UPDATES_TABLE.insert");
+                sql =
+                        "insert into " + getTableName(name, RECORD_UPDATES_TABLE) +
+                                " (record_id, date_updated) " +
+                                "values (?,?) " +
+                                ";";
+                jdbcTemplate.batchUpdate(
+                        sql,
+                        new BatchPreparedStatementSetter() {
+                            public void setValues(PreparedStatement ps, int j) throws SQLException {
+                                int i = 1;
+                                ps.setLong(i++, it2.next());
+                                ps.setTimestamp(i++, new Timestamp(updateTime));
+                            }
 
-                        public int getBatchSize() {
-                            return recordIds.size();
-                        }
-                    });
-            TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
+                            public int getBatchSize() {
+                                return recordIds.size();
+                            }
+                        });
+                TimingLogger.stop("RECORD_UPDATES_TABLE.insert");
+                getRecordStatsDAO().apply(name, statsDeltas);
+            }
         } else {
             LOG.debug("linkedToIds is null or empty");
         }
@@ -1994,26 +2513,33 @@ public class RepositoryDAO extends BaseDAO {
     public void activateLinkedRecords(String name, final TLongArrayList linkedToIds) {
         if (linkedToIds.size() > 0) {
             TimingLogger.start("activateHeldHoldings");
-            StringBuilder sb = new StringBuilder("update " + getTableName(name, RepositoryDAO.RECORDS_TABLE) +
-                    " set status='" + Record.ACTIVE + "'" +
-                    " where record_id in (select from_record_id from links where to_record_id in (");
+            StringBuilder where = new StringBuilder(" record_id in (select from_record_id from links where to_record_id in (");
+            Object[] args = new Object[linkedToIds.size()];
             for (int i = 0; i < linkedToIds.size(); i++) {
-                sb.append("?");
+                where.append("?");
                 if (i + 1 < linkedToIds.size()) {
-                    sb.append(", ");
+                    where.append(", ");
                 }
-            }
-            sb.append("))");
-            LOG.debug("sb.toString(): " + sb.toString());
-
-            int updateCount = jdbcTemplate.update(
-                    sb.toString(), new PreparedStatementSetter() {
-                        public void setValues(PreparedStatement ps) throws SQLException {
-                            for (int i = 0; i < linkedToIds.size(); i++) {
-                                ps.setLong(i + 1, linkedToIds.get(i));
+                args[i] = linkedToIds.get(i);
+            }
+            where.append("))");
+            synchronized (getRecordStatsDAO().getLock(name)) {
+                RecordStatsDAO.Deltas statsDeltas = getRecordStatsDAO().getActivateLinkedDeltas(name, where.toString(), args);
+                StringBuilder sb = new StringBuilder("update " + getTableName(name, RepositoryDAO.RECORDS_TABLE) +
+                        " set status='" + Record.ACTIVE + "'" +
+                        " where" + where);
+                LOG.debug("sb.toString(): " + sb.toString());
+
+                int updateCount = jdbcTemplate.update(
+                        sb.toString(), new PreparedStatementSetter() {
+                            public void setValues(PreparedStatement ps) throws SQLException {
+                                for (int i = 0; i < linkedToIds.size(); i++) {
+                                    ps.setLong(i + 1, linkedToIds.get(i));
+                                }
                             }
-                        }
-                    });
+                        });
+                getRecordStatsDAO().apply(name, statsDeltas);
+            }
             TimingLogger.stop("activateHeldHoldings");
         } else {
             LOG.debug("linkedToIds is null or empty");
@@ -2031,6 +2557,7 @@ public class RepositoryDAO extends BaseDAO {
         this.jdbcTemplate.update("delete from " + getTableName(name, RECORD_UPDATES_TABLE));
         this.jdbcTemplate.update("delete from " + getTableName(name, RECORDS_TABLE));
         this.jdbcTemplate.update("delete from " + getTableName(name, RECORDS_XML_TABLE));
+        getRecordStatsDAO().clear(name);
     }
 
     private static final class RepoMapper implements RowMapper<Repository> {
@@ -2057,6 +2584,8 @@ public class RepositoryDAO extends BaseDAO {
     private static final class RecordMapper implements RowMapper<Record> {
         protected List<String> tables = null;
         protected RepositoryDAO thisthis = null;
+        // whether the repo's records_xml is compressed
+        protected Boolean xmlIsBlob = null;
 
         public RecordMapper(String[] tables, RepositoryDAO thisthis) {
             this.tables = Arrays.asList(tables);
@@ -2093,7 +2622,15 @@ public class RepositoryDAO extends BaseDAO {
             }
             if (tables.contains(RECORDS_XML_TABLE)) {
                 r.setMode(Record.STRING_MODE);
-                r.setOaiXml(rs.getString("x.xml"));
+                if (xmlIsBlob == null) {
+                    int type = rs.getMetaData().getColumnType(rs.findColumn("x.xml"));
+                    xmlIsBlob = type == Types.LONGVARBINARY || type == Types.VARBINARY || type == Types.BLOB;
+                }
+                if (xmlIsBlob) {
+                    r.setOaiXml(thisthis.decodeXml(rs.getBytes("x.xml")));
+                } else {
+                    r.setOaiXml(rs.getString("x.xml"));
+                }
             }
 
             if (tables.contains(RECORDS_SETS_TABLE)) {
@@ -2128,6 +2665,40 @@ public class RepositoryDAO extends BaseDAO {
         }
     }
 
+    /**
+     * Decides, once at the start of a run, whether the repository's indexes are dropped before
+     * its first batch is written (and rebuilt by createIndicesIfNecessary when it completes).
+     *
+     * @param records2Process
+     *            how many records the run expects to write; 0 or less if it doesn't know
+     */
+    public void planIndices(String name, long records2Process) {
+        getWriteBuffer(name).dropIndices = shouldDropIndices(name, records2Process);
+    }
+
+    /**
+     * Whether a run of records2Process records is big enough, next to the repository, that
+     * writing them without indexes and rebuilding them afterwards is quicker than keeping them up
+     * to date. It has to be over db.numInserts2dropIndexes, and at least db.dropIndexes.minRatio
+     * of the records in the repository, so that a small run against a large repository keeps its
+     * indexes (and the repository stays harvestable).
+     */
+    protected boolean shouldDropIndices(String name, long records2Process) {
+        int numInserts2dropIndexes = MSTConfiguration.getInstance().getPropertyAsInt("db.numInserts2dropIndexes", 0);
+        LOG.debug("db.numInserts2dropIndexes: " + numInserts2dropIndexes);
+        if (records2Process <= 0 || records2Process <= numInserts2dropIndexes) {
+            return false;
+        }
+        double minRatio = MSTConfiguration.getInstance().getPropertyAsDouble("db.dropIndexes.minRatio", 0.5);
+        long numRecords = getNumRecords(name);
+        if (records2Process < minRatio * numRecords) {
+            LOG.info(name + ": " + records2Process + " records to process, " + numRecords + " in the repository; keeping its indexes");
+            return false;
+        }
+        LOG.info(name + ": " + records2Process + " records to process, " + numRecords + " in the repository; dropping its indexes");
+        return true;
+    }
+
     public void dropIndices(String name) {
         name = getUtil().getDBSchema(name);
         TimingLogger.start("dropIndices." + name);
@@ -2184,11 +2755,16 @@ public class RepositoryDAO extends BaseDAO {
         TimingLogger.stop("dropIndices." + name);
     }
 
+    /**
+     * Creates whichever of the repository's indexes are missing (after dropIndices, or in a
+     * repository created without them). The tables are rebuilt concurrently by an IndexBuilder,
+     * on db.indexRebuild.threads threads, the records table first.
+     */
     public void createIndicesIfNecessary(String name) {
         name = getUtil().getDBSchema(name);
 
         TimingLogger.start("createIndicesIfNecessary." + name);
-        
+
         java.util.Set<String> tables = new HashSet<String>();
         List<Map<String, Object>> rows = this.jdbcTemplate.queryForList("show tables in " + name);
         if (rows != null) {
@@ -2196,188 +2772,64 @@ public class RepositoryDAO extends BaseDAO {
                 tables.add((String) row.values().iterator().next());
             }
         }
-                
+
+        IndexBuilder indexBuilder = new IndexBuilder(this.jdbcTemplate, name,
+                MSTConfiguration.getInstance().getPropertyAsInt("db.indexRebuild.threads", 3));
+
         boolean genericRepoIndexExists = ready4harvest(name);
         if (!genericRepoIndexExists) {
-            String[] indices2create = new String[] {
-                    "create index idx_records_date_created on " + getTableName(name, RECORDS_TABLE) + " (oai_datestamp)",
-                    "create index idx_records_status on " + getTableName(name, RECORDS_TABLE) + " (status)",
-                    "create index idx_records_format_id on " + getTableName(name, RECORDS_TABLE) + " (format_id)",
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                    this.jdbcTemplate.execute(i2c);
-                } catch (Throwable t) {
-                    LOG.error("", t);
-                }
-                TimingLogger.stop(i2c.split(" ")[2]);
-            }
+            indexBuilder.add(RECORDS_TABLE, "idx_records_date_created", "oai_datestamp");
+            indexBuilder.add(RECORDS_TABLE, "idx_records_status", "status");
+            indexBuilder.add(RECORDS_TABLE, "idx_records_format_id", "format_id");
         }
-        
-        boolean createIndicesOnRecordUpdates = false;
-        if (tables.contains(RECORD_UPDATES_TABLE)) {
-            createIndicesOnRecordUpdates = true;
-            rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, RECORD_UPDATES_TABLE));
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String indexName = (String) row.get("Key_name");
-                    LOG.debug("indexName: " + indexName);
-                    if (("idx_record_updates_date_updated").equals(indexName)) {
-                    	createIndicesOnRecordUpdates = false;
-                        break;
-                    }
-                }
-            }
-        }
-        if (createIndicesOnRecordUpdates) {
-            String[] indices2create = new String[] {
-                    "create index idx_record_updates_date_updated on " + getTableName(name, RECORD_UPDATES_TABLE) + " (date_updated)",
-                    "create index idx_record_updates_record_id on " + getTableName(name, RECORD_UPDATES_TABLE) + " (record_id)"
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                	this.jdbcTemplate.execute(i2c);
-                } catch (Throwable t) {
-                    LOG.error("", t);
-                }
-                TimingLogger.stop(i2c.split(" ")[2]);
-            }    	        	
-        }
-               
-        boolean createIndicesOnRecordOaiIds = false;
-        if (tables.contains(RECORD_OAI_IDS)) {
-            createIndicesOnRecordOaiIds = true;
-            rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, RECORD_OAI_IDS));
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String indexName = (String) row.get("Key_name");
-                    LOG.debug("indexName: " + indexName);
-                    if ("idx_oai_id".equals(indexName)) {
-                    	createIndicesOnRecordOaiIds = false;
-                    }
 
-                }
-            }
-        }
-        if (createIndicesOnRecordOaiIds) {
-            // idx_oai_id is a new index created in version 1.4
-        	// make sure it exists when/if someone upgraded MST version from < 1.4
-            String[] indices2create = new String[] {
-                    "create index idx_oai_id on "+getTableName(name, RECORD_OAI_IDS)+" (oai_id)"
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                	this.jdbcTemplate.execute(i2c);
-	            } catch (Throwable t) {
-	                LOG.error("", t);
-	            }
-                TimingLogger.stop(i2c.split(" ")[2]);
-            }
-        }
-        
-        boolean createIndicesOnRecordLinks = false;
-        if (tables.contains(RECORD_LINKS_TABLE)) {
-            createIndicesOnRecordLinks = true;
-            rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, RECORD_LINKS_TABLE));
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String indexName = (String) row.get("Key_name");
-                    LOG.debug("indexName: " + indexName);
-                    if (("idx_to_record_id").equals(indexName)) {
-                        createIndicesOnRecordLinks = false;
-                        break;
-                    }
-                }
-            }
+        if (tables.contains(RECORD_UPDATES_TABLE) && !hasIndex(name, RECORD_UPDATES_TABLE, "idx_record_updates_date_updated")) {
+            indexBuilder.add(RECORD_UPDATES_TABLE, "idx_record_updates_date_updated", "date_updated");
+            indexBuilder.add(RECORD_UPDATES_TABLE, "idx_record_updates_record_id", "record_id");
         }
-        if (createIndicesOnRecordLinks) {
-            // TODO: you might have to remove duplicates
-            String[] indices2create = new String[] {
-                    "create index idx_from_record_id on " + getTableName(name, RECORD_LINKS_TABLE) + " (from_record_id)",
-                    "create index idx_to_record_id on " + getTableName(name, RECORD_LINKS_TABLE) + " (to_record_id)"
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                	this.jdbcTemplate.execute(i2c);
-                } catch (Throwable t) {
-                    LOG.error("", t);
-                }
-                TimingLogger.stop(i2c.split(" ")[2]);
-            }
+
+        // idx_oai_id is a new index created in version 1.4
+        // make sure it exists when/if someone upgraded MST version from < 1.4
+        if (tables.contains(RECORD_OAI_IDS) && !hasIndex(name, RECORD_OAI_IDS, "idx_oai_id")) {
+            indexBuilder.add(RECORD_OAI_IDS, "idx_oai_id", "oai_id");
         }
 
-        boolean createIndicesOnRecordSets = false;
-        if (tables.contains(RECORDS_SETS_TABLE)) {
-        	createIndicesOnRecordSets = true;
-            rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, RECORDS_SETS_TABLE));
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String indexName = (String) row.get("Key_name");
-                    LOG.debug("indexName: " + indexName);
-                    if (("idx_" + RECORDS_SETS_TABLE + "_record_id").equals(indexName)) {
-                    	createIndicesOnRecordSets = false;
-                        break;
-                    }
-                }
-            }
+        // TODO: you might have to remove duplicates
+        if (tables.contains(RECORD_LINKS_TABLE) && !hasIndex(name, RECORD_LINKS_TABLE, "idx_to_record_id")) {
+            indexBuilder.add(RECORD_LINKS_TABLE, "idx_from_record_id", "from_record_id");
+            indexBuilder.add(RECORD_LINKS_TABLE, "idx_to_record_id", "to_record_id");
         }
-        if (createIndicesOnRecordSets) {
-            String[] indices2create = new String[] {
-                    "create index idx_" + RECORDS_SETS_TABLE + "_record_id on " + getTableName(name, RECORDS_SETS_TABLE) + " (record_id)",
-                    "create index idx_" + RECORDS_SETS_TABLE + "_set_id on " + getTableName(name, RECORDS_SETS_TABLE) + " (set_id)",
 
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                    this.jdbcTemplate.execute(i2c);
-                } catch (Throwable t) {
-                    LOG.error("", t);
-                }
-                TimingLogger.stop(i2c.split(" ")[2]);
-            }
+        if (tables.contains(RECORDS_SETS_TABLE) && !hasIndex(name, RECORDS_SETS_TABLE, "idx_" + RECORDS_SETS_TABLE + "_record_id")) {
+            indexBuilder.add(RECORDS_SETS_TABLE, "idx_" + RECORDS_SETS_TABLE + "_record_id", "record_id");
+            indexBuilder.add(RECORDS_SETS_TABLE, "idx_" + RECORDS_SETS_TABLE + "_set_id", "set_id");
         }
 
-        boolean createIndicesOnRecordPredecessors = false;
-        if (tables.contains(RECORD_PREDECESSORS_TABLE)) {
-        	createIndicesOnRecordPredecessors = true;
-            rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, RECORD_PREDECESSORS_TABLE));
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String indexName = (String) row.get("Key_name");
-                    LOG.debug("indexName: " + indexName);
-                    if (("idx_" + RECORD_PREDECESSORS_TABLE + "_record_id").equals(indexName)) {
-                    	createIndicesOnRecordPredecessors = false;
-                        break;
-                    }
-                }
-            }
+        if (tables.contains(RECORD_PREDECESSORS_TABLE) &&
+                !hasIndex(name, RECORD_PREDECESSORS_TABLE, "idx_" + RECORD_PREDECESSORS_TABLE + "_record_id")) {
+            indexBuilder.add(RECORD_PREDECESSORS_TABLE, "idx_" + RECORD_PREDECESSORS_TABLE + "_record_id", "record_id");
+            indexBuilder.add(RECORD_PREDECESSORS_TABLE, "idx_" + RECORD_PREDECESSORS_TABLE + "_pred_record_id", "pred_record_id");
         }
-        if (createIndicesOnRecordPredecessors) {
-            String[] indices2create = new String[] {
-                    "create index idx_" + RECORD_PREDECESSORS_TABLE + "_record_id on " + getTableName(name, RECORD_PREDECESSORS_TABLE) + " (record_id)",
-                    "create index idx_" + RECORD_PREDECESSORS_TABLE + "_pred_record_id on " + getTableName(name, RECORD_PREDECESSORS_TABLE) + " (pred_record_id)",
 
-            };
-            for (String i2c : indices2create) {
-                TimingLogger.start(i2c.split(" ")[2]);
-                try {
-                    this.jdbcTemplate.execute(i2c);
-                } catch (Throwable t) {
-                    LOG.error("", t);
+        indexBuilder.build();
+
+        TimingLogger.stop("createIndicesIfNecessary." + name);
+        TimingLogger.reset();
+    }
+
+    protected boolean hasIndex(String name, String table, String indexName) {
+        List<Map<String, Object>> rows = this.jdbcTemplate.queryForList("show indexes from " + getTableName(name, table));
+        if (rows != null) {
+            for (Map<String, Object> row : rows) {
+                LOG.debug("indexName: " + row.get("Key_name"));
+                if (indexName.equals(row.get("Key_name"))) {
+                    return true;
                 }
-                TimingLogger.stop(i2c.split(" ")[2]);
             }
         }
-                
-        TimingLogger.stop("createIndicesIfNecessary." + name);
-        TimingLogger.reset();
+        return false;
     }
-    
+
     public boolean ready4harvest(String name) {
         boolean genericRepoIndexExists = false;
         name = getUtil().getDBSchema(name);
@@ -2450,10 +2902,21 @@ public class RepositoryDAO extends BaseDAO {
         StringBuilder sb = new StringBuilder();
 
         List<Map<String, Object>> otherRows = new ArrayList<Map<String, Object>>();
-        List<Map<String, Object>> totalsRows =
-                this.jdbcTemplate.queryForList(
-                        "select status, count(*) c from " +
-                                getTableName(name, RECORDS_TABLE) + " group by status order by status");
+        List<RecordStatsDAO.Row> stats = getRecordStatsDAO().getStats(name, false);
+        Map<String, Long> totals = new TreeMap<String, Long>();
+        for (RecordStatsDAO.Row row : stats) {
+            if (row.records != 0) {
+                Long c = totals.get(row.status);
+                totals.put(row.status, c == null ? row.records : c + row.records);
+            }
+        }
+        List<Map<String, Object>> totalsRows = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("status", total.getKey());
+            m.put("c", total.getValue());
+            totalsRows.add(m);
+        }
         List<Map<String, Object>> rowsByType = null;
 
         // the below returns something like:
@@ -2475,9 +2938,16 @@ public class RepositoryDAO extends BaseDAO {
         // (as contrasted with grabbing the data from the outgoing_record_counts table)
         //
         if (isServiceRepo(name)) {
-            rowsByType = this.jdbcTemplate.queryForList(
-                    "select type, status, count(*) c from " +
-                            getTableName(name, RECORDS_TABLE) + " group by type, status order by type, status");
+            rowsByType = new ArrayList<Map<String, Object>>();
+            for (RecordStatsDAO.Row row : stats) {
+                if (row.records != 0) {
+                    Map<String, Object> m = new HashMap<String, Object>();
+                    m.put("type", row.type);
+                    m.put("status", row.status);
+                    m.put("c", row.records);
+                    rowsByType.add(m);
+                }
+            }
         } else {
             rowsByType = this.jdbcTemplate.queryForList(
                     "select rs.set_id type, r.status status, count(*) c " +
@@ -2556,48 +3026,35 @@ public class RepositoryDAO extends BaseDAO {
         Map<String, long[]> countsByType = new HashMap<String, long[]>();
         countsByType.put("total", new long[3]);
 
-        List<Map<String, Object>> rows = this.jdbcTemplate.queryForList(
-                "select count(*) as count, type, status from " + getTableName(name, RECORDS_TABLE) + " group by type, status");
+        // the updates of a type are summed over its statuses
+        Map<String, Long> updatesByType = new HashMap<String, Long>();
+        for (RecordStatsDAO.Row row : getRecordStatsDAO().getStats(name, true)) {
+            String type = row.type;
+            long count = row.records;
+            char status = row.status.length() == 0 ? ' ' : row.status.charAt(0);
 
-        if (rows != null) {
-            for (Map<String, Object> row : rows) {
-                Long count = (Long) row.get("count");
-                String type = (String) row.get("type");
-                char status = ((String) row.get("status")).charAt(0);
-
-                long[] counts4type = countsByType.get(type);
-                if (counts4type == null) {
-                    counts4type = new long[3];
-                    countsByType.put(type, counts4type);
-                }
-                if (status == Record.ACTIVE) {
-                    countsByType.get("total")[0] += count;
-                    counts4type[0] = count;
-                } else if (status == Record.DELETED) {
-                    countsByType.get("total")[2] += count;
-                    counts4type[2] = count;
-                }
+            long[] counts4type = countsByType.get(type);
+            if (counts4type == null) {
+                counts4type = new long[3];
+                countsByType.put(type, counts4type);
+            }
+            if (status == Record.ACTIVE) {
+                countsByType.get("total")[0] += count;
+                counts4type[0] = count;
+            } else if (status == Record.DELETED) {
+                countsByType.get("total")[2] += count;
+                counts4type[2] = count;
             }
+            Long updates = updatesByType.get(type);
+            updatesByType.put(type, updates == null ? row.updates : updates + row.updates);
         }
 
-        rows = this.jdbcTemplate.queryForList(
-                " select count(*) as count, r.type as type " +
-                        " from " +
-                        getTableName(name, RECORD_UPDATES_TABLE) + " as u, " +
-                        getTableName(name, RECORDS_TABLE) + " as r " +
-                        " where u.record_id = r.record_id " +
-                        " group by r.type"
-                );
-        if (rows != null) {
-            for (Map<String, Object> row : rows) {
-                Long count = (Long) row.get("count");
-                String type = (String) row.get("type");
-
-                countsByType.get(type)[1] = count - countsByType.get(type)[0];
-                countsByType.get("total")[1] += count;
-            }
-            countsByType.get("total")[1] = countsByType.get("total")[1] - countsByType.get("total")[0];
+        for (Map.Entry<String, Long> updates : updatesByType.entrySet()) {
+            long count = updates.getValue();
+            countsByType.get(updates.getKey())[1] = count - countsByType.get(updates.getKey())[0];
+            countsByType.get("total")[1] += count;
         }
+        countsByType.get("total")[1] = countsByType.get("total")[1] - countsByType.get("total")[0];
 
         for (Map.Entry<String, long[]> counts4type : countsByType.entrySet()) {
             String key = "RecordsCount";
@@ -119,6 +119,10 @@ public class TestRepository extends BaseService implements Repository {
         return commitIfNecessary(force);
     }
 
+    public void whenWritten(Runnable callback) {
+        callback.run();
+    }
+
     public boolean commitIfNecessary(boolean force) {
         if (force) {
             if (!inputFilesIterator.hasNext()) {
@@ -381,6 +385,10 @@ public class TestRepository extends BaseService implements Repository {
         return 0;
     }
 
+    public long getRecordCountEstimate(Date from, Date until, Format inputFormat, xc.mst.bo.provider.Set inputSet) {
+        return getRecordCount(from, until, inputFormat, inputSet);
+    }
+
     public void populatePredecessors(TLongHashSet predecessors) {
         // do nothing
     }
@@ -406,6 +414,7 @@ public class TestRepository extends BaseService implements Repository {
                 r.setId(fid);
                 Record prevRecord = getRecord(fid);
                 r.setService(prevRecord.getService());
+                prevRecord.setMode(Record.JDOM_MODE);
                 r.setOaiXmlEl(prevRecord.getOaiXmlEl());
                 addRecord(r);
             }
@@ -461,10 +470,14 @@ public class TestRepository extends BaseService implements Repository {
         Record r = new Record();
         r.setId(recordId);
         r.setService(pr.getService());
+        pr.setMode(Record.JDOM_MODE);
         r.setOaiXmlEl(pr.getOaiXmlEl());
         addRecord(r);
     }
 
+    public void planIndices(long records2Process) {
+    }
+
     public void processComplete() {
     }
 
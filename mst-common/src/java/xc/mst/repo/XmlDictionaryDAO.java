@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import xc.mst.dao.BaseDAO;
+
+/**
+ * The per-format dictionaries RecordXmlCodec compresses records_xml with.  They're shared by
+ * all repositories.  A format's dictionary is trained the first time one of its records is
+ * written to a compressed repository, and is never changed afterwards, since payloads refer
+ * to it by id.  (A newer dictionary for the same format may be added; it's then used for
+ * anything written from then on.)
+ */
+public class XmlDictionaryDAO extends BaseDAO {
+
+    private static final Logger LOG = Logger.getLogger(XmlDictionaryDAO.class);
+
+    public static final String XML_DICTIONARIES_TABLE = "xml_dictionaries";
+
+    // also in create_database_script.sql; repeated here for databases created before there was one
+    protected static final String CREATE_TABLE_SQL =
+            "create table if not exists " + XML_DICTIONARIES_TABLE + " ( " +
+                    "dictionary_id    int      not null    AUTO_INCREMENT, " +
+                    "format_id        int      not null, " +
+                    "dictionary       blob     not null, " +
+                    "created_at       datetime, " +
+                    "PRIMARY KEY (dictionary_id), " +
+                    "KEY idx_xml_dictionaries_format_id (format_id) " +
+                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8";
+
+    protected Map<Integer, byte[]> dictionariesById = new ConcurrentHashMap<Integer, byte[]>();
+    protected Map<Integer, Integer> dictionaryIdsByFormat = new ConcurrentHashMap<Integer, Integer>();
+    protected volatile boolean tableCreated = false;
+
+    protected void createTableIfNecessary() {
+        if (!tableCreated) {
+            synchronized (this) {
+                if (!tableCreated) {
+                    this.jdbcTemplate.execute(CREATE_TABLE_SQL);
+                    tableCreated = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the dictionary, or null if there isn't one with this id
+     */
+    public byte[] getDictionary(int dictionaryId) {
+        byte[] dictionary = dictionariesById.get(dictionaryId);
+        if (dictionary == null) {
+            createTableIfNecessary();
+            List<byte[]> rows = this.jdbcTemplate.queryForList(
+                    "select dictionary from " + XML_DICTIONARIES_TABLE + " where dictionary_id = ?",
+                    byte[].class, dictionaryId);
+            if (rows.size() > 0) {
+                dictionary = rows.get(0);
+                dictionariesById.put(dictionaryId, dictionary);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * @return the id of the newest dictionary for the format, or 0 if it doesn't have one yet
+     */
+    public int getDictionaryId(int formatId) {
+        Integer dictionaryId = dictionaryIdsByFormat.get(formatId);
+        if (dictionaryId == null) {
+            createTableIfNecessary();
+            dictionaryId = this.jdbcTemplate.queryForInt(
+                    "select coalesce(max(dictionary_id), 0) from " + XML_DICTIONARIES_TABLE + " where format_id = ?",
+                    formatId);
+            if (dictionaryId == 0) {
+                return 0;
+            }
+            dictionaryIdsByFormat.put(formatId, dictionaryId);
+        }
+        return dictionaryId;
+    }
+
+    /**
+     * Gets the format's dictionary id, first training one from the samples if it hasn't got one.
+     *
+     * @return the dictionary id, or 0 if there were too few samples to train one
+     */
+    public synchronized int getOrTrainDictionaryId(int formatId, List<String> samples, int minSamples) {
+        int dictionaryId = getDictionaryId(formatId);
+        if (dictionaryId == 0 && samples.size() >= minSamples) {
+            byte[] dictionary = RecordXmlCodec.train(samples, RecordXmlCodec.MAX_DICTIONARY_SIZE);
+            dictionaryId = (int) insertForId(
+                    "insert into " + XML_DICTIONARIES_TABLE + " (format_id, dictionary, created_at) values (?, ?, now())",
+                    formatId, dictionary);
+            if (dictionaryId > 0) {
+                LOG.info("trained a " + dictionary.length + " byte xml dictionary (" + dictionaryId + ") for format " + formatId +
+                        " from " + samples.size() + " records");
+                dictionariesById.put(dictionaryId, dictionary);
+                dictionaryIdsByFormat.put(formatId, dictionaryId);
+            } else {
+                dictionaryId = 0;
+            }
+        }
+        return dictionaryId;
+    }
+
+}
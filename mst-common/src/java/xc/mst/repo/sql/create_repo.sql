@@ -74,6 +74,15 @@ create table repo_name.properties (
 	primary key(prop_key)
 ) ENGINE=MyISAM DEFAULT CHARSET=utf8;
 
+create table repo_name.record_stats (
+	type            char(1)    not null default '',
+	status          char(1)    not null default '',
+	record_count    bigint     not null default 0,
+	update_count    bigint     not null default 0,
+
+	PRIMARY KEY (type, status)
+) ENGINE=MyISAM DEFAULT CHARSET=utf8;
+
 create table repo_name.incoming_record_counts (
 	incoming_record_count_id      int         NOT NULL    AUTO_INCREMENT,
 	harvest_start_date            datetime    not null,
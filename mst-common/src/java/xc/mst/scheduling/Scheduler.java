@@ -12,8 +12,11 @@ package xc.mst.scheduling;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -44,7 +47,9 @@ import xc.mst.utils.TimingLogger;
  * matches a processing directive requiring the service to be run.
  * 
  * This Thread maintains a queue of jobs to be run. A job may be
- * either a harvest or a service.
+ * either a harvest or a service.  Up to scheduler.maxConcurrentJobs jobs
+ * run at once, as long as none of them reads or writes a repository that
+ * another running job does.  Jobs that share a repository run in queue order.
  * 
  * @author Eric Osisek
  */
@@ -54,12 +59,22 @@ public class Scheduler extends BaseService implements Runnable {
 
     protected boolean killed = false;
 
+    // the job shown as running: the latest started job, or the solr indexer when no job is running
     protected WorkerThread runningJob;
     protected Thread runningThread;
-    protected Job previousJob = null;
+    protected List<StartedJob> startedJobs = new CopyOnWriteArrayList<StartedJob>();
+    protected int maxConcurrentJobs = 1;
     protected boolean pausedManually = false;
     private final Object lock = new Object();
 
+    protected static class StartedJob {
+        protected Job job;
+        protected WorkerThread worker;
+        protected Thread thread;
+        // the schemas of the repositories the job reads and writes
+        protected Set<String> repositoryNames;
+    }
+
     public void init() {
         LOG.info("init");
         new Thread(this, "Scheduler").start();
@@ -69,6 +84,17 @@ public class Scheduler extends BaseService implements Runnable {
         return runningJob;
     }
 
+    /**
+     * @return the jobs that are currently running (not including the solr indexer)
+     */
+    public List<WorkerThread> getRunningJobs() {
+        List<WorkerThread> runningJobs = new ArrayList<WorkerThread>();
+        for (StartedJob startedJob : startedJobs) {
+            runningJobs.add(startedJob.worker);
+        }
+        return runningJobs;
+    }
+
     public void run() {
         LOG.info("Scheduler.run");
         if (!config.getPropertyAsBoolean("runScheduler", true)) {
@@ -88,6 +114,8 @@ public class Scheduler extends BaseService implements Runnable {
         // Once all services have processed, one must shutdown MST, then set solr.index.enabled=true,
         // then once MST starts up, the solr indexes will get processed
         boolean solrEnabled = config.getPropertyAsBoolean("solr.index.enabled", true);
+        maxConcurrentJobs = Math.max(1, config.getPropertyAsInt("scheduler.maxConcurrentJobs", 1));
+        LOG.info("scheduler.maxConcurrentJobs: " + maxConcurrentJobs);
 
         try {
             for (Service s : getServiceDAO().getAll()) {
@@ -160,8 +188,6 @@ public class Scheduler extends BaseService implements Runnable {
         	else
         		LOG.info("solr.index.enabled is false");
         }
-        HarvestManager hm = (HarvestManager) MSTConfiguration.getInstance().getBean("HarvestManager");
-
         while (!killed) {
             Calendar now = Calendar.getInstance();
             List<HarvestSchedule> schedulesToRun = null;
@@ -201,99 +227,21 @@ public class Scheduler extends BaseService implements Runnable {
                 }
             }
 
-            // LOG.debug("runningJob: "+runningJob);
-            if (runningJob != null) {
-                LOG.debug("runningJob: " + runningJob);
-                LOG.debug("runningJob.getType(): " + runningJob.getType());
-                // LOG.debug("runningJob == solrWorkerThread: "+(runningJob == solrWorkerThread));
-            }
-            if (runningJob == null || !runningThread.isAlive() || runningJob == solrWorkerThread) {
-                if (runningJob != null) {
-                    // LOG.debug("runningJob.getWorkDelegate(): "+runningJob.getWorkDelegate());
+            try {
+                // Wrap up the jobs that have finished
+                for (StartedJob startedJob : startedJobs) {
+                    if (!startedJob.thread.isAlive()) {
+                        finishJob(startedJob);
+                        startedJobs.remove(startedJob);
+                    }
                 }
-                // LOG.debug("previousJob: "+previousJob);
-                try {
-                    if (previousJob != null) {
-                        LOG.debug("previousJob: " + previousJob);
-                        getJobService().deleteJob(previousJob);
-
-                        TimingLogger.reset();
-
-                        Repository previousRepo = null;
-                        List<ProcessingDirective> processingDirectives = null;
-                        LOG.debug("previousJob.getHarvestSchedule(): " + previousJob.getHarvestSchedule());
-                        if (previousJob.getHarvestSchedule() != null) { // was harvest
-                            processingDirectives = getProcessingDirectiveDAO().getBySourceProviderId(
-                                    previousJob.getHarvestSchedule().getProvider().getId());
-                            previousJob.getHarvestSchedule().setStatus(runningJob.getJobStatus());
-                            getHarvestScheduleDAO().update(previousJob.getHarvestSchedule(), false);
-                            previousRepo = (Repository) config.getBean("Repository");
-                            previousRepo.setName(previousJob.getHarvestSchedule().getProvider().getName());
-                        } else if (previousJob.getService() != null) { // was service
-                            processingDirectives = getProcessingDirectiveDAO().getBySourceServiceId(
-                                    previousJob.getService().getId());
-                            // Reload service. It is changed during service processing.
-                            // TODO check to see if there is better way to do this
-                            Service service = getServicesService().getServiceById(previousJob.getService().getId());
-                            // getById(previousJob.getService().getId());
-                            LOG.debug("service: " + service);
-                            LOG.debug("service.getName(): " + service.getName());
-                            LOG.debug("service.getMetadataService(): " + service.getMetadataService());
-                            previousRepo = service.getMetadataService().getRepository();
-                            if (runningJob != null) {
-                                service.setStatus(runningJob.getJobStatus());
-                            }
-                            getServiceDAO().update(service);
-                        }
-                        LOG.debug("processingDirectives: " + processingDirectives);
-
-                        if (previousRepo != null) {
-                            if (previousRepo instanceof DefaultRepository) {
-                                LOG.debug("sleepUntilReady...start");
-                                ((DefaultRepository) previousRepo).sleepUntilReady();
-                                LOG.debug("sleepUntilReady...finished");
-                            }
-                        }
 
-                        if (processingDirectives != null) {
-                            try {
-                                for (ProcessingDirective pd : processingDirectives) {
-                                    // TODO
-                                    // match by set
-                                    // match by format
-                                    // OR you could run the service and it just won't grab any records
-                                    /*
-                                    boolean matched = false;
-                                    if (pd.getTriggeringFormats() != null) {
-                                        for (Format f : pd.getTriggeringFormats()) {
-                                            if (previousJob.getHarvestSchedule().getFormats() != null) {
-
-                                            }
-                                            if (f.getId().equals(previousJob.getHarvestSchedule().getFormats()))
-                                        }
-                                    }
-                                    */
-
-                                    // Job job = new Job(pd.getService(), pd.getOutputSet().getId(), Constants.THREAD_SERVICE);
-                                    Job job = new Job();
-                                    job.setService(pd.getService());
-                                    if (pd.getOutputSet() != null)
-                                        job.setOutputSetId(pd.getOutputSet().getId());
-                                    job.setJobType(Constants.THREAD_SERVICE);
-                                    job.setOrder(getJobService().getMaxOrder() + 1);
-                                    job.setProcessingDirective(pd);
-                                    getJobService().insertJob(job);
-                                }
-                            } catch (DatabaseConfigException dce) {
-                                LOG.error("DatabaseConfig exception occured when ading jobs to database", dce);
-                            }
-                        }
-                    }
+                if (startedJobs.size() < maxConcurrentJobs) {
+                    startJobs(thisMinute);
+                }
 
-                    Job jobToStart = getJobService().getNextJobToExecute();
-                    if (jobToStart != null)
-                        LOG.debug("jobToStart: " + jobToStart);
-                    if (jobToStart == null && solrEnabled && runningJob != solrWorkerThread && solrWorkerThread != null) {
+                if (startedJobs.isEmpty()) {
+                    if (solrEnabled && solrWorkerThread != null && runningJob != solrWorkerThread) {
                         LOG.debug("solrWorkerThead.proceed");
                         if (!solrWorkerThreadStarted) {
                             solrWorkerThreadStarted = true;
@@ -306,101 +254,20 @@ public class Scheduler extends BaseService implements Runnable {
                         runningJob.type = Constants.SOLR_INDEXER;
                         runningThread = solrThread;
                     }
-                    previousJob = jobToStart;
-
-                    // LOG.debug("jobToStart: "+jobToStart);
-                    // If there was a service job in the waiting queue, start it. Otherwise break from the loop
-                    if (jobToStart != null) {
-                        if (solrEnabled && solrWorkerThread != null && solrWorkerThreadStarted) {
-                            solrWorkerThread.pause();
-                        }
-                        runningJob = null;
-                        runningThread = null;
-                        TimingLogger.reset();
-                        TimingLogger.log("starting job: " + jobToStart.getJobType());
-
-                        if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_REPOSITORY)) {
-                            // TODO perhaps consider for future whether it is more correct to getBean each time here (would be new instance each harvest)
-                            hm.setHarvestSchedule(jobToStart.getHarvestSchedule());
-                            runningJob = hm;
-                            runningJob.type = Constants.THREAD_REPOSITORY;
-                        } else if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_SERVICE)) {
-                            MetadataServiceManager msm = (MetadataServiceManager) config.getBean("MetadataServiceManager");
-
-                            Service s = getServicesService().getServiceByName(jobToStart.getService().getName());
-                            msm.setMetadataService(s.getMetadataService());
-                            runningJob = msm;
-                            msm.setOutputSet(getSetDAO().getById(jobToStart.getOutputSetId()));
-                            Repository incomingRepo = null;
-                            if (jobToStart.getProcessingDirective().getSourceProvider() != null) {
-                                incomingRepo =
-                                        getRepositoryService().getRepository(jobToStart.getProcessingDirective().getSourceProvider());
-                                if (!incomingRepo.ready4harvest()) {
-
-                                    getJobService().deleteJob(jobToStart);
-                                    runningJob = null;
-                                    previousJob = null;
-                                    LOG.error("A job came in of type THREAD_SERVICE but incomingRepo ! ready4harvest.");
-                                }
-                            } else if (jobToStart.getProcessingDirective().getSourceService() != null) {
-                                Service s2 = getServicesService().getServiceById(jobToStart.getProcessingDirective().getSourceService().getId());
-                                incomingRepo = s2.getMetadataService().getRepository();
-                                if (!incomingRepo.ready4harvest()) {
-
-                                    getJobService().deleteJob(jobToStart);
-                                    runningJob = null;
-                                    previousJob = null;
-                                    LOG.error("A job came in of type THREAD_SERVICE but incomingRepo ! ready4harvest.");
-                                }
-                            } else {
-                                throw new RuntimeException("error");
-                            }
-                            LOG.debug("incomingRepo.getName(): " + incomingRepo.getName());
-                            msm.setIncomingRepository(incomingRepo);
-                            msm.setTriggeringFormats(jobToStart.getProcessingDirective().getTriggeringFormats());
-                            msm.setTriggeringSets(jobToStart.getProcessingDirective().getTriggeringSets());
-                            if (runningJob != null) {
-                                runningJob.type = Constants.THREAD_SERVICE;
-                            }
-                            /*
-                            TimingLogger.log("service : "+jobToStart.getService().getClassName());
-                            ServiceWorkerThread serviceThread = new ServiceWorkerThread();
-                            serviceThread.setServiceId(jobToStart.getService().getId());
-                            serviceThread.setOutputSetId(jobToStart.getOutputSetId());
-                            serviceThread.start();
-                            runningJob = serviceThread;
-                            */
-                        } else if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_MARK_PROVIDER_DELETED)) {
-                            LOG.debug("**** Scheduler - THREAD_MARK_PROVIDER_DELETED!");
-                            RepositoryDeletionManager rdm = (RepositoryDeletionManager) config.getBean("RepositoryDeletionManager");
-
-                            runningJob = rdm;
-
-                            Repository incomingRepo = null;
-                            if (jobToStart.getHarvestSchedule() != null) {
-                                Provider provider = jobToStart.getHarvestSchedule().getProvider();
-                                incomingRepo = getRepositoryService().getRepository(provider);
-                            }
-                            rdm.setIncomingRepository(incomingRepo);
-                            rdm.setHarvestSchedule(jobToStart.getHarvestSchedule());
-                            LOG.debug("jobToStart.getHarvestSchedule(): " + jobToStart.getHarvestSchedule());
-                            runningJob.type = Constants.THREAD_MARK_PROVIDER_DELETED;
-                        }
-
-                        if (runningJob != null) {
-                            LOG.debug("runningJob.start()");
-                            runningThread = new Thread(runningJob, jobToStart.getJobType() + "_" + thisMinute);
-                            runningThread.start();
-                        } else {
-                            LOG.debug("**** Scheduler - No valid job found to start! Provided type was " +
-                                    jobToStart.getJobType());
-                        }
+                } else {
+                    if (runningJob == solrWorkerThread && solrWorkerThreadStarted) {
+                        solrWorkerThread.pause();
+                    }
+                    if (runningJob == null || runningJob == solrWorkerThread || !runningThread.isAlive()) {
+                        StartedJob shown = startedJobs.get(startedJobs.size() - 1);
+                        runningJob = shown.worker;
+                        runningThread = shown.thread;
                     }
-                } catch (DataException de) {
-                    LOG.error("DataException occured when getting job from database", de);
-                } catch (Throwable t) {
-                    LOG.error("** EXCEPTION occured while trying to process next jobtostart !", t);
                 }
+            } catch (DataException de) {
+                LOG.error("DataException occured when getting job from database", de);
+            } catch (Throwable t) {
+                LOG.error("** EXCEPTION occured while trying to process next jobtostart !", t);
             }
 
             try {
@@ -421,7 +288,239 @@ public class Scheduler extends BaseService implements Runnable {
         }
     }
 
+    /**
+     * Starts queued jobs, in queue order, until maxConcurrentJobs are running. A job is skipped
+     * if it shares a repository with a running job or with a job queued ahead of it.
+     */
+    protected void startJobs(String thisMinute) throws DataException {
+        Set<Integer> startedIds = new HashSet<Integer>();
+        Set<String> blocked = new HashSet<String>();
+        for (StartedJob startedJob : startedJobs) {
+            startedIds.add(startedJob.job.getId());
+            if (startedJob.repositoryNames != null) {
+                blocked.addAll(startedJob.repositoryNames);
+            }
+        }
+
+        for (Job job : getJobService().getJobsToExecute()) {
+            if (startedJobs.size() >= maxConcurrentJobs) {
+                break;
+            }
+            if (startedIds.contains(job.getId())) {
+                continue;
+            }
+            Set<String> repositoryNames = getRepositoryNames(job);
+            if (repositoryNames == null) {
+                // can't tell what it touches, so it runs alone
+                if (startedJobs.isEmpty()) {
+                    startJob(job, null, thisMinute);
+                }
+                break;
+            }
+            boolean independent = true;
+            for (String name : repositoryNames) {
+                if (blocked.contains(name)) {
+                    independent = false;
+                    break;
+                }
+            }
+            if (independent) {
+                startJob(job, repositoryNames, thisMinute);
+            } else {
+                LOG.debug("job " + job.getId() + " waits on a running or earlier job for one of " + repositoryNames);
+            }
+            blocked.addAll(repositoryNames);
+        }
+    }
+
+    /**
+     * @return the schemas of the repositories the job reads and writes, or null if they can't be determined
+     */
+    protected Set<String> getRepositoryNames(Job job) {
+        try {
+            Set<String> repositoryNames = new HashSet<String>();
+            if (Constants.THREAD_REPOSITORY.equalsIgnoreCase(job.getJobType()) ||
+                    Constants.THREAD_MARK_PROVIDER_DELETED.equalsIgnoreCase(job.getJobType())) {
+                if (job.getHarvestSchedule() == null || job.getHarvestSchedule().getProvider() == null) {
+                    return null;
+                }
+                repositoryNames.add(getUtil().getDBSchema(job.getHarvestSchedule().getProvider().getName()));
+            } else if (Constants.THREAD_SERVICE.equalsIgnoreCase(job.getJobType())) {
+                ProcessingDirective pd = job.getProcessingDirective();
+                if (pd == null || job.getService() == null) {
+                    return null;
+                }
+                if (pd.getSourceProvider() != null) {
+                    repositoryNames.add(getUtil().getDBSchema(pd.getSourceProvider().getName()));
+                } else if (pd.getSourceService() != null) {
+                    Service source = getServicesService().getServiceById(pd.getSourceService().getId());
+                    repositoryNames.add(getUtil().getDBSchema(source.getMetadataService().getRepository().getName()));
+                } else {
+                    return null;
+                }
+                Service service = getServicesService().getServiceById(job.getService().getId());
+                repositoryNames.add(getUtil().getDBSchema(service.getMetadataService().getRepository().getName()));
+            } else {
+                return null;
+            }
+            return repositoryNames;
+        } catch (Throwable t) {
+            LOG.error("couldn't determine the repositories of job " + job.getId(), t);
+            return null;
+        }
+    }
+
+    protected void startJob(Job jobToStart, Set<String> repositoryNames, String thisMinute) throws DataException {
+        LOG.debug("jobToStart: " + jobToStart);
+        TimingLogger.reset();
+        TimingLogger.log("starting job: " + jobToStart.getJobType());
+
+        WorkerThread worker = null;
+        if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_REPOSITORY)) {
+            // a new instance each harvest, since harvests of different providers may run at once
+            HarvestManager hm = (HarvestManager) config.getBean("HarvestManager");
+            hm.setHarvestSchedule(jobToStart.getHarvestSchedule());
+            worker = hm;
+            worker.type = Constants.THREAD_REPOSITORY;
+        } else if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_SERVICE)) {
+            MetadataServiceManager msm = (MetadataServiceManager) config.getBean("MetadataServiceManager");
+
+            Service s = getServicesService().getServiceByName(jobToStart.getService().getName());
+            msm.setMetadataService(s.getMetadataService());
+            msm.setOutputSet(getSetDAO().getById(jobToStart.getOutputSetId()));
+            Repository incomingRepo = null;
+            if (jobToStart.getProcessingDirective().getSourceProvider() != null) {
+                incomingRepo =
+                        getRepositoryService().getRepository(jobToStart.getProcessingDirective().getSourceProvider());
+            } else if (jobToStart.getProcessingDirective().getSourceService() != null) {
+                Service s2 = getServicesService().getServiceById(jobToStart.getProcessingDirective().getSourceService().getId());
+                incomingRepo = s2.getMetadataService().getRepository();
+            } else {
+                throw new RuntimeException("error");
+            }
+            if (!incomingRepo.ready4harvest()) {
+                getJobService().deleteJob(jobToStart);
+                LOG.error("A job came in of type THREAD_SERVICE but incomingRepo ! ready4harvest.");
+                return;
+            }
+            LOG.debug("incomingRepo.getName(): " + incomingRepo.getName());
+            msm.setIncomingRepository(incomingRepo);
+            msm.setTriggeringFormats(jobToStart.getProcessingDirective().getTriggeringFormats());
+            msm.setTriggeringSets(jobToStart.getProcessingDirective().getTriggeringSets());
+            worker = msm;
+            worker.type = Constants.THREAD_SERVICE;
+        } else if (jobToStart.getJobType().equalsIgnoreCase(Constants.THREAD_MARK_PROVIDER_DELETED)) {
+            LOG.debug("**** Scheduler - THREAD_MARK_PROVIDER_DELETED!");
+            RepositoryDeletionManager rdm = (RepositoryDeletionManager) config.getBean("RepositoryDeletionManager");
+
+            Repository incomingRepo = null;
+            if (jobToStart.getHarvestSchedule() != null) {
+                Provider provider = jobToStart.getHarvestSchedule().getProvider();
+                incomingRepo = getRepositoryService().getRepository(provider);
+            }
+            rdm.setIncomingRepository(incomingRepo);
+            rdm.setHarvestSchedule(jobToStart.getHarvestSchedule());
+            LOG.debug("jobToStart.getHarvestSchedule(): " + jobToStart.getHarvestSchedule());
+            worker = rdm;
+            worker.type = Constants.THREAD_MARK_PROVIDER_DELETED;
+        }
+
+        if (worker == null) {
+            LOG.debug("**** Scheduler - No valid job found to start! Provided type was " +
+                    jobToStart.getJobType());
+            getJobService().deleteJob(jobToStart);
+            return;
+        }
+
+        LOG.debug("runningJob.start()");
+        StartedJob startedJob = new StartedJob();
+        startedJob.job = jobToStart;
+        startedJob.worker = worker;
+        startedJob.repositoryNames = repositoryNames;
+        startedJob.thread = new Thread(worker, jobToStart.getJobType() + "_" + jobToStart.getId() + "_" + thisMinute);
+        startedJobs.add(startedJob);
+        startedJob.thread.start();
+    }
+
+    /**
+     * Removes a finished job from the queue, records its status and queues the jobs its
+     * processing directives trigger.
+     */
+    protected void finishJob(StartedJob startedJob) throws DataException {
+        Job previousJob = startedJob.job;
+        LOG.debug("previousJob: " + previousJob);
+        getJobService().deleteJob(previousJob);
+
+        TimingLogger.reset();
+
+        Repository previousRepo = null;
+        List<ProcessingDirective> processingDirectives = null;
+        LOG.debug("previousJob.getHarvestSchedule(): " + previousJob.getHarvestSchedule());
+        if (previousJob.getHarvestSchedule() != null) { // was harvest
+            processingDirectives = getProcessingDirectiveDAO().getBySourceProviderId(
+                    previousJob.getHarvestSchedule().getProvider().getId());
+            previousJob.getHarvestSchedule().setStatus(startedJob.worker.getJobStatus());
+            getHarvestScheduleDAO().update(previousJob.getHarvestSchedule(), false);
+            previousRepo = (Repository) config.getBean("Repository");
+            previousRepo.setName(previousJob.getHarvestSchedule().getProvider().getName());
+        } else if (previousJob.getService() != null) { // was service
+            processingDirectives = getProcessingDirectiveDAO().getBySourceServiceId(
+                    previousJob.getService().getId());
+            // Reload service. It is changed during service processing.
+            // TODO check to see if there is better way to do this
+            Service service = getServicesService().getServiceById(previousJob.getService().getId());
+            LOG.debug("service: " + service);
+            LOG.debug("service.getName(): " + service.getName());
+            LOG.debug("service.getMetadataService(): " + service.getMetadataService());
+            previousRepo = service.getMetadataService().getRepository();
+            service.setStatus(startedJob.worker.getJobStatus());
+            getServiceDAO().update(service);
+        }
+        LOG.debug("processingDirectives: " + processingDirectives);
+
+        if (previousRepo != null) {
+            if (previousRepo instanceof DefaultRepository) {
+                LOG.debug("sleepUntilReady...start");
+                ((DefaultRepository) previousRepo).sleepUntilReady();
+                LOG.debug("sleepUntilReady...finished");
+            }
+        }
+
+        if (processingDirectives != null) {
+            try {
+                for (ProcessingDirective pd : processingDirectives) {
+                    // TODO
+                    // match by set
+                    // match by format
+                    // OR you could run the service and it just won't grab any records
+                    Job job = new Job();
+                    job.setService(pd.getService());
+                    if (pd.getOutputSet() != null)
+                        job.setOutputSetId(pd.getOutputSet().getId());
+                    job.setJobType(Constants.THREAD_SERVICE);
+                    job.setOrder(getJobService().getMaxOrder() + 1);
+                    job.setProcessingDirective(pd);
+                    getJobService().insertJob(job);
+                }
+            } catch (DatabaseConfigException dce) {
+                LOG.error("DatabaseConfig exception occured when ading jobs to database", dce);
+            }
+        }
+    }
+
+    protected StartedJob getStartedJob(int jobId) {
+        for (StartedJob startedJob : startedJobs) {
+            if (startedJob.job.getId() == jobId) {
+                return startedJob;
+            }
+        }
+        return null;
+    }
+
     public void kill() {
+        for (StartedJob startedJob : startedJobs) {
+            startedJob.worker.cancel();
+        }
         if (runningJob != null) {
             runningJob.cancel();
         }
@@ -429,7 +528,24 @@ public class Scheduler extends BaseService implements Runnable {
     }
 
     public void cancelRunningJob() {
-        runningJob.cancel();
+        if (startedJobs.isEmpty()) {
+            runningJob.cancel();
+        }
+        for (StartedJob startedJob : startedJobs) {
+            startedJob.worker.cancel();
+        }
+    }
+
+    /**
+     * @return false if the job isn't running
+     */
+    public boolean cancelJob(int jobId) {
+        StartedJob startedJob = getStartedJob(jobId);
+        if (startedJob == null) {
+            return false;
+        }
+        startedJob.worker.cancel();
+        return true;
     }
 
     public boolean wasPausedManually() {
@@ -442,11 +558,45 @@ public class Scheduler extends BaseService implements Runnable {
 
     public void pauseRunningJob() {
         pausedManually = true;
-        runningJob.pause();
+        if (startedJobs.isEmpty()) {
+            runningJob.pause();
+        }
+        for (StartedJob startedJob : startedJobs) {
+            startedJob.worker.pause();
+        }
     }
 
     public void resumePausedJob() {
         pausedManually = false;
-        runningJob.proceed();
+        if (startedJobs.isEmpty()) {
+            runningJob.proceed();
+        }
+        for (StartedJob startedJob : startedJobs) {
+            startedJob.worker.proceed();
+        }
+    }
+
+    /**
+     * @return false if the job isn't running
+     */
+    public boolean pauseJob(int jobId) {
+        StartedJob startedJob = getStartedJob(jobId);
+        if (startedJob == null) {
+            return false;
+        }
+        startedJob.worker.pause();
+        return true;
+    }
+
+    /**
+     * @return false if the job isn't running
+     */
+    public boolean resumeJob(int jobId) {
+        StartedJob startedJob = getStartedJob(jobId);
+        if (startedJob == null) {
+            return false;
+        }
+        startedJob.worker.proceed();
+        return true;
     }
 }
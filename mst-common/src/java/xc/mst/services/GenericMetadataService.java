@@ -14,6 +14,11 @@ import gnu.trove.TLongHashSet;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
@@ -100,6 +105,14 @@ public abstract class GenericMetadataService extends SolrMetadataService
     
     protected boolean doPreProcess = false;
 
+    // only set while process(Repository, Format, Set, Set) is running with service.processThreads > 1
+    protected ExecutorService processPool = null;
+
+    // totalRecordCount is worked out once a run (see countRecords), and may be only an estimate.
+    // consumedRecordCount is how many of those records have been read so far.
+    protected boolean totalRecordCountIsEstimate = false;
+    protected long consumedRecordCount = 0;
+
     /**
      * A list of identifiers to add to the record currently being processed
      */
@@ -466,6 +479,31 @@ public abstract class GenericMetadataService extends SolrMetadataService
         return sh;
     }
 
+    /**
+     * Saves sh, with the highest id it has now, once the records output so far are written.  A run
+     * restarted from the saved id then doesn't skip input whose output never got written.
+     */
+    protected void persistWhenWritten(final ServiceHarvest sh) {
+        final Long highestId = sh.getHighestId();
+        Runnable persist = new Runnable() {
+            public void run() {
+                // sh has moved on since; save it as it was
+                Long currentId = sh.getHighestId();
+                sh.setHighestId(highestId);
+                try {
+                    getServiceDAO().persist(sh);
+                } finally {
+                    sh.setHighestId(currentId);
+                }
+            }
+        };
+        if (isSolrIndexer()) {
+            persist.run();
+        } else {
+            getRepository().whenWritten(persist);
+        }
+    }
+
     protected List<Record> getRecords(Repository repo, ServiceHarvest sh,
             Format inputFormat, Set inputSet) {
         return repo.getRecords(sh.getFrom(), sh.getUntil(), sh.getHighestId(),
@@ -515,6 +553,36 @@ public abstract class GenericMetadataService extends SolrMetadataService
     public void preProcess(InputRecord r) {  }
     public void preProcessCompleted() { }
 
+    // Allow Services the opportunity to look at a whole batch of records (e.g. to do their
+    // lookups for all of them at once) before any of them is processed.  By default, they will not
+    public void prepareBatch(List<Record> records) { }
+    // and to let go of what they kept for the batch, once all of it has been processed (or has failed)
+    public void finishBatch(List<Record> records) { }
+
+    /**
+     * Sets totalRecordCount to the number of records this run has to process. Unless exact, a range
+     * too large to count quickly is estimated (see Repository.getRecordCountEstimate). It's counted
+     * once a run; the progress shown from then on is counted down from it as batches are read.
+     */
+    protected void countRecords(Repository repo, ServiceHarvest sh, Format inputFormat, Set inputSet, boolean exact) {
+        TimingLogger.start(getServiceName() + ".countRecords");
+        long count;
+        if (exact) {
+            count = repo.getRecordCount(sh.getFrom(), sh.getUntil(), inputFormat, inputSet);
+        } else {
+            count = repo.getRecordCountEstimate(sh.getFrom(), sh.getUntil(), inputFormat, inputSet);
+        }
+        TimingLogger.stop(getServiceName() + ".countRecords");
+        totalRecordCountIsEstimate = count < 0;
+        totalRecordCount = Math.abs(count);
+        LOG.info(getServiceName() + " has " + (totalRecordCountIsEstimate ? "about " : "") + totalRecordCount + " records to process");
+    }
+
+    public String getDetailedStatus() {
+        return "processed " + processedRecordCount + " of " + (totalRecordCountIsEstimate ? "about " : "") + totalRecordCount +
+                " (" + Math.max(0, totalRecordCount - consumedRecordCount) + " yet to be read)";
+    }
+
     public void process(Repository repo, Format inputFormat, Set inputSet,
             Set outputSet) {
         startTime = new Date().getTime();
@@ -526,8 +594,10 @@ public abstract class GenericMetadataService extends SolrMetadataService
         ServiceHarvest sh = getServiceHarvest(inputFormat, inputSet,
 	                repo.getName(), getService());
         
-        this.totalRecordCount = repo.getRecordCount(sh.getFrom(),
-                sh.getUntil(), inputFormat, inputSet);
+        countRecords(repo, sh, inputFormat, inputSet, false);
+        if (!isSolrIndexer()) {
+            getRepository().planIndices(this.totalRecordCount);
+        }
 //LOG.error("GenericMetadataService, processing repo "+ repo.getName()+" NOW. TotalRecordCount: " + this.totalRecordCount);
         
         boolean atLeastOneRecordProcessed = false;
@@ -623,6 +693,7 @@ public abstract class GenericMetadataService extends SolrMetadataService
         }
 
         sh.setHighestId(null); // reset harvest
+        consumedRecordCount = 0;
         List<Record> records = getRecords(repo, sh, inputFormat, inputSet);
 
 //LOG.error("GenericMetadataService, processing repo "+ repo.getName()+" NOW. Actual RecordCount: " + records.size());
@@ -635,170 +706,105 @@ public abstract class GenericMetadataService extends SolrMetadataService
                     new RecordCounts(sh.getUntil(), RecordCounts.OUTGOING));
         }
 
-        previouslyPaused = false;
-        int getRecordLoops = 0;
-        atLeastOneRecordProcessed = false;
-        while (records != null && records.size() > 0 && !stopped) {
-            atLeastOneRecordProcessed = true;
-            if (paused) {
-                previouslyPaused = true;
-                running.release();
-                try {
-                    Thread.sleep(1000);
-                } catch (Throwable t) {
-                    throw new RuntimeException(t);
-                }
-                continue;
-            }
-            if (previouslyPaused) {
-                running.acquireUninterruptibly();
-                previouslyPaused = false;
-            }
-            if (++getRecordLoops % 100 == 0) {
-                // TODO here is the place to display performance!
-                // processedRecordCount is a sensible count to pass here as the number of records updated.
-                TimingLogger.reset(processedRecordCount);
-            }
-            //TODO here is the code to break out!!!!!
-            for (Record in : records) {
-            	//LOG.debug("processing record id=" + in.getId());            	
-            /*
-            for (int i=0; i<records.size();) {
-                Record in = customProcessQueue.pop();
-                if (in == null) {
-                    in = records.get(i);
-                    i++;
-                }
-                */
-                //START, intro stuff before processing
-
-
-                // TODO: currently the injected records here only contain ids.
-                // This is helpful enough if you simply want to overwrite the
-                // the existing record. Although I can't think of a reason
-                // why, someone might also want the xml with these injected
-                // records.
-                // We may want to supply an optional way of doing that.
-                in.setPreviousStatus(Record.NULL);
-                injectKnownData(in);
-                if (in.getMessages() != null) {
-                    for (RecordMessage rm : in.getMessages()) {
-                        if (rm.getServiceId() == getService().getId()) {
-                            messages2delete.add(rm.clone());
-                        }
+        int processThreads = MSTConfiguration.getInstance().getPropertyAsInt("service.processThreads", 1);
+        if (processThreads > 1 && isThreadSafe()) {
+            LOG.info("processing " + getServiceName() + " with " + processThreads + " threads");
+            processPool = Executors.newFixedThreadPool(processThreads);
+        } else if (processThreads > 1) {
+            LOG.info("service.processThreads=" + processThreads + " ignored: " + getServiceName() + " isn't thread safe");
+        }
+
+        try {
+            previouslyPaused = false;
+            int getRecordLoops = 0;
+            atLeastOneRecordProcessed = false;
+            while (records != null && records.size() > 0 && !stopped) {
+                atLeastOneRecordProcessed = true;
+                if (paused) {
+                    previouslyPaused = true;
+                    running.release();
+                    try {
+                        Thread.sleep(1000);
+                    } catch (Throwable t) {
+                        throw new RuntimeException(t);
                     }
+                    continue;
                 }
-                if (preserveStatuses) {
-                    if (!isSolrIndexer()) {
-                        previousStatuses.put(in.getId(), (byte) in.getStatus());
-                    }
-                    tempPreviousStatuses.put(in.getId(), (byte) in.getStatus());
+                if (previouslyPaused) {
+                    running.acquireUninterruptibly();
+                    previouslyPaused = false;
                 }
-                Map<Long, OutputRecord> origSuccessorMap = new HashMap<Long, OutputRecord>();
-                if (in.getSuccessors() != null && in.getSuccessors().size() > 0) {
-                    for (OutputRecord or : in.getSuccessors()) {
-                        origSuccessorMap.put(or.getId(), or.clone());
-                    }
+                if (++getRecordLoops % 100 == 0) {
+                    // TODO here is the place to display performance!
+                    // processedRecordCount is a sensible count to pass here as the number of records updated.
+                    TimingLogger.reset(processedRecordCount);
                 }
-                //END, intro stuff before processing
-
-                // START, real processing!
-                TimingLogger.start(getServiceName() + ".process");
-                List<OutputRecord> out = null;
-                boolean unexpectedError = false;
+                TimingLogger.start(getServiceName() + ".prepareBatch");
                 try {
-                    out = process(in);
+                    prepareBatch(records);
                 } catch (Throwable t) {
-                    unexpectedError = true;
-                    LOG.error("error processing record w/ id: " + in.getId(), t);
+                    LOG.error("error preparing batch of records", t);
                 }
-                TimingLogger.stop(getServiceName() + ".process");
-                // END, real processing!
-
+                TimingLogger.stop(getServiceName() + ".prepareBatch");
 
-                // START, post-processing record count handling!
-                if (!isSolrIndexer() && !isTestRepository()) {
-                    if (in.getType() != null) {
-                        getMetadataServiceManager().getIncomingRecordCounts()
-                                .incr(in.getType(), in.getStatus(),
-                                        in.getPreviousStatus());
+                //TODO here is the code to break out!!!!!
+                try {
+                    if (processPool != null) {
+                        processInParallel(records, sh);
                     } else {
-                        getMetadataServiceManager().getIncomingRecordCounts()
-                                .incr(RecordCounts.OTHER, in.getStatus(),
-                                        in.getPreviousStatus());
-                    }
-                    getMetadataServiceManager().getIncomingRecordCounts().incr(
-                            null, in.getStatus(), in.getPreviousStatus());
-                }
-
-                if (unexpectedError) {
-                    if (!isSolrIndexer() && !isTestRepository()) {
-                        if (in.getType() != null) {
-                            getMetadataServiceManager().getIncomingRecordCounts()
-                                    .incr(in.getType(),
-                                            RecordCounts.UNEXPECTED_ERROR);
-                        }
-                        getMetadataServiceManager().getIncomingRecordCounts().incr(
-                                null, RecordCounts.UNEXPECTED_ERROR);
-                    }
-                } else {
-                    processedRecordCount++;
-                    if (out != null) {
-                        // start processing the received OutputRecord(s)
-                        for (RecordIfc rout : out) {
-                            messages2deleteByRecordId.add(rout.getId());
-                            Record rout2 = (Record) rout;
-                            if (origSuccessorMap.containsKey(rout2.getId())) {
-                                rout2.setPreviousStatus(origSuccessorMap.get(
-                                        rout2.getId()).getStatus());
-                            }
-                            LOG.debug("rout2.getIndexedObjectType(): "
-                                    + rout2.getType() + " rout2.getStatus(): "
-                                    + rout2.getStatus()
-                                    + " rout2.getPreviousStatus(): "
-                                    + rout2.getPreviousStatus());
-               ///
-               ///LOG.info("rout id="+rout.getId()+" rout2.getIndexedObjectType(): "
-               //       + rout2.getType() + " rout2.getStatus(): "
-               //       + rout2.getStatus()
-               //      + " rout2.getPreviousStatus(): "
-               //+ rout2.getPreviousStatus());
-               ///
-                            if (!isTestRepository()) {
-                                // one last bit of record counting.
-                                incrementOutputRecordCounts(rout2);
-                            }
-                            // finally, actually process the received records.
-                            addPredecessor(in, rout2);
-                            rout2.setService(getService());
-                            if (rout2.getId() == -1) {
-                                getRepositoryDAO().injectId(rout2);
+                        for (Record in : records) {
+                        	//LOG.debug("processing record id=" + in.getId());
+                        /*
+                        for (int i=0; i<records.size();) {
+                            Record in = customProcessQueue.pop();
+                            if (in == null) {
+                                in = records.get(i);
+                                i++;
                             }
-                            if (outputSet != null) {
-                                rout2.addSet(outputSet);
+                            */
+                            Map<Long, OutputRecord> origSuccessorMap = prepareRecord(in);
+
+                            // START, real processing!
+                            TimingLogger.start(getServiceName() + ".process");
+                            List<OutputRecord> out = null;
+                            boolean unexpectedError = false;
+                            try {
+                                out = process(in);
+                            } catch (Throwable t) {
+                                unexpectedError = true;
+                                LOG.error("error processing record w/ id: " + in.getId(), t);
                             }
-                            getRepository().addRecord(rout2);
+                            TimingLogger.stop(getServiceName() + ".process");
+                            // END, real processing!
+
+                            handleOutputRecords(in, out, unexpectedError, origSuccessorMap, sh);
                         }
                     }
+                } finally {
+                    finishBatch(records);
                 }
-                // END, post-processing record count handling!
+                //TODO end , code to break out!!!
 
-                sh.setHighestId(in.getId());
-                updateService(out, sh);
+                if (commitIfNecessary(false, processedRecordCount)) {
+                    persistWhenWritten(sh);
+                }
 
-                // TODO not inserting errors on input record.
-                // Update the error message on incoming record
-                // repo.addRecord(in);
+                consumedRecordCount += records.size();
+                if (consumedRecordCount > totalRecordCount) {
+                    // Either the estimate was low or records have been added to the range since it was counted
+                    if (totalRecordCountIsEstimate) {
+                        countRecords(repo, sh, inputFormat, inputSet, true);
+                    }
+                    totalRecordCount = Math.max(totalRecordCount, consumedRecordCount);
+                }
+                records = getRecords(repo, sh, inputFormat, inputSet);
             }
-            //TODO end , code to break out!!!
-
-            if (commitIfNecessary(false, processedRecordCount)) {
-                getServiceDAO().persist(sh);
+        } finally {
+            // also when a batch throws, or the pool's threads would outlive the run
+            if (processPool != null) {
+                processPool.shutdown();
+                processPool = null;
             }
-
-            this.totalRecordCount = repo.getRecordCount(sh.getFrom(),
-                    sh.getUntil(), inputFormat, inputSet);
-            records = getRecords(repo, sh, inputFormat, inputSet);
         }
         // TODO not inserting errors on input record.
 
@@ -852,6 +858,176 @@ public abstract class GenericMetadataService extends SolrMetadataService
         setStatus(Status.NOT_RUNNING);
     }
 
+    /**
+     * The bookkeeping done for an input record before it is handed to process(InputRecord).
+     * Always runs on the thread that called process(Repository, Format, Set, Set).
+     *
+     * @return the record's successors as they were before processing, keyed by id
+     */
+    protected Map<Long, OutputRecord> prepareRecord(Record in) {
+        // TODO: currently the injected records here only contain ids.
+        // This is helpful enough if you simply want to overwrite the
+        // the existing record. Although I can't think of a reason
+        // why, someone might also want the xml with these injected
+        // records.
+        // We may want to supply an optional way of doing that.
+        in.setPreviousStatus(Record.NULL);
+        injectKnownData(in);
+        if (in.getMessages() != null) {
+            for (RecordMessage rm : in.getMessages()) {
+                if (rm.getServiceId() == getService().getId()) {
+                    messages2delete.add(rm.clone());
+                }
+            }
+        }
+        if (preserveStatuses) {
+            if (!isSolrIndexer()) {
+                previousStatuses.put(in.getId(), (byte) in.getStatus());
+            }
+            tempPreviousStatuses.put(in.getId(), (byte) in.getStatus());
+        }
+        Map<Long, OutputRecord> origSuccessorMap = new HashMap<Long, OutputRecord>();
+        if (in.getSuccessors() != null && in.getSuccessors().size() > 0) {
+            for (OutputRecord or : in.getSuccessors()) {
+                origSuccessorMap.put(or.getId(), or.clone());
+            }
+        }
+        return origSuccessorMap;
+    }
+
+    /**
+     * The bookkeeping done for an input record after process(InputRecord) has returned: record
+     * counts, predecessors, ids and adding the output records to the repository.  Always runs on the
+     * thread that called process(Repository, Format, Set, Set), in input record order.
+     */
+    protected void handleOutputRecords(Record in, List<OutputRecord> out, boolean unexpectedError,
+            Map<Long, OutputRecord> origSuccessorMap, ServiceHarvest sh) {
+        // START, post-processing record count handling!
+        if (!isSolrIndexer() && !isTestRepository()) {
+            if (in.getType() != null) {
+                getMetadataServiceManager().getIncomingRecordCounts()
+                        .incr(in.getType(), in.getStatus(),
+                                in.getPreviousStatus());
+            } else {
+                getMetadataServiceManager().getIncomingRecordCounts()
+                        .incr(RecordCounts.OTHER, in.getStatus(),
+                                in.getPreviousStatus());
+            }
+            getMetadataServiceManager().getIncomingRecordCounts().incr(
+                    null, in.getStatus(), in.getPreviousStatus());
+        }
+
+        if (unexpectedError) {
+            if (!isSolrIndexer() && !isTestRepository()) {
+                if (in.getType() != null) {
+                    getMetadataServiceManager().getIncomingRecordCounts()
+                            .incr(in.getType(),
+                                    RecordCounts.UNEXPECTED_ERROR);
+                }
+                getMetadataServiceManager().getIncomingRecordCounts().incr(
+                        null, RecordCounts.UNEXPECTED_ERROR);
+            }
+        } else {
+            processedRecordCount++;
+            if (out != null) {
+                // start processing the received OutputRecord(s)
+                for (RecordIfc rout : out) {
+                    messages2deleteByRecordId.add(rout.getId());
+                    Record rout2 = (Record) rout;
+                    if (origSuccessorMap.containsKey(rout2.getId())) {
+                        rout2.setPreviousStatus(origSuccessorMap.get(
+                                rout2.getId()).getStatus());
+                    }
+                    LOG.debug("rout2.getIndexedObjectType(): "
+                            + rout2.getType() + " rout2.getStatus(): "
+                            + rout2.getStatus()
+                            + " rout2.getPreviousStatus(): "
+                            + rout2.getPreviousStatus());
+                    if (!isTestRepository()) {
+                        // one last bit of record counting.
+                        incrementOutputRecordCounts(rout2);
+                    }
+                    // finally, actually process the received records.
+                    addPredecessor(in, rout2);
+                    rout2.setService(getService());
+                    if (rout2.getId() == -1) {
+                        getRepositoryDAO().injectId(rout2);
+                    }
+                    if (outputSet != null) {
+                        rout2.addSet(outputSet);
+                    }
+                    getRepository().addRecord(rout2);
+                }
+            }
+        }
+        // END, post-processing record count handling!
+
+        sh.setHighestId(in.getId());
+        updateService(out, sh);
+
+        // TODO not inserting errors on input record.
+        // Update the error message on incoming record
+        // repo.addRecord(in);
+    }
+
+    /**
+     * Runs process(InputRecord) for a whole batch on the processPool.  Only the calls to
+     * process(InputRecord) are fanned out; the bookkeeping before and after them stays on this
+     * thread, and the results are handled in input record order, so repository inserts come out
+     * in the order they would have single-threaded.  Ids a service assigns inside process() itself
+     * (e.g. with getRecordService().createRecord()) are handed out in whatever order the calls get
+     * to them, so such a service isn't thread safe unless it doesn't care.
+     */
+    protected void processInParallel(List<Record> records, ServiceHarvest sh) {
+        List<Map<Long, OutputRecord>> origSuccessorMaps = new ArrayList<Map<Long, OutputRecord>>(records.size());
+        List<Callable<List<OutputRecord>>> tasks = new ArrayList<Callable<List<OutputRecord>>>(records.size());
+        for (final Record in : records) {
+            origSuccessorMaps.add(prepareRecord(in));
+            tasks.add(new Callable<List<OutputRecord>>() {
+                public List<OutputRecord> call() throws Exception {
+                    return process(in);
+                }
+            });
+        }
+
+        TimingLogger.start(getServiceName() + ".processInParallel");
+        List<Future<List<OutputRecord>>> futures = null;
+        try {
+            futures = processPool.invokeAll(tasks);
+        } catch (InterruptedException ie) {
+            throw new RuntimeException(ie);
+        }
+        TimingLogger.stop(getServiceName() + ".processInParallel");
+
+        for (int i = 0; i < records.size(); i++) {
+            Record in = records.get(i);
+            List<OutputRecord> out = null;
+            boolean unexpectedError = false;
+            try {
+                out = futures.get(i).get();
+            } catch (ExecutionException ee) {
+                unexpectedError = true;
+                LOG.error("error processing record w/ id: " + in.getId(), ee.getCause());
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+            handleOutputRecords(in, out, unexpectedError, origSuccessorMaps.get(i), sh);
+        }
+    }
+
+    /**
+     * Services return true if process(InputRecord) may be called for several records at once from
+     * different threads.  Only then will service.processThreads be used.
+     *
+     * None of the bundled services does, so for now processThreads has no effect.  Normalization
+     * keeps a static list of 035 regex matches and an input record count that process() changes,
+     * and creates its output records (and so their ids) inside process().  Transformation assigns
+     * manifestation ids, updates its linkage cache and counters, and forces commits from process().
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
     protected void incrementOutputRecordCounts(Record rout2) {
         //increment type's counts, i.e. 'bib' or 'unknown' if type is null.
         if (rout2.getType() != null) {
@@ -995,7 +1171,6 @@ public abstract class GenericMetadataService extends SolrMetadataService
             String detail) {
         Record r = (Record) record;
         RecordMessage rm = new RecordMessage();
-        getMessageDAO().injectId(rm);
         rm.setServiceId(getService().getId());
         rm.setInputRecord(false);
         rm.setCode(code);
@@ -1003,7 +1178,11 @@ public abstract class GenericMetadataService extends SolrMetadataService
         rm.setDetail(detail);
         rm.setRecord(r);
 
-        messages2insert.add(rm);
+        // may be called from several threads at once when processing in parallel
+        synchronized (messages2insert) {
+            getMessageDAO().injectId(rm);
+            messages2insert.add(rm);
+        }
     }
 
     protected void addMessage(InputRecord record, int code, char level, String detail, Service service) {
@@ -1013,7 +1192,6 @@ public abstract class GenericMetadataService extends SolrMetadataService
         }
         Record r = (Record) record;
         RecordMessage rm = new RecordMessage();
-        getMessageDAO().injectId(rm);
         rm.setServiceId(service.getId());
         rm.setInputRecord(true);
         rm.setCode(code);
@@ -1021,7 +1199,11 @@ public abstract class GenericMetadataService extends SolrMetadataService
         rm.setDetail(detail);
         rm.setRecord(r);
 
-        messages2insert.add(rm);
+        // may be called from several threads at once when processing in parallel
+        synchronized (messages2insert) {
+            getMessageDAO().injectId(rm);
+            messages2insert.add(rm);
+        }
     }
 
     protected void addMessage(InputRecord record, int code, char level) {
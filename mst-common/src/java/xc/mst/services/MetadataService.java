@@ -46,6 +46,9 @@ public interface MetadataService {
 
     public void process(Repository repo, Format inputFormat, Set inputSet, Set outputSet);
 
+    // true if process(InputRecord) can safely run on several records at once (see service.processThreads)
+    public boolean isThreadSafe();
+
     public void pause();
 
     public void resume();
@@ -98,6 +101,11 @@ public interface MetadataService {
 
     public long getTotalRecordCount();
 
+    /**
+     * @return how far the current run has got, for the scheduler's status
+     */
+    public String getDetailedStatus();
+
     public List<String> getUnprocessedErrorRecordIdentifiers();
 
     public void setUnprocessedErrorRecordIdentifiers(List<String> l);
@@ -114,7 +114,10 @@ public class MetadataServiceManager extends WorkerThread {
     }
 
     public String getDetailedStatus() {
-        return null;
+        if (metadataService == null) {
+            return null;
+        }
+        return metadataService.getDetailedStatus();
     }
 
     public String getName() {
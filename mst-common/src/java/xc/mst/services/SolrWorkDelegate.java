@@ -8,8 +8,16 @@
  */
 package xc.mst.services;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -20,11 +28,25 @@ import xc.mst.repo.Repository;
 import xc.mst.scheduling.WorkerThread;
 import xc.mst.utils.MSTConfiguration;
 
+/**
+ * Keeps the Solr index up to date with the provider and service repositories while the
+ * Scheduler is otherwise idle.
+ *
+ * Each repository gets its own SolrIndexService, and so its own ServiceHarvest cursor. Up to
+ * solr.index.maxConcurrentRepositories repositories are indexed at once; they all add to the
+ * one SolrIndexManager.
+ */
 public class SolrWorkDelegate extends WorkerThread {
 
     private static final Logger LOG = Logger.getLogger(SolrWorkDelegate.class);
 
     protected SolrIndexService solrIndexService = null;
+    // repository name -> the SolrIndexService that indexes it
+    protected Map<String, SolrIndexService> solrIndexServices = new ConcurrentHashMap<String, SolrIndexService>();
+    // repository name -> the SolrIndexService indexing it right now
+    protected Map<String, SolrIndexService> indexing = new ConcurrentHashMap<String, SolrIndexService>();
+    protected ExecutorService indexPool = null;
+    protected Service solrService = null;
     // protected ReentrantLock lock = new ReentrantLock();
     protected Semaphore lock = new Semaphore(1);
     
@@ -35,35 +57,100 @@ public class SolrWorkDelegate extends WorkerThread {
     public void setup() {
         LOG.debug("setup");
         solrIndexService = (SolrIndexService) config.getBean("SolrIndexService");
-        Service s2 = new Service();
-        s2.setName("solr-indexer");
-        solrIndexService.setService(s2);
+        solrService = new Service();
+        solrService.setName("solr-indexer");
+        solrIndexService.setService(solrService);
+
+        int maxConcurrent = config.getPropertyAsInt("solr.index.maxConcurrentRepositories", 1);
+        if (maxConcurrent > 1) {
+            LOG.info("indexing up to " + maxConcurrent + " repositories at once");
+            indexPool = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
+                protected AtomicInteger threadNum = new AtomicInteger(0);
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SolrWorkDelegate-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
         LOG.debug("about to release");
         lock.release();
         LOG.debug("released");
     }
 
+    /**
+     * @return the repository's own SolrIndexService, created the first time it's indexed
+     */
+    protected SolrIndexService getSolrIndexService(Repository repo) {
+        SolrIndexService sis = solrIndexServices.get(repo.getName());
+        if (sis == null) {
+            // SolrIndexService is a singleton bean, so ask the factory for one of our own
+            sis = MSTConfiguration.getInstance().getApplicationContext()
+                    .getAutowireCapableBeanFactory().createBean(SolrIndexService.class);
+            sis.init();
+            sis.setService(solrService);
+            solrIndexServices.put(repo.getName(), sis);
+        }
+        return sis;
+    }
+
     public void finishInner(boolean success) {
+        if (indexPool != null) {
+            indexPool.shutdown();
+        }
         solrIndexService.finish();
+        for (SolrIndexService sis : solrIndexServices.values()) {
+            sis.finish();
+        }
         super.finishInner(success);
     }
 
+    /**
+     * @return how far behind each repository being indexed is
+     */
     public String getDetailedStatus() {
-        return null;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, SolrIndexService> me : indexing.entrySet()) {
+            SolrIndexService sis = me.getValue();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(me.getKey()).append(": ").append(Math.max(0, sis.getTotalRecordCount() - sis.getProcessedRecordCount()))
+                    .append(" records behind");
+        }
+        return sb.length() > 0 ? sb.toString() : null;
     }
 
     public String getName() {
-        return solrIndexService.getName4progressBar();
+        List<String> names = new ArrayList<String>();
+        for (SolrIndexService sis : indexing.values()) {
+            if (sis.getName4progressBar() != null) {
+                names.add(sis.getName4progressBar());
+            }
+        }
+        if (names.size() == 0) {
+            return solrIndexService.getName4progressBar();
+        } else if (names.size() == 1) {
+            return names.get(0);
+        }
+        return names.toString();
     }
 
     public void pauseInner() {
         solrIndexService.pause();
+        for (SolrIndexService sis : solrIndexServices.values()) {
+            sis.pause();
+        }
         super.pauseInner();
     }
 
     public void proceedInner() {
         wait4availability();
         solrIndexService.resume();
+        for (SolrIndexService sis : solrIndexServices.values()) {
+            sis.resume();
+        }
         super.proceedInner();
     }
 
@@ -73,13 +160,14 @@ public class SolrWorkDelegate extends WorkerThread {
         setJobStatus(Status.RUNNING);
         LOG.debug("doSomeWork");
         try {
+            List<Repository> repos = new ArrayList<Repository>();
             List<Provider> providers = getProviderDAO().getAll();
             if (providers != null) {
                 for (Provider p : providers) {
                     Repository repo = getRepositoryService().getRepository(p);
                     if (repo.ready4harvest()) {
                         LOG.debug("SolrWorkDelegate, repo IS ready4harvest! provider="+p.getName()+" repo="+repo.getName());
-                        solrIndexService.process(repo, null, null, null);
+                        repos.add(repo);
                     }
                     else {
                         LOG.debug("SolrWorkDelegate, repo not ready4harvest! provider="+p.getName()+" repo="+repo.getName());
@@ -91,10 +179,11 @@ public class SolrWorkDelegate extends WorkerThread {
                 for (Service s : services) {
                     Repository repo = s.getMetadataService().getRepository();
                     if (repo.ready4harvest()) {
-                        solrIndexService.process(repo, null, null, null);
+                        repos.add(repo);
                     }
                 }
             }
+            index(repos);
         } catch (Throwable t) {
             LOG.error("", t);
         }
@@ -111,6 +200,46 @@ public class SolrWorkDelegate extends WorkerThread {
         return true;
     }
 
+    /**
+     * Indexes the repositories, several at once if there's an indexPool, and returns once
+     * they're all done.
+     */
+    protected void index(List<Repository> repos) {
+        if (indexPool == null) {
+            for (Repository repo : repos) {
+                indexRepository(repo);
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Repository repo : repos) {
+            futures.add(indexPool.submit(new Runnable() {
+                public void run() {
+                    indexRepository(repo);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (Throwable t) {
+                LOG.error("", t);
+            }
+        }
+    }
+
+    protected void indexRepository(Repository repo) {
+        SolrIndexService sis = getSolrIndexService(repo);
+        indexing.put(repo.getName(), sis);
+        try {
+            sis.process(repo, null, null, null);
+        } catch (Throwable t) {
+            LOG.error("SolrWorkDelegate, indexing repo " + repo.getName() + " failed.", t);
+        } finally {
+            indexing.remove(repo.getName());
+        }
+    }
+
     protected void wait4availability() {
         LOG.debug("about to release");
         lock.acquireUninterruptibly();
@@ -119,11 +248,19 @@ public class SolrWorkDelegate extends WorkerThread {
     }
 
     public long getRecords2ProcessThisRun() {
-        return solrIndexService.getTotalRecordCount();
+        long total = 0;
+        for (SolrIndexService sis : indexing.values()) {
+            total += sis.getTotalRecordCount();
+        }
+        return total;
     }
 
     public long getRecordsProcessedThisRun() {
-        return solrIndexService.getProcessedRecordCount();
+        long processed = 0;
+        for (SolrIndexService sis : indexing.values()) {
+            processed += sis.getProcessedRecordCount();
+        }
+        return processed;
     }
 
 }
@@ -9,6 +9,13 @@
 
 package xc.mst.utils;
 
+import xc.mst.utils.metrics.Metrics;
+
+/**
+ * start/stop and add are always recorded in the Metrics registry, which doesn't lock.  The
+ * detailed (per-reset) output of TimingStats is only produced with this class's logger at debug,
+ * as before, and is still serialized, since there's just the one TimingStats.
+ */
 public class TimingLogger {
 
     /*
@@ -22,23 +29,24 @@ public class TimingLogger {
     };
     */
 
+    // the TimingStats calls below are synchronized because repository commits may run on their own thread
     protected static TimingStats ts = new TimingStats();
 
-    public static void log(String message) {
+    public static synchronized void log(String message) {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.log(message);
         }
     }
 
-    public static void log(String message, boolean suppressOutput) {
+    public static synchronized void log(String message, boolean suppressOutput) {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.log(null, message, suppressOutput);
         }
     }
 
-    public static void log(String name, String message, boolean suppressOutput) {
+    public static synchronized void log(String name, String message, boolean suppressOutput) {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.log(name, message, suppressOutput);
@@ -46,27 +54,33 @@ public class TimingLogger {
     }
 
     public static void start(String name) {
+        Metrics.start(name);
         if (TimingStats.LOG.isDebugEnabled()) {
-            // TimingStats ts = (TimingStats)timingStats.get();
-            ts.start(name);
+            synchronized (TimingLogger.class) {
+                // TimingStats ts = (TimingStats)timingStats.get();
+                ts.start(name);
+            }
         }
     }
 
     public static void stop(String name) {
+        Metrics.stop(name);
         if (TimingStats.LOG.isDebugEnabled()) {
-            // TimingStats ts = (TimingStats)timingStats.get();
-            ts.stop(name);
+            synchronized (TimingLogger.class) {
+                // TimingStats ts = (TimingStats)timingStats.get();
+                ts.stop(name);
+            }
         }
     }
 
-    public static void turnOn() {
+    public static synchronized void turnOn() {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.turnOn();
         }
     }
 
-    public static void turnOff() {
+    public static synchronized void turnOff() {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.turnOff();
@@ -74,13 +88,16 @@ public class TimingLogger {
     }
 
     public static void add(String name, long l) {
+        Metrics.add(name, l);
         if (TimingStats.LOG.isDebugEnabled()) {
-            // TimingStats ts = (TimingStats)timingStats.get();
-            ts.add(name, l);
+            synchronized (TimingLogger.class) {
+                // TimingStats ts = (TimingStats)timingStats.get();
+                ts.add(name, l);
+            }
         }
     }
 
-    public static void reset(long counts) {
+    public static synchronized void reset(long counts) {
         // TimingStats.LOG.debug("", new Exception());
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
@@ -88,7 +105,7 @@ public class TimingLogger {
         }
     }
 
-    public static void reset() {
+    public static synchronized void reset() {
         // TimingStats.LOG.debug("", new Exception());
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
@@ -96,21 +113,21 @@ public class TimingLogger {
         }
     }
 
-    public static void reset(boolean includeDefault) {
+    public static synchronized void reset(boolean includeDefault) {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.reset(includeDefault);
         }
     }
 
-    public static void reset(String name) {
+    public static synchronized void reset(String name) {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.reset(name);
         }
     }
 
-    public static void outputMemory() {
+    public static synchronized void outputMemory() {
         if (TimingStats.LOG.isDebugEnabled()) {
             // TimingStats ts = (TimingStats)timingStats.get();
             ts.outputMemory();
@@ -10,36 +10,80 @@
 package xc.mst.utils.index;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
 
 import xc.mst.dao.DataException;
 import xc.mst.manager.IndexException;
 import xc.mst.utils.LogWriter;
 import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.metrics.Metrics;
 
 /**
  * Multi-Threaded extension of SolrIndexManager. Overrides the addDoc method of SolrIndexManager
- * and runs the add operation using one of the threads available in a pool of threads initialized.
- * The size of the pool is hard coded.
- * 
+ * so that documents are collected into batches (by count or by approximate size), and each
+ * batch is added with a single server.add(Collection) by one of a pool of threads.
+ *
+ * addDoc blocks once solr.batch.maxQueued batches are waiting or being added, so a fast producer
+ * can't run ahead of the index. Commits are made every solr.commitIntervalSeconds on a timer of
+ * their own, as well as whenever commitIndex is called.
+ *
  * @author Vinaykumar Bangera
  */
 public class ThreadedSolrIndexManager extends SolrIndexManager {
+
+    public static final String ADD_BATCH_TIMER = "solr.addBatch";
+
     /**
      * Service for pipelining and executing tasks.
      */
     protected ExecutorService threadPool;
 
     /**
-     * The number of Jobs which have been scheduled to run but have not been completed
+     * Makes the time based commits
+     */
+    protected ScheduledExecutorService committer;
+
+    /**
+     * One permit per batch that may be queued or being added at once
+     */
+    protected Semaphore batchPermits;
+
+    /**
+     * The number of batches which have been submitted but have not been completed. Guarded by
+     * pendingLock, which is notified when it drops to 0.
      */
-    protected int numQueuedJobs = 0;
+    protected int pendingBatches = 0;
+    protected final Object pendingLock = new Object();
+
+    /**
+     * The batch being filled, and its approximate size in chars. Guarded by this.
+     */
+    protected List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>();
+    protected long batchChars = 0;
+
+    protected int maxBatchDocs;
+    protected long maxBatchChars;
+    protected long flushTimeout;
+
+    // documents added to the current batch or to a submitted batch that isn't done yet
+    protected AtomicInteger queuedDocs = new AtomicInteger(0);
+    protected AtomicLong indexedDocs = new AtomicLong(0);
+    protected AtomicLong indexedDocsAtCommit = new AtomicLong(0);
+    protected long startTime;
 
     /**
      * Gets the singleton instance of the LuceneIndexManager
@@ -47,102 +91,261 @@ public class ThreadedSolrIndexManager extends SolrIndexManager {
     public void init() {
         super.init();
         log.info("Initializing the SolrIndexManager instance.");
+        MSTConfiguration config = MSTConfiguration.getInstance();
 
         // Get the queue size and pool size for threads
         int poolSize = Integer.parseInt(
-                MSTConfiguration.getInstance().getProperty("SOLRIndexerMultiThreadCount")) == 0 ? 20 :
-                    Integer.parseInt(MSTConfiguration.getInstance().getProperty("SOLRIndexerMultiThreadCount"));
+                config.getProperty("SOLRIndexerMultiThreadCount")) == 0 ? 20 :
+                    Integer.parseInt(config.getProperty("SOLRIndexerMultiThreadCount"));
+        maxBatchDocs = Math.max(1, config.getPropertyAsInt("solr.batch.docs", 500));
+        maxBatchChars = Math.max(1, config.getPropertyAsInt("solr.batch.kilobytes", 4096)) * 1024L;
+        flushTimeout = config.getPropertyAsInt("solr.batch.flushTimeoutSeconds", 600) * 1000L;
+        batchPermits = new Semaphore(Math.max(1, config.getPropertyAsInt("solr.batch.maxQueued", poolSize * 2)));
 
+        /* Initialize the thread pool*/
+        threadPool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            protected AtomicInteger threadNum = new AtomicInteger(0);
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "solr-indexer-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
         log.info("SolrIndexManager Thread Pool Initialized");
 
-        /* Initialize the thread pool*/
-        threadPool = new ThreadPoolExecutor(poolSize,
-                                            poolSize,
-                                            Long.MAX_VALUE,
-                                            TimeUnit.NANOSECONDS,
-                                            new ArrayBlockingQueue<Runnable>(poolSize, false),
-                                            new ThreadPoolExecutor.CallerRunsPolicy());
+        int commitInterval = config.getPropertyAsInt("solr.commitIntervalSeconds", 60);
+        if (commitInterval > 0) {
+            committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "solr-committer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            committer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        commitIfIndexedSinceCommit();
+                    } catch (Throwable t) {
+                        log.error("time based commit of the Solr index failed.", t);
+                    }
+                }
+            }, commitInterval, commitInterval, TimeUnit.SECONDS);
+        }
+        startTime = System.currentTimeMillis();
     }
 
     /**
      * Adds a document to the Lucene index
-     * 
+     *
      * @param doc
      *            The document to add
      * @return true on success, false on failure
      */
     public boolean addDoc(SolrInputDocument doc) throws IndexException {
-        log.debug("Add index to Solr - begin");
-
         // Check if solr server is null
         if (getMSTSolrService().getServer() == null) {
             log.error("Solr server is null");
 
             return false;
-        } else {
-            try {
-                synchronized (this) {
-                    threadPool.execute(new Job(doc));
-                    log.debug("incrementing numQueuedJobs");
-                    numQueuedJobs++;
-                    log.debug("incremented numQueuedJobs: " + numQueuedJobs);
-                }
-            } catch (RuntimeException e) {
-                throw new IndexException(e.getMessage());
+        }
+
+        List<SolrInputDocument> full = null;
+        synchronized (this) {
+            batch.add(doc);
+            batchChars += estimateChars(doc);
+            queuedDocs.incrementAndGet();
+            if (batch.size() >= maxBatchDocs || batchChars >= maxBatchChars) {
+                full = takeBatch();
             }
+        }
+        if (full != null) {
+            submit(full);
+        }
+        return true;
+    }
+
+    /**
+     * Submits the batch being filled, even if it isn't full.
+     */
+    public void flush() throws IndexException {
+        List<SolrInputDocument> partial;
+        synchronized (this) {
+            partial = takeBatch();
+        }
+        if (partial.size() > 0) {
+            submit(partial);
+        }
+    }
+
+    // call while holding this
+    protected List<SolrInputDocument> takeBatch() {
+        List<SolrInputDocument> taken = batch;
+        batch = new ArrayList<SolrInputDocument>();
+        batchChars = 0;
+        return taken;
+    }
+
+    protected void submit(List<SolrInputDocument> docs) throws IndexException {
+        batchPermits.acquireUninterruptibly();
+        synchronized (pendingLock) {
+            pendingBatches++;
+        }
+        try {
+            threadPool.execute(new Job(docs));
+        } catch (RuntimeException e) {
+            batchDone(docs.size());
+            throw new IndexException(e.getMessage());
+        }
+    }
 
-            return true;
+    protected void batchDone(int numDocs) {
+        queuedDocs.addAndGet(-numDocs);
+        batchPermits.release();
+        synchronized (pendingLock) {
+            pendingBatches--;
+            if (pendingBatches == 0) {
+                pendingLock.notifyAll();
+            }
         }
     }
 
     /**
-     * Makes the calling Thread yield until all add/update/delete jobs have completed.
+     * Makes the calling Thread wait until all add/update/delete jobs have completed, including
+     * the batch that was still being filled.
      */
     public void waitForJobCompletion(long timeout) {
-        long start = System.currentTimeMillis();
-
-        while (numQueuedJobs > 0) {
-            if (timeout < System.currentTimeMillis() - start) {
-                log.warn("ThreadedSolrIndexManager's jobs aren't getting marked as finished, timeout of " + timeout + " was reached.");
-                break;
+        try {
+            flush();
+        } catch (IndexException ie) {
+            log.error("couldn't submit the last batch of documents to the Solr index.", ie);
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (pendingLock) {
+            while (pendingBatches > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("ThreadedSolrIndexManager's jobs aren't getting marked as finished, timeout of " + timeout + " was reached.");
+                    break;
+                }
+                try {
+                    pendingLock.wait(remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
+        }
+    }
+
+    /**
+     * Commits data to solr index, once the documents added so far have been indexed.
+     *
+     * @return true on success, false on failure
+     */
+    public boolean commitIndex() throws IndexException {
+        waitForJobCompletion(flushTimeout);
+        long indexed = indexedDocs.get();
+        boolean success = super.commitIndex();
+        indexedDocsAtCommit.set(indexed);
+        logThroughput();
+        return success;
+    }
+
+    /**
+     * The timer's commit. It doesn't wait for the batches in flight, so a steady stream of
+     * documents can't hold it off; whatever has been indexed by then is committed.
+     */
+    protected void commitIfIndexedSinceCommit() throws IndexException {
+        flush();
+        long indexed = indexedDocs.get();
+        if (indexed > indexedDocsAtCommit.get()) {
+            super.commitIndex();
+            indexedDocsAtCommit.set(indexed);
+            logThroughput();
+        }
+    }
 
-            Thread.yield();
+    protected void logThroughput() {
+        if (log.isDebugEnabled()) {
+            log.debug("Solr index: " + indexedDocs.get() + " docs at " + getDocsPerSecond() + " docs/sec, " +
+                    getQueueDepth() + " docs queued");
         }
     }
 
     /**
-     * A task that adds a document to the SOLR Index Manager
-     * 
+     * @return the number of documents added but not yet indexed
+     */
+    public int getQueueDepth() {
+        return queuedDocs.get();
+    }
+
+    /**
+     * @return the number of documents indexed since the indexer started
+     */
+    public long getIndexedDocs() {
+        return indexedDocs.get();
+    }
+
+    /**
+     * @return the average number of documents indexed per second since the indexer started
+     */
+    public long getDocsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? indexedDocs.get() * 1000 / elapsed : 0;
+    }
+
+    /**
+     * A rough size of the document: the length of its field names and values.
+     */
+    protected long estimateChars(SolrInputDocument doc) {
+        long chars = 0;
+        for (SolrInputField field : doc) {
+            chars += field.getName().length();
+            for (Object value : field.getValues()) {
+                if (value != null) {
+                    chars += value.toString().length();
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * A task that adds a batch of documents to the SOLR Index Manager
+     *
      * @author vinaykumarb
-     * 
+     *
      */
     private class Job implements Runnable {
         /**
-         * Document to be added to SOLR
+         * Documents to be added to SOLR
          */
-        SolrInputDocument doc;
+        Collection<SolrInputDocument> docs;
 
         /**
          * Creates a new Job with the given initial parameters.
-         * 
-         * @param doc
-         *            Document to be added to SOLR
+         *
+         * @param docs
+         *            Documents to be added to SOLR
          */
-        public Job(SolrInputDocument doc) {
-            this.doc = doc;
+        public Job(Collection<SolrInputDocument> docs) {
+            this.docs = docs;
         }
 
         /**
-         * Adds the document to SOLR in a separate thread
+         * Adds the documents to SOLR in a separate thread
          */
         public void run() throws RuntimeException {
+            Metrics.start(ADD_BATCH_TIMER);
             try {
-                getMSTSolrService().getServer().add(doc);
+                getMSTSolrService().getServer().add(docs);
+                indexedDocs.addAndGet(docs.size());
             } catch (SolrServerException se) {
-                log.error("Solr server exception occured when adding document to the index.", se);
+                log.error("Solr server exception occured when adding documents to the index.", se);
 
-                LogWriter.addError(logObj.getLogFileLocation(), "An error occurred while adding a document to the Solr index: " + se.getMessage());
+                LogWriter.addError(logObj.getLogFileLocation(), "An error occurred while adding documents to the Solr index: " + se.getMessage());
 
                 logObj.setErrors(logObj.getErrors() + 1);
 
@@ -157,7 +360,7 @@ public class ThreadedSolrIndexManager extends SolrIndexManager {
             } catch (IOException ioe) {
                 log.error("An IOException occurred", ioe);
 
-                LogWriter.addError(logObj.getLogFileLocation(), "An error occurred while adding a document to the Solr index: " + ioe.getMessage());
+                LogWriter.addError(logObj.getLogFileLocation(), "An error occurred while adding documents to the Solr index: " + ioe.getMessage());
 
                 logObj.setErrors(logObj.getErrors() + 1);
 
@@ -169,11 +372,8 @@ public class ThreadedSolrIndexManager extends SolrIndexManager {
 
                 throw new RuntimeException(ioe.getMessage());
             } finally {
-                synchronized (this) {
-                    log.debug("decrementing numQueuedJobs");
-                    numQueuedJobs--;
-                    log.debug("decremented numQueuedJobs: " + numQueuedJobs);
-                }
+                Metrics.stop(ADD_BATCH_TIMER);
+                batchDone(docs.size());
             }
 
             log.debug("Add index to Solr - end");
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+/**
+ * The bucket layout shared by every timer's histogram.  Durations (in nanoseconds) are bucketed
+ * log-linearly, the way HdrHistogram does it: each power of two is split into SUB_BUCKETS equal
+ * buckets, so a value is only ever reported as being within 1/SUB_BUCKETS (12.5%) of what was
+ * actually recorded, whether it took 2 microseconds or 2 minutes.  Finding a value's bucket is a
+ * couple of shifts; there's no searching and nothing to resize.
+ */
+public class LatencyHistogram {
+
+    public static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // anything at or over 2^40ns (a little over 18 minutes) goes in the last bucket
+    public static final int MAX_EXPONENT = 40;
+
+    public static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    public static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest value that would have been put in the bucket
+     */
+    public static long getBucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @param counts
+     *            the number of values recorded in each bucket
+     * @param total
+     *            the sum of counts
+     * @param max
+     *            the largest value recorded. The percentile is capped at this, since the bucket
+     *            it fell in may go well past it.
+     * @param percentile
+     *            between 0 and 100
+     */
+    public static long getPercentile(long[] counts, long total, long max, double percentile) {
+        if (total <= 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100d);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(getBucketMax(i), max);
+            }
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One thread's share of a named counter or timer.  Only the thread that owns it ever writes to
+ * it, so the updates are plain read-then-lazySet rather than compare-and-swap loops: nothing can
+ * get in between, and the snapshot thread only needs to see the values eventually.  The snapshot
+ * thread reads the cells while they're being written, so a snapshot may have a count from one
+ * record and a total from the next; that evens out by the following snapshot.
+ */
+public class Metric {
+
+    protected static final int COUNT = 0;
+    protected static final int TOTAL = 1;
+    protected static final int MAX = 2;
+    protected static final int BUCKETS = 3;
+
+    protected final AtomicLongArray cells;
+
+    /**
+     * @param timed
+     *            whether this is a timer, in which case the durations recorded are also
+     *            put in a LatencyHistogram
+     */
+    public Metric(boolean timed) {
+        cells = new AtomicLongArray(timed ? BUCKETS + LatencyHistogram.NUM_BUCKETS : BUCKETS);
+    }
+
+    public boolean isTimed() {
+        return cells.length() > BUCKETS;
+    }
+
+    /**
+     * Adds to a counter.  Only to be called by the owning thread.
+     */
+    public void add(long value) {
+        cells.lazySet(COUNT, cells.get(COUNT) + 1);
+        cells.lazySet(TOTAL, cells.get(TOTAL) + value);
+        if (value > cells.get(MAX)) {
+            cells.lazySet(MAX, value);
+        }
+    }
+
+    /**
+     * Records one duration.  Only to be called by the owning thread.
+     */
+    public void record(long nanos) {
+        add(nanos);
+        if (isTimed()) {
+            int i = BUCKETS + LatencyHistogram.getBucket(nanos);
+            cells.lazySet(i, cells.get(i) + 1);
+        }
+    }
+
+    /**
+     * Adds this thread's values to a snapshot being built.
+     *
+     * @param buckets
+     *            the histogram of the snapshot, which is only added to if this is a timer
+     */
+    protected long[] addTo(long[] totals, long[] buckets) {
+        totals[COUNT] += cells.get(COUNT);
+        totals[TOTAL] += cells.get(TOTAL);
+        totals[MAX] = Math.max(totals[MAX], cells.get(MAX));
+        if (isTimed()) {
+            for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+                buckets[i] += cells.get(BUCKETS + i);
+            }
+        }
+        return totals;
+    }
+
+}
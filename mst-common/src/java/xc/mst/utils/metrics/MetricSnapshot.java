@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+/**
+ * A named metric, summed over every thread, as of one snapshot.  Timers are reported in
+ * milliseconds (as TimingLogger always has); counters in whatever was added to them.
+ */
+public class MetricSnapshot {
+
+    protected static final double NANOS_PER_MILLI = 1000000d;
+
+    protected String name = null;
+    protected boolean timed = false;
+    protected long count = 0;
+    protected double total = 0;
+    protected double max = 0;
+    protected double p50 = 0;
+    protected double p90 = 0;
+    protected double p99 = 0;
+    protected double rate = 0;
+
+    /**
+     * @param totals
+     *            count, total and max, summed over the threads
+     * @param buckets
+     *            the timer's histogram, summed over the threads
+     * @param previous
+     *            the same metric in the last snapshot, if it was in it
+     * @param seconds
+     *            since the last snapshot
+     */
+    public MetricSnapshot(String name, boolean timed, long[] totals, long[] buckets, MetricSnapshot previous, double seconds) {
+        this.name = name;
+        this.timed = timed;
+        this.count = totals[Metric.COUNT];
+        double unit = timed ? NANOS_PER_MILLI : 1d;
+        this.total = totals[Metric.TOTAL] / unit;
+        this.max = totals[Metric.MAX] / unit;
+        if (timed) {
+            long n = 0;
+            for (long c : buckets) {
+                n += c;
+            }
+            this.p50 = LatencyHistogram.getPercentile(buckets, n, totals[Metric.MAX], 50) / unit;
+            this.p90 = LatencyHistogram.getPercentile(buckets, n, totals[Metric.MAX], 90) / unit;
+            this.p99 = LatencyHistogram.getPercentile(buckets, n, totals[Metric.MAX], 99) / unit;
+        }
+        if (seconds > 0) {
+            long since = previous == null ? count : count - previous.getCount();
+            this.rate = Math.max(since, 0) / seconds;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(" count: " + count);
+        sb.append(" rate/s: " + String.format("%.1f", rate));
+        if (timed) {
+            sb.append(String.format(" total(ms): %.0f mean: %.3f p50: %.3f p90: %.3f p99: %.3f max: %.3f",
+                    total, getMean(), p50, p90, p99, max));
+        } else {
+            sb.append(String.format(" total: %.0f mean: %.1f max: %.0f", total, getMean(), max));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+/**
+ * Registered with JMX once per metric name; each read goes to whatever the latest snapshot has
+ * for the name.
+ */
+public class MetricView implements MetricViewMBean {
+
+    protected String name = null;
+
+    public MetricView(String name) {
+        this.name = name;
+    }
+
+    protected MetricSnapshot get() {
+        MetricSnapshot ms = Metrics.getLatestSnapshot().get(name);
+        if (ms == null) {
+            throw new IllegalStateException("no snapshot has been taken of " + name);
+        }
+        return ms;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isTimed() {
+        return get().isTimed();
+    }
+
+    public long getCount() {
+        return get().getCount();
+    }
+
+    public double getTotal() {
+        return get().getTotal();
+    }
+
+    public double getMean() {
+        return get().getMean();
+    }
+
+    public double getMax() {
+        return get().getMax();
+    }
+
+    public double getP50() {
+        return get().getP50();
+    }
+
+    public double getP90() {
+        return get().getP90();
+    }
+
+    public double getP99() {
+        return get().getP99();
+    }
+
+    public double getRate() {
+        return get().getRate();
+    }
+
+}
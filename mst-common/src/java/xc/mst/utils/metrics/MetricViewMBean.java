@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+/**
+ * What JMX shows of each metric (xc.mst:type=Metrics,name=...), as of the latest snapshot.
+ */
+public interface MetricViewMBean {
+
+    public String getName();
+
+    public boolean isTimed();
+
+    public long getCount();
+
+    public double getTotal();
+
+    public double getMean();
+
+    public double getMax();
+
+    public double getP50();
+
+    public double getP90();
+
+    public double getP99();
+
+    public double getRate();
+
+}
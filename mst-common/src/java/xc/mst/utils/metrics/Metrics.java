@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Always-on counters and timers, keyed by the same names as TimingLogger (which records into
+ * this).  Each thread records into its own MetricsRecorder, so the hot path is a ThreadLocal
+ * lookup and a few unsynchronized writes; the only lock is taken the first time a thread records
+ * anything, and when a snapshot is taken.
+ *
+ * snapshot() sums every thread's recorder.  MetricsService takes one periodically, and what it
+ * took is available from getLatestSnapshot() to JMX and the platform's Throughput page.
+ */
+public class Metrics {
+
+    protected static final List<MetricsRecorder> recorders = new ArrayList<MetricsRecorder>();
+
+    protected static final ThreadLocal<MetricsRecorder> recorder = new ThreadLocal<MetricsRecorder>() {
+        @Override
+        protected MetricsRecorder initialValue() {
+            MetricsRecorder r = new MetricsRecorder(Thread.currentThread());
+            synchronized (recorders) {
+                recorders.add(r);
+            }
+            return r;
+        }
+    };
+
+    // what threads that have since finished had recorded, folded together: name -> {count, total, max}
+    // and name -> histogram.  Guarded by recorders.
+    protected static final Map<String, long[]> retiredTotals = new HashMap<String, long[]>();
+    protected static final Map<String, long[]> retiredBuckets = new HashMap<String, long[]>();
+
+    protected static volatile SortedMap<String, MetricSnapshot> latestSnapshot =
+            Collections.unmodifiableSortedMap(new TreeMap<String, MetricSnapshot>());
+    protected static volatile long latestSnapshotTime = 0;
+
+    public static void start(String name) {
+        recorder.get().start(name);
+    }
+
+    public static void stop(String name) {
+        recorder.get().stop(name);
+    }
+
+    public static void add(String name, long value) {
+        recorder.get().add(name, value);
+    }
+
+    /**
+     * Sums what every thread has recorded so far, and makes it the latest snapshot.
+     *
+     * @return metric name -> snapshot, in name order
+     */
+    public static SortedMap<String, MetricSnapshot> snapshot() {
+        synchronized (recorders) {
+            long now = System.currentTimeMillis();
+            double seconds = latestSnapshotTime == 0 ? 0 : (now - latestSnapshotTime) / 1000d;
+
+            Iterator<MetricsRecorder> it = recorders.iterator();
+            while (it.hasNext()) {
+                MetricsRecorder r = it.next();
+                if (!r.isAlive()) {
+                    // nothing more will be written to it
+                    for (Map.Entry<String, Metric> me : r.getMetrics().entrySet()) {
+                        addTo(retiredTotals, retiredBuckets, me.getKey(), me.getValue());
+                    }
+                    it.remove();
+                }
+            }
+
+            Map<String, long[]> totals = new HashMap<String, long[]>();
+            Map<String, long[]> buckets = new HashMap<String, long[]>();
+            for (Map.Entry<String, long[]> me : retiredTotals.entrySet()) {
+                totals.put(me.getKey(), me.getValue().clone());
+            }
+            for (Map.Entry<String, long[]> me : retiredBuckets.entrySet()) {
+                buckets.put(me.getKey(), me.getValue().clone());
+            }
+            for (MetricsRecorder r : recorders) {
+                for (Map.Entry<String, Metric> me : r.getMetrics().entrySet()) {
+                    addTo(totals, buckets, me.getKey(), me.getValue());
+                }
+            }
+
+            SortedMap<String, MetricSnapshot> previous = latestSnapshot;
+            SortedMap<String, MetricSnapshot> snapshot = new TreeMap<String, MetricSnapshot>();
+            for (Map.Entry<String, long[]> me : totals.entrySet()) {
+                String name = me.getKey();
+                long[] b = buckets.get(name);
+                snapshot.put(name, new MetricSnapshot(name, b != null, me.getValue(), b, previous.get(name), seconds));
+            }
+            latestSnapshot = Collections.unmodifiableSortedMap(snapshot);
+            latestSnapshotTime = now;
+            return latestSnapshot;
+        }
+    }
+
+    protected static void addTo(Map<String, long[]> totals, Map<String, long[]> buckets, String name, Metric m) {
+        long[] t = totals.get(name);
+        if (t == null) {
+            t = new long[Metric.BUCKETS];
+            totals.put(name, t);
+        }
+        long[] b = null;
+        if (m.isTimed()) {
+            b = buckets.get(name);
+            if (b == null) {
+                b = new long[LatencyHistogram.NUM_BUCKETS];
+                buckets.put(name, b);
+            }
+        }
+        m.addTo(t, b);
+    }
+
+    /**
+     * @return the snapshot MetricsService last took (or that was last taken by calling snapshot())
+     */
+    public static SortedMap<String, MetricSnapshot> getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    /**
+     * @return when the latest snapshot was taken, or 0 if none has been
+     */
+    public static long getLatestSnapshotTime() {
+        return latestSnapshotTime;
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+import gnu.trove.TObjectLongHashMap;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything one thread has recorded.  Each thread gets its own (see Metrics), so recording never
+ * waits on another thread.  The map of metrics is concurrent only so that the snapshot thread
+ * can walk it; the owning thread is the only one that ever adds to it.
+ */
+public class MetricsRecorder {
+
+    protected final WeakReference<Thread> thread;
+
+    protected final Map<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    // when each running timer was started.  Only the owning thread ever touches this.
+    protected final TObjectLongHashMap<String> startTimes = new TObjectLongHashMap<String>();
+
+    public MetricsRecorder(Thread thread) {
+        this.thread = new WeakReference<Thread>(thread);
+    }
+
+    /**
+     * @return false once the thread has finished, after which nothing more will be recorded
+     */
+    public boolean isAlive() {
+        Thread t = thread.get();
+        return t != null && t.isAlive();
+    }
+
+    public void start(String name) {
+        startTimes.put(name, System.nanoTime());
+    }
+
+    /**
+     * Records the time since start(name).  A stop without a start is ignored.
+     */
+    public void stop(String name) {
+        if (!startTimes.containsKey(name)) {
+            return;
+        }
+        long nanos = System.nanoTime() - startTimes.remove(name);
+        getMetric(name, true).record(nanos);
+    }
+
+    public void add(String name, long value) {
+        getMetric(name, false).add(value);
+    }
+
+    protected Metric getMetric(String name, boolean timed) {
+        Metric m = metrics.get(name);
+        if (m == null) {
+            m = new Metric(timed);
+            metrics.put(name, m);
+        }
+        return m;
+    }
+
+    public Map<String, Metric> getMetrics() {
+        return metrics;
+    }
+
+}
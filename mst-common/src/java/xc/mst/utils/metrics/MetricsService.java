@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import xc.mst.manager.BaseService;
+
+/**
+ * Takes a snapshot of the Metrics every metrics.snapshotSeconds, and (with metrics.jmx.enabled)
+ * publishes it through the platform MBeanServer: xc.mst:type=Metrics for the whole, and
+ * xc.mst:type=Metrics,name=... for each metric.  Each snapshot can also be logged (at info,
+ * to this class's logger) with metrics.snapshot.log.
+ */
+public class MetricsService extends BaseService implements MetricsServiceMBean, Runnable {
+
+    private static final Logger LOG = Logger.getLogger(MetricsService.class);
+
+    public static final String OBJECT_NAME = "xc.mst:type=Metrics";
+
+    protected int snapshotSeconds = 60;
+    protected boolean jmxEnabled = true;
+    protected boolean logSnapshots = false;
+
+    protected Thread thread = null;
+    protected Set<String> registeredNames = new HashSet<String>();
+
+    public synchronized void init() {
+        if (thread != null) {
+            return;
+        }
+        snapshotSeconds = config.getPropertyAsInt("metrics.snapshotSeconds", 60);
+        jmxEnabled = config.getPropertyAsBoolean("metrics.jmx.enabled", true);
+        logSnapshots = config.getPropertyAsBoolean("metrics.snapshot.log", false);
+        LOG.info("snapshotSeconds: " + snapshotSeconds + " jmxEnabled: " + jmxEnabled);
+
+        if (jmxEnabled) {
+            try {
+                register(new ObjectName(OBJECT_NAME), this);
+            } catch (Throwable t) {
+                LOG.error("unable to register " + OBJECT_NAME, t);
+                jmxEnabled = false;
+            }
+        }
+        if (snapshotSeconds > 0) {
+            thread = new Thread(this, "MetricsSnapshot");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(snapshotSeconds * 1000l);
+                takeSnapshot();
+            } catch (InterruptedException ie) {
+                return;
+            } catch (Throwable t) {
+                LOG.error("", t);
+            }
+        }
+    }
+
+    public synchronized void takeSnapshot() {
+        Map<String, MetricSnapshot> snapshot = Metrics.snapshot();
+        if (jmxEnabled) {
+            for (String name : snapshot.keySet()) {
+                if (!registeredNames.contains(name)) {
+                    try {
+                        register(new ObjectName(OBJECT_NAME + ",name=" + ObjectName.quote(name)), new MetricView(name));
+                    } catch (Throwable t) {
+                        LOG.error("unable to register " + name, t);
+                    }
+                    registeredNames.add(name);
+                }
+            }
+        }
+        if (logSnapshots) {
+            LOG.info("metrics snapshot\n" + report());
+        }
+    }
+
+    // replaces anything left registered under the name, eg by a webapp that's since been reloaded
+    protected void register(ObjectName on, Object mbean) throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        if (mbs.isRegistered(on)) {
+            mbs.unregisterMBean(on);
+        }
+        mbs.registerMBean(mbean, on);
+    }
+
+    public int getSnapshotSeconds() {
+        return snapshotSeconds;
+    }
+
+    public long getLatestSnapshotTime() {
+        return Metrics.getLatestSnapshotTime();
+    }
+
+    public String[] getMetricNames() {
+        return Metrics.getLatestSnapshot().keySet().toArray(new String[0]);
+    }
+
+    public Map<String, MetricSnapshot> getLatestSnapshot() {
+        return Metrics.getLatestSnapshot();
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (MetricSnapshot ms : Metrics.getLatestSnapshot().values()) {
+            sb.append(ms.toString());
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+}
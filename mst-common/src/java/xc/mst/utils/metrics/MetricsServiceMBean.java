@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.utils.metrics;
+
+/**
+ * What JMX shows of the metrics as a whole (xc.mst:type=Metrics).
+ */
+public interface MetricsServiceMBean {
+
+    public int getSnapshotSeconds();
+
+    public long getLatestSnapshotTime();
+
+    public String[] getMetricNames();
+
+    /**
+     * Takes a snapshot now, rather than waiting for the next one.
+     */
+    public void takeSnapshot();
+
+    /**
+     * @return the latest snapshot, one metric per line
+     */
+    public String report();
+
+}
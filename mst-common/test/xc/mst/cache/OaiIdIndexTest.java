@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.cache;
+
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * OaiIdIndex on its own.  Doesn't need a database.
+ */
+public class OaiIdIndexTest {
+
+    protected static final long MB = 1024 * 1024;
+
+    protected String getOaiId(int i) {
+        return "oai:library.example.edu:MST/Bib/" + i;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        OaiIdIndex index = new OaiIdIndex(64 * MB);
+        index.put("123", 1);
+        index.put(getOaiId(1), 2);
+        index.put("é中文", 3);
+        Assert.assertEquals(index.getLong("123"), Long.valueOf(1));
+        Assert.assertEquals(index.getLong(getOaiId(1)), Long.valueOf(2));
+        Assert.assertEquals(index.getLong("é中文"), Long.valueOf(3));
+        Assert.assertNull(index.getLong("124"));
+        Assert.assertNull(index.getLong(getOaiId(2)));
+        Assert.assertNull(index.getLong(""));
+        Assert.assertEquals(index.size(), 3);
+        Assert.assertTrue(index.isComplete());
+
+        index.clear();
+        Assert.assertEquals(index.size(), 0);
+        Assert.assertNull(index.getLong("123"));
+        Assert.assertNull(index.getLong(getOaiId(1)));
+    }
+
+    @Test
+    public void testOverwrite() {
+        OaiIdIndex index = new OaiIdIndex(64 * MB);
+        index.put("123", 1);
+        index.put("123", 10);
+        index.put(getOaiId(1), 2);
+        index.put(getOaiId(1), 20);
+        Assert.assertEquals(index.getLong("123"), Long.valueOf(10));
+        Assert.assertEquals(index.getLong(getOaiId(1)), Long.valueOf(20));
+        Assert.assertEquals(index.size(), 2);
+    }
+
+    @Test
+    public void testLeadingZero() {
+        OaiIdIndex index = new OaiIdIndex(64 * MB);
+        index.put("123", 1);
+        index.put("0123", 2);
+        index.put("0", 3);
+        index.put("00", 4);
+        Assert.assertEquals(index.getLong("123"), Long.valueOf(1));
+        Assert.assertEquals(index.getLong("0123"), Long.valueOf(2));
+        Assert.assertEquals(index.getLong("0"), Long.valueOf(3));
+        Assert.assertEquals(index.getLong("00"), Long.valueOf(4));
+        Assert.assertEquals(index.size(), 4);
+    }
+
+    @Test
+    public void testArenaRollover() {
+        OaiIdIndex index = new OaiIdIndex(256 * MB);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append('x');
+        }
+        String pad = sb.toString();
+        // about 1k an entry, so this fills more than two arenas
+        int count = 2 * OaiIdIndex.ARENA_SIZE / 1000 + 100;
+        for (int i = 0; i < count; i++) {
+            index.put(pad + i, i);
+        }
+        Assert.assertTrue(index.arenas.size() >= 3);
+        Assert.assertTrue(index.isComplete());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(index.getLong(pad + i), Long.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testTableGrowth() {
+        OaiIdIndex index = new OaiIdIndex(64 * MB);
+        // the string table is only sized as ids are put
+        index.ensureCapacity(1000000);
+        Assert.assertEquals(index.slots.length, 16);
+
+        for (int i = 0; i < 100000; i++) {
+            index.put(getOaiId(i), i);
+            index.put(String.valueOf(i), -i);
+        }
+        Assert.assertTrue(index.slots.length * OaiIdIndex.MAX_LOAD >= 100000);
+        Assert.assertEquals(index.size(), 200000);
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertEquals(index.getLong(getOaiId(i)), Long.valueOf(i));
+            Assert.assertEquals(index.getLong(String.valueOf(i)), Long.valueOf(-i));
+        }
+    }
+
+    @Test
+    public void testStringCap() {
+        // one arena and a small table
+        OaiIdIndex index = new OaiIdIndex(OaiIdIndex.ARENA_SIZE + 16 * 1024);
+        int i = 0;
+        while (index.isComplete()) {
+            index.put(getOaiId(i++), i);
+        }
+        int turnedAway = i - 1;
+        Assert.assertNull(index.getLong(getOaiId(turnedAway)));
+        Assert.assertEquals(index.size(), turnedAway);
+        for (int j = 0; j < turnedAway; j++) {
+            Assert.assertEquals(index.getLong(getOaiId(j)), Long.valueOf(j + 1));
+        }
+        Assert.assertFalse(index.put(getOaiId(turnedAway), 0));
+        // ids already in can still be changed
+        Assert.assertTrue(index.put(getOaiId(0), 100));
+        Assert.assertEquals(index.getLong(getOaiId(0)), Long.valueOf(100));
+        Assert.assertTrue(index.getMemoryUsage() <= OaiIdIndex.ARENA_SIZE + 16 * 1024);
+
+        index.clear();
+        Assert.assertTrue(index.isComplete());
+    }
+
+    @Test
+    public void testNumericCap() {
+        // the empty string table (16 slots) and 100 numeric ids
+        OaiIdIndex index = new OaiIdIndex(16 * 12 + 100 * OaiIdIndex.LONG_ENTRY_BYTES);
+        for (int i = 1; i <= 200; i++) {
+            Assert.assertEquals(index.put(String.valueOf(i), i), i <= 100);
+        }
+        Assert.assertFalse(index.isComplete());
+        Assert.assertEquals(index.size(), 100);
+        Assert.assertEquals(index.getLong("100"), Long.valueOf(100));
+        Assert.assertNull(index.getLong("101"));
+    }
+
+    @Test
+    public void testArenaOutOfMemory() {
+        OaiIdIndex index = new OaiIdIndex(256 * MB) {
+            @Override
+            protected ByteBuffer allocateArena() {
+                throw new OutOfMemoryError("Direct buffer memory");
+            }
+        };
+        index.put("123", 1);
+        index.put(getOaiId(1), 2);
+        Assert.assertFalse(index.isComplete());
+        Assert.assertEquals(index.getLong("123"), Long.valueOf(1));
+        Assert.assertNull(index.getLong(getOaiId(1)));
+        Assert.assertEquals(index.size(), 1);
+    }
+}
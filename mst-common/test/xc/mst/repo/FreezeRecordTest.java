@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.Date;
+
+import org.jdom.Element;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.provider.Set;
+import xc.mst.bo.record.Record;
+
+/**
+ * The copies RepositoryDAO hands its committer thread don't change with the originals.
+ * Doesn't need a database.
+ */
+public class FreezeRecordTest {
+
+    protected Record getRecord() {
+        Record r = new Record();
+        r.setId(42);
+        r.setType("b");
+        r.setStatus(Record.ACTIVE);
+        r.setOaiDatestamp(new Date(1000));
+        r.setHarvestedOaiIdentifier("oai:example:42");
+        Set s = new Set();
+        s.setId(7);
+        r.getSets().add(s);
+        Record pred = new Record();
+        pred.setId(41);
+        r.getPredecessors().add(pred);
+        return r;
+    }
+
+    @Test
+    public void testJdomMode() {
+        Record r = getRecord();
+        Element el = new Element("record");
+        el.setText("before");
+        r.setOaiXmlEl(el);
+
+        Record frozen = new RepositoryDAO().freeze(r);
+        r.getOaiXmlEl().setText("after");
+        r.setStatus(Record.DELETED);
+        r.getSets().clear();
+        r.getPredecessors().clear();
+        r.getOaiDatestamp().setTime(2000);
+
+        Assert.assertEquals(frozen.getId(), 42);
+        Assert.assertEquals(frozen.getType(), "b");
+        Assert.assertEquals(frozen.getStatus(), Record.ACTIVE);
+        Assert.assertEquals(frozen.getOaiDatestamp().getTime(), 1000);
+        Assert.assertEquals(frozen.getHarvestedOaiIdentifier(), "oai:example:42");
+        Assert.assertEquals(frozen.getSets().size(), 1);
+        Assert.assertEquals(frozen.getPredecessors().size(), 1);
+        Assert.assertEquals(frozen.getOaiXmlEl().getText(), "before");
+
+        // writeRecords does this to its copy
+        frozen.setMode(Record.STRING_MODE);
+        Assert.assertEquals(r.getMode(), Record.JDOM_MODE);
+        Assert.assertEquals(r.getOaiXmlEl().getText(), "after");
+    }
+
+    @Test
+    public void testStringMode() {
+        Record r = getRecord();
+        r.setMode(Record.STRING_MODE);
+        r.setOaiXml("<record>before</record>");
+
+        Record frozen = new RepositoryDAO().freeze(r);
+        r.setOaiXml("<record>after</record>");
+        Assert.assertEquals(frozen.getMode(), Record.STRING_MODE);
+        Assert.assertEquals(frozen.getOaiXml(), "<record>before</record>");
+    }
+}
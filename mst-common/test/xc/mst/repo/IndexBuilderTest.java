@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The statements IndexBuilder runs, and its fallback to one index at a time when a table's alter
+ * fails.  Doesn't need a database.
+ */
+public class IndexBuilderTest {
+
+    protected static final String SCHEMA = "xc_repo";
+
+    /**
+     * Keeps each statement it's given, and fails those that mention one of the failing indexes.
+     */
+    protected static class RecordingJdbcTemplate extends JdbcTemplate {
+        protected List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+        protected Set<String> failing = new HashSet<String>();
+
+        public RecordingJdbcTemplate(String... failing) {
+            this.failing.addAll(Arrays.asList(failing));
+        }
+
+        @Override
+        public void execute(String sql) throws DataAccessException {
+            statements.add(sql);
+            for (String index : failing) {
+                if (sql.contains(" " + index + " ")) {
+                    throw new DataIntegrityViolationException("Duplicate key name '" + index + "'");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOneAlterPerTable() {
+        RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+        IndexBuilder indexBuilder = new IndexBuilder(jdbcTemplate, SCHEMA, 1);
+        Assert.assertTrue(indexBuilder.isEmpty());
+        indexBuilder.add("records", "idx_records_date_created", "oai_datestamp");
+        indexBuilder.add("record_updates", "idx_record_updates_date_updated", "date_updated");
+        indexBuilder.add("records", "idx_records_status", "status");
+        indexBuilder.add("record_links", "idx_type_status", "type, status");
+        Assert.assertFalse(indexBuilder.isEmpty());
+        indexBuilder.build();
+
+        // one thread, so the tables are altered in the order they were first added to
+        Assert.assertEquals(jdbcTemplate.statements, Arrays.asList(
+                "alter table xc_repo.records add index idx_records_date_created (oai_datestamp), add index idx_records_status (status)",
+                "alter table xc_repo.record_updates add index idx_record_updates_date_updated (date_updated)",
+                "alter table xc_repo.record_links add index idx_type_status (type, status)"));
+        Assert.assertTrue(indexBuilder.isEmpty());
+
+        // nothing left to build
+        jdbcTemplate.statements.clear();
+        indexBuilder.build();
+        Assert.assertTrue(jdbcTemplate.statements.isEmpty());
+    }
+
+    @Test
+    public void testTablesAtOnce() {
+        RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+        IndexBuilder indexBuilder = new IndexBuilder(jdbcTemplate, SCHEMA, 3);
+        indexBuilder.add("records", "idx_records_status", "status");
+        indexBuilder.add("record_updates", "idx_record_updates_record_id", "record_id");
+        indexBuilder.add("record_oai_ids", "idx_oai_id", "oai_id");
+        indexBuilder.build();
+        Assert.assertEquals(new HashSet<String>(jdbcTemplate.statements), new HashSet<String>(Arrays.asList(
+                "alter table xc_repo.records add index idx_records_status (status)",
+                "alter table xc_repo.record_updates add index idx_record_updates_record_id (record_id)",
+                "alter table xc_repo.record_oai_ids add index idx_oai_id (oai_id)")));
+    }
+
+    @Test
+    public void testOneAtATimeFallback() {
+        // eg idx_records_status is left from an earlier rebuild
+        RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate("idx_records_status");
+        IndexBuilder indexBuilder = new IndexBuilder(jdbcTemplate, SCHEMA, 1);
+        indexBuilder.add("records", "idx_records_date_created", "oai_datestamp");
+        indexBuilder.add("records", "idx_records_status", "status");
+        indexBuilder.add("records", "idx_records_format_id", "format_id");
+        indexBuilder.add("record_updates", "idx_record_updates_date_updated", "date_updated");
+        indexBuilder.build();
+
+        // the others are still made, and the next table isn't held up
+        Assert.assertEquals(jdbcTemplate.statements, Arrays.asList(
+                "alter table xc_repo.records add index idx_records_date_created (oai_datestamp), " +
+                        "add index idx_records_status (status), add index idx_records_format_id (format_id)",
+                "create index idx_records_date_created on xc_repo.records (oai_datestamp)",
+                "create index idx_records_status on xc_repo.records (status)",
+                "create index idx_records_format_id on xc_repo.records (format_id)",
+                "alter table xc_repo.record_updates add index idx_record_updates_date_updated (date_updated)"));
+    }
+
+    @Test
+    public void testSingleIndexFailure() {
+        RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate("idx_oai_id");
+        IndexBuilder indexBuilder = new IndexBuilder(jdbcTemplate, SCHEMA, 0);
+        indexBuilder.add("record_oai_ids", "idx_oai_id", "oai_id");
+        // logged, not thrown, and not tried again on its own
+        indexBuilder.build();
+        Assert.assertEquals(jdbcTemplate.statements, Arrays.asList(
+                "alter table xc_repo.record_oai_ids add index idx_oai_id (oai_id)"));
+        Assert.assertTrue(indexBuilder.isEmpty());
+    }
+}
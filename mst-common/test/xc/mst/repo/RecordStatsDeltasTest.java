@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import gnu.trove.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.record.Record;
+import xc.mst.utils.Util;
+
+/**
+ * The delta bookkeeping of RecordStatsDAO, against an in-memory records table.  Doesn't need a
+ * database.
+ */
+public class RecordStatsDeltasTest {
+
+    // record_id -> {type, status}, as the records table has them
+    protected Map<Long, String[]> records = new HashMap<Long, String[]>();
+    // what the linked records query returns
+    protected List<Map<String, Object>> linkedRows = new ArrayList<Map<String, Object>>();
+
+    protected RecordStatsDAO getDAO() {
+        final JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public List<Map<String, Object>> queryForList(String sql, Object... args) {
+                if (!sql.contains("record_id in (")) {
+                    return linkedRows;
+                }
+                Map<List<String>, Map<String, Object>> groups = new LinkedHashMap<List<String>, Map<String, Object>>();
+                for (Object id : args) {
+                    String[] r = records.get(id);
+                    if (r != null) {
+                        List<String> key = Arrays.asList(r[0], r[1]);
+                        Map<String, Object> row = groups.get(key);
+                        if (row == null) {
+                            row = getRow(r[0], r[1], 0);
+                            groups.put(key, row);
+                        }
+                        row.put("c", (Long) row.get("c") + 1);
+                    }
+                }
+                return new ArrayList<Map<String, Object>>(groups.values());
+            }
+        };
+        RecordStatsDAO dao = new RecordStatsDAO() {
+            {
+                jdbcTemplate = template;
+            }
+
+            @Override
+            protected boolean isBuilt(String name) {
+                return true;
+            }
+
+            @Override
+            protected String getTableName(String repoName, String tableName) {
+                return " " + tableName;
+            }
+        };
+        dao.setUtil(new Util());
+        return dao;
+    }
+
+    protected Map<String, Object> getRow(String type, String status, long count) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("type", type);
+        row.put("status", status);
+        row.put("c", count);
+        return row;
+    }
+
+    protected Record getRecord(long id, String type, char status) {
+        Record r = new Record();
+        r.setId(id);
+        r.setType(type);
+        r.setStatus(status);
+        return r;
+    }
+
+    protected void assertRow(RecordStatsDAO.Deltas deltas, String type, char status, long records, long updates) {
+        RecordStatsDAO.Row row = deltas.rows.get(Arrays.asList(type, String.valueOf(status)));
+        if (records == 0 && updates == 0 && row == null) {
+            return;
+        }
+        Assert.assertNotNull(row, type + "-" + status);
+        Assert.assertEquals(row.records, records, type + "-" + status + " records");
+        Assert.assertEquals(row.updates, updates, type + "-" + status + " updates");
+    }
+
+    @Test
+    public void testDeltasAdd() {
+        RecordStatsDAO.Deltas deltas = new RecordStatsDAO.Deltas();
+        Assert.assertTrue(deltas.isEmpty());
+        deltas.add("b", "A", 2, 1);
+        deltas.add("b", "A", -1, 3);
+        deltas.add("h", "A", 1, 0);
+        Assert.assertFalse(deltas.isEmpty());
+        Assert.assertEquals(deltas.rows.size(), 2);
+        assertRow(deltas, "b", Record.ACTIVE, 1, 4);
+        assertRow(deltas, "h", Record.ACTIVE, 1, 0);
+    }
+
+    @Test
+    public void testGetDeltas() {
+        records.clear();
+        records.put(2L, new String[] { "b", "D" });
+        records.put(4L, new String[] { "h", "A" });
+        RecordStatsDAO dao = getDAO();
+
+        List<Record> batch = new ArrayList<Record>();
+        // new
+        batch.add(getRecord(1, "bib", Record.ACTIVE));
+        // undeleted
+        batch.add(getRecord(2, "bib", Record.ACTIVE));
+        // in the batch twice: only the last one counts as a record, but both write an update
+        batch.add(getRecord(3, "bib", Record.HELD));
+        batch.add(getRecord(3, "bib", Record.ACTIVE));
+        // rewritten as it was
+        batch.add(getRecord(4, "holdings", Record.ACTIVE));
+        // without a type
+        batch.add(getRecord(5, null, Record.ACTIVE));
+
+        RecordStatsDAO.Deltas deltas = dao.getDeltas("r", batch);
+        assertRow(deltas, "b", Record.ACTIVE, 3, 3);
+        assertRow(deltas, "b", Record.HELD, 0, 1);
+        assertRow(deltas, "b", Record.DELETED, -1, 0);
+        assertRow(deltas, "h", Record.ACTIVE, 0, 1);
+        assertRow(deltas, "", Record.ACTIVE, 1, 1);
+
+        Assert.assertNull(dao.getDeltas("r", new ArrayList<Record>()));
+    }
+
+    @Test
+    public void testActivate() {
+        RecordStatsDAO dao = getDAO();
+        RecordStatsDAO.Deltas existing = new RecordStatsDAO.Deltas();
+        existing.add("b", String.valueOf(Record.HELD), -2, 0);
+        existing.add("h", String.valueOf(Record.ACTIVE), -1, 0);
+
+        RecordStatsDAO.Deltas deltas = dao.activate(existing, false);
+        assertRow(deltas, "b", Record.HELD, -2, 0);
+        assertRow(deltas, "b", Record.ACTIVE, 2, 0);
+        // already active: no change
+        assertRow(deltas, "h", Record.ACTIVE, 0, 0);
+
+        deltas = dao.activate(existing, true);
+        assertRow(deltas, "b", Record.HELD, -2, 0);
+        assertRow(deltas, "b", Record.ACTIVE, 2, 2);
+        assertRow(deltas, "h", Record.ACTIVE, 0, 1);
+    }
+
+    @Test
+    public void testGetActivateDeltas() {
+        records.clear();
+        records.put(1L, new String[] { "h", "H" });
+        records.put(2L, new String[] { "h", "H" });
+        records.put(3L, new String[] { "h", "A" });
+        RecordStatsDAO dao = getDAO();
+
+        TLongHashSet ids = new TLongHashSet();
+        ids.add(1);
+        ids.add(2);
+        ids.add(3);
+        // not in the table
+        ids.add(9);
+        RecordStatsDAO.Deltas deltas = dao.getActivateDeltas("r", ids, true);
+        assertRow(deltas, "h", Record.HELD, -2, 0);
+        assertRow(deltas, "h", Record.ACTIVE, 2, 3);
+
+        Assert.assertNull(dao.getActivateDeltas("r", new TLongHashSet(), true));
+    }
+
+    @Test
+    public void testGetActivateLinkedDeltas() {
+        linkedRows.clear();
+        linkedRows.add(getRow("h", "H", 5L));
+        linkedRows.add(getRow("h", "D", 1L));
+        RecordStatsDAO dao = getDAO();
+
+        RecordStatsDAO.Deltas deltas = dao.getActivateLinkedDeltas("r", "record_id = ?", new Object[] { 1L });
+        assertRow(deltas, "h", Record.HELD, -5, 0);
+        assertRow(deltas, "h", Record.DELETED, -1, 0);
+        // activating linked records doesn't write record_updates
+        assertRow(deltas, "h", Record.ACTIVE, 6, 0);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Round trips of records_xml payloads through RecordXmlCodec.  Doesn't need a database.
+ */
+public class RecordXmlCodecTest {
+
+    protected String getRecord(int i) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<marc:record xmlns:marc=\"http://www.loc.gov/MARC21/slim\">");
+        sb.append("<marc:leader>00000cam a2200000 a 4500</marc:leader>");
+        sb.append("<marc:controlfield tag=\"001\">").append(1000 + i).append("</marc:controlfield>");
+        sb.append("<marc:datafield tag=\"245\" ind1=\"1\" ind2=\"0\">");
+        sb.append("<marc:subfield code=\"a\">Title number ").append(i).append(" été 中文</marc:subfield>");
+        sb.append("</marc:datafield>");
+        sb.append("</marc:record>");
+        return sb.toString();
+    }
+
+    protected byte[] getDictionary() {
+        List<String> samples = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            samples.add(getRecord(i));
+        }
+        return RecordXmlCodec.train(samples, RecordXmlCodec.MAX_DICTIONARY_SIZE);
+    }
+
+    @Test
+    public void testWithoutDictionary() {
+        String xml = getRecord(1);
+        byte[] payload = RecordXmlCodec.encode(xml, 7, null);
+        Assert.assertTrue(RecordXmlCodec.isEncoded(payload));
+        // no dictionary, so no id in the header
+        Assert.assertEquals(RecordXmlCodec.getDictionaryId(payload), 0);
+        Assert.assertEquals(RecordXmlCodec.decode(payload, null), xml);
+    }
+
+    @Test
+    public void testWithDictionary() {
+        byte[] dictionary = getDictionary();
+        Assert.assertTrue(dictionary.length > 0);
+        Assert.assertTrue(dictionary.length <= RecordXmlCodec.MAX_DICTIONARY_SIZE);
+
+        String xml = getRecord(1234);
+        byte[] payload = RecordXmlCodec.encode(xml, 3, dictionary);
+        Assert.assertTrue(RecordXmlCodec.isEncoded(payload));
+        Assert.assertEquals(RecordXmlCodec.getDictionaryId(payload), 3);
+        Assert.assertEquals(RecordXmlCodec.decode(payload, dictionary), xml);
+        Assert.assertTrue(payload.length < RecordXmlCodec.encode(xml, 0, null).length);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testMissingDictionary() {
+        byte[] payload = RecordXmlCodec.encode(getRecord(1), 3, getDictionary());
+        RecordXmlCodec.decode(payload, null);
+    }
+
+    @Test
+    public void testPlainPayload() throws Exception {
+        String xml = getRecord(2);
+        byte[] plain = xml.getBytes("UTF-8");
+        Assert.assertFalse(RecordXmlCodec.isEncoded(plain));
+        Assert.assertEquals(RecordXmlCodec.decode(plain, null), xml);
+        Assert.assertEquals(RecordXmlCodec.decode(plain, getDictionary()), xml);
+        Assert.assertNull(RecordXmlCodec.decode(null, null));
+    }
+
+    @Test
+    public void testEmptyAndLarge() {
+        byte[] payload = RecordXmlCodec.encode("", 0, null);
+        Assert.assertEquals(RecordXmlCodec.decode(payload, null), "");
+
+        // incompressible enough that the output buffer has to grow
+        StringBuilder sb = new StringBuilder();
+        java.util.Random r = new java.util.Random(1);
+        for (int i = 0; i < 200000; i++) {
+            sb.append((char) (0x20 + r.nextInt(0x3000)));
+        }
+        String xml = sb.toString();
+        byte[] dictionary = getDictionary();
+        Assert.assertEquals(RecordXmlCodec.decode(RecordXmlCodec.encode(xml, 0, null), null), xml);
+        Assert.assertEquals(RecordXmlCodec.decode(RecordXmlCodec.encode(xml, 1, dictionary), dictionary), xml);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testTruncated() {
+        byte[] payload = RecordXmlCodec.encode(getRecord(3), 0, null);
+        RecordXmlCodec.decode(Arrays.copyOf(payload, payload.length - 4), null);
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.record.Record;
+import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.Util;
+
+/**
+ * Callbacks given to RepositoryDAO.whenWritten run once the records added before them are
+ * written, not when their batch is handed to the committer thread.  Doesn't need a database.
+ */
+public class WhenWrittenTest {
+
+    protected static final String REPO = "repo";
+
+    /**
+     * Keeps the ids it would have written; each batch waits for release to be counted down.
+     */
+    protected static class HeldRepositoryDAO extends RepositoryDAO {
+        protected CountDownLatch release = new CountDownLatch(0);
+        protected List<Long> written = Collections.synchronizedList(new ArrayList<Long>());
+        protected boolean fail = false;
+
+        public HeldRepositoryDAO() {
+            setUtil(new Util());
+        }
+
+        @Override
+        protected void persistRecords(String name, List<Record> records, long processedRecordsCount) {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+            if (fail) {
+                throw new RuntimeException("couldn't write");
+            }
+            for (Record r : records) {
+                written.add(r.getId());
+            }
+        }
+
+        public void add(long id) {
+            Record r = new Record();
+            r.setId(id);
+            addRecord(REPO, r);
+        }
+    }
+
+    protected List<String> calls = new ArrayList<String>();
+
+    protected Runnable callback(final String call) {
+        return new Runnable() {
+            public void run() {
+                calls.add(call);
+            }
+        };
+    }
+
+    @BeforeMethod
+    public void configure() {
+        if (MSTConfiguration.getInstance() == null) {
+            new MSTConfiguration();
+        }
+        MSTConfiguration.getInstance().setProperty("db.insertsAtOnce", "2");
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.maxBatchesInFlight", "2");
+        calls.clear();
+    }
+
+    @Test
+    public void testSync() {
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.enabled", "false");
+        HeldRepositoryDAO dao = new HeldRepositoryDAO();
+        dao.whenWritten(REPO, callback("nothing added"));
+        Assert.assertEquals(calls, Arrays.asList("nothing added"));
+
+        dao.add(1);
+        dao.whenWritten(REPO, callback("1"));
+        Assert.assertFalse(dao.commitIfNecessary(REPO, false, 1));
+        Assert.assertEquals(calls.size(), 1);
+
+        dao.add(2);
+        Assert.assertTrue(dao.commitIfNecessary(REPO, false, 2));
+        Assert.assertEquals(dao.written, Arrays.asList(1L, 2L));
+        Assert.assertEquals(calls, Arrays.asList("nothing added", "1"));
+    }
+
+    @Test
+    public void testAsync() {
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.enabled", "true");
+        HeldRepositoryDAO dao = new HeldRepositoryDAO();
+        dao.release = new CountDownLatch(1);
+        dao.add(1);
+        dao.whenWritten(REPO, callback("1"));
+        dao.add(2);
+        // handed off, but not written
+        Assert.assertTrue(dao.commitIfNecessary(REPO, false, 2));
+        dao.whenWritten(REPO, callback("2"));
+        dao.add(3);
+        dao.whenWritten(REPO, callback("3"));
+        Assert.assertFalse(dao.commitIfNecessary(REPO, false, 3));
+        Assert.assertTrue(dao.written.isEmpty());
+        Assert.assertTrue(calls.isEmpty());
+
+        dao.release.countDown();
+        dao.waitForPendingCommits(REPO);
+        Assert.assertEquals(dao.written, Arrays.asList(1L, 2L));
+        Assert.assertEquals(calls, Arrays.asList("1", "2"));
+
+        // record 3 is only written by the forced commit
+        Assert.assertTrue(dao.commitIfNecessary(REPO, true, 3));
+        Assert.assertEquals(dao.written, Arrays.asList(1L, 2L, 3L));
+        Assert.assertEquals(calls, Arrays.asList("1", "2", "3"));
+    }
+
+    @Test
+    public void testFailedBatch() {
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.enabled", "true");
+        HeldRepositoryDAO dao = new HeldRepositoryDAO();
+        dao.fail = true;
+        dao.add(1);
+        dao.add(2);
+        dao.whenWritten(REPO, callback("2"));
+        Assert.assertTrue(dao.commitIfNecessary(REPO, false, 2));
+        try {
+            dao.waitForPendingCommits(REPO);
+            Assert.fail("the failed batch wasn't reported");
+        } catch (RuntimeException re) {
+            Assert.assertEquals(re.getMessage(), "couldn't write");
+        }
+
+        // what was waiting on the failed batch is never run
+        dao.fail = false;
+        dao.waitForPendingCommits(REPO);
+        Assert.assertTrue(calls.isEmpty());
+    }
+}
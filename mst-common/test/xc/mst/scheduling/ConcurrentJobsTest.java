@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.processing.Job;
+import xc.mst.bo.record.Record;
+import xc.mst.manager.processingDirective.DefaultJobService;
+import xc.mst.manager.processingDirective.JobService;
+import xc.mst.repo.RepositoryDAO;
+import xc.mst.utils.MSTConfiguration;
+
+/**
+ * Two jobs on different repositories run at once, each committing through its own repository's
+ * write buffer and committer; a job that shares a repository with a running one waits.
+ * Doesn't need a database.
+ */
+public class ConcurrentJobsTest {
+
+    protected static final int RECORDS_PER_JOB = 25;
+
+    /**
+     * Keeps what would have been written.  The first batch each repository writes waits for the
+     * other repository's first batch, so the jobs only get through if their commits run at once.
+     */
+    protected static class RecordingRepositoryDAO extends RepositoryDAO {
+        protected CyclicBarrier firstBatches = new CyclicBarrier(2);
+        protected Map<String, List<Long>> written = new ConcurrentHashMap<String, List<Long>>();
+        protected Map<String, Set<String>> committerThreads = new ConcurrentHashMap<String, Set<String>>();
+
+        @Override
+        protected void persistRecords(String name, List<Record> records, long processedRecordsCount) {
+            List<Long> ids = written.get(name);
+            if (ids == null) {
+                ids = Collections.synchronizedList(new ArrayList<Long>());
+                written.put(name, ids);
+                committerThreads.put(name, Collections.synchronizedSet(new HashSet<String>()));
+                try {
+                    firstBatches.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException("the other repository's batch wasn't being written at the same time", e);
+                }
+            }
+            committerThreads.get(name).add(Thread.currentThread().getName());
+            for (Record r : records) {
+                ids.add(r.getId());
+            }
+        }
+
+        public boolean commit(String name, boolean force, long processedRecordsCount) {
+            return commitIfNecessary(name, force, processedRecordsCount);
+        }
+    }
+
+    /**
+     * Adds its records one at a time, committing as a job would, then forces out the rest.
+     */
+    protected static class StubJob extends WorkerThread {
+        protected RecordingRepositoryDAO repositoryDAO;
+        protected String repoName;
+        protected long firstId;
+        protected int added = 0;
+        protected Boolean succeeded = null;
+
+        public StubJob(RecordingRepositoryDAO repositoryDAO, String repoName, long firstId) {
+            this.repositoryDAO = repositoryDAO;
+            this.repoName = repoName;
+            this.firstId = firstId;
+        }
+
+        public void setup() {
+        }
+
+        public String getName() {
+            return repoName;
+        }
+
+        public boolean doSomeWork() {
+            Record r = new Record();
+            r.setId(firstId + added);
+            repositoryDAO.addRecord(repoName, r);
+            added++;
+            repositoryDAO.commit(repoName, false, added);
+            return added < RECORDS_PER_JOB;
+        }
+
+        public void finishInner(boolean success) {
+            if (success) {
+                repositoryDAO.commit(repoName, true, added);
+            }
+            succeeded = success;
+        }
+
+        public String getDetailedStatus() {
+            return null;
+        }
+
+        public long getRecordsProcessedThisRun() {
+            return added;
+        }
+
+        public long getRecords2ProcessThisRun() {
+            return RECORDS_PER_JOB;
+        }
+
+        public Logger getProdLogger() {
+            return Logger.getLogger(ConcurrentJobsTest.class);
+        }
+    }
+
+    /**
+     * Starts a StubJob on the first repository of each job, instead of a harvest or service.
+     */
+    protected static class StubScheduler extends Scheduler {
+        protected RecordingRepositoryDAO repositoryDAO = new RecordingRepositoryDAO();
+        protected List<Job> queue = new ArrayList<Job>();
+        protected Map<Integer, List<String>> repositories = new HashMap<Integer, List<String>>();
+
+        public void queue(int jobId, String... repositoryNames) {
+            Job job = new Job();
+            job.setId(jobId);
+            queue.add(job);
+            repositories.put(jobId, Arrays.asList(repositoryNames));
+        }
+
+        @Override
+        public JobService getJobService() {
+            return new DefaultJobService() {
+                @Override
+                public List<Job> getJobsToExecute() {
+                    return new ArrayList<Job>(queue);
+                }
+            };
+        }
+
+        @Override
+        protected Set<String> getRepositoryNames(Job job) {
+            return new HashSet<String>(repositories.get(job.getId()));
+        }
+
+        @Override
+        protected void startJob(Job job, Set<String> repositoryNames, String thisMinute) {
+            StartedJob startedJob = new StartedJob();
+            startedJob.job = job;
+            startedJob.worker = new StubJob(repositoryDAO, repositories.get(job.getId()).get(0), job.getId() * 1000);
+            startedJob.repositoryNames = repositoryNames;
+            startedJob.thread = new Thread(startedJob.worker, "job_" + job.getId());
+            startedJobs.add(startedJob);
+            startedJob.thread.start();
+        }
+
+        public void finishJobs() throws InterruptedException {
+            for (StartedJob startedJob : startedJobs) {
+                startedJob.thread.join(30000);
+                Assert.assertFalse(startedJob.thread.isAlive(), "job " + startedJob.job.getId() + " didn't finish");
+                Assert.assertEquals(((StubJob) startedJob.worker).succeeded, Boolean.TRUE,
+                        "job " + startedJob.job.getId() + " failed");
+                queue.remove(startedJob.job);
+                startedJobs.remove(startedJob);
+            }
+        }
+    }
+
+    @BeforeMethod
+    public void configure() {
+        if (MSTConfiguration.getInstance() == null) {
+            new MSTConfiguration();
+        }
+        MSTConfiguration.getInstance().setProperty("db.insertsAtOnce", "10");
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.maxBatchesInFlight", "1");
+    }
+
+    protected List<Long> getIds(long firstId) {
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 0; i < RECORDS_PER_JOB; i++) {
+            ids.add(firstId + i);
+        }
+        return ids;
+    }
+
+    protected void runJobs(boolean asyncCommit) throws Exception {
+        MSTConfiguration.getInstance().setProperty("db.asyncCommit.enabled", Boolean.toString(asyncCommit));
+        StubScheduler scheduler = new StubScheduler();
+        scheduler.maxConcurrentJobs = 3;
+        scheduler.queue(1, "a");
+        scheduler.queue(2, "b");
+        scheduler.queue(3, "a", "c");
+
+        scheduler.startJobs("now");
+        // job 3 waits for job 1, since they share repository a
+        Assert.assertEquals(scheduler.getRunningJobs().size(), 2);
+        Assert.assertEquals(scheduler.startedJobs.get(0).job.getId(), 1);
+        Assert.assertEquals(scheduler.startedJobs.get(1).job.getId(), 2);
+        scheduler.finishJobs();
+
+        // each repository got exactly its own job's records, in the order they were added
+        Assert.assertEquals(scheduler.repositoryDAO.written.get("a"), getIds(1000));
+        Assert.assertEquals(scheduler.repositoryDAO.written.get("b"), getIds(2000));
+        if (asyncCommit) {
+            Assert.assertEquals(scheduler.repositoryDAO.committerThreads.get("a"),
+                    new HashSet<String>(Arrays.asList("repository-committer-a", "job_1")));
+            Assert.assertEquals(scheduler.repositoryDAO.committerThreads.get("b"),
+                    new HashSet<String>(Arrays.asList("repository-committer-b", "job_2")));
+        }
+
+        scheduler.startJobs("now");
+        Assert.assertEquals(scheduler.getRunningJobs().size(), 1);
+        Assert.assertEquals(scheduler.startedJobs.get(0).job.getId(), 3);
+        scheduler.finishJobs();
+        List<Long> ids = getIds(1000);
+        ids.addAll(getIds(3000));
+        Assert.assertEquals(scheduler.repositoryDAO.written.get("a"), ids);
+        Assert.assertNull(scheduler.repositoryDAO.written.get("c"));
+    }
+
+    @Test
+    public void testSyncCommits() throws Exception {
+        runJobs(false);
+    }
+
+    @Test
+    public void testAsyncCommits() throws Exception {
+        runJobs(true);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+
+package xc.mst.action.log;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import xc.mst.action.BaseActionSupport;
+import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.metrics.MetricSnapshot;
+import xc.mst.utils.metrics.Metrics;
+import xc.mst.utils.metrics.MetricsService;
+
+/**
+ * Displays the latest snapshot of the metrics (TimingLogger's timers and counters), split into
+ * timers and counters.
+ */
+@SuppressWarnings("serial")
+public class Throughput extends BaseActionSupport {
+
+    /** Whether to take a new snapshot rather than showing the latest */
+    private boolean refresh = false;
+
+    private List<MetricSnapshot> timers = new ArrayList<MetricSnapshot>();
+    private List<MetricSnapshot> counters = new ArrayList<MetricSnapshot>();
+    private Date snapshotTime = null;
+    private int snapshotSeconds = 0;
+
+    @Override
+    public String execute() {
+        MetricsService metricsService = (MetricsService) MSTConfiguration.getInstance().getBean("MetricsService");
+        if (refresh || Metrics.getLatestSnapshotTime() == 0) {
+            metricsService.takeSnapshot();
+        }
+        for (MetricSnapshot ms : Metrics.getLatestSnapshot().values()) {
+            if (ms.isTimed()) {
+                timers.add(ms);
+            } else {
+                counters.add(ms);
+            }
+        }
+        snapshotTime = new Date(Metrics.getLatestSnapshotTime());
+        snapshotSeconds = metricsService.getSnapshotSeconds();
+        return SUCCESS;
+    }
+
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+    public void setRefresh(boolean refresh) {
+        this.refresh = refresh;
+    }
+
+    public List<MetricSnapshot> getTimers() {
+        return timers;
+    }
+
+    public List<MetricSnapshot> getCounters() {
+        return counters;
+    }
+
+    public Date getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public int getSnapshotSeconds() {
+        return snapshotSeconds;
+    }
+
+}
@@ -120,19 +120,22 @@ public class OaiRepository extends BaseActionSupport implements ServletRequestAw
             // Create the Facade Object, which will compute the results of the request and set them on the bean
             Facade facade = (Facade) MSTConfiguration.getInstance().getBean("Facade");
 
-            // Execute the correct request on the Facade Object
-            oaiXMLOutput = facade.execute(oaiRequest);
-
             response.setContentType("text/xml; charset=UTF-8");
 
-            // Write the response
-            response.getWriter().write(oaiXMLOutput);
+            // Execute the correct request on the Facade Object, writing the response as it's built
+            facade.execute(oaiRequest, response.getOutputStream());
 
             return SUCCESS;
         } catch (DatabaseConfigException e) {
             log.error("Cannot connect to the database with the parameters from the config file.", e);
 
-            response.getWriter().write("Do to a configuration error, this OAI repository cannot access its database.");
+            String message = "Do to a configuration error, this OAI repository cannot access its database.";
+            try {
+                response.getWriter().write(message);
+            } catch (IllegalStateException ise) {
+                // The Facade had already started writing the response through its OutputStream
+                response.getOutputStream().write(message.getBytes("UTF-8"));
+            }
 
             return ERROR;
         }
@@ -105,6 +105,11 @@ public class RefreshServiceBar extends BaseActionSupport implements ServletReque
                                 currentProcess = "Processed " + getScheduler().getRunningJob().getRecordsProcessedThisRun() +
                                           " records out of " + getScheduler().getRunningJob().getRecords2ProcessThisRun() +
                                           " through " + getScheduler().getRunningJob().getJobName();
+                                // how far behind each of the repositories being indexed is
+                                String lag = getScheduler().getRunningJob().getDetailedStatus();
+                                if (lag != null) {
+                                    currentProcess += " (" + lag + ")";
+                                }
                             }
                         } else {
                             currentProcess = "Processed " + getScheduler().getRunningJob().getRecordsProcessedThisRun() +
@@ -0,0 +1,150 @@
+<!--
+  * Copyright (c) 2012 eXtensible Catalog Organization
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+  * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+  * website http://www.extensiblecatalog.org/.
+  *
+  -->
+
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt"%>
+<%@ taglib prefix="mst" uri="mst-tags"%>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jstl/fmt_rt"%>
+
+<!--  document type -->
+<c:import url="/st/inc/doctype-frag.jsp"/>
+
+<LINK href="page-resources/css/header.css" rel="stylesheet" type="text/css">
+
+
+<html>
+    <head>
+        <title>Throughput</title>
+        <c:import url="/st/inc/meta-frag.jsp"/>
+
+        <LINK href="page-resources/yui/reset-fonts-grids/reset-fonts-grids.css" rel="stylesheet" type="text/css" >
+        <LINK href="page-resources/css/base-mst.css" rel="stylesheet" type="text/css" >
+        <LINK href="page-resources/yui/menu/assets/skins/sam/menu.css"  rel="stylesheet" type="text/css" >
+        <LINK href="page-resources/css/global.css" rel="stylesheet" type="text/css" >
+        <LINK href="page-resources/css/main_menu.css" rel="stylesheet" type="text/css" >
+        <LINK href="page-resources/css/tables.css" rel="stylesheet" type="text/css" >
+    <LINK href="page-resources/css/header.css" rel="stylesheet" type="text/css">
+    <LINK href="page-resources/css/bodylayout.css" rel="stylesheet" type="text/css">
+
+        <SCRIPT LANGUAGE="JavaScript" SRC="page-resources/js/utilities.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" src="page-resources/yui/yahoo-dom-event/yahoo-dom-event.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" src="page-resources/yui/connection/connection-min.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" src="page-resources/yui/container/container_core-min.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" SRC="page-resources/yui/menu/menu-min.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" SRC="page-resources/js/main_menu.js"></SCRIPT>
+        <SCRIPT LANGUAGE="JavaScript" SRC="page-resources/js/all_users.js"></SCRIPT>
+
+    </head>
+
+    <body class="yui-skin-sam">
+        <%@ taglib prefix="s" uri="/struts-tags" %>
+        <!--  yahoo doc 2 template creates a page 950 pixles wide -->
+        <div id="doc2">
+
+    <!-- page header - this uses the yahoo page styling -->
+    <div id="hd">
+
+            <!--  this is the header of the page -->
+            <c:import url="/st/inc/header.jsp"/>
+
+            <!--  this is the header of the page -->
+            <c:import url="/st/inc/menu.jsp"/>
+            <jsp:include page="/st/inc/breadcrumb.jsp">
+
+                    <jsp:param name="bread" value="Logs | Throughput" />
+
+            </jsp:include>
+     </div>
+    <!--  end header -->
+
+    <!-- body -->
+    <div id="bd">
+
+              <!-- Display of error message -->
+                <c:if test="${errorType != null}">
+                    <div id="server_error_div">
+                    <div id="server_message_div" class="${errorType}">
+                        <img  src="${pageContext.request.contextPath}/page-resources/img/${errorType}.jpg">
+                        <span class="errorText">
+                            <mst:fielderror error="${fieldErrors}">
+                            </mst:fielderror>
+                        </span>
+                    </div>
+                    </div>
+                 </c:if>
+                <div id="error_div"></div>
+
+                <div class="clear">&nbsp;</div>
+
+             <div>
+               Snapshot taken <fmt:formatDate value="${snapshotTime}" pattern="yyyy-MM-dd HH:mm:ss"/>.
+               <c:if test="${snapshotSeconds > 0}">A snapshot is taken every ${snapshotSeconds} seconds; rates are per second since the one before.</c:if>
+               <a href="throughput.action?refresh=true">Take a snapshot now</a>
+             </div>
+
+             <div class="clear">&nbsp;</div>
+
+             <div class="viewTable">
+               <span style="font-size: 120%; font-weight: bold;">Timers (ms)</span>
+                <table width="100%">
+                  <tr>
+                    <td><span style="font-weight: bold;">Name</span></td>
+                    <td><span style="font-weight: bold; float: right;">Count</span></td>
+                    <td><span style="font-weight: bold; float: right;">Rate/s</span></td>
+                    <td><span style="font-weight: bold; float: right;">Total</span></td>
+                    <td><span style="font-weight: bold; float: right;">Mean</span></td>
+                    <td><span style="font-weight: bold; float: right;">p50</span></td>
+                    <td><span style="font-weight: bold; float: right;">p90</span></td>
+                    <td><span style="font-weight: bold; float: right;">p99</span></td>
+                    <td><span style="font-weight: bold; float: right;">Max</span></td>
+                  </tr>
+                  <c:forEach var="m" items="${timers}">
+                    <tr>
+                      <td><span>${m.name}</span></td>
+                      <td><span style="float: right;">${m.count}</span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.rate}" maxFractionDigits="1"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.total}" maxFractionDigits="0"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.mean}" maxFractionDigits="3"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.p50}" maxFractionDigits="3"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.p90}" maxFractionDigits="3"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.p99}" maxFractionDigits="3"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.max}" maxFractionDigits="3"/></span></td>
+                    </tr>
+                  </c:forEach>
+                </table>
+      </div>
+
+      <div class="viewTable">
+               <span style="font-size: 120%; font-weight: bold;">Counters</span>
+                <table width="100%">
+                  <tr>
+                    <td><span style="font-weight: bold;">Name</span></td>
+                    <td><span style="font-weight: bold; float: right;">Count</span></td>
+                    <td><span style="font-weight: bold; float: right;">Rate/s</span></td>
+                    <td><span style="font-weight: bold; float: right;">Total</span></td>
+                    <td><span style="font-weight: bold; float: right;">Mean</span></td>
+                    <td><span style="font-weight: bold; float: right;">Max</span></td>
+                  </tr>
+                  <c:forEach var="m" items="${counters}">
+                    <tr>
+                      <td><span>${m.name}</span></td>
+                      <td><span style="float: right;">${m.count}</span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.rate}" maxFractionDigits="1"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.total}" maxFractionDigits="0"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.mean}" maxFractionDigits="1"/></span></td>
+                      <td><span style="float: right;"><fmt:formatNumber value="${m.max}" maxFractionDigits="0"/></span></td>
+                    </tr>
+                  </c:forEach>
+                </table>
+      </div>
+        </div>
+            <!--  this is the footer of the page -->
+            <c:import url="/st/inc/footer.jsp"/>
+   </div>
+</body>
+</html>
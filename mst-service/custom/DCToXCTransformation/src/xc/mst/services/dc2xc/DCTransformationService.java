@@ -195,7 +195,7 @@ public class DCTransformationService extends GenericMetadataService {
                 results = getXCRecordService().getSplitXCRecordXML(getRepository(), ar, null, 0);
                 // setType for record counts.
                 for (OutputRecord or : results) {
-                    if (!or.getDeleted()) {
+                    if (!or.getDeleted() && or.getType() == null) {
                         String type = getXCRecordService().getType((Record) or);
                         or.setType(type);
                     }
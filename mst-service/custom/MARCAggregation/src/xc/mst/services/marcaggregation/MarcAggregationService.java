@@ -55,7 +55,6 @@ public class MarcAggregationService extends GenericMetadataService {
     protected MarcAggregationServiceDAO              masDAO = null;
     protected MASMarcBuilder                         masBld = null;
     protected RecordOfSourceManager                  masRsm = null;
-    protected List<HashSet<Long>>                    masMatchSetList = null;
 
     /**
      * processBibUpdateActive is actually 2 separate actions: processBibDelete follwed by processBibNewActive
@@ -116,6 +115,16 @@ public class MarcAggregationService extends GenericMetadataService {
     protected TLongObjectHashMap<SaxMarcXmlRecord> SMRs             = null;
     private boolean cacheSMRs = true;
 
+    /**
+     * keep the cached SMRs as CompactMarcRecords (a single byte[] each) rather than Field and Subfield objects
+     */
+    private boolean compactSMRs = true;
+
+    /**
+     * the bibs of the batch currently being processed, parsed by prepareBatch (so process needn't parse them again)
+     */
+    protected TLongObjectHashMap<SaxMarcXmlRecord> batchSMRs        = null;
+
     /**
      * the repository feeding this service.  we need to hang on to this because of remerging, etc.
      */
@@ -163,7 +172,6 @@ public class MarcAggregationService extends GenericMetadataService {
         matchRuleMap = null;
         masBld = null;
         masRsm = null;
-        masMatchSetList = null;
 
         scores             = null;
         scores_unpersisted = null;
@@ -179,6 +187,8 @@ public class MarcAggregationService extends GenericMetadataService {
         recordOfSourceMap = null;
         
         currentMatchSets = null;
+
+        batchSMRs = null;
         
         isSetUp = false;
        
@@ -201,6 +211,7 @@ public class MarcAggregationService extends GenericMetadataService {
         
         debugMode = config.getPropertyAsBoolean("debug_mode", false);
         cacheSMRs = config.getPropertyAsBoolean("cache_smr", false);
+        compactSMRs = config.getPropertyAsBoolean("cache_smr.compact", true);
         
         // 001/003 manipulation
         insert001 = config.getPropertyAsBoolean("insert_001", false);
@@ -365,7 +376,6 @@ public class MarcAggregationService extends GenericMetadataService {
         if (this.masDAO == null) {  // this was really an initial unit test
             LOG.error("***  ERROR, DAO did not get initialized by Spring!");
         }
-        masMatchSetList = new ArrayList<HashSet<Long>>();
         scores = new TLongObjectHashMap<RecordOfSourceData>();   /// TODO load what you have in the db!
 
         if (hasIntermediatePersistence) {
@@ -428,17 +438,6 @@ public class MarcAggregationService extends GenericMetadataService {
         }
     }
 
-    /**
-     * this is just for what we have so far, not meant to always be up to date, i.e. it doesn't get
-     * started off from looking at existing merged stuff in the database.  Based on the current record
-     * that comes in, see what it matches, and go from there.
-     *
-     * @return
-     */
-    public List<HashSet<Long>> getCurrentMatchSetList() {
-        return masMatchSetList;
-    }
-
     /**
      * load property from the service's config file.
      * @param name
@@ -557,7 +556,7 @@ public class MarcAggregationService extends GenericMetadataService {
     	}
     	
     	try {    	    	       
-    		smr = new SaxMarcXmlRecord(r.getOaiXml());
+    		smr = new SaxMarcXmlRecord(r.getOaiXml(), null, cacheSMRs && compactSMRs && inputType.equals("b"));
     		smr.setRecordId(r.getId());
     		if(cacheSMRs && inputType.equals("b")) SMRs.put(r.getId(), smr);
         } catch (Throwable t) {
@@ -603,13 +602,16 @@ public class MarcAggregationService extends GenericMetadataService {
     }
     
     private SaxMarcXmlRecord getSMR(InputRecord r) {
+    	if (batchSMRs != null && batchSMRs.contains(r.getId())) {
+    		return batchSMRs.get(r.getId());
+    	}
     	if (cacheSMRs && SMRs.contains(r.getId())) {
     		//LOG.info("MAS: getSMR() returned a cached record: " + r.getId());
     		return SMRs.get(r.getId());
     	}
     	SaxMarcXmlRecord smr = null;
     	try {    	    	       
-    		smr = new SaxMarcXmlRecord(r.getOaiXml());
+    		smr = new SaxMarcXmlRecord(r.getOaiXml(), null, cacheSMRs && compactSMRs);
     		smr.setRecordId(r.getId());
     		if (cacheSMRs) SMRs.put(r.getId(), smr);
     		return smr;
@@ -647,6 +649,64 @@ public class MarcAggregationService extends GenericMetadataService {
         if (firstTime) masDAO.createIndicesIfNecessary();
     }
 
+    /**
+     * Matching a bib takes several queries against the matchpoints tables per record.  Instead, gather the
+     * matchpoints of every bib in the batch and let each matcher look them all up at once
+     * (one query per matchpoints table), before process() is called for any of them.
+     */
+    public void prepareBatch(List<Record> records) {
+        finishBatch(records);
+        if (matcherMap == null) {
+            return;
+        }
+        TimingLogger.start("prepareBatch");
+
+        boolean prepared = false;
+        try {
+            TLongObjectHashMap<SaxMarcXmlRecord> smrs = new TLongObjectHashMap<SaxMarcXmlRecord>(records.size());
+            for (Record r : records) {
+                if (r.getDeleted() || !"b".equals(r.getType())) {
+                    continue;
+                }
+                SaxMarcXmlRecord smr = getSMR(r);
+                if (smr != null) {
+                    smrs.put(r.getId(), smr);
+                }
+            }
+            batchSMRs = smrs;
+
+            List<SaxMarcXmlRecord> smrList = Arrays.asList(smrs.getValues(new SaxMarcXmlRecord[smrs.size()]));
+            for (Map.Entry<String, FieldMatcher> me : this.matcherMap.entrySet()) {
+                TimingLogger.start("prepareBatch.prefetch." + me.getKey());
+                try {
+                    me.getValue().prefetchMatchingInputIds(smrList);
+                } finally {
+                    TimingLogger.stop("prepareBatch.prefetch." + me.getKey());
+                }
+            }
+            prepared = true;
+        } finally {
+            // if a matcher failed, the ones before it have this batch's matches and the ones after it
+            // none, so drop them all and let process() query and parse as it would without a batch
+            if (!prepared) {
+                finishBatch(records);
+            }
+            TimingLogger.stop("prepareBatch");
+        }
+    }
+
+    /**
+     * The parsed bibs and the matchers' prefetched matches are only good for the batch they were made for.
+     */
+    public void finishBatch(List<Record> records) {
+        batchSMRs = null;
+        if (matcherMap != null) {
+            for (FieldMatcher matcher : matcherMap.values()) {
+                matcher.clearPrefetchedMatches();
+            }
+        }
+    }
+
     /**
      * each record run by the service,
      * gets process called at a particular time in the method
@@ -1040,12 +1100,12 @@ public class MarcAggregationService extends GenericMetadataService {
     private List<HashSet<Long>> findMatchSets(HashSet<Long> formerMatchSet) {
         TimingLogger.start("findMatchSets");
 
-        List<HashSet<Long>> listOfMatchSets = new ArrayList<HashSet<Long>>();
-        HashSet<Long> processedTheseAlready = new HashSet<Long>();
+        // sets found from different ids may overlap; the forest merges those into one
+        MatchSetForest matchSets = new MatchSetForest();
                 
     	for (Long id: formerMatchSet) {
 
-    		if (processedTheseAlready.contains(id)) continue;
+    		if (matchSets.contains(id)) continue;
     		
             Record r = getInputRepo().getRecord(id);
             
@@ -1070,14 +1130,12 @@ public class MarcAggregationService extends GenericMetadataService {
             newMatchedRecordIds.add(id);
     		
     		newMatchedRecordIds = expandMatchedRecords(newMatchedRecordIds);
-    		processedTheseAlready.addAll(newMatchedRecordIds);
-    		
-    		listOfMatchSets.add(newMatchedRecordIds);
+    		matchSets.union(newMatchedRecordIds);
     		
         }
         TimingLogger.stop("findMatchSets");
 
-    	return listOfMatchSets;
+    	return matchSets.getSets();
     }
     
     /*
@@ -1321,7 +1379,7 @@ public class MarcAggregationService extends GenericMetadataService {
     protected Record getRecord(Long recordId) {
         // We may need to access in-memory (not yet persisted) records.
         // MST doesn't provide a safe framework for manipulating in-memory objects; therefore, we will persist all records first!
-        if (getRepositoryDAO().haveUnpersistedRecord(recordId)) {
+        if (getRepositoryDAO().haveUnpersistedRecord(getRepository().getName(), recordId)) {
             super.commitIfNecessary(true, 0);
         }
         Record r = getRepository().getRecord(recordId);
@@ -1555,8 +1613,6 @@ public class MarcAggregationService extends GenericMetadataService {
         // may not have any matches!
         final boolean hasMatches = matchedRecordIds.size() > 1;
         if (hasMatches) {
-            //masMatchSetList = addToMatchSetList(matchedRecordIds, masMatchSetList);
-
             InputRecord record = masRsm.getRecordOfSourceRecord(matchedRecordIds, getInputRepo(), scores);
             String xml = mergeBibSet(record, matchedRecordIds, getInputRepo());
             list = createNewBibRecord(record, xml, matchedRecordIds); // this method calls addToMasMergedRecordsMemory
@@ -1688,7 +1744,7 @@ public class MarcAggregationService extends GenericMetadataService {
         return results;
     }
 
-    private HashSet<Long> populateMatchedRecordIds(MatchSet ms) {
+    protected HashSet<Long> populateMatchedRecordIds(MatchSet ms) {
     	TimingLogger.start("populateMatchedRecordIds");
         HashSet<Long> matchedRecordIds = new HashSet<Long>();
         for (Map.Entry<String, MatchRuleIfc> me : this.matchRuleMap.entrySet()) {
@@ -1730,7 +1786,7 @@ public class MarcAggregationService extends GenericMetadataService {
         }
     }
     
-    private void addRecordToMatchers(InputRecord r, SaxMarcXmlRecord smr) {
+    protected void addRecordToMatchers(InputRecord r, SaxMarcXmlRecord smr) {
         TimingLogger.start("addRecordToMatchers");
 
         for (Map.Entry<String, FieldMatcher> me : this.matcherMap.entrySet()) {
@@ -1755,7 +1811,7 @@ public class MarcAggregationService extends GenericMetadataService {
        return false;
     }
     
-    private MatchSet getMatchSet(SaxMarcXmlRecord smr) {
+    protected MatchSet getMatchSet(SaxMarcXmlRecord smr) {
         TimingLogger.start("getMatchSet");
 
         MatchSet ms = new MatchSet(smr);
@@ -1770,87 +1826,6 @@ public class MarcAggregationService extends GenericMetadataService {
     }
 
 
-    /**
-     *
-     * need to look to see if the given match set impacts existing sets.  i.e if this set  is {1,47,50}
-     * and we have existing sets {1,3} and {4,47} then we need a superset: {1,3,4,47,50} and need to
-     * remove the existing sets {1,3}, {4,47}
-     *
-     * disjoint-set data structure?
-     *
-     * @param matchset
-     * @param origMasMatchSetList
-     * @return
-     */
-
-    private List<HashSet<Long>> addToMatchSetList(HashSet<Long> matchset,  final List<HashSet<Long>> origMasMatchSetList) {
-        TimingLogger.start("addToMatchSetList");
-
-        if (matchset==null) {
-            TimingLogger.stop("addToMatchSetList");
-            return origMasMatchSetList;
-        }
-        if (matchset.size() < 1) {   ///TODO shouldn't this be <2 ?
-            TimingLogger.stop("addToMatchSetList");
-            return origMasMatchSetList;
-        }
-
-        LOG.debug("** addToMatchSetList, matchset length="+matchset.size()+" TOTAL matchset size ="+origMasMatchSetList.size());
-        List<HashSet<Long>> newMasMatchSetList = new ArrayList<HashSet<Long>>();
-        
-        TimingLogger.start("addToMatchSetList.addAll()");
-        newMasMatchSetList.addAll(origMasMatchSetList);
-        TimingLogger.stop("addToMatchSetList.addAll()");
-
-        TimingLogger.start("addToMatchSetList.set.processing");
-        boolean added = false;
-        for (HashSet<Long> set: origMasMatchSetList) {
-            for (Long number: matchset) {
-                TimingLogger.start("addToMatchSetList.set.contains");
-                if (set.contains(number)) {
-                    TimingLogger.stop("addToMatchSetList.set.contains");
-                    TimingLogger.start("addToMatchSetList.set.notcontainsall");
-                    if (!set.containsAll(matchset)) {
-                        TimingLogger.stop("addToMatchSetList.set.notcontainsall");
-                        TimingLogger.start("newMasMatchSetList.remove()");
-                        newMasMatchSetList.remove(set);
-                        TimingLogger.stop("newMasMatchSetList.remove()");
-                        TimingLogger.start("set.addAll()");
-                        set.addAll(matchset);
-                        TimingLogger.stop("set.addAll()");
-                        TimingLogger.start("newMasMatchSetList.add()");
-                        newMasMatchSetList.add(set);
-                        TimingLogger.stop("newMasMatchSetList.add()");
-                        LOG.debug("addToMatchSetList, post-merge!  set.contains("+number+") merged newMasMatchSetList set="+set);
-                    }
-                    else {
-                        TimingLogger.stop("addToMatchSetList.set.notcontainsall");
-                        LOG.debug("addToMatchSetList, will not add in: "+matchset);
-                    }
-                    added = true;  // this flag means that we don't want this set added to the big list below
-                    break;   // get you out of THIS set, but still must check the others.
-                } else {
-                	TimingLogger.stop("addToMatchSetList.set.contains");
-                }
-
-            }
-        }
-        TimingLogger.stop("addToMatchSetList.set.processing");
-
-        //
-        // the list of sets has to start somewhere, and if you don't find a set including some part
-        // of your set, you must add your set explicitly.
-        //
-        if (!added) {
-            LOG.debug("must add in: "+matchset);
-            newMasMatchSetList.add(matchset);
-        }
-        LOG.debug("** addToMatchSetList, NEW TOTAL matchset size ="+newMasMatchSetList.size());
-        TimingLogger.stop("addToMatchSetList");
-        return newMasMatchSetList;
-    }
-
-
     /**
      * assumptions:
      * 1) sets are not null
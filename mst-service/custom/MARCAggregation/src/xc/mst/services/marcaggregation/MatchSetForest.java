@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation;
+
+import gnu.trove.TLongByteHashMap;
+import gnu.trove.TLongLongHashMap;
+import gnu.trove.TLongProcedure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Disjoint sets (union-find) of record ids, used to hold match sets.  Matching records are
+ * union'd together, so two sets that share a record become one set, without scanning every
+ * existing set to find the ones that overlap.
+ *
+ * find and union are near-constant time (path compression plus union by rank).  Each set's members
+ * are also kept in a circular list, so a single set can be read back in time proportional to its size.
+ */
+public class MatchSetForest {
+
+    // id -> parent id.  roots are their own parent.
+    protected TLongLongHashMap parent = new TLongLongHashMap();
+    // root id -> rank.  ranks never exceed log2(#ids), so a byte is plenty.
+    protected TLongByteHashMap rank = new TLongByteHashMap();
+    // id -> next id in the same set (circular)
+    protected TLongLongHashMap next = new TLongLongHashMap();
+
+    public boolean contains(long id) {
+        return parent.containsKey(id);
+    }
+
+    /**
+     * @return the number of ids in all sets
+     */
+    public int size() {
+        return parent.size();
+    }
+
+    public void clear() {
+        parent.clear();
+        rank.clear();
+        next.clear();
+    }
+
+    /**
+     * adds id as a set of its own, unless it is already in a set.
+     */
+    public void add(long id) {
+        if (!parent.containsKey(id)) {
+            parent.put(id, id);
+            rank.put(id, (byte) 0);
+            next.put(id, id);
+        }
+    }
+
+    /**
+     * @return the id that represents id's set (id is added first if necessary)
+     */
+    public long find(long id) {
+        add(id);
+        long root = id;
+        long p;
+        while ((p = parent.get(root)) != root) {
+            root = p;
+        }
+        // path compression
+        while (id != root) {
+            p = parent.get(id);
+            parent.put(id, root);
+            id = p;
+        }
+        return root;
+    }
+
+    /**
+     * merges the sets containing id1 and id2.
+     *
+     * @return the id that represents the merged set
+     */
+    public long union(long id1, long id2) {
+        long root1 = find(id1);
+        long root2 = find(id2);
+        if (root1 == root2) {
+            return root1;
+        }
+        byte rank1 = rank.get(root1);
+        byte rank2 = rank.get(root2);
+        if (rank1 < rank2) {
+            long t = root1;
+            root1 = root2;
+            root2 = t;
+        } else if (rank1 == rank2) {
+            rank.put(root1, (byte) (rank1 + 1));
+        }
+        parent.put(root2, root1);
+        rank.remove(root2);
+
+        // splice the two circular member lists together
+        long next1 = next.get(root1);
+        next.put(root1, next.get(root2));
+        next.put(root2, next1);
+        return root1;
+    }
+
+    /**
+     * merges the sets containing each of ids into one set.
+     */
+    public void union(Collection<Long> ids) {
+        long first = 0;
+        boolean isFirst = true;
+        for (Long id : ids) {
+            if (isFirst) {
+                first = find(id);
+                isFirst = false;
+            } else {
+                first = union(first, id);
+            }
+        }
+    }
+
+    /**
+     * @return all the ids in the same set as id (an empty set if id isn't in any set)
+     */
+    public HashSet<Long> getSet(long id) {
+        HashSet<Long> set = new HashSet<Long>();
+        if (!contains(id)) {
+            return set;
+        }
+        long member = id;
+        do {
+            set.add(member);
+            member = next.get(member);
+        } while (member != id);
+        return set;
+    }
+
+    /**
+     * @return every set, each one exactly once
+     */
+    public List<HashSet<Long>> getSets() {
+        final List<HashSet<Long>> sets = new ArrayList<HashSet<Long>>(rank.size());
+        rank.forEachKey(new TLongProcedure() {
+            public boolean execute(long root) {
+                sets.add(getSet(root));
+                return true;
+            }
+        });
+        return sets;
+    }
+}
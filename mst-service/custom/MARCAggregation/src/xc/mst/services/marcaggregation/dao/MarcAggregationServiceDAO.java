@@ -21,6 +21,7 @@ import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -30,11 +31,13 @@ import java.util.TreeMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import xc.mst.services.impl.dao.GenericMetadataServiceDAO;
 import xc.mst.services.marcaggregation.RecordOfSourceData;
 import xc.mst.services.marcaggregation.matcher.SCNData;
+import xc.mst.services.marcaggregation.matcher.StringMatchpointIndex;
 import xc.mst.utils.MSTConfiguration;
 import xc.mst.utils.TimingLogger;
 /**
@@ -50,6 +53,9 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
     // can't load into mysql table if the field data exceeds its type size
     private final static int MAX_STRING_LENGTH = 255;
 
+    // the most values put in a single "in (...)" clause by the batch matchpoint lookups
+    private final static int MAX_VALUES_PER_QUERY = 1000;
+
     // not yet used starts
     public final static String matchpoints_028a_table   = "matchpoints_028a";
     public final static String matchpoints_130a_table   = "matchpoints_130a";
@@ -233,8 +239,6 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
         TimingLogger.start("prepare to write");
 
         String dbLoadFileStr = getDbLoadFileStr();
-        final byte[] tabBytes = getTabBytes();
-        final byte[] newLineBytes = getNewLineBytes();
 
         try {
             final MutableInt j = new MutableInt(0);
@@ -242,49 +246,37 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
             for (Object keyObj : inputId2matcherMap.keySet()) {
                 Long id = (Long) keyObj;
                 Object list = inputId2matcherMap.get(id);
+                if (list == null) {
+                    continue;
+                }
+                write1StrMatchpoints(os, j, id, (List<String>) list, tableName);
+            }
+            os.close();
+            TimingLogger.stop("prepare to write");
 
-                try {
-                    if (list == null) {
-                        continue;
-                    }
-                    final byte[] idBytes = String.valueOf(id).getBytes();
+            TimingLogger.start("will replace");
+            replaceIntoTable(tableName, dbLoadFileStr);
+            TimingLogger.stop("will replace");
 
-                    List<String> strList = (List<String>) list;
-                    LOG.debug("insert: " + tableName + ".size(): " + strList.size());
-                    if (strList != null && strList.size() > 0) {
-                        for (String _s: strList) {
-                            if (StringUtils.isEmpty(_s)) {
-                            	LOG.error("*** problem with data (EMPTY) readying id="+id);
-                            	continue;
-                            }
-                            if (_s.length() > MAX_STRING_LENGTH) {
-                            	LOG.error("*** problem with data (TOO LONG > " + MAX_STRING_LENGTH + ") readying id="+id);
-                                continue;
-                            }
-                            try {
-                            	
-                                if (j.intValue() > 0) {
-                                    os.write(newLineBytes);
-                                } else {
-                                    j.increment();
-                                }
+        } catch (Throwable t4) {
+            LOG.error("*** problem with replaceIntoTable data",t4);
+            getUtil().throwIt(t4);
+        } finally {
+            TimingLogger.stop("MarcAggregationServiceDAO.persist1StrMatchpointMaps");
+        }
+    }
 
-                                // need to loop through all strings associated with id!
-                                //
-                                // write the newline after we have written a line, but not at the end of the last line
-                                os.write(getBytes(_s));
-                                os.write(tabBytes);
-                                os.write(idBytes);
-                            } catch (Exception e) {
-                                LOG.error("problem with data - id="+id,e);
-                                getUtil().throwIt(e);
-                            }
-                        }
-                    }
-                } catch (Throwable t) {
-                    LOG.error("problem with replaceIntoTable data - id="+id,t);
-                    getUtil().throwIt(t);
-                }
+    public void persist1StrMatchpointMaps(StringMatchpointIndex index, String tableName) {
+        TimingLogger.start("MarcAggregationServiceDAO.persist1StrMatchpointMaps");
+        TimingLogger.start("prepare to write");
+
+        String dbLoadFileStr = getDbLoadFileStr();
+
+        try {
+            final MutableInt j = new MutableInt(0);
+            final OutputStream os = new BufferedOutputStream(new FileOutputStream(dbLoadFileStr));
+            for (long id : index.getRecordIds()) {
+                write1StrMatchpoints(os, j, id, index.getKeys(id), tableName);
             }
             os.close();
             TimingLogger.stop("prepare to write");
@@ -301,6 +293,50 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
         }
     }
 
+    // writes one line (matchpoint \t id) to the load file for each of the record's matchpoints
+    protected void write1StrMatchpoints(OutputStream os, MutableInt j, long id, List<String> strList, String tableName) {
+        final byte[] tabBytes = getTabBytes();
+        final byte[] newLineBytes = getNewLineBytes();
+        try {
+            final byte[] idBytes = String.valueOf(id).getBytes();
+
+            LOG.debug("insert: " + tableName + ".size(): " + strList.size());
+            if (strList != null && strList.size() > 0) {
+                for (String _s: strList) {
+                    if (StringUtils.isEmpty(_s)) {
+                    	LOG.error("*** problem with data (EMPTY) readying id="+id);
+                    	continue;
+                    }
+                    if (_s.length() > MAX_STRING_LENGTH) {
+                    	LOG.error("*** problem with data (TOO LONG > " + MAX_STRING_LENGTH + ") readying id="+id);
+                        continue;
+                    }
+                    try {
+                    	
+                        if (j.intValue() > 0) {
+                            os.write(newLineBytes);
+                        } else {
+                            j.increment();
+                        }
+
+                        // need to loop through all strings associated with id!
+                        //
+                        // write the newline after we have written a line, but not at the end of the last line
+                        os.write(getBytes(_s));
+                        os.write(tabBytes);
+                        os.write(idBytes);
+                    } catch (Exception e) {
+                        LOG.error("problem with data - id="+id,e);
+                        getUtil().throwIt(e);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            LOG.error("problem with replaceIntoTable data - id="+id,t);
+            getUtil().throwIt(t);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public void persistPrefixList(Map<Integer, String> prefixList, String tableName) {
         TimingLogger.start("MarcAggregationServiceDAO.persistPrefixMap");
@@ -1000,6 +1036,78 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
         return results;
     }
 
+    /**
+     * The batch version of {@link #getMatchingRecords(String, String, String, String)}: given many string_ids,
+     * finds the records having each of them with one "in (...)" query per MAX_VALUES_PER_QUERY string_ids,
+     * rather than a query apiece.
+     *
+     * @param tableName
+     * @param record_id_field
+     * @param string_id_field
+     * @param itemsToMatch
+     * @return each of itemsToMatch -> the ids of the records having it (an empty list if there are none)
+     */
+    public Map<String, List<Long>> getMatchingRecords(String tableName, String record_id_field, String string_id_field, Collection<String> itemsToMatch) {
+        TimingLogger.start("MarcAggregationServiceDAO.getMatchingRecords.batch");
+
+        final Map<String, List<Long>> results = new HashMap<String, List<Long>>();
+        // mysql compares strings case-insensitively and ignoring trailing spaces, so a row's string_id
+        // won't necessarily be identical to the item(s) it matched.
+        final Map<String, List<String>> itemsByCollationKey = new HashMap<String, List<String>>();
+        for (String item : itemsToMatch) {
+            if (results.containsKey(item)) {
+                continue;
+            }
+            results.put(item, new ArrayList<Long>());
+            String key = getCollationKey(item);
+            List<String> items = itemsByCollationKey.get(key);
+            if (items == null) {
+                items = new ArrayList<String>(1);
+                itemsByCollationKey.put(key, items);
+            }
+            items.add(item);
+        }
+
+        List<String> items = new ArrayList<String>(results.keySet());
+        for (int i = 0; i < items.size(); i += MAX_VALUES_PER_QUERY) {
+            List<String> chunk = items.subList(i, Math.min(items.size(), i + MAX_VALUES_PER_QUERY));
+            String sql = "select " + record_id_field + ", " + string_id_field + " from " + tableName +
+                    " where " + string_id_field + " in (" + getPlaceholders(chunk.size()) + ")";
+            this.jdbcTemplate.query(sql, chunk.toArray(), new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    Long id = rs.getLong(1);
+                    List<String> matched = itemsByCollationKey.get(getCollationKey(rs.getString(2)));
+                    if (matched == null) {
+                        return;
+                    }
+                    for (String item : matched) {
+                        List<Long> ids = results.get(item);
+                        if (!ids.contains(id)) {
+                            ids.add(id);
+                        }
+                    }
+                }
+            });
+        }
+        TimingLogger.stop("MarcAggregationServiceDAO.getMatchingRecords.batch");
+        return results;
+    }
+
+    protected static String getCollationKey(String s) {
+        return StringUtils.stripEnd(s, " ").toLowerCase();
+    }
+
+    protected static String getPlaceholders(int n) {
+        StringBuilder sb = new StringBuilder(2 * n);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+
     /**
      * given a numeric_id in String form to match on.
      * note - this method adds the quoting, which was added for ISBN 020$a others don't necessarily need it (depending on how they were inserted)
@@ -1057,6 +1165,44 @@ public class MarcAggregationServiceDAO extends GenericMetadataServiceDAO {
         return results;
     }
 
+    /**
+     * The batch version of {@link #getMatchingRecords(String, String, String, Long)}: given many numeric_ids,
+     * finds the records having each of them with one "in (...)" query per MAX_VALUES_PER_QUERY numeric_ids.
+     *
+     * @param tableName
+     * @param record_id_field for query
+     * @param numeric_id_field for query
+     * @param itemsToMatch
+     * @return each of itemsToMatch -> the ids of the records having it (an empty list if there are none)
+     */
+    public Map<Long, List<Long>> getMatchingNumericRecords(String tableName, String record_id_field, String numeric_id_field, Collection<Long> itemsToMatch) {
+        TimingLogger.start("MarcAggregationServiceDAO.getMatchingNumericRecords.batch");
+
+        final Map<Long, List<Long>> results = new HashMap<Long, List<Long>>();
+        for (Long item : itemsToMatch) {
+            if (!results.containsKey(item)) {
+                results.put(item, new ArrayList<Long>());
+            }
+        }
+
+        List<Long> items = new ArrayList<Long>(results.keySet());
+        for (int i = 0; i < items.size(); i += MAX_VALUES_PER_QUERY) {
+            List<Long> chunk = items.subList(i, Math.min(items.size(), i + MAX_VALUES_PER_QUERY));
+            String sql = "select " + record_id_field + ", " + numeric_id_field + " from " + tableName +
+                    " where " + numeric_id_field + " in (" + getPlaceholders(chunk.size()) + ")";
+            this.jdbcTemplate.query(sql, chunk.toArray(), new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    List<Long> ids = results.get(rs.getLong(2));
+                    if (ids != null) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+            });
+        }
+        TimingLogger.stop("MarcAggregationServiceDAO.getMatchingNumericRecords.batch");
+        return results;
+    }
+
     public int getNumRecords(String tableName) {
         return this.jdbcTemplate.queryForInt("select count(*) from " + tableName);
     }
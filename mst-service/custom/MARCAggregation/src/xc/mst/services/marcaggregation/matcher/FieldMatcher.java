@@ -37,6 +37,22 @@ public interface FieldMatcher {
     public List<Long> getMatchingInputIds(SaxMarcXmlRecord ir);
     public List<Long> getMatchingInputIds(SaxMarcXmlRecord ir, List<Long> filterBy);
 
+    /**
+     * Looks up, all at once, the previously persisted records that share a match-point with any
+     * of these records, so that {@link #getMatchingInputIds(SaxMarcXmlRecord)} needn't query the
+     * database separately for each of them.  The results are only good until the next call to this
+     * method or to {@link #flush(boolean)}.  A matcher that can't do this may simply ignore it.
+     *
+     * @param records the records about to be processed
+     */
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records);
+
+    /**
+     * Drops whatever {@link #prefetchMatchingInputIds(List)} looked up, so that
+     * {@link #getMatchingInputIds(SaxMarcXmlRecord)} goes back to querying the database.
+     */
+    public void clearPrefetchedMatches();
+
     /**
      * In order to perform matching, an instance of this class
      * must preserve match point values.  This method signifies
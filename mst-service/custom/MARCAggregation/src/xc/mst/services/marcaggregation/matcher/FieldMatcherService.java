@@ -8,7 +8,11 @@
   */
 package xc.mst.services.marcaggregation.matcher;
 
+import gnu.trove.TLongHashSet;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.log4j.Logger;
@@ -38,6 +42,11 @@ public abstract class FieldMatcherService extends BaseService implements FieldMa
     private MarcAggregationService mas;
     private String name;
 
+    // match-point -> ids of the persisted records having it, for the current batch (see prefetchMatchingInputIds)
+    protected Map<?, List<Long>> prefetchedMatches = null;
+    // records whose match-points have been deleted from the database since prefetchedMatches was populated
+    protected TLongHashSet removedSincePrefetch = new TLongHashSet();
+
     public String getName() {
         return name;
     }
@@ -62,6 +71,53 @@ public abstract class FieldMatcherService extends BaseService implements FieldMa
     	return false;
     }
 
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records) {
+    }
+
+    protected void setPrefetchedMatches(Map<?, List<Long>> matches) {
+        prefetchedMatches = matches;
+        removedSincePrefetch.clear();
+    }
+
+    /**
+     * @return the ids of the persisted records having this match-point, or null if it wasn't prefetched
+     *         (in which case the caller has to query the database itself)
+     */
+    protected List<Long> getPrefetchedMatches(Object matchpoint) {
+        if (prefetchedMatches == null) {
+            return null;
+        }
+        List<Long> ids = prefetchedMatches.get(matchpoint);
+        if (ids == null || removedSincePrefetch.isEmpty()) {
+            return ids;
+        }
+        List<Long> stillPersisted = new ArrayList<Long>(ids.size());
+        for (Long id : ids) {
+            if (!removedSincePrefetch.contains(id)) {
+                stillPersisted.add(id);
+            }
+        }
+        return stillPersisted;
+    }
+
+    /**
+     * call when a record's match-points are deleted from the database.
+     */
+    protected void removeFromPrefetchedMatches(long id) {
+        if (prefetchedMatches != null) {
+            removedSincePrefetch.add(id);
+        }
+    }
+
+    /**
+     * call when match-points are added to the database, since prefetchedMatches won't know about them,
+     * and once the batch they were prefetched for is done.
+     */
+    public void clearPrefetchedMatches() {
+        prefetchedMatches = null;
+        removedSincePrefetch.clear();
+    }
+
     protected SolrServer getMASSolrServer() {
         MASSolrService mss = (MASSolrService)config.getBean("MASSolrService");
         return mss.getServer();
@@ -2,7 +2,6 @@ package xc.mst.services.marcaggregation.matcher;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -57,11 +56,9 @@ public class ISBNMatcher extends FieldMatcherService {
     //    and the normalized string
     //  note, originally were saving the whole string too, now I don't see a need!
     //
-    //protected Map<Long, List<String[]>> inputId2isbn = new HashMap<Long, List<String[]>>();
-    protected Map<Long, List<String>> inputId2isbn = new HashMap<Long, List<String>>();
-
+    //
     // multiple records might have the same normalized 020$a, this would be an indication of a match
-    protected Map<String, List<Long>> isbn2inputIds = new HashMap<String, List<Long>>();
+    protected StringMatchpointIndex isbnIndex = new StringMatchpointIndex();
 
     private static final Logger LOG = Logger.getLogger(ISBNMatcher.class);
 
@@ -91,25 +88,11 @@ public class ISBNMatcher extends FieldMatcherService {
      */
     public void removeRecordFromMatcher(InputRecord ir) {
         Long id   = new Long(ir.getId());
-        List<String> isbns = inputId2isbn.get(id);
-        if (isbns != null) {
-            for (String isbn: isbns) {
-                List<Long> inputIds = isbn2inputIds.get(isbn);
-                if (inputIds != null) {
-                    inputIds.remove(id);
-                    if (inputIds.size() > 0) {
-                        isbn2inputIds.put(isbn, inputIds);
-                    }
-                    else {
-                        isbn2inputIds.remove(isbn);
-                    }
-                }
-            }
-        }
-        inputId2isbn.remove(id);
+        isbnIndex.removeRecord(id);
 
         // keep database in sync.  Don't worry about the one-off performance hit...yet.
         getMAS().getMarcAggregationServiceDAO().deleteMergeRow(MarcAggregationServiceDAO.matchpoints_020a_table, id);
+        removeFromPrefetchedMatches(id);
     }
 
     @Override
@@ -126,23 +109,18 @@ public class ISBNMatcher extends FieldMatcherService {
 
             for (String subfield : subfields) {
                 String isbn = getIsbn(subfield);
-                if (isbn2inputIds.get(isbn) != null) {
-                	List<Long> m = isbn2inputIds.get(isbn);
-                	if (m != null && m.size() > 0) {
-                		results.addAll(m);
-                	}
-                    
-                    if (results.contains(id)) {
-                        results.remove(id);
+                for (long m : isbnIndex.getRecordIds(isbn)) {
+                    if (m != id && !results.contains(m)) {
+                        results.add(m);
                     }
                 }
 
-                //TODO can the below be made faster?  How to limit WHAT is queried?  My idea was to try to cache and prematch some of this but
-                //TODO    would then have to take that result set and come up with a query that is faster than this one!
-
-                // now look in the database too!
+                // now look in the database too! (unless the whole batch was already looked up, see prefetchMatchingInputIds)
                 //mysql -u root --password=root -D xc_marcaggregation -e 'select input_record_id  from matchpoints_020a where string_id = "24094664" '
-                List<Long> records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_020a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,isbn);
+                List<Long> records = getPrefetchedMatches(isbn);
+                if (records == null) {
+                    records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_020a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,isbn);
+                }
                 LOG.debug("ISBN, DAO, getMatching records for "+isbn+", numResults="+records.size());
                 for (Long record: records) {
                     if (!record.equals(id)) {
@@ -158,6 +136,19 @@ public class ISBNMatcher extends FieldMatcherService {
         return results;
     }
 
+    @Override
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records) {
+        Set<String> isbns = new HashSet<String>();
+        for (SaxMarcXmlRecord r : records) {
+            for (Field field : r.getDataFields(20)) {
+                for (String subfield : SaxMarcXmlRecord.getSubfieldOfField(field, 'a')) {
+                    isbns.add(getIsbn(subfield));
+                }
+            }
+        }
+        setPrefetchedMatches(getMAS().getMarcAggregationServiceDAO().getMatchingRecords(MarcAggregationServiceDAO.matchpoints_020a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,isbns));
+    }
+
     /**
      * quick and dirty test, if 1st char is a digit, let it slide.
      * @param isbn, allegedly
@@ -205,40 +196,12 @@ public class ISBNMatcher extends FieldMatcherService {
                     continue;   // bad data will cause trouble up the road.
                 }
 
-                //note, originally saved orig string too, but I don't see the need
-                //final String[] isbnArray = new String[] {isbn, subfield};  // its a pair of strings
-                //List<String[]> isbnList = inputId2isbn.get(id);
-                List<String> isbnList = inputId2isbn.get(id);
-
-                if (isbnList == null) {
-                    //isbnList = new ArrayList<String[]>();
-                    isbnList = new ArrayList<String>();
-                    isbnList.add(isbn);
-                    inputId2isbn.put(id, isbnList);
-                    LOG.debug("*** 1.adding to inputId2isbn, for id: " + id + " for isbn: " + isbn);
+                if (isbnIndex.add(id, isbn)) {
+                    LOG.debug("*** adding to isbnIndex, for id: " + id + " for isbn: " + isbn);
                 }
                 // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
-                else if (isbnList.contains(isbn)) {
-                    LOG.debug("** We have already seen isbn " + isbn + " for recordId: " + r.recordId);
-                }
                 else {
-                    isbnList.add(isbn);
-                    inputId2isbn.put(id, isbnList);
-                    LOG.debug("*** 2.adding to inputId2isbn, for id: " + id + " for isbn: " + isbn);
-                }
-
-                List<Long> ids = isbn2inputIds.get(isbn);
-                if (ids == null) {
-                    ids = new ArrayList<Long>();
-                }
-                if (!ids.contains(r.recordId)) {
-                    ids.add(r.recordId);
-                    isbn2inputIds.put(isbn, ids);
-                    LOG.debug("*** adding to isbn2inputIds, for isbn: " + isbn);
-                }
-                // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
-                else {
-                    LOG.debug("** We have already seen recordId: " + r.recordId);
+                    LOG.debug("** We have already seen isbn " + isbn + " for recordId: " + r.recordId);
                 }
             }
         }
@@ -290,9 +253,9 @@ public class ISBNMatcher extends FieldMatcherService {
     // TODO this can fail.  so to sanitize the table?
     @Override
     public void flush(boolean freeUpMemory) {
-        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(inputId2isbn, MarcAggregationServiceDAO.matchpoints_020a_table);
-        inputId2isbn.clear();
-        isbn2inputIds.clear();
+        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(isbnIndex, MarcAggregationServiceDAO.matchpoints_020a_table);
+        isbnIndex.clear();
+        clearPrefetchedMatches();
     }
 
     /**
@@ -300,14 +263,18 @@ public class ISBNMatcher extends FieldMatcherService {
      * @return the number of unique record ids the matcher holds
      */
     public int getNumRecordIdsInMatcher() {
-        //return inputId2isbn.size();
+        //return isbnIndex.getNumRecords();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 020 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_020a_table)+ " unique records in dB & "+inputId2isbn.size() +" records in mem.");
+        LOG.debug("** 020 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_020a_table)+ " unique records in dB & "+isbnIndex.getNumRecords() +" records in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_020a_table);
     }
     public Collection<Long> getRecordIdsInMatcher() {
-        return inputId2isbn.keySet();
+        List<Long> ids = new ArrayList<Long>();
+        for (long id : isbnIndex.getRecordIds()) {
+            ids.add(id);
+        }
+        return ids;
     }
 
     /**
@@ -315,10 +282,10 @@ public class ISBNMatcher extends FieldMatcherService {
      * @return  the number of strings the matcher holds (matchpoints)
      */
     public int getNumMatchPointsInMatcher() {
-        //return isbn2inputIds.size();
+        //return isbnIndex.getNumKeys();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 020 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_020a_table)+ " unique strings in dB & "+isbn2inputIds.size() +" strs in mem.");
+        LOG.debug("** 020 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_020a_table)+ " unique strings in dB & "+isbnIndex.getNumKeys() +" strs in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_020a_table);
     }
 }
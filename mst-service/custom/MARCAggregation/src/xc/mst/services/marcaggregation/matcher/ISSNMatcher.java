@@ -2,7 +2,6 @@ package xc.mst.services.marcaggregation.matcher;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -68,10 +67,8 @@ public class ISSNMatcher extends FieldMatcherService {
     //
     // note, orig saved orig string too, now I don't see point.
     //
-    protected Map<Long, List<String>> inputId2issn = new HashMap<Long, List<String>>();
-
     // multiple records might have the same normalized 022$a, this would be an indication of a match
-    protected Map<String, List<Long>> issn2inputIds = new HashMap<String, List<Long>>();
+    protected StringMatchpointIndex issnIndex = new StringMatchpointIndex();
 
     private static final Logger LOG = Logger.getLogger(ISSNMatcher.class);
 
@@ -108,17 +105,18 @@ public class ISSNMatcher extends FieldMatcherService {
 
             for (String subfield : subfields) {
                 String issn = getAllButDash(subfield);
-                List<Long> m = issn2inputIds.get(issn);
-                if (m != null && m.size() > 0) {
-                    results.addAll(m);
-                    if (results.contains(id)) {
-                        results.remove(id);
+                for (long m : issnIndex.getRecordIds(issn)) {
+                    if (m != id && !results.contains(m)) {
+                        results.add(m);
                     }
                 }
 
-                // now look in the database too!
+                // now look in the database too! (unless the whole batch was already looked up, see prefetchMatchingInputIds)
                 //mysql -u root --password=root -D xc_marcaggregation -e 'select input_record_id  from matchpoints_022a where string_id = "24094664" '
-                List<Long> records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_022a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,issn);
+                List<Long> records = getPrefetchedMatches(issn);
+                if (records == null) {
+                    records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_022a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,issn);
+                }
                 LOG.debug("ISSN, DAO, getMatching records for "+issn+", numResults="+records.size());
                 for (Long record: records) {
                     if (!record.equals(id)) {
@@ -134,31 +132,30 @@ public class ISSNMatcher extends FieldMatcherService {
         return results;
     }
 
+    @Override
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records) {
+        Set<String> issns = new HashSet<String>();
+        for (SaxMarcXmlRecord r : records) {
+            for (Field field : r.getDataFields(22)) {
+                for (String subfield : SaxMarcXmlRecord.getSubfieldOfField(field, 'a')) {
+                    issns.add(getAllButDash(subfield));
+                }
+            }
+        }
+        setPrefetchedMatches(getMAS().getMarcAggregationServiceDAO().getMatchingRecords(MarcAggregationServiceDAO.matchpoints_022a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,issns));
+    }
+
     @Override
     /**
      * when a record is updated/deleted, need to use this to
      */
     public void removeRecordFromMatcher(InputRecord ir) {
         Long id   = new Long(ir.getId());
-        List<String> issns = inputId2issn.get(id);
-        if (issns != null) {
-            for (String issn: issns) {
-                List<Long> inputIds = issn2inputIds.get(issn);
-                if (inputIds != null) {
-                    inputIds.remove(id);
-                    if (inputIds.size() > 0) {
-                        issn2inputIds.put(issn, inputIds);
-                    }
-                    else {
-                        issn2inputIds.remove(issn);
-                    }
-                }
-            }
-        }
-        inputId2issn.remove(id);
+        issnIndex.removeRecord(id);
 
         // keep database in sync.  Don't worry about the one-off performance hit...yet.
         getMAS().getMarcAggregationServiceDAO().deleteMergeRow(MarcAggregationServiceDAO.matchpoints_022a_table, id);
+        removeFromPrefetchedMatches(id);
     }
 
     @Override
@@ -178,52 +175,19 @@ public class ISSNMatcher extends FieldMatcherService {
                     LOG.error("** problem with 022$a ISSN in: " + r.recordId);
                     continue;   // bad data will cause trouble up the road.
                 }
-                List<String> issnList = inputId2issn.get(id);
-
-                if (issnList == null) {
-                    issnList = new ArrayList<String>();
-                    issnList.add(issn);
-                    inputId2issn.put(id, issnList);
-                    LOG.debug("*** 1.adding to inputId2issn, for id: " + id + " for issn: " + issn);
+                if (issnIndex.add(id, issn)) {
+                    LOG.debug("*** adding to issnIndex, for id: " + id + " for issn: " + issn);
                     if (debug) {
-                        LOG.info("*** 1.adding to inputId2issn, for id: " + id + " for issn: " + issn);
+                        LOG.info("*** adding to issnIndex, for id: " + id + " for issn: " + issn);
                     }
                 }
                 // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
-                else if (issnList.contains(issn)) {
+                else {
                     LOG.debug("** We have already seen issn " + issn + " for recordId: " + r.recordId);
                     if (debug) {
                         LOG.info("** We have already seen issn " + issn + " for recordId: " + r.recordId);
                     }
                 }
-                else {
-                    issnList.add(issn);
-                    inputId2issn.put(id, issnList);
-                    LOG.debug("*** 2.adding to inputId2issn, for id: " + id + " for issn: " + issn);
-                    if (debug) {
-                        LOG.info("*** 2.adding to inputId2issn, for id: " + id + " for issn: " + issn);
-                    }
-                }
-
-                List<Long> ids = issn2inputIds.get(issn);
-                if (ids == null) {
-                    ids = new ArrayList<Long>();
-                }
-                if (!ids.contains(r.recordId)) {
-                    ids.add(r.recordId);
-                    issn2inputIds.put(issn, ids);
-                    LOG.debug("*** adding to issn2recordIds, for issn: " + issn);
-                    if (debug) {
-                        LOG.info("*** adding to issn2recordIds, for issn: " + issn);
-                    }
-                }
-                // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
-                else {
-                    LOG.debug("** We have already seen recordId: " + r.recordId);
-                    if (debug) {
-                        LOG.info("** We have already seen recordId: " + r.recordId);
-                    }
-                }
             }
         }
     }
@@ -270,13 +234,17 @@ public class ISSNMatcher extends FieldMatcherService {
 
     @Override
     public void flush(boolean freeUpMemory) {
-        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(inputId2issn, MarcAggregationServiceDAO.matchpoints_022a_table);
-        inputId2issn.clear();
-        issn2inputIds.clear();
+        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(issnIndex, MarcAggregationServiceDAO.matchpoints_022a_table);
+        issnIndex.clear();
+        clearPrefetchedMatches();
     }
 
     public Collection<Long> getRecordIdsInMatcher() {
-        return inputId2issn.keySet();
+        List<Long> ids = new ArrayList<Long>();
+        for (long id : issnIndex.getRecordIds()) {
+            ids.add(id);
+        }
+        return ids;
     }
 
     /**
@@ -284,10 +252,10 @@ public class ISSNMatcher extends FieldMatcherService {
      * @return
      */
     public int getNumRecordIdsInMatcher() {
-        //return inputId2issn.size();
+        //return issnIndex.getNumRecords();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 022 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_022a_table)+ " unique records in dB & "+inputId2issn.size() +" records in mem.");
+        LOG.debug("** 022 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_022a_table)+ " unique records in dB & "+issnIndex.getNumRecords() +" records in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_022a_table);
     }
 
@@ -296,10 +264,10 @@ public class ISSNMatcher extends FieldMatcherService {
      * @return
      */
     public int getNumMatchPointsInMatcher() {
-        //return issn2inputIds.size();
+        //return issnIndex.getNumKeys();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 022 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_022a_table)+ " unique strings in dB & "+issn2inputIds.size() +" strs in mem.");
+        LOG.debug("** 022 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_022a_table)+ " unique strings in dB & "+issnIndex.getNumKeys() +" strs in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_022a_table);
     }
 
@@ -184,9 +184,12 @@ public class LccnMatcher extends FieldMatcherService {
                         results.remove(id);
                     }
                 }
-                // also, look in the database
+                // also, look in the database (unless the whole batch was already looked up, see prefetchMatchingInputIds)
                 //mysql -u root --password=root -D xc_marcaggregation -e 'select input_record_id  from matchpoints_010a where string_id = "24094664" '
-                List<Long> records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_010a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.numeric_id_field,goods);
+                List<Long> records = getPrefetchedMatches(goods);
+                if (records == null) {
+                    records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_010a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.numeric_id_field,goods);
+                }
                 LOG.debug("LCCN, DAO, getMatching records for "+goods+", numResults="+records.size());
                 for (Long record: records) {
                     if (!record.equals(id)) {
@@ -202,6 +205,22 @@ public class LccnMatcher extends FieldMatcherService {
         return results;
     }
 
+    @Override
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records) {
+        Set<Long> lccns = new HashSet<Long>();
+        for (SaxMarcXmlRecord r : records) {
+            for (Field field : r.getDataFields(10)) {
+                for (String subfield : SaxMarcXmlRecord.getSubfieldOfField(field, 'a')) {
+                    Long goods = new Long(getUniqueId(subfield));
+                    if (goods > 0L) {
+                        lccns.add(goods);
+                    }
+                }
+            }
+        }
+        setPrefetchedMatches(getMAS().getMarcAggregationServiceDAO().getMatchingNumericRecords(MarcAggregationServiceDAO.matchpoints_010a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.numeric_id_field,lccns));
+    }
+
     /**
      * when a record is updated/deleted, need to use this to
      */
@@ -231,6 +250,7 @@ public class LccnMatcher extends FieldMatcherService {
         // keep database in sync.  Don't worry about the one-off performance hit...yet.
         MarcAggregationService s = getMAS();
         s.getMarcAggregationServiceDAO().deleteMergeRow(MarcAggregationServiceDAO.matchpoints_010a_table, id);
+        removeFromPrefetchedMatches(id);
     }
 
     @Override
@@ -370,6 +390,7 @@ public class LccnMatcher extends FieldMatcherService {
             else {
                 s.getMarcAggregationServiceDAO().persistLongMatchpointMaps(inputId2lccn, MarcAggregationServiceDAO.matchpoints_010a_table, true);
             }
+            clearPrefetchedMatches();
             
         	// we persisted everything already; no need to keep in-memory objects too
             if (! keepAllCached) {
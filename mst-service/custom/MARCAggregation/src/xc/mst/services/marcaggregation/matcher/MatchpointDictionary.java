@@ -0,0 +1,307 @@
+/**
+  * Copyright (c) 2012 eXtensible Catalog Organization
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+  * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+  * website http://www.extensiblecatalog.org/.
+  *
+  */
+package xc.mst.services.marcaggregation.matcher;
+
+import gnu.trove.TIntArrayList;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Interns matchpoint strings, giving each distinct one a small int id.
+ *
+ * The strings aren't kept as String objects (~56 bytes apiece for a 13 digit ISBN).  Instead each
+ * one's UTF-8 bytes are appended to a single byte pool behind a length prefix, and an id is just
+ * an index into an int[] of pool offsets.  Lookups go through an open-addressed table of ids.
+ *
+ * Ids of removed strings are reused.  The pool space of removed strings is reclaimed when the pool
+ * next needs to grow, if at least half of it is unused.
+ */
+public class MatchpointDictionary {
+
+    protected static final int UNUSED = -1;
+
+    // length-prefixed utf-8 bytes of every string
+    protected byte[] pool = null;
+    protected int poolSize = 0;
+    protected int poolWasted = 0;
+
+    // id -> offset into pool, or UNUSED
+    protected int[] offsets = null;
+    protected int numIds = 0;
+    protected TIntArrayList freeIds = null;
+    protected int size = 0;
+
+    // open addressing (linear probing).  slots hold id+1, 0 is empty.
+    protected int[] table = null;
+
+    public MatchpointDictionary() {
+        clear();
+    }
+
+    public void clear() {
+        pool = new byte[1024];
+        poolSize = 0;
+        poolWasted = 0;
+        offsets = new int[16];
+        numIds = 0;
+        freeIds = new TIntArrayList();
+        size = 0;
+        table = new int[32];
+    }
+
+    /**
+     * @return the number of strings in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return one more than the highest id handed out so far
+     */
+    public int getIdLimit() {
+        return numIds;
+    }
+
+    /**
+     * @return the string's id, or -1 if it isn't in the dictionary
+     */
+    public int getId(String s) {
+        byte[] b = encode(s);
+        int slot = findSlot(b, hash(b, 0, b.length));
+        return table[slot] - 1;
+    }
+
+    /**
+     * @return the string's id, adding it first if necessary
+     */
+    public int add(String s) {
+        byte[] b = encode(s);
+        int h = hash(b, 0, b.length);
+        int slot = findSlot(b, h);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        // appended before the id is taken: append may compact the pool, which mustn't see an id without an offset
+        int off = append(b);
+        int id;
+        if (freeIds.size() > 0) {
+            id = freeIds.remove(freeIds.size() - 1);
+        } else {
+            if (numIds == offsets.length) {
+                offsets = Arrays.copyOf(offsets, numIds + (numIds >> 1));
+            }
+            id = numIds++;
+        }
+        offsets[id] = off;
+        table[slot] = id + 1;
+        size++;
+        if (size > table.length * 3 / 4) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * @return the string with this id, or null if the id isn't in use
+     */
+    public String get(int id) {
+        if (id < 0 || id >= numIds || offsets[id] == UNUSED) {
+            return null;
+        }
+        int off = offsets[id];
+        int len = readLength(off);
+        try {
+            return new String(pool, off + lengthOfLength(len), len, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    public void remove(int id) {
+        if (id < 0 || id >= numIds || offsets[id] == UNUSED) {
+            return;
+        }
+        int off = offsets[id];
+        int len = readLength(off);
+        int slot = hash(pool, off + lengthOfLength(len), len) & (table.length - 1);
+        while (table[slot] != id + 1) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        deleteSlot(slot);
+
+        poolWasted += lengthOfLength(len) + len;
+        offsets[id] = UNUSED;
+        freeIds.add(id);
+        size--;
+    }
+
+    protected byte[] encode(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+    }
+
+    protected int hash(byte[] b, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + b[i];
+        }
+        // spread the bits, since the table size is a power of 2
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    /**
+     * @return the slot holding b, or else the empty slot where it would go
+     */
+    protected int findSlot(byte[] b, int h) {
+        int mask = table.length - 1;
+        int slot = h & mask;
+        while (table[slot] != 0 && !equals(table[slot] - 1, b)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    protected boolean equals(int id, byte[] b) {
+        int off = offsets[id];
+        int len = readLength(off);
+        if (len != b.length) {
+            return false;
+        }
+        off += lengthOfLength(len);
+        for (int i = 0; i < len; i++) {
+            if (pool[off + i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * empties slot, moving later entries of the same probe run back so that they can still be found.
+     */
+    protected void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (table[i] == 0) {
+                break;
+            }
+            int home = homeSlot(table[i] - 1);
+            // move it into the gap unless its home lies cyclically within (gap, i]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    protected int homeSlot(int id) {
+        int off = offsets[id];
+        int len = readLength(off);
+        return hash(pool, off + lengthOfLength(len), len) & (table.length - 1);
+    }
+
+    protected void rehash(int capacity) {
+        int[] oldTable = table;
+        table = new int[capacity];
+        for (int v : oldTable) {
+            if (v != 0) {
+                int slot = homeSlot(v - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                table[slot] = v;
+            }
+        }
+    }
+
+    protected int append(byte[] b) {
+        int needed = lengthOfLength(b.length) + b.length;
+        if (poolSize + needed > pool.length) {
+            if (poolWasted >= poolSize / 2) {
+                compactPool();
+            }
+            if (poolSize + needed > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(poolSize + needed, pool.length + (pool.length >> 1)));
+            }
+        }
+        int off = poolSize;
+        int len = b.length;
+        while (len >= 0x80) {
+            pool[poolSize++] = (byte) (len | 0x80);
+            len >>>= 7;
+        }
+        pool[poolSize++] = (byte) len;
+        System.arraycopy(b, 0, pool, poolSize, b.length);
+        poolSize += b.length;
+        return off;
+    }
+
+    /**
+     * rewrites the pool without the bytes of removed strings.  Strings are moved in offset order, so
+     * each one only ever moves towards the start of the pool.  Hashes depend only on the bytes, so the
+     * table isn't affected.
+     */
+    protected void compactPool() {
+        // (offset, id) pairs, sorted by offset
+        long[] offIds = new long[size];
+        int n = 0;
+        for (int id = 0; id < numIds; id++) {
+            if (offsets[id] != UNUSED) {
+                offIds[n++] = ((long) offsets[id] << 32) | id;
+            }
+        }
+        Arrays.sort(offIds);
+        int newSize = 0;
+        for (long offId : offIds) {
+            int id = (int) offId;
+            int off = offsets[id];
+            int len = readLength(off);
+            int total = lengthOfLength(len) + len;
+            System.arraycopy(pool, off, pool, newSize, total);
+            offsets[id] = newSize;
+            newSize += total;
+        }
+        poolSize = newSize;
+        poolWasted = 0;
+    }
+
+    protected int readLength(int off) {
+        int len = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = pool[off++];
+            len |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return len;
+    }
+
+    protected int lengthOfLength(int len) {
+        int n = 1;
+        while (len >= 0x80) {
+            len >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+  * Copyright (c) 2012 eXtensible Catalog Organization
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+  * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+  * website http://www.extensiblecatalog.org/.
+  *
+  */
+package xc.mst.services.marcaggregation.matcher;
+
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An in-memory index of the string matchpoints (e.g. normalized 020$a, 022$a, 024$a) held by a
+ * FieldMatcher, in both directions: record id -> matchpoints and matchpoint -> record ids.
+ *
+ * This replaces a pair of Map<Long, List<String>> / Map<String, List<Long>>, which spend far more
+ * on boxing, map entries and mostly-empty ArrayLists than on the data itself.  Here each distinct
+ * matchpoint is interned once in a MatchpointDictionary, which gives it an int id.  Since most records have a single matchpoint
+ * and most matchpoints belong to a single record, those are stored inline as primitives
+ * (record id -> key id, key id -> record id); only records with several matchpoints get an int[]
+ * and only matchpoints with several records get a (sorted) long[].
+ *
+ * The id of a matchpoint that no longer has any records is reused by the next new matchpoint.
+ * Record ids must not be negative.
+ */
+public class StringMatchpointIndex {
+
+    protected static final float LOAD_FACTOR = 0.9f;
+
+    protected static final long[] NO_RECORDS = new long[0];
+
+    // values of recordsOfKey
+    protected static final long UNUSED_KEY = -1;
+    protected static final long MULTIPLE_RECORDS = -2;
+
+    // value of keyOfRecord
+    protected static final int MULTIPLE_KEYS = -1;
+
+    // matchpoint <-> key id
+    protected MatchpointDictionary keys = null;
+    // key id -> its only record id, or MULTIPLE_RECORDS (see multipleRecordsOfKey) or UNUSED_KEY
+    protected TLongArrayList recordOfKey = null;
+    protected TIntObjectHashMap<long[]> multipleRecordsOfKey = null;
+
+    // record id -> its only key id, or MULTIPLE_KEYS (see multipleKeysOfRecord)
+    protected TLongIntHashMap keyOfRecord = null;
+    protected TLongObjectHashMap<int[]> multipleKeysOfRecord = null;
+
+    public StringMatchpointIndex() {
+        clear();
+    }
+
+    /**
+     * @return false if the record already had this matchpoint
+     */
+    public boolean add(long recordId, String key) {
+        int keyId = getOrCreateKeyId(key);
+
+        if (!keyOfRecord.containsKey(recordId)) {
+            keyOfRecord.put(recordId, keyId);
+        } else {
+            int[] recKeys = getKeyIds(recordId);
+            for (int k : recKeys) {
+                if (k == keyId) {
+                    return false;
+                }
+            }
+            int[] newRecKeys = Arrays.copyOf(recKeys, recKeys.length + 1);
+            newRecKeys[recKeys.length] = keyId;
+            keyOfRecord.put(recordId, MULTIPLE_KEYS);
+            multipleKeysOfRecord.put(recordId, newRecKeys);
+        }
+
+        long only = recordOfKey.get(keyId);
+        if (only == UNUSED_KEY) {
+            recordOfKey.set(keyId, recordId);
+        } else {
+            long[] recs = only == MULTIPLE_RECORDS ? multipleRecordsOfKey.get(keyId) : new long[] { only };
+            int i = Arrays.binarySearch(recs, recordId);
+            if (i < 0) {
+                i = -i - 1;
+                long[] newRecs = new long[recs.length + 1];
+                System.arraycopy(recs, 0, newRecs, 0, i);
+                newRecs[i] = recordId;
+                System.arraycopy(recs, i, newRecs, i + 1, recs.length - i);
+                recordOfKey.set(keyId, MULTIPLE_RECORDS);
+                multipleRecordsOfKey.put(keyId, newRecs);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the ids of the records having this matchpoint, in ascending order.  Do not modify.
+     */
+    public long[] getRecordIds(String key) {
+        int keyId = keys.getId(key);
+        if (keyId == -1) {
+            return NO_RECORDS;
+        }
+        return getRecordIds(keyId);
+    }
+
+    /**
+     * @return the matchpoints of this record, in the order they were added
+     */
+    public List<String> getKeys(long recordId) {
+        if (!keyOfRecord.containsKey(recordId)) {
+            return null;
+        }
+        int[] recKeys = getKeyIds(recordId);
+        List<String> l = new ArrayList<String>(recKeys.length);
+        for (int k : recKeys) {
+            l.add(keys.get(k));
+        }
+        return l;
+    }
+
+    public boolean containsRecord(long recordId) {
+        return keyOfRecord.containsKey(recordId);
+    }
+
+    /**
+     * removes the record and all of its matchpoints.
+     */
+    public void removeRecord(long recordId) {
+        if (!keyOfRecord.containsKey(recordId)) {
+            return;
+        }
+        int[] recKeys = getKeyIds(recordId);
+        keyOfRecord.remove(recordId);
+        multipleKeysOfRecord.remove(recordId);
+
+        for (int keyId : recKeys) {
+            long[] recs = getRecordIds(keyId);
+            int i = Arrays.binarySearch(recs, recordId);
+            if (i < 0) {
+                continue;
+            }
+            if (recs.length == 1) {
+                releaseKeyId(keyId);
+            } else if (recs.length == 2) {
+                multipleRecordsOfKey.remove(keyId);
+                recordOfKey.set(keyId, recs[1 - i]);
+            } else {
+                long[] newRecs = new long[recs.length - 1];
+                System.arraycopy(recs, 0, newRecs, 0, i);
+                System.arraycopy(recs, i + 1, newRecs, i, recs.length - i - 1);
+                multipleRecordsOfKey.put(keyId, newRecs);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of every record in the index (unordered)
+     */
+    public long[] getRecordIds() {
+        return keyOfRecord.keys();
+    }
+
+    public int getNumRecords() {
+        return keyOfRecord.size();
+    }
+
+    /**
+     * @return the number of distinct matchpoints in the index
+     */
+    public int getNumKeys() {
+        return keys.size();
+    }
+
+    public void clear() {
+        keys = new MatchpointDictionary();
+        recordOfKey = new TLongArrayList();
+        multipleRecordsOfKey = new TIntObjectHashMap<long[]>(16, LOAD_FACTOR);
+        keyOfRecord = new TLongIntHashMap(16, LOAD_FACTOR);
+        multipleKeysOfRecord = new TLongObjectHashMap<int[]>(16, LOAD_FACTOR);
+    }
+
+    protected long[] getRecordIds(int keyId) {
+        long only = recordOfKey.get(keyId);
+        if (only == MULTIPLE_RECORDS) {
+            return multipleRecordsOfKey.get(keyId);
+        } else if (only == UNUSED_KEY) {
+            return NO_RECORDS;
+        } else {
+            return new long[] { only };
+        }
+    }
+
+    protected int[] getKeyIds(long recordId) {
+        int only = keyOfRecord.get(recordId);
+        if (only == MULTIPLE_KEYS) {
+            return multipleKeysOfRecord.get(recordId);
+        } else {
+            return new int[] { only };
+        }
+    }
+
+    protected int getOrCreateKeyId(String key) {
+        int keyId = keys.add(key);
+        while (recordOfKey.size() < keys.getIdLimit()) {
+            recordOfKey.add(UNUSED_KEY);
+        }
+        return keyId;
+    }
+
+    protected void releaseKeyId(int keyId) {
+        keys.remove(keyId);
+        recordOfKey.set(keyId, UNUSED_KEY);
+        multipleRecordsOfKey.remove(keyId);
+    }
+}
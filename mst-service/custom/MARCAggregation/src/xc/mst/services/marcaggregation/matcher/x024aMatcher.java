@@ -2,7 +2,6 @@ package xc.mst.services.marcaggregation.matcher;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -34,10 +33,8 @@ import xc.mst.utils.Util;
 public class x024aMatcher extends FieldMatcherService {
 
     // you can have multiple 024$a fields within a record (mult 024, each w/1 $a)
-    protected Map<Long, List<String>> inputId2x024a = new HashMap<Long, List<String>>();
-
     // multiple records might have the same normalized 024$a, this would be an indication of a match
-    protected Map<String, List<Long>> x024a2inputIds = new HashMap<String, List<Long>>();
+    protected StringMatchpointIndex x024aIndex = new StringMatchpointIndex();
 
     private static final Logger LOG = Logger.getLogger(x024aMatcher.class);
     private boolean debug = false;
@@ -67,17 +64,18 @@ public class x024aMatcher extends FieldMatcherService {
             for (String subfield : subfields) {
                 if (StringUtils.isNotEmpty(subfield)) {
                     String goods = getFieldDataIntoCorrectFormat(field, subfield);
-                    List<Long> m = x024a2inputIds.get(goods);
-                    if (m != null && m.size() > 0) {
-                        results.addAll(m);
-                        if (results.contains(id)) {
-                            results.remove(id);
+                    for (long m : x024aIndex.getRecordIds(goods)) {
+                        if (m != id && !results.contains(m)) {
+                            results.add(m);
                         }
                     }
 
-                    // now look in the database too!
+                    // now look in the database too! (unless the whole batch was already looked up, see prefetchMatchingInputIds)
                     //mysql -u root --password=root -D xc_marcaggregation -e 'select input_record_id  from matchpoints_022a where string_id = "24094664" '
-                    List<Long> records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_024a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,goods);
+                    List<Long> records = getPrefetchedMatches(goods);
+                    if (records == null) {
+                        records = masDao.getMatchingRecords(MarcAggregationServiceDAO.matchpoints_024a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,goods);
+                    }
                     LOG.debug("024$a, DAO, getMatching records for "+goods+", numResults="+records.size());
                     for (Long record: records) {
                         if (!record.equals(id)) {
@@ -94,6 +92,21 @@ public class x024aMatcher extends FieldMatcherService {
         return results;
     }
 
+    @Override
+    public void prefetchMatchingInputIds(List<SaxMarcXmlRecord> records) {
+        Set<String> x024as = new HashSet<String>();
+        for (SaxMarcXmlRecord r : records) {
+            for (Field field : r.getDataFields(24)) {
+                for (String subfield : SaxMarcXmlRecord.getSubfieldOfField(field, 'a')) {
+                    if (StringUtils.isNotEmpty(subfield)) {
+                        x024as.add(getFieldDataIntoCorrectFormat(field, subfield));
+                    }
+                }
+            }
+        }
+        setPrefetchedMatches(getMAS().getMarcAggregationServiceDAO().getMatchingRecords(MarcAggregationServiceDAO.matchpoints_024a_table, MarcAggregationServiceDAO.input_record_id_field,MarcAggregationServiceDAO.string_id_field,x024as));
+    }
+
     @Override
     /**
      * when a record is updated/deleted, need to use this to
@@ -101,25 +114,11 @@ public class x024aMatcher extends FieldMatcherService {
     public void removeRecordFromMatcher(InputRecord ir) {
 
         Long id   = new Long(ir.getId());
-        List<String> x024s = inputId2x024a.get(id);
-        if (x024s != null) {
-            for (String x024: x024s) {
-                List<Long> inputIds = x024a2inputIds.get(x024);
-                if (inputIds != null) {
-                    inputIds.remove(id);
-                    if (inputIds.size() > 0) {
-                        x024a2inputIds.put(x024, inputIds);
-                    }
-                    else {
-                        x024a2inputIds.remove(x024);
-                    }
-                }
-            }
-        }
-        inputId2x024a.remove(id);
+        x024aIndex.removeRecord(id);
 
         // keep database in sync.  Don't worry about the one-off performance hit...yet.
         getMAS().getMarcAggregationServiceDAO().deleteMergeRow(MarcAggregationServiceDAO.matchpoints_024a_table, id);
+        removeFromPrefetchedMatches(id);
     }
 
     @Override
@@ -134,7 +133,6 @@ public class x024aMatcher extends FieldMatcherService {
                 if (debug) {
                     Util.getUtil().printStackTrace("who got me here?");
                 }
-                List<String> list = inputId2x024a.get(id);
                 String goods = getFieldDataIntoCorrectFormat(field, subfield);
                 
                 if (StringUtils.isEmpty(goods)) {
@@ -142,35 +140,13 @@ public class x024aMatcher extends FieldMatcherService {
                     continue;   // bad data will cause trouble up the road.                	
                 }
 
-                if (list == null) {
-                    list = new ArrayList<String>();
-                    list.add(goods);
-                    inputId2x024a.put(id, list);
-                    LOG.debug("*** 1.adding to recordId2x024a, for id: " + id + " for x024$a: " + goods);
+                if (x024aIndex.add(id, goods)) {
+                    LOG.debug("*** adding to x024aIndex, for id: " + id + " for x024$a: " + goods);
                 }
                 // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
                 // TODO fix that!
-                else if (list.contains(goods)) {
-                    LOG.debug("** We have already seen x024$a " + goods + " for recordId: " + r.recordId);
-                }
-                else {
-                    list.add(goods);
-                    inputId2x024a.put(id, list);
-                    LOG.debug("*** 2.adding to recordId2x024a, for id: " + id + " for x024$a: " + goods);
-                }
-
-                List<Long> ids = x024a2inputIds.get(goods);
-                if (ids == null) {
-                    ids = new ArrayList<Long>();
-                }
-                if (!ids.contains(r.recordId)) {
-                    ids.add(r.recordId);
-                    x024a2inputIds.put(goods, ids);
-                    LOG.debug("*** adding to x024a2inputIds, for x024$a: " + goods);
-                }
-                // Just because we have seen it, it is not an error, it just means multiple match rules use this matcher.
                 else {
-                    LOG.debug("** We have already seen recordId: " + r.recordId);
+                    LOG.debug("** We have already seen x024$a " + goods + " for recordId: " + r.recordId);
                 }
             }
         }
@@ -231,9 +207,9 @@ public class x024aMatcher extends FieldMatcherService {
 
     @Override
     public void flush(boolean freeUpMemory) {
-        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(inputId2x024a, MarcAggregationServiceDAO.matchpoints_024a_table);
-        inputId2x024a.clear();
-        x024a2inputIds.clear();
+        getMAS().getMarcAggregationServiceDAO().persist1StrMatchpointMaps(x024aIndex, MarcAggregationServiceDAO.matchpoints_024a_table);
+        x024aIndex.clear();
+        clearPrefetchedMatches();
     }
 
     /**
@@ -241,14 +217,18 @@ public class x024aMatcher extends FieldMatcherService {
      * @return
      */
     public int getNumRecordIdsInMatcher() {
-        //return inputId2x024a.size();
+        //return x024aIndex.getNumRecords();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 024 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_024a_table)+ " unique records in dB & "+inputId2x024a.size() +" records in mem.");
+        LOG.debug("** 024 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_024a_table)+ " unique records in dB & "+x024aIndex.getNumRecords() +" records in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueRecordIds(MarcAggregationServiceDAO.matchpoints_024a_table);
     }
     public Collection<Long> getRecordIdsInMatcher() {
-        return inputId2x024a.keySet();
+        List<Long> ids = new ArrayList<Long>();
+        for (long id : x024aIndex.getRecordIds()) {
+            ids.add(id);
+        }
+        return ids;
     }
 
     /**
@@ -256,10 +236,10 @@ public class x024aMatcher extends FieldMatcherService {
      * @return
      */
     public int getNumMatchPointsInMatcher() {
-        //return x024a2inputIds.size();
+        //return x024aIndex.getNumKeys();
 
         MarcAggregationService s = getMAS();
-        LOG.debug("** 024 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_024a_table)+ " unique strings in dB & "+x024a2inputIds.size() +" strs in mem.");
+        LOG.debug("** 024 matcher contains "+s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_024a_table)+ " unique strings in dB & "+x024aIndex.getNumKeys() +" strs in mem.");
         return s.getMarcAggregationServiceDAO().getNumUniqueStringIds(MarcAggregationServiceDAO.matchpoints_024a_table);
     }
 
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.record.SaxMarcXmlRecord;
+import xc.mst.bo.record.marc.Field;
+import xc.mst.bo.record.marc.Subfield;
+import xc.mst.service.impl.test.MockHarvestTest;
+
+/**
+ * SaxMarcXmlRecord parsed compact against the same record parsed into a MarcRecord, over the
+ * mock harvest fixtures.  Doesn't need a database.
+ */
+public class CompactMarcRecordTest {
+
+    protected static final Namespace MARC_NAMESPACE = Namespace.getNamespace("marc", "http://www.loc.gov/MARC21/slim");
+
+    // tags with both control and data fields, and 880 and 9XX fields that are retagged and filtered
+    protected static final String MIXED_RECORD =
+        "<marc:record xmlns:marc=\"http://www.loc.gov/MARC21/slim\">" +
+        "<marc:leader>00000cam a2200000 a 4500</marc:leader>" +
+        "<marc:datafield tag=\"004\" ind1=\" \" ind2=\" \"><marc:subfield code=\"a\">lost</marc:subfield></marc:datafield>" +
+        "<marc:controlfield tag=\"001\">12345</marc:controlfield>" +
+        "<marc:controlfield tag=\"003\">NRU</marc:controlfield>" +
+        "<marc:controlfield tag=\"004\">6789</marc:controlfield>" +
+        "<marc:datafield tag=\"004\" ind1=\"1\" ind2=\" \"><marc:subfield code=\"a\">listed</marc:subfield></marc:datafield>" +
+        "<marc:controlfield tag=\"004\">6790</marc:controlfield>" +
+        "<marc:datafield tag=\"001\" ind1=\" \" ind2=\" \"><marc:subfield code=\"a\">after</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"014\" ind1=\"1\" ind2=\" \"><marc:subfield code=\"a\">555</marc:subfield><marc:subfield code=\"b\">NRU</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"035\" ind1=\" \" ind2=\" \"><marc:subfield code=\"a\">(OCoLC)ocm42</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"880\" ind1=\"1\" ind2=\"0\"><marc:subfield code=\"6\">245-01</marc:subfield><marc:subfield code=\"a\">Title</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"245\" ind1=\"1\" ind2=\"0\"><marc:subfield code=\"a\">Titre été 中文</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"945\" ind1=\" \" ind2=\" \"><marc:subfield code=\"a\">kept</marc:subfield><marc:subfield code=\"5\">NRU</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"945\" ind1=\" \" ind2=\" \"><marc:subfield code=\"a\">dropped</marc:subfield><marc:subfield code=\"5\">OTHER</marc:subfield></marc:datafield>" +
+        "<marc:datafield tag=\"500\" ind1=\"\" ind2=\" \"><marc:subfield>no code</marc:subfield><marc:subfield code=\"a\"></marc:subfield></marc:datafield>" +
+        "</marc:record>";
+
+    /**
+     * Gets at parse, so a record that fails part way through can still be looked at.
+     */
+    protected static class PartialRecord extends SaxMarcXmlRecord {
+        public PartialRecord(String marcXml, boolean compact) {
+            super(null, compact);
+            try {
+                parse(marcXml);
+            } catch (RuntimeException re) {
+                // keep what was parsed
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<String> getFixtures() {
+        List<File> files = new ArrayList<File>();
+        listXmlFiles(new File(MockHarvestTest.INPUT_FOLDER), files);
+        Collections.sort(files);
+        SAXBuilder builder = new SAXBuilder();
+        XMLOutputter outputter = new XMLOutputter();
+        List<String> records = new ArrayList<String>();
+        for (File file : files) {
+            Document doc = null;
+            try {
+                doc = builder.build(file);
+            } catch (Exception e) {
+                // a few fixtures are deliberately broken
+                continue;
+            }
+            Iterator<Element> it = doc.getDescendants(new ElementFilter("record", MARC_NAMESPACE));
+            while (it.hasNext()) {
+                records.add(outputter.outputString(it.next()));
+            }
+        }
+        return records;
+    }
+
+    protected void listXmlFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listXmlFiles(child, files);
+            } else if (child.getName().endsWith(".xml")) {
+                files.add(child);
+            }
+        }
+    }
+
+    protected void describe(StringBuilder sb, List<Field> fields) {
+        for (Field f : fields) {
+            sb.append(" [").append(f.getTag()).append(' ').append(f.getInd1()).append(f.getInd2());
+            sb.append(" <").append(f.getContents()).append('>');
+            for (Subfield sf : f.getSubfields()) {
+                sb.append(" $").append(sf.getCode()).append(sf.getContents());
+            }
+            sb.append(']');
+        }
+    }
+
+    /**
+     * @return what each accessor returns for this record
+     */
+    protected String describe(SaxMarcXmlRecord r) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("leader: ").append(r.getLeader()).append('\n');
+        sb.append("org code: ").append(r.getOrgCode()).append('\n');
+        for (int tag = 0; tag < 1000; tag++) {
+            String controlField = r.getControlField(tag);
+            if (controlField != null) {
+                sb.append(tag).append(" control: ").append(controlField).append('\n');
+            }
+            List<Field> fields = r.getDataFields(tag);
+            if (fields.isEmpty()) {
+                continue;
+            }
+            sb.append(tag).append(" fields:");
+            describe(sb, fields);
+            sb.append('\n');
+            Set<Character> codes = new LinkedHashSet<Character>();
+            codes.add('a');
+            for (Field f : fields) {
+                for (Subfield sf : f.getSubfields()) {
+                    codes.add(sf.getCode());
+                }
+            }
+            for (char code : codes) {
+                sb.append(tag).append(" $").append(code).append(": ").append(r.getSubfield(tag, code)).append('\n');
+            }
+        }
+        sb.append("004s: ").append(r.get004s()).append('\n');
+        sb.append("014s: ").append(r.get014s('1', 'a', 'b', r.getControlField(3)));
+        sb.append(' ').append(r.get014s(' ', 'a', 'b', r.getControlField(3))).append('\n');
+        sb.append("945s:");
+        describe(sb, r.get945());
+        sb.append('\n');
+        sb.append("001 or 035s: ").append(r.getBib001_or_035s()).append('\n');
+        return sb.toString();
+    }
+
+    protected void assertSame(String xml) {
+        SaxMarcXmlRecord compact = new SaxMarcXmlRecord(xml, null, true);
+        Assert.assertNotNull(compact.getCompactRecord());
+        Assert.assertEquals(describe(compact), describe(new SaxMarcXmlRecord(xml, null, false)), xml);
+    }
+
+    protected void assertSameAtEachCut(String xml) {
+        for (int i = 0; i < xml.length(); i++) {
+            String cut = xml.substring(0, i);
+            PartialRecord compact = new PartialRecord(cut, true);
+            Assert.assertNotNull(compact.getCompactRecord());
+            Assert.assertEquals(describe(compact), describe(new PartialRecord(cut, false)), cut);
+        }
+    }
+
+    @Test
+    public void testFixtures() {
+        List<String> records = getFixtures();
+        Assert.assertFalse(records.isEmpty());
+        for (String xml : records) {
+            assertSame(xml);
+        }
+    }
+
+    @Test
+    public void testMixedTags() {
+        assertSame(MIXED_RECORD);
+
+        SaxMarcXmlRecord r = new SaxMarcXmlRecord(MIXED_RECORD, null, true);
+        // the 004 data field before the first 004 control field is dropped, the one after is listed with them
+        Assert.assertEquals(r.getDataFields(4).size(), 3);
+        Assert.assertEquals(r.get004s(), Arrays.asList("6789", null, "6790"));
+        Assert.assertEquals(r.getSubfield(4, 'a'), Arrays.asList("listed"));
+        Assert.assertEquals(r.getControlField(1), "12345");
+        Assert.assertEquals(r.getSubfield(1, 'a'), Arrays.asList("after"));
+        Assert.assertEquals(r.getSubfield(245, 'a').size(), 2);
+        Assert.assertEquals(r.getSubfield(945, 'a'), Arrays.asList("kept"));
+        Assert.assertTrue(r.getDataFields(880).isEmpty());
+    }
+
+    @Test
+    public void testTruncated() {
+        assertSameAtEachCut(MIXED_RECORD);
+        assertSameAtEachCut(getFixtures().get(0));
+
+        // cut off inside the 004 control field
+        String cut = MIXED_RECORD.substring(0, MIXED_RECORD.indexOf("6789"));
+        SaxMarcXmlRecord r = new PartialRecord(cut, true);
+        Assert.assertEquals(r.getControlField(1), "12345");
+        Assert.assertEquals(r.get004s(), Arrays.asList((String) null));
+        Assert.assertEquals(r.getOrgCode(), "NRU");
+    }
+}
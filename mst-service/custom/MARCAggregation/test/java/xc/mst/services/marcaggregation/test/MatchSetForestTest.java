@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import xc.mst.services.marcaggregation.MatchSetForest;
+
+/**
+ * MatchSetForest against a naive list of sets.  Doesn't need a database.
+ */
+public class MatchSetForestTest {
+
+    protected HashSet<Long> set(long... ids) {
+        HashSet<Long> set = new HashSet<Long>();
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    @Test
+    public void testAddAndFind() {
+        MatchSetForest forest = new MatchSetForest();
+        assert !forest.contains(1);
+        assert forest.getSet(1).isEmpty();
+
+        forest.add(1);
+        assert forest.contains(1);
+        assert forest.find(1) == 1;
+        assert forest.getSet(1).equals(set(1));
+
+        // find adds an id it hasn't seen
+        assert forest.find(2) == 2;
+        assert forest.size() == 2;
+        assert forest.getSets().size() == 2;
+    }
+
+    @Test
+    public void testUnion() {
+        MatchSetForest forest = new MatchSetForest();
+        forest.union(1, 2);
+        forest.union(3, 4);
+        assert forest.find(1) == forest.find(2);
+        assert forest.find(1) != forest.find(3);
+        assert forest.getSet(2).equals(set(1, 2));
+
+        long root = forest.union(2, 4);
+        assert forest.find(1) == root && forest.find(3) == root;
+        assert forest.getSet(3).equals(set(1, 2, 3, 4));
+
+        // already in the same set
+        assert forest.union(1, 4) == root;
+        assert forest.getSet(1).equals(set(1, 2, 3, 4));
+        assert forest.getSets().size() == 1;
+        assert forest.size() == 4;
+    }
+
+    @Test
+    public void testUnionCollection() {
+        MatchSetForest forest = new MatchSetForest();
+        forest.union(Arrays.asList(5L, 6L, 7L));
+        forest.union(Arrays.asList(8L));
+        forest.union(Arrays.asList(9L, 7L));
+        List<HashSet<Long>> sets = forest.getSets();
+        assert sets.size() == 2;
+        assert sets.contains(set(5, 6, 7, 9));
+        assert sets.contains(set(8));
+
+        forest.clear();
+        assert forest.size() == 0;
+        assert forest.getSets().isEmpty();
+    }
+
+    @Test
+    public void testRandomUnions() {
+        MatchSetForest forest = new MatchSetForest();
+        // id -> the naive set holding it
+        Map<Long, Set<Long>> naive = new HashMap<Long, Set<Long>>();
+        Random r = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long a = r.nextInt(10000);
+            long b = r.nextInt(10000);
+            forest.union(a, b);
+            Set<Long> sa = naive.get(a);
+            if (sa == null) {
+                sa = new HashSet<Long>();
+                sa.add(a);
+                naive.put(a, sa);
+            }
+            Set<Long> sb = naive.get(b);
+            if (sb == null) {
+                sb = new HashSet<Long>();
+                sb.add(b);
+                naive.put(b, sb);
+            }
+            if (sa != sb) {
+                sa.addAll(sb);
+                for (Long id : sb) {
+                    naive.put(id, sa);
+                }
+            }
+        }
+        assert forest.size() == naive.size();
+        for (Map.Entry<Long, Set<Long>> e : naive.entrySet()) {
+            assert forest.getSet(e.getKey()).equals(e.getValue());
+        }
+        int total = 0;
+        for (HashSet<Long> set : forest.getSets()) {
+            assert set.equals(naive.get(set.iterator().next()));
+            total += set.size();
+        }
+        // every id is in exactly one set
+        assert total == naive.size();
+    }
+}
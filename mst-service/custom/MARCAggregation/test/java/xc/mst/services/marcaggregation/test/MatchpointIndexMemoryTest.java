@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.marcaggregation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.testng.annotations.Test;
+
+import xc.mst.services.marcaggregation.matcher.MatchpointDictionary;
+import xc.mst.services.marcaggregation.matcher.StringMatchpointIndex;
+
+/**
+ * Compares the heap used by a StringMatchpointIndex to that of the pair of boxed maps
+ * (Map<Long, List<String>> / Map<String, List<Long>>) the string matchers used to keep, for the
+ * same synthetic set of ISBN-like matchpoints.  Doesn't need a database.
+ *
+ * As in the matchers, each record's matchpoints are freshly normalized String objects, so the maps
+ * end up holding one String per record-matchpoint pair, while the index only keeps the bytes of each
+ * distinct matchpoint once.
+ */
+public class MatchpointIndexMemoryTest {
+
+    private static final Logger LOG = Logger.getLogger(MatchpointIndexMemoryTest.class);
+
+    protected static final int NUM_RECORDS = 500000;
+
+    // roughly a union catalog: most records have one matchpoint, some have two or three,
+    // and about a third of matchpoints are shared by more than one record.
+    protected long[][] getMatchpoints() {
+        Random r = new Random(1234);
+        long[][] matchpoints = new long[NUM_RECORDS][];
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            int n = 1 + (r.nextInt(10) == 0 ? 1 + r.nextInt(2) : 0);
+            matchpoints[i] = new long[n];
+            for (int j = 0; j < n; j++) {
+                matchpoints[i][j] = 9780000000000L + r.nextInt((int) (NUM_RECORDS * 0.8));
+            }
+        }
+        return matchpoints;
+    }
+
+    protected long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Test
+    public void testRemove() {
+        StringMatchpointIndex index = new StringMatchpointIndex();
+        index.add(3, "a");
+        index.add(1, "a");
+        index.add(2, "a");
+        index.add(2, "b");
+        assert !index.add(2, "b");
+        assert Arrays.equals(index.getRecordIds("a"), new long[] { 1, 2, 3 });
+        assert index.getKeys(2).equals(Arrays.asList("a", "b"));
+
+        index.removeRecord(2);
+        assert Arrays.equals(index.getRecordIds("a"), new long[] { 1, 3 });
+        assert index.getRecordIds("b").length == 0;
+        assert index.getNumKeys() == 1;
+        assert index.getNumRecords() == 2;
+
+        // "b"'s id gets reused
+        index.add(4, "c");
+        assert index.getNumKeys() == 2;
+        assert Arrays.equals(index.getRecordIds("c"), new long[] { 4 });
+        assert index.getKeys(4).equals(Arrays.asList("c"));
+    }
+
+    protected String pad(String s, int len) {
+        StringBuilder sb = new StringBuilder(s);
+        while (sb.length() < len) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    // a new id whose string makes the pool compact used to be counted as live before it had an offset
+    @Test
+    public void testDictionaryCompactsWhileAddingNewId() {
+        MatchpointDictionary dict = new MatchpointDictionary();
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        for (int i = 0; i < 40; i++) {
+            String s = pad("a" + i, 20);
+            expected.put(dict.add(s), s);
+        }
+        for (int id = 0; id < 30; id++) {
+            dict.remove(id);
+            expected.remove(id);
+        }
+        // use up the free ids with short strings, so that the pool is still mostly wasted space
+        for (int i = 0; i < 30; i++) {
+            String s = "b" + (char) ('a' + i);
+            expected.put(dict.add(s), s);
+        }
+        assert dict.getIdLimit() == 40;
+        // these need new ids, and the first one no longer fits in the pool
+        for (int i = 0; i < 5; i++) {
+            String s = pad("c" + i, 200);
+            int id = dict.add(s);
+            assert id >= 40;
+            expected.put(id, s);
+        }
+        assert dict.size() == expected.size();
+        for (Map.Entry<Integer, String> e : expected.entrySet()) {
+            assert e.getValue().equals(dict.get(e.getKey()));
+            assert dict.getId(e.getValue()) == e.getKey();
+        }
+    }
+
+    @Test
+    public void testDictionaryChurn() {
+        MatchpointDictionary dict = new MatchpointDictionary();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        List<String> live = new ArrayList<String>();
+        Random r = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            if (live.isEmpty() || r.nextInt(3) != 0) {
+                String s = pad(String.valueOf(r.nextInt(50000)), 1 + r.nextInt(40));
+                int id = dict.add(s);
+                Integer old = expected.put(s, id);
+                assert old == null || old == id;
+                if (old == null) {
+                    live.add(s);
+                }
+            } else {
+                String s = live.remove(r.nextInt(live.size()));
+                dict.remove(expected.remove(s));
+            }
+        }
+        assert dict.size() == expected.size();
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+            assert dict.getId(e.getKey()) == e.getValue();
+            assert e.getKey().equals(dict.get(e.getValue()));
+        }
+    }
+
+    @Test
+    public void testMemory() {
+        long[][] matchpoints = getMatchpoints();
+
+        long before = usedMemory();
+        Map<Long, List<String>> inputId2isbn = new HashMap<Long, List<String>>();
+        Map<String, List<Long>> isbn2inputIds = new HashMap<String, List<Long>>();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            Long id = new Long(i);
+            for (long isbnNum : matchpoints[i]) {
+                String isbn = String.valueOf(isbnNum);
+                List<String> isbnList = inputId2isbn.get(id);
+                if (isbnList == null) {
+                    isbnList = new ArrayList<String>();
+                    inputId2isbn.put(id, isbnList);
+                }
+                if (!isbnList.contains(isbn)) {
+                    isbnList.add(isbn);
+                }
+                List<Long> ids = isbn2inputIds.get(isbn);
+                if (ids == null) {
+                    ids = new ArrayList<Long>();
+                    isbn2inputIds.put(isbn, ids);
+                }
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        long mapsBytes = usedMemory() - before;
+        LOG.info("boxed maps: " + inputId2isbn.size() + " records, " + isbn2inputIds.size() + " matchpoints");
+        inputId2isbn = null;
+        isbn2inputIds = null;
+
+        before = usedMemory();
+        StringMatchpointIndex index = new StringMatchpointIndex();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            for (long isbnNum : matchpoints[i]) {
+                index.add(i, String.valueOf(isbnNum));
+            }
+        }
+        long indexBytes = usedMemory() - before;
+        LOG.info("index: " + index.getNumRecords() + " records, " + index.getNumKeys() + " matchpoints");
+
+        double ratio = (double) mapsBytes / indexBytes;
+        LOG.info("boxed maps: " + mapsBytes / 1024 + " KB, index: " + indexBytes / 1024 + " KB, ratio: " + ratio);
+        assert ratio >= 4;
+    }
+}
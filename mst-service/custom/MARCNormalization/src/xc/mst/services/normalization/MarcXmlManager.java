@@ -10,16 +10,22 @@
 package xc.mst.services.normalization;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 import org.jdom.Attribute;
 import org.jdom.Element;
+import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.xpath.XPath;
 
@@ -47,6 +53,30 @@ public class MarcXmlManager {
 
     protected static boolean useXpath = false;
 
+    /**
+     * Compiled XPath expressions by expression. Compiling is much more expensive than evaluating, and
+     * the expressions only vary by tag/subfield, so each thread compiles each one once. (JDOM's XPath
+     * objects can't be shared between threads.)
+     */
+    private static final ThreadLocal<Map<String, XPath>> compiledXPaths = new ThreadLocal<Map<String, XPath>>() {
+        protected Map<String, XPath> initialValue() {
+            return new HashMap<String, XPath>();
+        }
+    };
+
+    /**
+     * The record's datafields by tag, in document order. Built with a single pass over the record the
+     * first time a field is looked up by tag, and dropped whenever a datafield is added or removed.
+     */
+    protected Map<String, List<Element>> dataFieldsByTag = null;
+
+    /**
+     * The order of each indexed datafield in the record, for merging the fields of several tags.
+     * Fields are only ever appended to the record, so later fields just get higher numbers.
+     */
+    protected Map<Element, Integer> dataFieldOrder = null;
+    protected int nextDataFieldOrder = 0;
+
     /**
      * A set of linking tags currently existing on the MARC XML record
      */
@@ -90,8 +120,7 @@ public class MarcXmlManager {
             TimingLogger.start("MarcXmlManager.xpath");
             TimingLogger.start("xpath");
             if (useXpath) {
-                XPath xpath = XPath.newInstance(".//marc:subfield[@code='8']");
-                xpath.addNamespace("marc", "http://www.loc.gov/MARC21/slim");
+                XPath xpath = getXPath(".//marc:subfield[@code='8']");
                 elements = xpath.selectNodes(marcXml);
             } else {
                 elements = new ArrayList<Element>();
@@ -128,6 +157,99 @@ public class MarcXmlManager {
         return usedLinkingFields.contains(linkingField);
     }
 
+    /**
+     * @return the compiled form of an XPath expression (with the marc namespace)
+     */
+    protected static XPath getXPath(String expression) throws JDOMException {
+        Map<String, XPath> xpaths = compiledXPaths.get();
+        XPath xpath = xpaths.get(expression);
+        if (xpath == null) {
+            xpath = XPath.newInstance(expression);
+            xpath.addNamespace(marcNamespace);
+            xpaths.put(expression, xpath);
+        }
+        return xpath;
+    }
+
+    /**
+     * Gets the datafields with the passed tag from the index, building it first if necessary.
+     *
+     * @return the datafields with the passed tag, in document order. Do not modify.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Element> getIndexedDataFields(String tag) {
+        if (dataFieldsByTag == null) {
+            TimingLogger.start("indexDataFields");
+            startDataFieldIndex();
+            for (Element field : (List<Element>) marcXml.getChildren("datafield", marcXml.getNamespace())) {
+                indexDataField(field);
+            }
+            TimingLogger.stop("indexDataFields");
+        }
+        List<Element> fields = dataFieldsByTag.get(tag);
+        return fields == null ? Collections.<Element> emptyList() : fields;
+    }
+
+    /**
+     * @return the datafields with any of the passed tags, in document order
+     */
+    protected List<Element> getIndexedDataFields(Collection<String> tags) {
+        List<Element> fields = new ArrayList<Element>();
+        for (String tag : new HashSet<String>(tags)) {
+            fields.addAll(getIndexedDataFields(tag));
+        }
+        Collections.sort(fields, new Comparator<Element>() {
+            public int compare(Element field1, Element field2) {
+                return dataFieldOrder.get(field1).compareTo(dataFieldOrder.get(field2));
+            }
+        });
+        return fields;
+    }
+
+    protected void startDataFieldIndex() {
+        dataFieldsByTag = new HashMap<String, List<Element>>();
+        dataFieldOrder = new HashMap<Element, Integer>();
+        nextDataFieldOrder = 0;
+    }
+
+    /**
+     * Adds a datafield that was just appended to the MARC XML to the index.
+     */
+    protected void indexDataField(Element field) {
+        if (dataFieldsByTag != null) {
+            String tag = field.getAttributeValue("tag");
+            List<Element> fields = dataFieldsByTag.get(tag);
+            if (fields == null) {
+                fields = new ArrayList<Element>(2);
+                dataFieldsByTag.put(tag, fields);
+            }
+            fields.add(field);
+            dataFieldOrder.put(field, nextDataFieldOrder++);
+        }
+    }
+
+    /**
+     * Removes a datafield that was just removed from the MARC XML from the index.
+     */
+    protected void unindexDataField(Element field) {
+        if (dataFieldsByTag != null) {
+            List<Element> fields = dataFieldsByTag.get(field.getAttributeValue("tag"));
+            if (fields != null) {
+                fields.remove(field);
+            }
+            dataFieldOrder.remove(field);
+        }
+    }
+
+    /**
+     * Must be called after adding or removing datafields from the MARC XML other than through
+     * this class, so that fields are no longer looked up from an out of date index.
+     */
+    public void dataFieldsChanged() {
+        dataFieldsByTag = null;
+        dataFieldOrder = null;
+    }
+
     /**
      * A set containing values for $4 subfields for which we should ignore
      * the parent datafield when performing operations only on datafields
@@ -872,8 +994,7 @@ public class MarcXmlManager {
                 TimingLogger.start("xpath");
                 // Use XPATH to get a list of all subfields of the passed tag with the passed subfield value.
                 // Return true iff this list is not empty
-                XPath xpath = XPath.newInstance(".//marc:datafield[@tag='" + tag + "']/marc:subfield[@code='" + subfield + "']");
-                xpath.addNamespace("marc", "http://www.loc.gov/MARC21/slim");
+                XPath xpath = getXPath(".//marc:datafield[@tag='" + tag + "']/marc:subfield[@code='" + subfield + "']");
                 List nodes = xpath.selectNodes(marcXml);
                 ret = !nodes.isEmpty();
                 TimingLogger.stop("doesSubFieldExist.xpath");
@@ -881,20 +1002,17 @@ public class MarcXmlManager {
             } else {
                 TimingLogger.start("doesSubFieldExist.noxpath");
                 TimingLogger.start("noxpath");
-                for (Object o : marcXml.getChildren("datafield", marcXml.getNamespace())) {
-                    Element e = (Element) o;
-                    if (tag.equals(e.getAttributeValue("tag"))) {
-                        for (Object o2 : e.getChildren("subfield", marcXml.getNamespace())) {
-                            Element e2 = (Element) o2;
-                            if (subfield.equals(e2.getAttributeValue("code"))) {
-                                ret = true;
-                                break;
-                            }
-                        }
-                        if (ret) {
+                for (Element e : getIndexedDataFields(tag)) {
+                    for (Object o2 : e.getChildren("subfield", marcXml.getNamespace())) {
+                        Element e2 = (Element) o2;
+                        if (subfield.equals(e2.getAttributeValue("code"))) {
+                            ret = true;
                             break;
                         }
                     }
+                    if (ret) {
+                        break;
+                    }
                 }
                 TimingLogger.stop("doesSubFieldExist.noxpath");
                 TimingLogger.stop("noxpath");
@@ -922,7 +1040,6 @@ public class MarcXmlManager {
         // Iterate over the fields and find the 001, 003, 007, and 008 control fields.
         // Initialize their cached values as we find them.
         for (Element controlField : controlFields) {
-            TimingLogger.start("initializeMarcControlFields.for");
             // Initialize the 001 field if we found it
             if (controlField.getAttribute("tag").getValue().equals("001")) {
                 field001 = controlField.getText();
@@ -962,12 +1079,19 @@ public class MarcXmlManager {
                 if (log.isDebugEnabled())
                     log.debug("Found the value of the control field 008 to be " + field008 + ".");
             } // end if (008 found)
-            TimingLogger.stop("initializeMarcControlFields.for");
         } // end loop over control fields
         TimingLogger.stop("initializeMarcControlFields");
     } // end method initializeMarcControlFields
 
             
+    /**
+     * The tags of the datafields initializeMarcDataFields caches values from
+     */
+    private static final HashSet<String> cachedDataFieldTags = new HashSet<String>(Arrays.asList(
+            "020", "014", "035", "041", "100", "110", "111", "130", "240", "243",
+            "245", "999", "502", "440", "600", "610", "611", "630", "650", "655",
+            "700", "710", "711", "730", "800", "810", "811", "852", "945"));
+
     /**
      * Initializes the MARC XML data fields' cached values.
      */
@@ -980,9 +1104,12 @@ public class MarcXmlManager {
         // Get the data fields
         List<Element> fields = marcXml.getChildren("datafield", marcNamespace);
 
+        // Index the fields by tag while we're at it
+        startDataFieldIndex();
+
         // Iterate over the fields and find the one with the correct tag
         for (Element field : fields) {
-            TimingLogger.start("initializeMarcDataFields.for");
+            indexDataField(field);
             String tag = field.getAttributeValue("tag");
 
             // If the tag is "880", treat it like the tag from its $6 subfield
@@ -1002,6 +1129,10 @@ public class MarcXmlManager {
                 }
             }
 
+            // Most fields aren't cached, so don't bother checking them against each cached tag
+            if (!cachedDataFieldTags.contains(tag))
+                continue;
+
             // If the current field is 020, get its subfields
             if (tag.equals("020")) {
                 // Get the $a subfields
@@ -1199,7 +1330,6 @@ public class MarcXmlManager {
                 // Add the 945 $l subfields
                 field945subfieldLs.addAll(subfields);
             } // end if (945 found)
-            TimingLogger.stop("initializeMarcDataFields.for");
         } // end loop over data fields
         TimingLogger.stop("initializeMarcDataFields");
     } // end method initializeMarcDataFields
@@ -1280,6 +1410,7 @@ public class MarcXmlManager {
         }
         for (Element badFld : badFlds) {
         	marcXml.removeContent(badFld);
+        	unindexDataField(badFld);
         }   
 
         
@@ -1351,6 +1482,7 @@ public class MarcXmlManager {
         }
         for (Element badFld : badFlds) {
         	marcXml.removeContent(badFld);
+        	unindexDataField(badFld);
         }   
 
         
@@ -1481,6 +1613,7 @@ public class MarcXmlManager {
         // remove any marked fields (since they are empty)
         for (Element badFld : badFlds) {
         	marcXml.removeContent(badFld);
+        	unindexDataField(badFld);
         }   
 
         // in case we don't have a 020 already
@@ -1503,8 +1636,10 @@ public class MarcXmlManager {
         	}
         }
         
-        if (wasEmpty && cnt > 0)
+        if (wasEmpty && cnt > 0) {
             marcXml.addContent("\n\t").addContent(the020).addContent("\n");
+            indexDataField(the020);
+        }
 
         // Since we've modified the 020, we need to re-initialize the field data
         if (deduped020 || wasEmpty || cnt > 0) {
@@ -1550,6 +1685,7 @@ public class MarcXmlManager {
         
         for (Element old004 : old004s) {
         	marcXml.removeContent(old004);
+        	unindexDataField(old004);
         } 
     	
     	fields = marcXml.getChildren("datafield", marcNamespace);
@@ -1581,6 +1717,7 @@ public class MarcXmlManager {
         }
         for (Element removeFld : removeFlds) {
         	marcXml.removeContent(removeFld);
+        	unindexDataField(removeFld);
         }   
         
         for (Element new014 : new014s) {
@@ -1695,6 +1832,7 @@ public class MarcXmlManager {
 
         // Add the new field to the end of the MARC XML if we didn't insert it already
         marcXml.addContent(newFieldElement).addContent("\n\n");
+        indexDataField(newFieldElement);
 
         // If we just added a language code, add it to the list of new language codes we're maintaining
         if (tag.equals(NormalizationServiceConstants.FIELD_9XX_LANGUAGE_SPLIT)) {
@@ -1780,6 +1918,7 @@ public class MarcXmlManager {
         
         // Add the new field to the end of the MARC XML if we didn't insert it already
         marcXml.addContent(newFieldElement).addContent("\n\n");
+        indexDataField(newFieldElement);
         
         TimingLogger.stop("addMarcXmlField");
     } // end method addMarcXmlField
@@ -1904,8 +2043,10 @@ public class MarcXmlManager {
         newField.addContent("\n");
 
         // Add the new field to the end of the MARC XML if we found the field to copy from
-        if (newField != null)
+        if (newField != null) {
             marcXml.addContent(newField).addContent("\n\n");
+            indexDataField(newField);
+        }
 
         // If we created a new 240 tag as a result of the copy, save it
         if (copyToTag.equals("240") && field240element.size() == 0)
@@ -1935,8 +2076,8 @@ public class MarcXmlManager {
         if (log.isDebugEnabled())
             log.debug("Copying " + targetFields.size() + " MARC XML tags into the MARC XML tag " + copyIntoField + " using only subfields before " + requiredSubfields);
 
-        // Get the data fields
-        List<Element> fields = marcXml.getChildren("datafield", marcNamespace);
+        // Get the data fields we're to copy from
+        List<Element> fields = getIndexedDataFields(targetFields);
 
         // The copied field with the correct tag
         Element newField = null;
@@ -2009,8 +2150,10 @@ public class MarcXmlManager {
         } // end loop over data fields
 
         // Add all the new elements
-        for (Element addMe : newFields)
+        for (Element addMe : newFields) {
             marcXml.addContent(addMe).addContent("\n\n");
+            indexDataField(addMe);
+        }
 
         TimingLogger.stop("splitField");
     }
@@ -2034,8 +2177,8 @@ public class MarcXmlManager {
         if (log.isDebugEnabled())
             log.debug("Copying " + targetFields.size() + " MARC XML tags into the MARC XML tag " + copyIntoField + " using only subfield " + copyOnlySubfield);
 
-        // Get the data fields
-        List<Element> fields = marcXml.getChildren("datafield", marcNamespace);
+        // Get the data fields we're to copy from
+        List<Element> fields = getIndexedDataFields(targetFields);
 
         // The copied field with the correct tag
         Element newField = null;
@@ -2097,8 +2240,10 @@ public class MarcXmlManager {
         } // end loop over data fields
 
         // Add all the new elements
-        for (Element addMe : newFields)
+        for (Element addMe : newFields) {
             marcXml.addContent(addMe).addContent("\n\n");
+            indexDataField(addMe);
+        }
 
         TimingLogger.stop("splitField");
     }
@@ -2120,8 +2265,8 @@ public class MarcXmlManager {
         if (log.isDebugEnabled())
             log.debug("Copying " + targetFields.size() + " MARC XML tags into the MARC XML tag " + copyIntoField + " using only subfields before the $t.");
 
-        // Get the data fields
-        List<Element> fields = marcXml.getChildren("datafield", marcNamespace);
+        // Get the data fields we're to copy from
+        List<Element> fields = getIndexedDataFields(targetFields);
 
         // The copied field with the correct tag
         Element newField = null;
@@ -2212,8 +2357,10 @@ public class MarcXmlManager {
         } // end loop over data fields
 
         // Add all the new elements
-        for (Element addMe : newFields)
+        for (Element addMe : newFields) {
             marcXml.addContent(addMe).addContent("\n\n");
+            indexDataField(addMe);
+        }
 
         TimingLogger.stop("separateNames");
     }
@@ -2277,8 +2424,10 @@ public class MarcXmlManager {
         } // end loop over data fields
 
         // Remove the fields we found to be duplicates
-        for (Element removeMe : toRemove)
+        for (Element removeMe : toRemove) {
             marcXml.removeContent(removeMe);
+            unindexDataField(removeMe);
+        }
 
         TimingLogger.stop("deduplicateMarcXmlField");
     } // end method deduplicateMarcXmlField
@@ -2356,8 +2505,10 @@ public class MarcXmlManager {
         } // end loop over data fields
 
         // Remove the fields we found to be duplicates
-        for (Element removeMe : toRemove)
+        for (Element removeMe : toRemove) {
             marcXml.removeContent(removeMe);
+            unindexDataField(removeMe);
+        }
 
         TimingLogger.stop("deduplicateMarcXml959Field");
     } // end method deduplicateMarcXmlField
@@ -2535,8 +2686,7 @@ public class MarcXmlManager {
             TimingLogger.start("getSubfieldsOfField.xpath");
             if (useXpath) {
                 // An XPATH expression to get the requested subfields
-                XPath xpath = XPath.newInstance("marc:subfield[@code='" + subfield + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath("marc:subfield[@code='" + subfield + "']");
                 // Get the subfields.
                 nodes = xpath.selectNodes(datafield);
             } else {
@@ -2585,8 +2735,7 @@ public class MarcXmlManager {
             TimingLogger.start("xpath");
             if (useXpath) {
                 // An XPATH expression to get the requested subfields
-                XPath xpath = XPath.newInstance("marc:subfield[@code='" + subfield + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath("marc:subfield[@code='" + subfield + "']");
 
                 // Get the subfields.
                 elements = xpath.selectNodes(datafield);
@@ -2654,8 +2803,7 @@ public class MarcXmlManager {
             TimingLogger.start("xpath");
             if (useXpath) {
                 // An XPATH expression to get the requested indicator
-                XPath xpath = XPath.newInstance("@ind" + indicator);
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath("@ind" + indicator);
 
                 // Get the subfields.
                 List<Attribute> attributes = xpath.selectNodes(datafield);
@@ -2712,18 +2860,11 @@ public class MarcXmlManager {
             TimingLogger.start("xpath");
             if (useXpath) {
                 // An XPATH expression to get the requested control field
-                XPath xpath = XPath.newInstance(".//marc:datafield[@tag='" + targetField + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath(".//marc:datafield[@tag='" + targetField + "']");
 
                 potentialResults = xpath.selectNodes(marcXml);
             } else {
-                potentialResults = new ArrayList<Element>();
-                for (Object o : marcXml.getChildren("datafield", marcXml.getNamespace())) {
-                    Element e = (Element) o;
-                    if (targetField.equals(e.getAttributeValue("tag"))) {
-                        potentialResults.add(e);
-                    }
-                }
+                potentialResults = new ArrayList<Element>(getIndexedDataFields(targetField));
             }
             TimingLogger.stop("getDataFields.xpath");
             TimingLogger.stop("xpath");
@@ -2784,8 +2925,7 @@ public class MarcXmlManager {
             TimingLogger.start("xpath");
             if (useXpath) {
                 // An XPATH expression to get the requested subfields
-                XPath xpath = XPath.newInstance("marc:subfield[@code='" + subfield + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath("marc:subfield[@code='" + subfield + "']");
 
                 // Get the subfields.
                 elements = xpath.selectNodes(datafield);
@@ -2848,10 +2988,7 @@ public class MarcXmlManager {
             List<Element> results = null;
             if (useXpath) {
                 // An XPATH expression to get the linking field
-                TimingLogger.start("getLinkingFieldsParents.XPath.newInstance");
-                XPath xpath = XPath.newInstance(".//marc:subfield[@code='8']/..");
-                xpath.addNamespace(marcNamespace);
-                TimingLogger.stop("getLinkingFieldsParents.XPath.newInstance");
+                XPath xpath = getXPath(".//marc:subfield[@code='8']/..");
 
                 // Get the linking fields.
                 TimingLogger.start("getLinkingFieldsParents.selectNodes");
@@ -2899,8 +3036,7 @@ public class MarcXmlManager {
             List<Element> elements = null;
             if (useXpath) {
                 // An XPATH expression to get the requested control field
-                XPath xpath = XPath.newInstance(".//marc:controlfield[@tag='" + targetField + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath(".//marc:controlfield[@tag='" + targetField + "']");
 
                 // Get the control field. There should not be more than one Element in this list.
                 elements = xpath.selectNodes(marcXml);
@@ -2960,18 +3096,11 @@ public class MarcXmlManager {
             List<Element> elements = null;
             if (useXpath) {
                 // An XPATH expression to get the requested control field
-                XPath xpath = XPath.newInstance(".//marc:datafield[@tag='" + 945 + "']");
-                xpath.addNamespace(marcNamespace);
+                XPath xpath = getXPath(".//marc:datafield[@tag='" + 945 + "']");
 
                 elements = xpath.selectNodes(marcXml);
             } else {
-                elements = new ArrayList<Element>();
-                for (Object o : marcXml.getChildren("datafield", marcXml.getNamespace())) {
-                    Element e = (Element) o;
-                    if ("945".equals(e.getAttributeValue("tag"))) {
-                        elements.add(e);
-                    }
-                }
+                elements = new ArrayList<Element>(getIndexedDataFields("945"));
             }
             TimingLogger.stop("getField945.xpath");
             TimingLogger.stop("getField945");
@@ -2992,6 +3121,7 @@ public class MarcXmlManager {
         TimingLogger.start("remove945");
         // Remove the control field
         marcXml.removeContent(element);
+        unindexDataField(element);
         TimingLogger.stop("remove945");
 
     }
@@ -16,6 +16,7 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -160,6 +161,39 @@ public class NormalizationService extends GenericMetadataService {
     private static String default_035a_org_code = "";
     
     private String sourceRepositoryURL;
+
+    /**
+     * A single normalization step, applied to every record of the type it's compiled for.
+     */
+    protected static abstract class Step {
+        protected String name = null;
+
+        protected Step(String name) {
+            this.name = name;
+        }
+
+        public abstract MarcXmlManager apply(MarcXmlManager marcXml) throws Exception;
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The steps enabled in the ENABLED STEPS section of the configuration, in the order they run,
+     * along with the other per-record settings from that section. See compileSteps().
+     */
+    protected static class CompiledSteps {
+        protected boolean sourceOfOrganizationCode = false;
+        protected boolean sourceOf9XXFields = false;
+        protected Step[] bibSteps = null;
+        protected Step[] holdingSteps = null;
+    }
+
+    /**
+     * Compiled in setup(), and again after the configuration is reloaded.
+     */
+    protected volatile CompiledSteps compiledSteps = null;
     
     /**
      * Construct a NormalizationService Object
@@ -214,6 +248,7 @@ public class NormalizationService extends GenericMetadataService {
         LOG.info("NormalizationService.setup");
         try {
             validateService();
+            compiledSteps = compileSteps();
         } catch (ServiceValidationException e) {
 
             // Update database with status of service
@@ -226,6 +261,315 @@ public class NormalizationService extends GenericMetadataService {
             // throw new RuntimeException(e);
         }
     }
+
+    protected CompiledSteps getCompiledSteps() {
+        CompiledSteps steps = compiledSteps;
+        if (steps == null) {
+            steps = compileSteps();
+            compiledSteps = steps;
+        }
+        return steps;
+    }
+
+    protected boolean isStepEnabled(String step) {
+        return enabledSteps.getProperty(step, "0").equals("1");
+    }
+
+    /**
+     * Looks up which steps are enabled once, so that convertRecord only has to run through
+     * an array of them for each record.
+     */
+    protected CompiledSteps compileSteps() {
+        CompiledSteps steps = new CompiledSteps();
+        steps.sourceOfOrganizationCode = getSourceOfOrganizationCode();
+        steps.sourceOf9XXFields = "1".equals(enabledSteps.getProperty(CONFIG_SOURCE_OF_9XX_FIELDS));
+
+        List<Step> bibSteps = new ArrayList<Step>();
+        if (isStepEnabled(CONFIG_ENABLED_REMOVE_OCOLC_003))
+            bibSteps.add(new Step(CONFIG_ENABLED_REMOVE_OCOLC_003) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return removeOcolc003(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_DCMI_TYPE_06))
+            bibSteps.add(new Step(CONFIG_ENABLED_DCMI_TYPE_06) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dcmiType06(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_LEADER_06_VOCAB))
+            bibSteps.add(new Step(CONFIG_ENABLED_LEADER_06_VOCAB) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return leader06MarcVocab(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_007_VOCAB_06))
+            bibSteps.add(new Step(CONFIG_ENABLED_007_VOCAB_06) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return vocab06(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_MODE_OF_ISSUANCE))
+            bibSteps.add(new Step(CONFIG_ENABLED_MODE_OF_ISSUANCE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return modeOfIssuance(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_MOVE_MARC_ORG_CODE)) {
+            final boolean moveAllOrgCodes = isStepEnabled(CONFIG_MOVE_ALL_MARC_ORG_CODES);
+            bibSteps.add(new Step(CONFIG_ENABLED_MOVE_MARC_ORG_CODE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return moveMarcOrgCode(marcXml, moveAllOrgCodes);
+                }
+            });
+        }
+        if (isStepEnabled(CONFIG_ENABLED_DCMI_TYPE_00_07))
+            bibSteps.add(new Step(CONFIG_ENABLED_DCMI_TYPE_00_07) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dcmiType0007(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_007_VOCAB))
+            bibSteps.add(new Step(CONFIG_ENABLED_007_VOCAB) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return vocab007(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_007_SMD_TYPE))
+            bibSteps.add(new Step(CONFIG_ENABLED_007_SMD_TYPE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return smdType007(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_FICTION_OR_NONFICTION))
+            bibSteps.add(new Step(CONFIG_ENABLED_FICTION_OR_NONFICTION) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return fictionOrNonfiction(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_008_DATE_RANGE))
+            bibSteps.add(new Step(CONFIG_ENABLED_008_DATE_RANGE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dateRange(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_LANGUAGE_SPLIT))
+            bibSteps.add(new Step(CONFIG_ENABLED_LANGUAGE_SPLIT) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return languageSplit(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_LANGUAGE_TERM))
+            bibSteps.add(new Step(CONFIG_ENABLED_LANGUAGE_TERM) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return languageTerm(marcXml);
+                }
+            });
+        final boolean audience006 = isStepEnabled(CONFIG_ENABLED_006_AUDIENCE);
+        final boolean audience008 = isStepEnabled(CONFIG_ENABLED_008_AUDIENCE);
+        if (audience006 || audience008)
+            bibSteps.add(new Step("audienceFrom006_008") {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return audienceFrom006_008(marcXml, audience006, audience008);
+                }
+            });
+        final boolean form006 = isStepEnabled(CONFIG_ENABLED_006_FORM);
+        final boolean form008 = isStepEnabled(CONFIG_ENABLED_008_FORM);
+        if (form006 || form008)
+            bibSteps.add(new Step("formFrom006_008") {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return formFrom006_008(marcXml, form006, form008);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_008_THESIS))
+            bibSteps.add(new Step(CONFIG_ENABLED_008_THESIS) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return thesisFrom008(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_ISBN_MOVE))
+            bibSteps.add(new Step(CONFIG_ENABLED_ISBN_MOVE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return isbnMove024(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_ISBN_CLEANUP))
+            bibSteps.add(new Step(CONFIG_ENABLED_ISBN_CLEANUP) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return isbnCleanup(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_LCCN_CLEANUP))
+            bibSteps.add(new Step(CONFIG_ENABLED_LCCN_CLEANUP) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return lccnCleanup(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_SUPPLY_MARC_ORG_CODE))
+            bibSteps.add(new Step(CONFIG_ENABLED_SUPPLY_MARC_ORG_CODE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return supplyMARCOrgCode(marcXml);
+                }
+            });
+        if (needToFix035()) {
+            final boolean fix035_0s = isStepEnabled(CONFIG_ENABLED_035_LEADING_ZERO);
+            bibSteps.add(new Step("fix035") {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return fix035(marcXml, fix035_0s);
+                }
+            });
+        }
+        if (isStepEnabled(CONFIG_ENABLED_DEDUP_035))
+            bibSteps.add(new Step(CONFIG_ENABLED_DEDUP_035) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dedup035(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_ROLE_AUTHOR))
+            bibSteps.add(new Step(CONFIG_ENABLED_ROLE_AUTHOR) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return roleAuthor(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_ROLE_COMPOSER))
+            bibSteps.add(new Step(CONFIG_ENABLED_ROLE_COMPOSER) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return roleComposer(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_UNIFORM_TITLE))
+            bibSteps.add(new Step(CONFIG_ENABLED_UNIFORM_TITLE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return uniformTitle(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_NRU_GENRE))
+            bibSteps.add(new Step(CONFIG_ENABLED_NRU_GENRE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return nruGenre(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_NRU_DATABASE_GENRE))
+            bibSteps.add(new Step(CONFIG_ENABLED_NRU_DATABASE_GENRE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return nruDatabaseGenre(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_TOPIC_SPLIT))
+            bibSteps.add(new Step(CONFIG_ENABLED_TOPIC_SPLIT) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return topicSplit(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_CHRON_SPLIT))
+            bibSteps.add(new Step(CONFIG_ENABLED_CHRON_SPLIT) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return chronSplit(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_GEOG_SPLIT))
+            bibSteps.add(new Step(CONFIG_ENABLED_GEOG_SPLIT) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return geogSplit(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_GENRE_SPLIT))
+            bibSteps.add(new Step(CONFIG_ENABLED_GENRE_SPLIT) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return genreSplit(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_DEDUP_DCMI_TYPE))
+            bibSteps.add(new Step(CONFIG_ENABLED_DEDUP_DCMI_TYPE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dedupDcmiType(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_DEDUP_007_VOCAB))
+            bibSteps.add(new Step(CONFIG_ENABLED_DEDUP_007_VOCAB) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dedup007Vocab(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_SEPARATE_NAME))
+            bibSteps.add(new Step(CONFIG_ENABLED_SEPARATE_NAME) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return separateName(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_DEDUP_9XX))
+            bibSteps.add(new Step(CONFIG_ENABLED_DEDUP_9XX) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return dedup9XX(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_TITLE_ARTICLE))
+            bibSteps.add(new Step(CONFIG_ENABLED_TITLE_ARTICLE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return titleArticle(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_BIB_LOCATION_NAME))
+            bibSteps.add(new Step(CONFIG_ENABLED_BIB_LOCATION_NAME) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return bibLocationName(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_III_LOCATION_NAME))
+            bibSteps.add(new Step(CONFIG_ENABLED_III_LOCATION_NAME) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return IIILocationName(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_REMOVE_945_FIELD))
+            bibSteps.add(new Step(CONFIG_ENABLED_REMOVE_945_FIELD) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return remove945Field(marcXml);
+                }
+            });
+        steps.bibSteps = bibSteps.toArray(new Step[bibSteps.size()]);
+
+        List<Step> holdingSteps = new ArrayList<Step>();
+        // Remove any invalid 014s
+        final String valid014 = enabledSteps.getProperty(CONFIG_VALID_FIRST_CHAR_014, "");
+        final String invalid014 = enabledSteps.getProperty(CONFIG_INVALID_FIRST_CHAR_014, "");
+        if (valid014.length() > 0 || invalid014.length() > 0)
+            holdingSteps.add(new Step("removeInvalid014s") {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return removeInvalid014s(marcXml, valid014, invalid014);
+                }
+            });
+        final String fixMultiple004s = enabledSteps.getProperty(CONFIG_ENABLED_REPLACE_014, "off").toLowerCase();
+        if (!fixMultiple004s.equals("off"))
+            holdingSteps.add(new Step(CONFIG_ENABLED_REPLACE_014) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) throws Exception {
+                    return fixMultiple004s(marcXml, fixMultiple004s);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_HOLDINGS_LOCATION_NAME))
+            holdingSteps.add(new Step(CONFIG_ENABLED_HOLDINGS_LOCATION_NAME) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return holdingsLocationName(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_LOCATION_LIMIT_NAME))
+            holdingSteps.add(new Step(CONFIG_ENABLED_LOCATION_LIMIT_NAME) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return locationLimitName(marcXml);
+                }
+            });
+        if (isStepEnabled(CONFIG_ENABLED_014_SOURCE))
+            holdingSteps.add(new Step(CONFIG_ENABLED_014_SOURCE) {
+                public MarcXmlManager apply(MarcXmlManager marcXml) {
+                    return add014source(marcXml);
+                }
+            });
+        steps.holdingSteps = holdingSteps.toArray(new Step[holdingSteps.size()]);
+
+        LOG.info("enabled bib steps: " + Arrays.asList(steps.bibSteps));
+        LOG.info("enabled holding steps: " + Arrays.asList(steps.holdingSteps));
+        return steps;
+    }
     
     @Override
     public void process(Repository repo, Format inputFormat, Set inputSet,
@@ -343,7 +687,9 @@ public class NormalizationService extends GenericMetadataService {
             }
             ((Record) record).setType(type);
             
-            if (getSourceOfOrganizationCode()) {
+            CompiledSteps steps = getCompiledSteps();
+
+            if (steps.sourceOfOrganizationCode) {
             	try {
             		normalizedXml = processSourceOfRecord(normalizedXml, record);
             	} catch (Exception e) {
@@ -358,162 +704,24 @@ public class NormalizationService extends GenericMetadataService {
 					return results; // results is empty
             	}
             }
-            if (sourceOf9XXFieldsEnabled()) {
+            if (steps.sourceOf9XXFields) {
             	normalizedXml.setSourceOfOrganizationCode(XC_SOURCE_OF_MARC_ORG);
             }
 
             if (type != null && type.equals("b")) {
                 TimingLogger.start("bibsteps");
-                
-                if (enabledSteps.getProperty(CONFIG_ENABLED_REMOVE_OCOLC_003, "0").equals("1"))
-                    normalizedXml = removeOcolc003(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DCMI_TYPE_06, "0").equals("1"))
-                    normalizedXml = dcmiType06(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_LEADER_06_VOCAB, "0").equals("1"))
-                    normalizedXml = leader06MarcVocab(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_007_VOCAB_06, "0").equals("1"))
-                    normalizedXml = vocab06(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_MODE_OF_ISSUANCE, "0").equals("1"))
-                    normalizedXml = modeOfIssuance(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_MOVE_MARC_ORG_CODE, "0").equals("1"))
-                    normalizedXml = moveMarcOrgCode(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DCMI_TYPE_00_07, "0").equals("1"))
-                    normalizedXml = dcmiType0007(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_007_VOCAB, "0").equals("1"))
-                    normalizedXml = vocab007(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_007_SMD_TYPE, "0").equals("1"))
-                    normalizedXml = smdType007(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_FICTION_OR_NONFICTION, "0").equals("1"))
-                    normalizedXml = fictionOrNonfiction(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_008_DATE_RANGE, "0").equals("1"))
-                    normalizedXml = dateRange(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_LANGUAGE_SPLIT, "0").equals("1"))
-                    normalizedXml = languageSplit(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_LANGUAGE_TERM, "0").equals("1"))
-                    normalizedXml = languageTerm(normalizedXml);
-
-                boolean process006 = enabledSteps.getProperty(CONFIG_ENABLED_006_AUDIENCE, "0").equals("1");
-                boolean process008 = enabledSteps.getProperty(CONFIG_ENABLED_008_AUDIENCE, "0").equals("1");
-                if (process006 || process008)
-                    normalizedXml = audienceFrom006_008(normalizedXml, process006, process008);
-
-                process006 = enabledSteps.getProperty(CONFIG_ENABLED_006_FORM, "0").equals("1");
-                process008 = enabledSteps.getProperty(CONFIG_ENABLED_008_FORM, "0").equals("1");
-                if (process006 || process008)
-                    normalizedXml = formFrom006_008(normalizedXml, process006, process008);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_008_THESIS, "0").equals("1"))
-                    normalizedXml = thesisFrom008(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_ISBN_MOVE, "0").equals("1"))
-                    normalizedXml = isbnMove024(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_ISBN_CLEANUP, "0").equals("1"))
-                    normalizedXml = isbnCleanup(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_LCCN_CLEANUP, "0").equals("1"))
-                    normalizedXml = lccnCleanup(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_SUPPLY_MARC_ORG_CODE, "0").equals("1"))
-                    normalizedXml = supplyMARCOrgCode(normalizedXml);
-
-                if (needToFix035()) {
-                    normalizedXml = fix035(normalizedXml);
+                for (Step step : steps.bibSteps) {
+                    normalizedXml = step.apply(normalizedXml);
                 }
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DEDUP_035, "0").equals("1"))
-                    normalizedXml = dedup035(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_ROLE_AUTHOR, "0").equals("1"))
-                    normalizedXml = roleAuthor(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_ROLE_COMPOSER, "0").equals("1"))
-                    normalizedXml = roleComposer(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_UNIFORM_TITLE, "0").equals("1"))
-                    normalizedXml = uniformTitle(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_NRU_GENRE, "0").equals("1"))
-                    normalizedXml = nruGenre(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_NRU_DATABASE_GENRE, "0").equals("1"))
-                    normalizedXml = nruDatabaseGenre(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_TOPIC_SPLIT, "0").equals("1"))
-                    normalizedXml = topicSplit(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_CHRON_SPLIT, "0").equals("1"))
-                    normalizedXml = chronSplit(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_GEOG_SPLIT, "0").equals("1"))
-                    normalizedXml = geogSplit(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_GENRE_SPLIT, "0").equals("1"))
-                    normalizedXml = genreSplit(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DEDUP_DCMI_TYPE, "0").equals("1"))
-                    normalizedXml = dedupDcmiType(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DEDUP_007_VOCAB, "0").equals("1"))
-                    normalizedXml = dedup007Vocab(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_SEPARATE_NAME, "0").equals("1"))
-                    normalizedXml = separateName(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_DEDUP_9XX, "0").equals("1"))
-                    normalizedXml = dedup9XX(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_TITLE_ARTICLE, "0").equals("1"))
-                    normalizedXml = titleArticle(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_BIB_LOCATION_NAME, "0").equals("1"))
-                    normalizedXml = bibLocationName(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_III_LOCATION_NAME, "0").equals("1"))
-                    normalizedXml = IIILocationName(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_REMOVE_945_FIELD, "0").equals("1"))
-                    normalizedXml = remove945Field(normalizedXml);
-
                 TimingLogger.stop("bibsteps");
             }
 
             // Run these steps only if the record is a holding record
             if (type != null && type.equals("h")) {
                 TimingLogger.start("holdsteps");
-
-                // Remove any invalid 014s
-                String valid014 = enabledSteps.getProperty(CONFIG_VALID_FIRST_CHAR_014, "");
-                String invalid014 = enabledSteps.getProperty(CONFIG_INVALID_FIRST_CHAR_014, "");
-                if (valid014.length() > 0 || invalid014.length() > 0)
-                    normalizedXml = removeInvalid014s(normalizedXml, valid014, invalid014);
-
-                String fixMultiple004s = enabledSteps.getProperty(CONFIG_ENABLED_REPLACE_014, "off").toLowerCase();
-                if (!fixMultiple004s.equals("off"))
-                    normalizedXml = fixMultiple004s(normalizedXml, fixMultiple004s);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_HOLDINGS_LOCATION_NAME, "0").equals("1"))
-                    normalizedXml = holdingsLocationName(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_LOCATION_LIMIT_NAME, "0").equals("1"))
-                    normalizedXml = locationLimitName(normalizedXml);
-
-                if (enabledSteps.getProperty(CONFIG_ENABLED_014_SOURCE, "0").equals("1")) {
-                    normalizedXml = add014source(normalizedXml);
+                for (Step step : steps.holdingSteps) {
+                    normalizedXml = step.apply(normalizedXml);
                 }
-
                 TimingLogger.stop("holdsteps");
             }
 
@@ -1058,9 +1266,11 @@ public class NormalizationService extends GenericMetadataService {
      *
      * @param marcXml
      *            The original MARCXML record
+     * @param moveAllOrgCodes
+     *            true to move the 003 even if it isn't our organization code
      * @return The MARCXML record after performing this normalization step.
      */
-    private MarcXmlManager moveMarcOrgCode(MarcXmlManager marcXml) {
+    private MarcXmlManager moveMarcOrgCode(MarcXmlManager marcXml, boolean moveAllOrgCodes) {
         if (LOG.isDebugEnabled())
             LOG.debug("Entering MoveMarcOrgCode normalization step.");
 
@@ -1081,8 +1291,6 @@ public class NormalizationService extends GenericMetadataService {
             return marcXml;
         }
 
-        boolean moveAllOrgCodes = enabledSteps.getProperty(CONFIG_MOVE_ALL_MARC_ORG_CODES, "0").equals("1");
-
         // Create the new 035 field
         if (moveAllOrgCodes || control003.equalsIgnoreCase(getOrganizationCode())) {
             String new035 = null;
@@ -1803,6 +2011,7 @@ public class NormalizationService extends GenericMetadataService {
 
         // Add the new field to the end of the MARC XML if we didn't insert it already
         marcXml.getModifiedMarcXml().addContent(newFieldElement).addContent("\n\n");
+        marcXml.dataFieldsChanged();
 
         return marcXml;
     }
@@ -1925,14 +2134,14 @@ public class NormalizationService extends GenericMetadataService {
      *
      * @param marcXml
      *            The original MARCXML record
+     * @param fix035_0s
+     *            true to remove leading zeros from the control number
      * @return The MARCXML record after performing this normalization step.
      */
     @SuppressWarnings("unchecked")
-    private MarcXmlManager fix035(MarcXmlManager marcXml) {
+    private MarcXmlManager fix035(MarcXmlManager marcXml, boolean fix035_0s) {
         if (LOG.isDebugEnabled())
             LOG.debug("Entering fix035 normalization step.");
-        
-        boolean fix035_0s = enabledSteps.getProperty(CONFIG_ENABLED_035_LEADING_ZERO, "0").equals("1");   
 
         // Get the original list of 035 elements. We know that any 035 we
         // supplied had the correct format, so all incorrect 035 records must
@@ -3029,6 +3238,8 @@ public class NormalizationService extends GenericMetadataService {
                 }
             }
         }
+        // the steps are compiled again (from the new configuration) before the next record
+        compiledSteps = null;
     }
 
     @Override
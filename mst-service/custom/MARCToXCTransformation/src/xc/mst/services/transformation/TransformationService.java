@@ -37,6 +37,7 @@ import xc.mst.dao.DatabaseConfigException;
 import xc.mst.manager.IndexException;
 import xc.mst.services.impl.service.SolrTransformationService;
 import xc.mst.services.transformation.dao.TransformationDAO;
+import xc.mst.services.transformation.dao.TransformationLinkageCache;
 import xc.mst.utils.MSTConfiguration;
 import xc.mst.utils.TimingLogger;
 import xc.mst.utils.XmlHelper;
@@ -54,6 +55,9 @@ public class TransformationService extends SolrTransformationService {
 
     // Keep track of records we wish to edit payload only (and not their predecessor linkage)
     protected Map<Long, Boolean> unchangedPredecessors = new HashMap<Long, Boolean>();
+
+    // null when LinkageCache=0, in which case the linkage tables are read and written directly
+    protected TransformationLinkageCache linkageCache = null;
     
     // XC's org code
     public static final String XC_SOURCE_OF_MARC_ORG = "NyRoXCO";
@@ -99,54 +103,101 @@ public class TransformationService extends SolrTransformationService {
         TimingLogger.reset();
         inputBibs = getRepository().getPersistentPropertyAsInt("inputBibs", 0);
         inputHoldings = getRepository().getPersistentPropertyAsInt("inputHoldings", 0);
+
+        linkageCache = null;
+        if (config.getPropertyAsInt("LinkageCache", 1) == 1) {
+            TransformationLinkageCache cache = new TransformationLinkageCache(getTransformationDAO());
+            int maxRows = config.getPropertyAsInt("LinkageCacheMaxRows", 0);
+            long rows = maxRows > 0 ? cache.getStoredRowCount() : 0;
+            if (rows > maxRows && maxRows > 0) {
+                LOG.info("not caching the linkage tables: they hold " + rows + " rows (LinkageCacheMaxRows=" + maxRows + ")");
+            } else {
+                linkageCache = cache;
+                linkageCache.load();
+            }
+        }
     }
     
     protected Long getRecordId4BibProcessed(String orgCode, String s) {
-    	List<Long> r = getTransformationDAO().getRecordId4BibProcessed(new Marc001_003Holder(s, orgCode));
+    	Marc001_003Holder bib = new Marc001_003Holder(s, orgCode);
+    	List<Long> r = linkageCache != null ? linkageCache.getRecordId4BibProcessed(bib) : getTransformationDAO().getRecordId4BibProcessed(bib);
     	return (r == null || r.size() < 1) ? null : r.get(0);
 
     }
     
     protected Marc001_003Holder getHoldingMarcId4RecordIdProcessed(long l) {
-    	List<Marc001_003Holder> r = getTransformationDAO().getHoldingMarcId4RecordIdProcessed(l);
+    	List<Marc001_003Holder> r = linkageCache != null ? linkageCache.getHoldingMarcId4RecordIdProcessed(l) : getTransformationDAO().getHoldingMarcId4RecordIdProcessed(l);
     	return (r == null || r.size() < 1) ? null : r.get(0);
     }
     
     
     protected void addRecordId4BibProcessed(String orgCode, String s, Long l) {
-    	getTransformationDAO().addRecordId4BibProcessed(new Marc001_003Holder(s, orgCode), l);
+    	if (linkageCache != null) {
+    		linkageCache.addRecordId4BibProcessed(new Marc001_003Holder(s, orgCode), l);
+    	} else {
+    		getTransformationDAO().addRecordId4BibProcessed(new Marc001_003Holder(s, orgCode), l);
+    	}
     }
 
     protected void addRecordId4HoldingProcessed(String orgCode, String s, Long l) {
-    	getTransformationDAO().addRecordId4HoldingProcessed(new Marc001_003Holder(s, orgCode), l);
+    	if (linkageCache != null) {
+    		linkageCache.addRecordId4HoldingProcessed(new Marc001_003Holder(s, orgCode), l);
+    	} else {
+    		getTransformationDAO().addRecordId4HoldingProcessed(new Marc001_003Holder(s, orgCode), l);
+    	}
     }
 
     protected void removeRecordId4BibProcessed(Long l) {
-    	getTransformationDAO().removeRecordId4BibProcessed(l);
+    	if (linkageCache != null) {
+    		linkageCache.removeRecordId4BibProcessed(l);
+    	} else {
+    		getTransformationDAO().removeRecordId4BibProcessed(l);
+    	}
     }
 
     protected void removeRecordId4HoldingProcessed(Long l) {
-    	getTransformationDAO().removeRecordId4HoldingProcessed(l);
+    	if (linkageCache != null) {
+    		linkageCache.removeRecordId4HoldingProcessed(l);
+    	} else {
+    		getTransformationDAO().removeRecordId4HoldingProcessed(l);
+    	}
     }
 
     protected List<Long> getManifestationId4BibYet2Arrive(String orgCode, String s) {
+    	if (linkageCache != null) {
+    		return linkageCache.getManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode));
+    	}
     	return getTransformationDAO().getManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode));
     }
 
     protected void addManifestationId4BibYet2Arrive(String orgCode, String s, Long l) {
-    	getTransformationDAO().addManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	if (linkageCache != null) {
+    		linkageCache.addManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	} else {
+    		getTransformationDAO().addManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	}
     }
 
     protected void removeManifestationId4BibYet2Arrive(String orgCode, String s, Long l) {
-    	getTransformationDAO().removeManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	if (linkageCache != null) {
+    		linkageCache.removeManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	} else {
+    		getTransformationDAO().removeManifestationId4BibYet2Arrive(new Marc001_003Holder(s, orgCode), l);
+    	}
     	
     }
  
     protected List<String> getHoldingsForBib(String orgCode, String bib_id) {
+    	if (linkageCache != null) {
+    		return linkageCache.getHoldingsForBib(new Marc001_003Holder(bib_id, orgCode));
+    	}
     	return getTransformationDAO().getHoldingsForBib(new Marc001_003Holder(bib_id, orgCode));
     }
     
     protected List<String> getBibsForHolding(String orgCode, String hold_id) {
+    	if (linkageCache != null) {
+    		return linkageCache.getBibsForHoldings(new Marc001_003Holder(hold_id, orgCode));
+    	}
     	return getTransformationDAO().getBibsForHoldings(new Marc001_003Holder(hold_id, orgCode));
     }
 
@@ -157,15 +208,27 @@ public class TransformationService extends SolrTransformationService {
     }
     	
     protected void addBibforHolding(String orgCode, String holding_id, String bib_id) {  
-    	getTransformationDAO().addBibforHolding(orgCode, holding_id, bib_id);
+    	if (linkageCache != null) {
+    		linkageCache.addBibforHolding(orgCode, holding_id, bib_id);
+    	} else {
+    		getTransformationDAO().addBibforHolding(orgCode, holding_id, bib_id);
+    	}
     }
 
     protected void removeBibsForHolding(String orgCode, String holding_id) {
-    	getTransformationDAO().removeBibsForHoldings(orgCode, holding_id);
+    	if (linkageCache != null) {
+    		linkageCache.removeBibsForHoldings(orgCode, holding_id);
+    	} else {
+    		getTransformationDAO().removeBibsForHoldings(orgCode, holding_id);
+    	}
     }
 
     protected void removeBibForHolding(String orgCode, String holding_id, String bib_id) {
-    	getTransformationDAO().removeBibForHolding(orgCode, holding_id, bib_id);
+    	if (linkageCache != null) {
+    		linkageCache.removeBibForHolding(orgCode, holding_id, bib_id);
+    	} else {
+    		getTransformationDAO().removeBibForHolding(orgCode, holding_id, bib_id);
+    	}
     }
 
     @Override
@@ -188,6 +251,12 @@ public class TransformationService extends SolrTransformationService {
             TimingLogger.start("TransformationDAO.endBatch");
 
             unchangedPredecessors.clear();
+
+            if (linkageCache != null) {
+                TimingLogger.start("TransformationLinkageCache.flush");
+                linkageCache.flush();
+                TimingLogger.stop("TransformationLinkageCache.flush");
+            }
             
             TimingLogger.start("TransformationDAO.non-generic");
             super.commitIfNecessary(true, 0);
@@ -557,7 +626,8 @@ public class TransformationService extends SolrTransformationService {
             
             TimingLogger.add("output records", results.size());
             for (OutputRecord or : results) {
-                if (!or.getDeleted()) {
+                // the records made by getSplitXCRecordXML already know their type
+                if (!or.getDeleted() && or.getType() == null) {
                     String type = getXCRecordService().getType((Record) or);
                     or.setType(type);
                 }
@@ -578,7 +648,7 @@ public class TransformationService extends SolrTransformationService {
     protected Record getRecord(Long recordId) {
     	// We may need to access in-memory (not yet persisted) records.
     	// MST doesn't provide a safe framework for manipulating in-memory objects; therefore, we will persist all records first!
-    	if (getRepositoryDAO().haveUnpersistedRecord(recordId)) {
+    	if (getRepositoryDAO().haveUnpersistedRecord(getRepository().getName(), recordId)) {
             super.commitIfNecessary(true, 0);
     	}
     	Record r = getRepository().getRecord(recordId);
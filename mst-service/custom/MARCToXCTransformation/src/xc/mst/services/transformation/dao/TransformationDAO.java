@@ -8,14 +8,23 @@
  */
 package xc.mst.services.transformation.dao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import xc.mst.bo.record.Marc001_003Holder;
 import xc.mst.services.impl.dao.GenericMetadataServiceDAO;
+import xc.mst.utils.TimingLogger;
 
 /**
  *
@@ -35,6 +44,89 @@ public class TransformationDAO extends GenericMetadataServiceDAO {
     protected final static String bibRefs_table = "bibs_to_holdings";
     protected final static String held_holdings_table = "held_holdings";
 
+    /**
+     * Takes the rows of a linkage table as they're read.
+     */
+    public interface RowHandler {
+        void handle(Object[] row);
+    }
+
+    /**
+     * Reads the whole of one of the linkage tables, for TransformationLinkageCache. The rows are
+     * streamed from a single select rather than read a page at a time, so the cost stays linear
+     * in the size of the table.
+     *
+     * @param handler
+     *            gets each row, holding the columns' values in order; it mustn't use the database
+     * @return the number of rows read
+     */
+    public int forEachRow(String tableName, final String[] columns, final RowHandler handler) {
+        TimingLogger.start("TransformationDAO.forEachRow");
+        final String sql = "select " + StringUtils.join(columns, ", ") + " from " + tableName;
+        LOG.info(sql);
+        final int[] rows = new int[] { 0 };
+        this.jdbcTemplate.query(new PreparedStatementCreator() {
+            public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+                PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // tells Connector/J to stream the rows instead of holding the whole result in memory
+                ps.setFetchSize(Integer.MIN_VALUE);
+                return ps;
+            }
+        }, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                Object[] values = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = rs.getObject(i + 1);
+                }
+                handler.handle(values);
+                rows[0]++;
+            }
+        });
+        TimingLogger.stop("TransformationDAO.forEachRow");
+        return rows[0];
+    }
+
+    public long getRowCount(String tableName) {
+        return this.jdbcTemplate.queryForLong("select count(*) from " + tableName);
+    }
+
+    public void replaceRows(String tableName, String[] columns, List<Object[]> rows) {
+        if (rows.size() == 0) {
+            return;
+        }
+        TimingLogger.start("TransformationDAO.replaceRows");
+        this.jdbcTemplate.batchUpdate("replace into " + tableName +
+                " (" + StringUtils.join(columns, ", ") + ") values (" + StringUtils.repeat("?, ", columns.length - 1) + "?)",
+                getSetter(rows));
+        TimingLogger.stop("TransformationDAO.replaceRows");
+    }
+
+    public void deleteRows(String tableName, String[] columns, List<Object[]> rows) {
+        if (rows.size() == 0) {
+            return;
+        }
+        TimingLogger.start("TransformationDAO.deleteRows");
+        this.jdbcTemplate.batchUpdate("delete from " + tableName +
+                " where " + StringUtils.join(columns, "=? and ") + "=?",
+                getSetter(rows));
+        TimingLogger.stop("TransformationDAO.deleteRows");
+    }
+
+    protected BatchPreparedStatementSetter getSetter(final List<Object[]> rows) {
+        return new BatchPreparedStatementSetter() {
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object[] row = rows.get(i);
+                for (int j = 0; j < row.length; j++) {
+                    ps.setObject(j + 1, row[j]);
+                }
+            }
+
+            public int getBatchSize() {
+                return rows.size();
+            }
+        };
+    }
+
     
     public void removeRecordId4BibProcessed(Long l) {
         String sql =
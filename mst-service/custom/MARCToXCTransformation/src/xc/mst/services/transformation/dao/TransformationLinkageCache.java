@@ -0,0 +1,517 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.transformation.dao;
+
+import gnu.trove.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import xc.mst.bo.record.Marc001_003Holder;
+import xc.mst.utils.TimingLogger;
+
+/**
+ * An in-memory copy of the tables the transformation links bibs, holdings and manifestations
+ * with (bibsProcessed*, holdingsProcessed*, bibsYet2Arrive* and bibs_to_holdings). It's loaded
+ * when the service is set up, after which lookups don't touch the database; changes are kept as
+ * pending rows until flush() writes them in bulk.
+ *
+ * An (org code, 001) tuple is a Long when the 001 is an int: the org code's index in the high
+ * half and the 001 in the low half, which is also how the *LongId tables tell them apart.
+ * Otherwise it's a String of the org code's index and the 001.
+ */
+public class TransformationLinkageCache {
+
+    private final static Logger LOG = Logger.getLogger(TransformationLinkageCache.class);
+
+    protected final static String[] RECORD_ID_COLUMNS = new String[] { "org_code", "bib_001", "record_id" };
+    protected final static String[] BIB_REF_COLUMNS = new String[] { "org_code", "holding_001", "bib_001" };
+
+    protected TransformationDAO transformationDAO = null;
+
+    protected Map<String, Integer> orgIds = new HashMap<String, Integer>();
+    protected List<String> orgCodes = new ArrayList<String>();
+
+    protected RecordIdTable bibsProcessed = new RecordIdTable(
+            TransformationDAO.bibsProcessedLongId_table, TransformationDAO.bibsProcessedStringId_table, true);
+    protected RecordIdTable holdingsProcessed = new RecordIdTable(
+            TransformationDAO.holdingsProcessedLongId_table, TransformationDAO.holdingsProcessedStringId_table, true);
+    protected RecordIdTable bibsYet2Arrive = new RecordIdTable(
+            TransformationDAO.bibsYet2ArriveLongId_table, TransformationDAO.bibsYet2ArriveStringId_table, false);
+
+    // bibs_to_holdings, both ways: (org code, holding 001) -> bib 001s and (org code, bib 001) -> holding 001s
+    protected TupleMap<String[]> bibsByHolding = new TupleMap<String[]>(true);
+    protected TupleMap<String[]> holdingsByBib = new TupleMap<String[]>(true);
+
+    // table -> row -> true to replace it into the table, false to delete it
+    protected Map<String, Map<List<Object>, Boolean>> pending = new LinkedHashMap<String, Map<List<Object>, Boolean>>();
+
+    public TransformationLinkageCache(TransformationDAO transformationDAO) {
+        this.transformationDAO = transformationDAO;
+    }
+
+    public void load() {
+        TimingLogger.start("TransformationLinkageCache.load");
+        bibsProcessed.load();
+        holdingsProcessed.load();
+        bibsYet2Arrive.load();
+        int bibRefs = transformationDAO.forEachRow(TransformationDAO.bibRefs_table, BIB_REF_COLUMNS,
+                new TransformationDAO.RowHandler() {
+                    public void handle(Object[] row) {
+                        link((String) row[0], (String) row[1], (String) row[2]);
+                    }
+                });
+        LOG.info("loaded " + bibsProcessed.size() + " processed bibs, " + holdingsProcessed.size() + " processed holdings, " +
+                bibsYet2Arrive.size() + " bibs yet to arrive and " + bibRefs + " bib to holding links");
+        TimingLogger.stop("TransformationLinkageCache.load");
+    }
+
+    /**
+     * @return how many rows the tables this would load hold
+     */
+    public long getStoredRowCount() {
+        long rows = 0;
+        for (String table : new String[] {
+                TransformationDAO.bibsProcessedLongId_table, TransformationDAO.bibsProcessedStringId_table,
+                TransformationDAO.holdingsProcessedLongId_table, TransformationDAO.holdingsProcessedStringId_table,
+                TransformationDAO.bibsYet2ArriveLongId_table, TransformationDAO.bibsYet2ArriveStringId_table,
+                TransformationDAO.bibRefs_table }) {
+            rows += transformationDAO.getRowCount(table);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the changes made since the last flush.
+     */
+    public void flush() {
+        for (Map.Entry<String, Map<List<Object>, Boolean>> me : pending.entrySet()) {
+            String[] columns = me.getKey().equals(TransformationDAO.bibRefs_table) ? BIB_REF_COLUMNS : RECORD_ID_COLUMNS;
+            List<Object[]> replaces = new ArrayList<Object[]>();
+            List<Object[]> deletes = new ArrayList<Object[]>();
+            for (Map.Entry<List<Object>, Boolean> row : me.getValue().entrySet()) {
+                if (row.getValue()) {
+                    replaces.add(row.getKey().toArray());
+                } else {
+                    deletes.add(row.getKey().toArray());
+                }
+            }
+            transformationDAO.deleteRows(me.getKey(), columns, deletes);
+            transformationDAO.replaceRows(me.getKey(), columns, replaces);
+        }
+        pending.clear();
+    }
+
+    public List<Long> getRecordId4BibProcessed(Marc001_003Holder bib) {
+        return bibsProcessed.get(bib.get003(), bib.get001());
+    }
+
+    public void addRecordId4BibProcessed(Marc001_003Holder bib, long record_id) {
+        bibsProcessed.add(bib.get003(), bib.get001(), record_id);
+    }
+
+    public void removeRecordId4BibProcessed(long record_id) {
+        bibsProcessed.removeRecord(record_id);
+    }
+
+    public List<Marc001_003Holder> getHoldingMarcId4RecordIdProcessed(long record_id) {
+        return holdingsProcessed.getTuples(record_id);
+    }
+
+    public void addRecordId4HoldingProcessed(Marc001_003Holder hold, long record_id) {
+        holdingsProcessed.add(hold.get003(), hold.get001(), record_id);
+    }
+
+    public void removeRecordId4HoldingProcessed(long record_id) {
+        holdingsProcessed.removeRecord(record_id);
+    }
+
+    public List<Long> getManifestationId4BibYet2Arrive(Marc001_003Holder bib) {
+        return bibsYet2Arrive.get(bib.get003(), bib.get001());
+    }
+
+    public void addManifestationId4BibYet2Arrive(Marc001_003Holder bib, long record_id) {
+        bibsYet2Arrive.add(bib.get003(), bib.get001(), record_id);
+    }
+
+    public void removeManifestationId4BibYet2Arrive(Marc001_003Holder bib, long record_id) {
+        bibsYet2Arrive.remove(bib.get003(), bib.get001(), record_id);
+    }
+
+    public List<String> getBibsForHoldings(Marc001_003Holder holding) {
+        return asList(bibsByHolding.get(bibsByHolding.tuple(holding.get003(), holding.get001())));
+    }
+
+    public List<String> getHoldingsForBib(Marc001_003Holder bib) {
+        return asList(holdingsByBib.get(holdingsByBib.tuple(bib.get003(), bib.get001())));
+    }
+
+    public void addBibforHolding(String org_code, String holding_id, String bib_id) {
+        checkOrgCode(org_code);
+        if (link(org_code, holding_id, bib_id)) {
+            setPending(TransformationDAO.bibRefs_table, Arrays.asList(new Object[] { org_code, holding_id, bib_id }), true);
+        }
+    }
+
+    public void removeBibsForHoldings(String org_code, String holding_id) {
+        for (String bib_id : getBibsForHoldings(new Marc001_003Holder(holding_id, org_code))) {
+            removeBibForHolding(org_code, holding_id, bib_id);
+        }
+    }
+
+    public void removeBibForHolding(String org_code, String holding_id, String bib_id) {
+        Object holdingTuple = bibsByHolding.tuple(org_code, holding_id);
+        String[] bibs = bibsByHolding.get(holdingTuple);
+        if (bibs == null || indexOf(bibs, bib_id) == -1) {
+            return;
+        }
+        put(bibsByHolding, holdingTuple, without(bibs, bib_id));
+        Object bibTuple = holdingsByBib.tuple(org_code, bib_id);
+        String[] holdings = holdingsByBib.get(bibTuple);
+        if (holdings != null) {
+            put(holdingsByBib, bibTuple, without(holdings, holding_id));
+        }
+        setPending(TransformationDAO.bibRefs_table, Arrays.asList(new Object[] { org_code, holding_id, bib_id }), false);
+    }
+
+    /**
+     * @return false if the holding was already linked to the bib
+     */
+    protected boolean link(String org_code, String holding_id, String bib_id) {
+        Object holdingTuple = bibsByHolding.tuple(org_code, holding_id);
+        String[] bibs = bibsByHolding.get(holdingTuple);
+        if (bibs != null && indexOf(bibs, bib_id) != -1) {
+            return false;
+        }
+        bibsByHolding.put(holdingTuple, with(bibs, bib_id));
+        Object bibTuple = holdingsByBib.tuple(org_code, bib_id);
+        holdingsByBib.put(bibTuple, with(holdingsByBib.get(bibTuple), holding_id));
+        return true;
+    }
+
+    protected void setPending(String table, List<Object> row, boolean replace) {
+        Map<List<Object>, Boolean> rows = pending.get(table);
+        if (rows == null) {
+            rows = new LinkedHashMap<List<Object>, Boolean>();
+            pending.put(table, rows);
+        }
+        rows.put(row, replace);
+    }
+
+    // the org codes end up in not null columns, so a missing one fails the record rather than the flush
+    protected void checkOrgCode(String orgCode) {
+        if (orgCode == null) {
+            throw new IllegalArgumentException("missing org code");
+        }
+    }
+
+    protected int getOrgId(String orgCode) {
+        Integer orgId = orgIds.get(orgCode);
+        if (orgId == null) {
+            orgId = orgCodes.size();
+            orgCodes.add(orgCode);
+            orgIds.put(orgCode, orgId);
+        }
+        return orgId;
+    }
+
+    protected long pack(String orgCode, int id) {
+        return ((long) getOrgId(orgCode) << 32) | (id & 0xffffffffL);
+    }
+
+    protected String getOrgCode(Object tuple) {
+        if (tuple instanceof Long) {
+            return orgCodes.get((int) ((Long) tuple >>> 32));
+        }
+        String s = (String) tuple;
+        return orgCodes.get(Integer.parseInt(s.substring(0, s.indexOf(' '))));
+    }
+
+    protected String get001(Object tuple) {
+        if (tuple instanceof Long) {
+            return String.valueOf((int) ((Long) tuple).longValue());
+        }
+        String s = (String) tuple;
+        return s.substring(s.indexOf(' ') + 1);
+    }
+
+    /**
+     * (org code, 001) -> V, where the tuple is a Long or a String (see the class comment).
+     */
+    protected class TupleMap<V> {
+        // if exact, an 001 is only packed if it comes back the same (not "0123", say), since
+        // bibs_to_holdings keeps them as strings
+        protected boolean exact;
+        protected TLongObjectHashMap<V> packed = new TLongObjectHashMap<V>();
+        protected Map<String, V> other = new HashMap<String, V>();
+
+        public TupleMap(boolean exact) {
+            this.exact = exact;
+        }
+
+        public Object tuple(String orgCode, String id) {
+            try {
+                int n = Integer.parseInt(id);
+                if (!exact || String.valueOf(n).equals(id)) {
+                    return pack(orgCode, n);
+                }
+            } catch (NumberFormatException nfe) {
+            }
+            return getOrgId(orgCode) + " " + id;
+        }
+
+        public V get(Object tuple) {
+            if (tuple instanceof Long) {
+                return packed.get((Long) tuple);
+            }
+            return other.get(tuple);
+        }
+
+        public void put(Object tuple, V value) {
+            if (tuple instanceof Long) {
+                packed.put((Long) tuple, value);
+            } else {
+                other.put((String) tuple, value);
+            }
+        }
+
+        public void remove(Object tuple) {
+            if (tuple instanceof Long) {
+                packed.remove((Long) tuple);
+            } else {
+                other.remove(tuple);
+            }
+        }
+
+        public int size() {
+            return packed.size() + other.size();
+        }
+    }
+
+    /**
+     * One of the (org_code, bib_001, record_id) table pairs: the *LongId table holds the tuples
+     * whose 001 is an int, the *StringId table the rest.
+     */
+    protected class RecordIdTable {
+        protected String longTable;
+        protected String stringTable;
+        protected TupleMap<long[]> recordIds = new TupleMap<long[]>(false);
+        // record id -> its tuple, or an Object[] of them; null if the table isn't looked up by record id
+        protected TLongObjectHashMap<Object> tuples = null;
+
+        public RecordIdTable(String longTable, String stringTable, boolean byRecordId) {
+            this.longTable = longTable;
+            this.stringTable = stringTable;
+            if (byRecordId) {
+                tuples = new TLongObjectHashMap<Object>();
+            }
+        }
+
+        public void load() {
+            for (final String table : new String[] { longTable, stringTable }) {
+                transformationDAO.forEachRow(table, RECORD_ID_COLUMNS, new TransformationDAO.RowHandler() {
+                    public void handle(Object[] row) {
+                        String orgCode = (String) row[0];
+                        Object tuple;
+                        if (table.equals(longTable)) {
+                            tuple = pack(orgCode, ((Number) row[1]).intValue());
+                        } else {
+                            tuple = getOrgId(orgCode) + " " + row[1];
+                        }
+                        link(tuple, ((Number) row[2]).longValue());
+                    }
+                });
+            }
+        }
+
+        public int size() {
+            return recordIds.size();
+        }
+
+        public List<Long> get(String orgCode, String id) {
+            List<Long> results = new ArrayList<Long>();
+            long[] ids = recordIds.get(recordIds.tuple(orgCode, id));
+            if (ids != null) {
+                for (long l : ids) {
+                    results.add(l);
+                }
+            }
+            return results;
+        }
+
+        public List<Marc001_003Holder> getTuples(long recordId) {
+            List<Marc001_003Holder> results = new ArrayList<Marc001_003Holder>();
+            for (Object tuple : getTupleArray(recordId)) {
+                results.add(new Marc001_003Holder(get001(tuple), getOrgCode(tuple)));
+            }
+            return results;
+        }
+
+        public void add(String orgCode, String id, long recordId) {
+            checkOrgCode(orgCode);
+            Object tuple = recordIds.tuple(orgCode, id);
+            if (link(tuple, recordId)) {
+                setPending(getTable(tuple), getRow(tuple, recordId), true);
+            }
+        }
+
+        public void remove(String orgCode, String id, long recordId) {
+            Object tuple = recordIds.tuple(orgCode, id);
+            if (unlink(tuple, recordId)) {
+                setPending(getTable(tuple), getRow(tuple, recordId), false);
+            }
+        }
+
+        public void removeRecord(long recordId) {
+            for (Object tuple : getTupleArray(recordId)) {
+                remove(getOrgCode(tuple), get001(tuple), recordId);
+            }
+        }
+
+        protected boolean link(Object tuple, long recordId) {
+            long[] ids = recordIds.get(tuple);
+            if (ids != null && indexOf(ids, recordId) != -1) {
+                return false;
+            }
+            recordIds.put(tuple, with(ids, recordId));
+            if (tuples != null) {
+                Object linked = tuples.get(recordId);
+                if (linked == null) {
+                    tuples.put(recordId, tuple);
+                } else if (linked instanceof Object[]) {
+                    tuples.put(recordId, with((Object[]) linked, tuple));
+                } else {
+                    tuples.put(recordId, new Object[] { linked, tuple });
+                }
+            }
+            return true;
+        }
+
+        protected boolean unlink(Object tuple, long recordId) {
+            long[] ids = recordIds.get(tuple);
+            if (ids == null || indexOf(ids, recordId) == -1) {
+                return false;
+            }
+            put(recordIds, tuple, without(ids, recordId));
+            if (tuples != null) {
+                Object[] linked = without(getTupleArray(recordId), tuple);
+                if (linked == null) {
+                    tuples.remove(recordId);
+                } else {
+                    tuples.put(recordId, linked.length == 1 ? linked[0] : linked);
+                }
+            }
+            return true;
+        }
+
+        protected Object[] getTupleArray(long recordId) {
+            Object linked = tuples.get(recordId);
+            if (linked == null) {
+                return new Object[0];
+            }
+            return linked instanceof Object[] ? (Object[]) linked : new Object[] { linked };
+        }
+
+        protected String getTable(Object tuple) {
+            return tuple instanceof Long ? longTable : stringTable;
+        }
+
+        protected List<Object> getRow(Object tuple, long recordId) {
+            Object id = tuple instanceof Long ? (Object) Long.valueOf((int) ((Long) tuple).longValue()) : get001(tuple);
+            return Arrays.asList(new Object[] { getOrgCode(tuple), id, recordId });
+        }
+    }
+
+    // puts the value, or removes the tuple if the value is null
+    protected static <V> void put(TupleMap<V> map, Object tuple, V value) {
+        if (value == null) {
+            map.remove(tuple);
+        } else {
+            map.put(tuple, value);
+        }
+    }
+
+    protected static List<String> asList(String[] a) {
+        return a == null ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(a));
+    }
+
+    protected static int indexOf(long[] a, long l) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == l) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected static int indexOf(Object[] a, Object o) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected static long[] with(long[] a, long l) {
+        if (a == null) {
+            return new long[] { l };
+        }
+        long[] b = Arrays.copyOf(a, a.length + 1);
+        b[a.length] = l;
+        return b;
+    }
+
+    protected static <T> T[] with(T[] a, T t) {
+        if (a == null) {
+            @SuppressWarnings("unchecked")
+            T[] b = (T[]) java.lang.reflect.Array.newInstance(t.getClass(), 1);
+            b[0] = t;
+            return b;
+        }
+        T[] b = Arrays.copyOf(a, a.length + 1);
+        b[a.length] = t;
+        return b;
+    }
+
+    // null if nothing's left
+    protected static long[] without(long[] a, long l) {
+        int i = indexOf(a, l);
+        if (i == -1) {
+            return a;
+        }
+        if (a.length == 1) {
+            return null;
+        }
+        long[] b = new long[a.length - 1];
+        System.arraycopy(a, 0, b, 0, i);
+        System.arraycopy(a, i + 1, b, i, a.length - i - 1);
+        return b;
+    }
+
+    // null if nothing's left
+    protected static <T> T[] without(T[] a, T t) {
+        int i = indexOf(a, t);
+        if (i == -1) {
+            return a;
+        }
+        if (a.length == 1) {
+            return null;
+        }
+        T[] b = Arrays.copyOf(a, a.length - 1);
+        System.arraycopy(a, i + 1, b, i, a.length - i - 1);
+        return b;
+    }
+}
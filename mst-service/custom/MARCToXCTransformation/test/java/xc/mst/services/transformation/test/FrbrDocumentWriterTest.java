@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.transformation.test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.filter.ElementFilter;
+import org.jdom.input.SAXBuilder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.StaticApplicationContext;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.provider.Format;
+import xc.mst.bo.record.AggregateXCRecord;
+import xc.mst.manager.repository.DefaultFormatService;
+import xc.mst.service.impl.test.MockHarvestTest;
+import xc.mst.services.impl.service.transformation.FrbrDocumentWriter;
+import xc.mst.utils.MSTConfiguration;
+import xc.mst.utils.XmlHelper;
+
+/**
+ * FrbrDocumentWriter against the way the split documents used to be made: the entity cloned
+ * into a new xc:frbr root, and the root serialized by XmlHelper.getString.  The entities come
+ * from AggregateXCRecords built from the mock harvest's expected output.  Doesn't need a database.
+ */
+public class FrbrDocumentWriterTest {
+
+    // an entity with an xml:space="preserve" child, escaped text and a namespace the root doesn't declare
+    protected static final String MIXED_RECORD =
+        "<xc:frbr xmlns:xc=\"http://www.extensiblecatalog.info/Elements\" xmlns:dcterms=\"http://purl.org/dc/terms/\">" +
+        "<xc:entity type=\"work\"><dcterms:title>  Fish &amp; chips  </dcterms:title>" +
+        "<xc:note xml:space=\"preserve\">  kept   as is  </xc:note><xc:subject>   </xc:subject></xc:entity>" +
+        "<xc:entity type=\"expression\"><xc:language>eng</xc:language><xc:workExpressed>oai:1</xc:workExpressed></xc:entity>" +
+        "<xc:entity type=\"manifestation\"><other:id xmlns:other=\"http://example.org/other\" other:type=\"a&lt;b\">1</other:id>" +
+        "<xc:recordID type=\"OCoLC\">7064165</xc:recordID></xc:entity>" +
+        "<xc:entity type=\"holdings\" id=\"oai:4\"><xc:note xml:space=\"preserve\">\n a\tb </xc:note><xc:location>  Rush  </xc:location></xc:entity>" +
+        "</xc:frbr>";
+
+    protected ApplicationContext previousContext = null;
+    protected XmlHelper xmlHelper = new XmlHelper();
+
+    /**
+     * AggregateXCRecord looks up the xc format when it's constructed
+     */
+    @BeforeClass
+    public void setupFormatService() {
+        if (MSTConfiguration.getInstance() == null) {
+            new MSTConfiguration();
+        }
+        previousContext = MSTConfiguration.getInstance().getApplicationContext();
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("FormatService", new DefaultFormatService() {
+            @Override
+            public Format getFormatByName(String name) {
+                Format format = new Format();
+                format.setName(name);
+                return format;
+            }
+        });
+        MSTConfiguration.getInstance().setApplicationContext(context);
+    }
+
+    @AfterClass
+    public void restoreContext() {
+        MSTConfiguration.getInstance().setApplicationContext(previousContext);
+    }
+
+    protected String getOldString(Element entity) {
+        Element root = FrbrDocumentWriter.newRootElement();
+        root.addContent((Element) entity.clone());
+        return xmlHelper.getString((Element) root.clone());
+    }
+
+    protected List<Element> getEntities(AggregateXCRecord ar) {
+        List<Element> entities = new ArrayList<Element>();
+        entities.add(ar.xcWorkElement);
+        entities.add(ar.xcExpressionElement);
+        entities.add(ar.xcManifestationElement);
+        entities.addAll(ar.holdingsElements);
+        return entities;
+    }
+
+    /**
+     * @return how many entities were compared
+     */
+    protected int assertSame(FrbrDocumentWriter writer, AggregateXCRecord ar) {
+        StringWriter buffer = new StringWriter();
+        int compared = 0;
+        for (Element entity : getEntities(ar)) {
+            String expected = getOldString(entity);
+            Assert.assertEquals(writer.write(entity, buffer), expected);
+            // the entity is only read, so writing it again gives the same document
+            Assert.assertEquals(writer.write(entity, buffer), expected);
+            compared++;
+        }
+        return compared;
+    }
+
+    protected void listXmlFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listXmlFiles(child, files);
+            } else if (child.getName().endsWith(".xml")) {
+                files.add(child);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<AggregateXCRecord> getFixtures() throws Exception {
+        List<File> files = new ArrayList<File>();
+        listXmlFiles(new File(MockHarvestTest.EXPECTED_OUTPUT_FOLDER), files);
+        Collections.sort(files);
+        SAXBuilder builder = new SAXBuilder();
+        List<AggregateXCRecord> records = new ArrayList<AggregateXCRecord>();
+        for (File file : files) {
+            Iterator<Element> it = builder.build(file).getDescendants(
+                    new ElementFilter("frbr", AggregateXCRecord.XC_NAMESPACE));
+            while (it.hasNext()) {
+                Element frbr = (Element) it.next().clone();
+                records.add(new AggregateXCRecord(new Document(frbr)));
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testFixtures() throws Exception {
+        FrbrDocumentWriter writer = new FrbrDocumentWriter();
+        List<AggregateXCRecord> records = getFixtures();
+        Assert.assertFalse(records.isEmpty());
+        Set<String> types = new HashSet<String>();
+        for (AggregateXCRecord ar : records) {
+            assertSame(writer, ar);
+            for (Element entity : getEntities(ar)) {
+                if (entity.getContentSize() > 0) {
+                    types.add(entity.getAttributeValue("type"));
+                }
+            }
+        }
+        Assert.assertTrue(types.containsAll(Arrays.asList(AggregateXCRecord.WORK, AggregateXCRecord.EXPRESSION,
+                AggregateXCRecord.MANIFESTATION, AggregateXCRecord.HOLDINGS)), types.toString());
+    }
+
+    @Test
+    public void testMixedRecord() throws Exception {
+        AggregateXCRecord ar = new AggregateXCRecord(new SAXBuilder().build(new StringReader(MIXED_RECORD)));
+        Assert.assertEquals(ar.holdingsElements.size(), 1);
+        FrbrDocumentWriter writer = new FrbrDocumentWriter();
+        Assert.assertEquals(assertSame(writer, ar), 4);
+
+        // the whitespace-only element after the preserved one is still trimmed
+        String work = writer.write(ar.xcWorkElement, new StringWriter());
+        Assert.assertTrue(work.contains("<xc:note xml:space=\"preserve\">  kept   as is  </xc:note>"), work);
+        Assert.assertTrue(work.contains("<xc:subject />"), work);
+    }
+}
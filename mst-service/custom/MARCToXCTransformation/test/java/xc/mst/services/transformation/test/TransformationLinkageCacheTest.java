@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.transformation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import xc.mst.bo.record.Marc001_003Holder;
+import xc.mst.services.transformation.dao.TransformationDAO;
+import xc.mst.services.transformation.dao.TransformationLinkageCache;
+
+/**
+ * TransformationLinkageCache over in-memory linkage tables.  Doesn't need a database.
+ */
+public class TransformationLinkageCacheTest {
+
+    protected static final String BIBS_LONG = "bibsProcessedLongId";
+    protected static final String BIBS_STRING = "bibsProcessedStringId";
+    protected static final String HOLDINGS_LONG = "holdingsProcessedLongId";
+    protected static final String HOLDINGS_STRING = "holdingsProcessedStringId";
+    protected static final String YET2ARRIVE_LONG = "bibsYet2ArriveLongId";
+    protected static final String BIB_REFS = "bibs_to_holdings";
+
+    /**
+     * Keeps each table as a list of rows, and counts how often each is read.
+     */
+    protected static class MemoryDAO extends TransformationDAO {
+        protected Map<String, List<List<Object>>> tables = new HashMap<String, List<List<Object>>>();
+        protected Map<String, Integer> reads = new HashMap<String, Integer>();
+
+        protected List<List<Object>> getTable(String tableName) {
+            List<List<Object>> table = tables.get(tableName);
+            if (table == null) {
+                table = new ArrayList<List<Object>>();
+                tables.put(tableName, table);
+            }
+            return table;
+        }
+
+        public void add(String tableName, Object... row) {
+            getTable(tableName).add(Arrays.asList(row));
+        }
+
+        @Override
+        public int forEachRow(String tableName, String[] columns, RowHandler handler) {
+            Integer n = reads.get(tableName);
+            reads.put(tableName, n == null ? 1 : n + 1);
+            List<List<Object>> table = getTable(tableName);
+            for (List<Object> row : table) {
+                Assert.assertEquals(row.size(), columns.length);
+                handler.handle(row.toArray());
+            }
+            return table.size();
+        }
+
+        @Override
+        public long getRowCount(String tableName) {
+            return getTable(tableName).size();
+        }
+
+        @Override
+        public void replaceRows(String tableName, String[] columns, List<Object[]> rows) {
+            for (Object[] row : rows) {
+                List<Object> r = Arrays.asList(row);
+                if (!getTable(tableName).contains(r)) {
+                    getTable(tableName).add(r);
+                }
+            }
+        }
+
+        @Override
+        public void deleteRows(String tableName, String[] columns, List<Object[]> rows) {
+            for (Object[] row : rows) {
+                getTable(tableName).remove(Arrays.asList(row));
+            }
+        }
+    }
+
+    protected MemoryDAO getDAO() {
+        MemoryDAO dao = new MemoryDAO();
+        dao.add(BIBS_LONG, "NRU", 123L, 1001L);
+        dao.add(BIBS_LONG, "NRU", 124L, 1002L);
+        dao.add(BIBS_STRING, "NRU", "ocm0042", 1003L);
+        dao.add(HOLDINGS_LONG, "NRU", 500L, 2001L);
+        dao.add(HOLDINGS_STRING, "NRU", "h-501", 2002L);
+        dao.add(YET2ARRIVE_LONG, "NRU", 125L, 3001L);
+        dao.add(YET2ARRIVE_LONG, "NRU", 125L, 3002L);
+        dao.add(BIB_REFS, "NRU", "500", "123");
+        dao.add(BIB_REFS, "NRU", "500", "0124");
+        return dao;
+    }
+
+    protected Marc001_003Holder id(String _001) {
+        return new Marc001_003Holder(_001, "NRU");
+    }
+
+    protected void assertLoaded(TransformationLinkageCache cache) {
+        Assert.assertEquals(cache.getRecordId4BibProcessed(id("123")), Arrays.asList(1001L));
+        Assert.assertEquals(cache.getRecordId4BibProcessed(id("124")), Arrays.asList(1002L));
+        Assert.assertEquals(cache.getRecordId4BibProcessed(id("ocm0042")), Arrays.asList(1003L));
+        Assert.assertTrue(cache.getRecordId4BibProcessed(id("999")).isEmpty());
+        Assert.assertTrue(cache.getRecordId4BibProcessed(new Marc001_003Holder("123", "OTHER")).isEmpty());
+
+        Assert.assertEquals(cache.getHoldingMarcId4RecordIdProcessed(2001L), Arrays.asList(id("500")));
+        Assert.assertEquals(cache.getHoldingMarcId4RecordIdProcessed(2002L), Arrays.asList(id("h-501")));
+        Assert.assertTrue(cache.getHoldingMarcId4RecordIdProcessed(9999L).isEmpty());
+
+        Assert.assertEquals(cache.getManifestationId4BibYet2Arrive(id("125")), Arrays.asList(3001L, 3002L));
+
+        Assert.assertEquals(cache.getBibsForHoldings(id("500")), Arrays.asList("123", "0124"));
+        Assert.assertEquals(cache.getHoldingsForBib(id("123")), Arrays.asList("500"));
+        // bibs_to_holdings keeps 001s as strings, so "0124" isn't "124"
+        Assert.assertEquals(cache.getHoldingsForBib(id("0124")), Arrays.asList("500"));
+        Assert.assertTrue(cache.getHoldingsForBib(id("124")).isEmpty());
+    }
+
+    @Test
+    public void testLoad() {
+        MemoryDAO dao = getDAO();
+        TransformationLinkageCache cache = new TransformationLinkageCache(dao);
+        Assert.assertEquals(cache.getStoredRowCount(), 9);
+        cache.load();
+        assertLoaded(cache);
+        // each table is read once, in a single pass
+        for (int reads : dao.reads.values()) {
+            Assert.assertEquals(reads, 1);
+        }
+        Assert.assertEquals(dao.reads.size(), 7);
+    }
+
+    @Test
+    public void testChangesAndFlush() {
+        MemoryDAO dao = getDAO();
+        TransformationLinkageCache cache = new TransformationLinkageCache(dao);
+        cache.load();
+
+        cache.addRecordId4BibProcessed(id("126"), 1004L);
+        cache.addRecordId4BibProcessed(id("00126"), 1005L);
+        cache.removeRecordId4BibProcessed(1002L);
+        cache.addRecordId4HoldingProcessed(id("502"), 2003L);
+        cache.removeRecordId4HoldingProcessed(2002L);
+        cache.removeManifestationId4BibYet2Arrive(id("125"), 3001L);
+        cache.addManifestationId4BibYet2Arrive(id("127"), 3003L);
+        cache.addBibforHolding("NRU", "502", "126");
+        cache.removeBibForHolding("NRU", "500", "0124");
+
+        // the processed tables key an int 001 by its value, so "00126" is "126"
+        Assert.assertEquals(cache.getRecordId4BibProcessed(id("126")), Arrays.asList(1004L, 1005L));
+        Assert.assertEquals(cache.getRecordId4BibProcessed(id("00126")), Arrays.asList(1004L, 1005L));
+        Assert.assertTrue(cache.getRecordId4BibProcessed(id("124")).isEmpty());
+        Assert.assertTrue(cache.getHoldingMarcId4RecordIdProcessed(2002L).isEmpty());
+        Assert.assertEquals(cache.getManifestationId4BibYet2Arrive(id("125")), Arrays.asList(3002L));
+        Assert.assertEquals(cache.getBibsForHoldings(id("500")), Arrays.asList("123"));
+        Assert.assertTrue(cache.getHoldingsForBib(id("0124")).isEmpty());
+
+        // nothing is written until the flush
+        Assert.assertEquals(dao.getRowCount(BIBS_LONG), 2);
+        cache.flush();
+        Assert.assertEquals(dao.getRowCount(BIBS_LONG), 3);
+        Assert.assertTrue(dao.getTable(BIBS_LONG).contains(Arrays.asList(new Object[] { "NRU", 126L, 1004L })));
+        Assert.assertTrue(dao.getTable(BIBS_LONG).contains(Arrays.asList(new Object[] { "NRU", 126L, 1005L })));
+        Assert.assertFalse(dao.getTable(BIBS_LONG).contains(Arrays.asList(new Object[] { "NRU", 124L, 1002L })));
+        Assert.assertFalse(dao.getTable(BIB_REFS).contains(Arrays.asList(new Object[] { "NRU", "500", "0124" })));
+
+        // a fresh load of what was written sees the same linkage
+        TransformationLinkageCache reloaded = new TransformationLinkageCache(dao);
+        reloaded.load();
+        Assert.assertEquals(reloaded.getRecordId4BibProcessed(id("126")), Arrays.asList(1004L, 1005L));
+        Assert.assertTrue(reloaded.getRecordId4BibProcessed(id("124")).isEmpty());
+        Assert.assertEquals(reloaded.getHoldingMarcId4RecordIdProcessed(2003L), Arrays.asList(id("502")));
+        Assert.assertTrue(reloaded.getHoldingMarcId4RecordIdProcessed(2002L).isEmpty());
+        Assert.assertEquals(reloaded.getManifestationId4BibYet2Arrive(id("125")), Arrays.asList(3002L));
+        Assert.assertEquals(reloaded.getManifestationId4BibYet2Arrive(id("127")), Arrays.asList(3003L));
+        Assert.assertEquals(reloaded.getBibsForHoldings(id("502")), Arrays.asList("126"));
+        Assert.assertEquals(reloaded.getBibsForHoldings(id("500")), Arrays.asList("123"));
+
+        // a second flush has nothing to write
+        dao.tables.clear();
+        cache.flush();
+        Assert.assertTrue(dao.tables.isEmpty());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingOrgCode() {
+        TransformationLinkageCache cache = new TransformationLinkageCache(getDAO());
+        cache.addRecordId4BibProcessed(new Marc001_003Holder("123", null), 1L);
+    }
+}
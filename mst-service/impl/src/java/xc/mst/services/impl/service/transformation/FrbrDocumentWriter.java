@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2012 eXtensible Catalog Organization
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the MIT/X11 license. The text of the
+ * license can be found at http://www.opensource.org/licenses/mit-license.php and copy of the license can be found on the project
+ * website http://www.extensiblecatalog.org/.
+ *
+ */
+package xc.mst.services.impl.service.transformation;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom.Comment;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import xc.mst.bo.record.AggregateXCRecord;
+
+/**
+ * Writes the split FRBR documents of XCRecordService: an xc:frbr root holding a single entity
+ * element.
+ *
+ * The root's start and end tags are serialized once, and each entity is written between them
+ * straight into a StringWriter, so neither the root nor the entity has to be cloned into a new
+ * tree for every document. The entities are printed by XMLOutputter itself, with the same
+ * format as XmlHelper.getString and the root's namespaces already in scope, so the output is
+ * the same, byte for byte, as serializing the whole xc:frbr element.
+ *
+ * Like XMLOutputter, it isn't thread safe.
+ */
+public class FrbrDocumentWriter extends XMLOutputter {
+
+    protected static final String PLACEHOLDER = "FrbrDocumentWriter";
+
+    protected String startTag = null;
+    protected String endTag = null;
+    protected List<Namespace> rootNamespaces = new ArrayList<Namespace>();
+
+    public FrbrDocumentWriter() {
+        super(newFormat());
+        Element root = newRootElement();
+        rootNamespaces.add(root.getNamespace());
+        for (Object ns : root.getAdditionalNamespaces()) {
+            rootNamespaces.add((Namespace) ns);
+        }
+        root.addContent(new Comment(PLACEHOLDER));
+        String rootXml = outputString(root);
+        String comment = outputString(new Comment(PLACEHOLDER));
+        int i = rootXml.indexOf(comment);
+        startTag = rootXml.substring(0, i);
+        endTag = rootXml.substring(i + comment.length());
+    }
+
+    /**
+     * @return an empty xc:frbr root, declaring the namespaces XC records use
+     */
+    public static Element newRootElement() {
+        Element root = new Element("frbr", AggregateXCRecord.XC_NAMESPACE);
+        root.addNamespaceDeclaration(AggregateXCRecord.XSI_NAMESPACE);
+        root.addNamespaceDeclaration(AggregateXCRecord.RDVOCAB_NAMESPACE);
+        root.addNamespaceDeclaration(AggregateXCRecord.DCTERMS_NAMESPACE);
+        root.addNamespaceDeclaration(AggregateXCRecord.RDAROLE_NAMESPACE);
+        return root;
+    }
+
+    // the same as XmlHelper's compact outputter
+    protected static Format newFormat() {
+        Format xmlFormat = Format.getCompactFormat();
+        xmlFormat.setEncoding("UTF-8");
+        xmlFormat.setLineSeparator("\n");
+        xmlFormat.setTextMode(Format.TextMode.TRIM_FULL_WHITE);
+        return xmlFormat;
+    }
+
+    /**
+     * Serializes an xc:frbr document holding the entity. The entity is only read, so it may
+     * still be attached elsewhere.
+     *
+     * @param buffer
+     *            reused between documents; it's cleared first
+     */
+    public String write(Element entity, StringWriter buffer) {
+        buffer.getBuffer().setLength(0);
+        try {
+            buffer.write(startTag);
+            // its constructor is protected, hence the anonymous subclass
+            NamespaceStack namespaces = new NamespaceStack() {
+            };
+            for (Namespace ns : rootNamespaces) {
+                namespaces.push(ns);
+            }
+            printElement(buffer, entity, 1, namespaces);
+            buffer.write(endTag);
+        } catch (IOException ioe) {
+            // a StringWriter doesn't throw
+            throw new RuntimeException(ioe);
+        }
+        return buffer.toString();
+    }
+
+}
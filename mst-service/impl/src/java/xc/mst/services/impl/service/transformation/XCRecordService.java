@@ -8,6 +8,7 @@
  */
 package xc.mst.services.impl.service.transformation;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
@@ -41,6 +42,14 @@ public class XCRecordService extends BaseService {
 
     private static final Logger LOG = Logger.getLogger(XCRecordService.class);
     protected XmlHelper xmlHelper = new XmlHelper();
+    // XMLOutputter switches its format while it prints an xml:space="preserve" element, so a
+    // writer can't be shared between the threads calling this service
+    protected ThreadLocal<FrbrDocumentWriter> frbrWriter = new ThreadLocal<FrbrDocumentWriter>() {
+        @Override
+        protected FrbrDocumentWriter initialValue() {
+            return new FrbrDocumentWriter();
+        }
+    };
 
     public String getType(Record r) {
         r.setMode(Record.JDOM_MODE);
@@ -473,16 +482,9 @@ public class XCRecordService extends BaseService {
         List<Long> holdingIds = new ArrayList<Long>();
         List<OutputRecord> records = new ArrayList<OutputRecord>();
 
-        // Create the root document
-        ar.xcRootElement = new Element("frbr", AggregateXCRecord.XC_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.XSI_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.RDVOCAB_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.DCTERMS_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.RDAROLE_NAMESPACE);
+        // Create the root document; each document is written into the buffer by frbrWriter
+        ar.xcRootElement = FrbrDocumentWriter.newRootElement();
+        StringWriter buffer = new StringWriter();
 
         /* $$ WORK $$ */
         // Create original Work Document
@@ -494,13 +496,10 @@ public class XCRecordService extends BaseService {
         }
         String workOaiID = getRecordService().getOaiIdentifier(workId,
                 getMetadataService().getService());
-        Element tempXcWorkElement = (Element) ar.xcWorkElement.clone();
-        tempXcWorkElement.setAttribute(new Attribute("id", workOaiID));
-        ar.xcRootElement.addContent(tempXcWorkElement);
-        Element rootElement = (Element) ar.xcRootElement.clone();
-        Record r = createRecord(ar, workId, rootElement, null);
+        // written in place rather than cloned; writeEntity leaves it as it was
+        Record r = createRecord(ar, workId, ar.xcWorkElement.getAttributeValue("type"),
+                writeEntity(ar.xcWorkElement, workOaiID, null, buffer), null);
         records.add(r);
-        ar.xcRootElement.removeContent();
 
         /* $$ EXPRESSION $$ */
         // Create original Expression Document
@@ -517,19 +516,12 @@ public class XCRecordService extends BaseService {
 
         String expressionOaiID = getRecordService().getOaiIdentifier(
                 expressionId, getMetadataService().getService());
-        Element tempXcExpressionElement = (Element) ar.xcExpressionElement
-                .clone();
-        tempXcExpressionElement.addContent(expressionToWorkLinkingElement
-                .detach());
-        tempXcExpressionElement.setAttribute(new Attribute("id",
-                expressionOaiID));
-        ar.xcRootElement.addContent(tempXcExpressionElement);
-        rootElement = (Element) ar.xcRootElement.clone();
         List<String> workElementOaiIDs = new ArrayList<String>();
         workElementOaiIDs.add(workOaiID);
-        r = createRecord(ar, expressionId, rootElement, workElementOaiIDs);
+        r = createRecord(ar, expressionId, ar.xcExpressionElement.getAttributeValue("type"),
+                writeEntity(ar.xcExpressionElement, expressionOaiID, expressionToWorkLinkingElement, buffer),
+                workElementOaiIDs);
         records.add(r);
-        ar.xcRootElement.removeContent();
 
         /* $$ LINKED WORK & EXPRESSION $$ */
         // Create the extra Work & Expression documents
@@ -598,11 +590,9 @@ public class XCRecordService extends BaseService {
                     newWorkId, getMetadataService().getService());
             LOG.debug("newWorkOaiID: " + newWorkOaiID);
             newWorkElement.setAttribute(new Attribute("id", newWorkOaiID));
-            ar.xcRootElement.addContent(newWorkElement);
-            r = createRecord(ar, newWorkId, (Element) ar.xcRootElement.clone(),
-                    null);
+            r = createRecord(ar, newWorkId, newWorkElement.getAttributeValue("type"),
+                    frbrWriter.get().write(newWorkElement, buffer), null);
             records.add(r);
-            ar.xcRootElement.removeContent();
 
             // Expression
             // Clone the original expression
@@ -647,14 +637,11 @@ public class XCRecordService extends BaseService {
             newExpressionElement.addContent(expressionToWorkLinkingElement
                     .detach());
 
-            ar.xcRootElement.addContent(newExpressionElement);
-
             List<String> workExpressedOaiIDs = new ArrayList<String>();
             workExpressedOaiIDs.add(newWorkOaiID);
-            r = createRecord(ar, newExpressionId,
-                    (Element) ar.xcRootElement.clone(), workExpressedOaiIDs);
+            r = createRecord(ar, newExpressionId, newExpressionElement.getAttributeValue("type"),
+                    frbrWriter.get().write(newExpressionElement, buffer), workExpressedOaiIDs);
             records.add(r);
-            ar.xcRootElement.removeContent();
 
             index++;
         }
@@ -689,12 +676,9 @@ public class XCRecordService extends BaseService {
             linkExpression.setText(linkExpressionOAIId);
             ar.xcManifestationElement.addContent(linkExpression.detach());
         }
-        ar.xcRootElement.addContent(ar.xcManifestationElement);
-
-        r = createRecord(ar, manifestationId,
-                (Element) ar.xcRootElement.clone(), linkExpressionOAIIds);
+        r = createRecord(ar, manifestationId, ar.xcManifestationElement.getAttributeValue("type"),
+                frbrWriter.get().write(ar.xcManifestationElement, buffer), linkExpressionOAIIds);
         records.add(r);
-        ar.xcRootElement.removeContent();
 
         /* $$ HOLDINGS $$ */
         // Create the Holdings documents
@@ -713,13 +697,10 @@ public class XCRecordService extends BaseService {
             manifestationHeldOAIIds.add(manifestationHeld);
             linkManifestation.setText(manifestationHeld);
             holdingsElement.addContent(linkManifestation.detach());
-            ar.xcRootElement.addContent(holdingsElement);
 
-            r = createRecord(ar, holdingId, (Element) ar.xcRootElement.clone(),
-                    manifestationHeldOAIIds);
+            r = createRecord(ar, holdingId, holdingsElement.getAttributeValue("type"),
+                    frbrWriter.get().write(holdingsElement, buffer), manifestationHeldOAIIds);
             records.add(r);
-
-            ar.xcRootElement.removeContent();
         }
 
         /* $$ ITEM $$ */
@@ -741,11 +722,9 @@ public class XCRecordService extends BaseService {
                 linkExpression.setText(hoaid);
                 ar.xcItemElement.addContent(linkExpression.detach());
             }
-            ar.xcRootElement.addContent(ar.xcItemElement);
-            r = createRecord(ar, itemId, (Element) ar.xcRootElement.clone(),
-                    null);
+            r = createRecord(ar, itemId, ar.xcItemElement.getAttributeValue("type"),
+                    frbrWriter.get().write(ar.xcItemElement, buffer), null);
             records.add(r);
-            ar.xcRootElement.removeContent();
 
         }
 
@@ -826,16 +805,9 @@ public class XCRecordService extends BaseService {
 
         List<OutputRecord> records = new ArrayList<OutputRecord>();
 
-        // Create the root document
-        ar.xcRootElement = new Element("frbr", AggregateXCRecord.XC_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.XSI_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.RDVOCAB_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.DCTERMS_NAMESPACE);
-        ar.xcRootElement
-                .addNamespaceDeclaration(AggregateXCRecord.RDAROLE_NAMESPACE);
+        // Create the root document; each document is written into the buffer by frbrWriter
+        ar.xcRootElement = FrbrDocumentWriter.newRootElement();
+        StringWriter buffer = new StringWriter();
 
         /* $$ HOLDINGS $$ */
         // Create the Holdings documents
@@ -861,11 +833,9 @@ public class XCRecordService extends BaseService {
                 repo.addLink(holdingId, manifestationId);
             }
 
-            ar.xcRootElement.addContent(holdingsElement);
-            Record r = createRecord(ar, holdingId,
-                    (Element) ar.xcRootElement.clone(), manifestationHeldOAIIds); // <-the uplinks
+            Record r = createRecord(ar, holdingId, holdingsElement.getAttributeValue("type"),
+                    frbrWriter.get().write(holdingsElement, buffer), manifestationHeldOAIIds); // <-the uplinks
             records.add(r);
-            ar.xcRootElement.removeContent();
         }
 
         return records;
@@ -883,12 +853,39 @@ public class XCRecordService extends BaseService {
         return recordId;
     }
 
+    /*
+     * Writes the xc:frbr document for one of AggregateXCRecord's entity elements, with its OAI id
+     * and, if there is one, a link element added for the time being. The element is left as it
+     * was, since it's still needed for the linked work and expression documents.
+     */
+    protected String writeEntity(Element entity, String oaiId, Element link,
+            StringWriter buffer) {
+        String previousId = entity.getAttributeValue("id");
+        if (link != null) {
+            entity.addContent(link);
+        }
+        entity.setAttribute("id", oaiId);
+        try {
+            return frbrWriter.get().write(entity, buffer);
+        } finally {
+            if (previousId == null) {
+                entity.removeAttribute("id");
+            } else {
+                entity.setAttribute("id", previousId);
+            }
+            if (link != null) {
+                entity.removeContent(link);
+            }
+        }
+    }
+
     /*
      * Creates the record with the specified record type
      *
      * @param recordType
+     *            the entity's type, so that getType needn't parse the document again
      *
-     * @param document
+     * @param oaiXml
      *
      * @return
      *
@@ -899,14 +896,15 @@ public class XCRecordService extends BaseService {
      * @throws DatabaseConfigException
      */
     private Record createRecord(AggregateXCRecord ar, Long recordId,
-            Element oaiXmlEl, List<String> upLinks)
+            String recordType, String oaiXml, List<String> upLinks)
             throws TransformerConfigurationException, TransformerException,
             DatabaseConfigException {
 
         Record xcRecord = new Record();
         xcRecord.setId(recordId);
-        xcRecord.setMode(Record.JDOM_MODE);
-        xcRecord.setOaiXmlEl(oaiXmlEl);
+        xcRecord.setType(recordType);
+        xcRecord.setMode(Record.STRING_MODE);
+        xcRecord.setOaiXml(oaiXml);
         xcRecord.setFormat(ar.xcFormat);
 
         if (upLinks != null) {